@@ -0,0 +1,93 @@
+#!/bin/sh
+#
+#  Copyright 2017-2022 Adobe.
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#          http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Records the classes a front end loads while serving the S3 API into an AppCDS archive.
+# Starts S3Mock with the JVM arguments from the given argument file, runs the requests of the
+# integration tests' main scenarios against it, and stops it, which writes the archive.
+#
+# usage: cds-training.sh <java arguments file> <archive>
+
+set -e
+
+ARGS_FILE=$1
+ARCHIVE=$2
+HTTP="http://localhost:9090"
+HTTPS="https://localhost:9191"
+ROOT_DIR=$(mktemp -d)
+
+java -XX:ArchiveClassesAtExit="${ARCHIVE}" -Xmx128m "@${ARGS_FILE}" \
+  --root="${ROOT_DIR}" --validKmsKeys=arn:aws:kms:us-east-1:1234567890:key/valid-test-key-ref &
+PID=$!
+
+for i in $(seq 60); do
+  curl -s -o /dev/null "${HTTP}/favicon.ico" && break
+  sleep 1
+done
+
+request() {
+  curl -s -k -o /dev/null "$@"
+}
+
+for endpoint in "${HTTP}" "${HTTPS}"; do
+  request -X PUT "${endpoint}/training"
+  request "${endpoint}/"
+  request -I "${endpoint}/training"
+
+  request -X PUT -H "Content-Type: text/plain" -H "x-amz-meta-key: value" \
+    --data-binary "training data" "${endpoint}/training/dir/object"
+  request "${endpoint}/training/dir/object"
+  request -I "${endpoint}/training/dir/object"
+  request -H "Range: bytes=1-5" "${endpoint}/training/dir/object"
+  request -H "If-None-Match: \"0\"" "${endpoint}/training/dir/object"
+  request "${endpoint}/training/missing"
+  request -X PUT -H "Content-MD5: AAAAAAAAAAAAAAAAAAAAAA==" --data-binary "x" \
+    "${endpoint}/training/invalid"
+  request -X PUT -H "x-amz-server-side-encryption: aws:kms" \
+    -H "x-amz-server-side-encryption-aws-kms-key-id: invalid" --data-binary "x" \
+    "${endpoint}/training/encrypted"
+
+  request "${endpoint}/training?prefix=dir/&delimiter=/"
+  request "${endpoint}/training?list-type=2&max-keys=10"
+
+  request -X PUT --data-binary \
+    "<Tagging><TagSet><Tag><Key>key</Key><Value>value</Value></Tag></TagSet></Tagging>" \
+    "${endpoint}/training/dir/object?tagging"
+  request "${endpoint}/training/dir/object?tagging"
+  request -X PUT -H "x-amz-copy-source: /training/dir/object" "${endpoint}/training/copy"
+
+  UPLOAD_ID=$(curl -s -k -X POST "${endpoint}/training/multipart?uploads" \
+    | sed -n 's:.*<UploadId>\(.*\)</UploadId>.*:\1:p')
+  ETAG=$(curl -s -k -D - -o /dev/null -X PUT --data-binary "part" \
+    "${endpoint}/training/multipart?uploadId=${UPLOAD_ID}&partNumber=1" \
+    | sed -n 's/^ETag: *\([^[:space:]]*\).*/\1/Ip')
+  request "${endpoint}/training/?uploads"
+  request "${endpoint}/training/multipart?uploadId=${UPLOAD_ID}"
+  request -X POST --data-binary "<CompleteMultipartUpload><Part><PartNumber>1</PartNumber>\
+<ETag>${ETAG}</ETag></Part></CompleteMultipartUpload>" \
+    "${endpoint}/training/multipart?uploadId=${UPLOAD_ID}"
+
+  request -X POST --data-binary \
+    "<Delete><Object><Key>copy</Key></Object><Object><Key>multipart</Key></Object></Delete>" \
+    "${endpoint}/training?delete"
+  request -X DELETE "${endpoint}/training/dir/object"
+  request -X DELETE "${endpoint}/training"
+done
+
+kill "${PID}"
+wait "${PID}" || true
+rm -rf "${ROOT_DIR}"
+test -f "${ARCHIVE}"
@@ -0,0 +1,35 @@
+#!/bin/sh
+#
+#  Copyright 2017-2022 Adobe.
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#          http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Measures the time from starting a container of the image to its first answered request.
+#
+# usage: measure-startup.sh <image> [runs]
+
+IMAGE=$1
+RUNS=${2:-5}
+
+for i in $(seq "${RUNS}"); do
+  START=$(date +%s%N)
+  CONTAINER=$(docker run -d -p 9090 "${IMAGE}")
+  PORT=$(docker port "${CONTAINER}" 9090 | head -n 1 | sed 's/.*://')
+  until curl -s -o /dev/null "http://localhost:${PORT}/favicon.ico"; do
+    sleep 0.05
+  done
+  END=$(date +%s%N)
+  docker rm -f "${CONTAINER}" > /dev/null
+  echo "$(( (END - START) / 1000000 )) ms"
+done
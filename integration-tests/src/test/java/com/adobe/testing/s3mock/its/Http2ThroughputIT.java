@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.its;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Compares the throughput of many small GETs over HTTP/1.1 and HTTP/2, with the same number of
+ * requests in flight. Over HTTP/1.1 every request in flight needs its own connection, over HTTP/2
+ * they are multiplexed over a few. Both run on the HTTP connector, HTTP/2 as h2c with prior
+ * knowledge: the SDK's Netty client doesn't negotiate HTTP/2 with ALPN. The results are published
+ * as report entries.
+ *
+ * <p>Only runs if the integration tests start the image with {@code -Dhttp2=true}.</p>
+ */
+@EnabledIfSystemProperty(named = "it.s3mock.http2", matches = "true")
+class Http2ThroughputIT extends S3TestBase {
+
+  private static final int OBJECTS = 200;
+  private static final int OBJECT_SIZE = 1024;
+  private static final int REQUESTS = 5000;
+  private static final int CONCURRENCY = 100;
+
+  @Test
+  void shouldServeSmallObjectsOverHttp1AndHttp2(final TestReporter reporter) throws Exception {
+    final String bucketName = "http2-throughput";
+    s3ClientV2.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+    final String content = new String(new char[OBJECT_SIZE]).replace('\0', 'x');
+    for (int i = 0; i < OBJECTS; i++) {
+      s3ClientV2.putObject(PutObjectRequest.builder().bucket(bucketName).key("key" + i).build(),
+          RequestBody.fromString(content));
+    }
+
+    final double http1 = measure(Protocol.HTTP1_1, bucketName, content);
+    final double http2 = measure(Protocol.HTTP2, bucketName, content);
+
+    reporter.publishEntry("workload", String.format("GET of %d objects of %d bytes, %d in flight",
+        REQUESTS, OBJECT_SIZE, CONCURRENCY));
+    reporter.publishEntry("HTTP/1.1 requests/s", String.format("%.0f", http1));
+    reporter.publishEntry("HTTP/2 requests/s", String.format("%.0f", http2));
+    assertThat(http1).isPositive();
+    assertThat(http2).isPositive();
+  }
+
+  /**
+   * Runs a warm-up round, then returns the requests per second of a measured round.
+   */
+  private double measure(final Protocol protocol, final String bucketName, final String content)
+      throws Exception {
+    try (S3AsyncClient client = createS3AsyncClientV2(protocol)) {
+      getObjects(client, bucketName, content);
+      final long start = System.nanoTime();
+      getObjects(client, bucketName, content);
+      return REQUESTS / ((System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  private static void getObjects(final S3AsyncClient client, final String bucketName,
+      final String content) throws Exception {
+    final List<CompletableFuture<ResponseBytes<GetObjectResponse>>> gets = new ArrayList<>();
+    for (int i = 0; i < REQUESTS; i++) {
+      gets.add(client.getObject(
+          GetObjectRequest.builder().bucket(bucketName).key("key" + i % OBJECTS).build(),
+          AsyncResponseTransformer.toBytes()));
+    }
+    for (final CompletableFuture<ResponseBytes<GetObjectResponse>> get : gets) {
+      assertThat(get.get(1, TimeUnit.MINUTES).asString(UTF_8)).isEqualTo(content);
+    }
+  }
+
+  /**
+   * Creates an async client limited to {@link #CONCURRENCY} requests in flight, further requests
+   * wait for a connection resp. stream.
+   */
+  private S3AsyncClient createS3AsyncClientV2(final Protocol protocol) {
+    return S3AsyncClient.builder()
+        .region(Region.of("us-east-1"))
+        .credentialsProvider(
+            StaticCredentialsProvider.create(AwsBasicCredentials.create("foo", "bar")))
+        .endpointOverride(URI.create("http://" + getHost() + ":" + getHttpPort()))
+        .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+        .httpClient(NettyNioAsyncHttpClient.builder()
+            .protocol(protocol)
+            .maxConcurrency(CONCURRENCY)
+            .maxPendingConnectionAcquires(REQUESTS)
+            .build())
+        .build();
+  }
+}
@@ -139,7 +139,7 @@ abstract class S3TestBase {
     return System.getProperty("it.s3mock.host", "localhost");
   }
 
-  private int getPort() {
+  int getPort() {
     return Integer.getInteger("it.s3mock.port_https", 9191);
   }
 
@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.reactive;
+
+import static com.adobe.testing.s3mock.S3MockApplication.SERVER_SSL_KEY_PASSWORD;
+import static com.adobe.testing.s3mock.S3MockApplication.SERVER_SSL_KEY_STORE;
+import static com.adobe.testing.s3mock.S3MockApplication.SERVER_SSL_KEY_STORE_PASSWORD;
+
+import com.adobe.testing.s3mock.S3MockApplication;
+import com.adobe.testing.s3mock.store.FileStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerExpectContinueHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManagerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * Netty server listening on the S3Mock ports, with one pipeline per connection: TLS on the HTTPS
+ * port, HTTP/1.1 codec, chunked writes and the {@link S3RequestHandler}. Connections are not read
+ * automatically, the handler asks for the next message once the previous one is processed.
+ *
+ * <p>The handler runs on the store executor, as the store blocks on disk I/O.</p>
+ */
+class NettyFrontEnd implements SmartLifecycle {
+
+  private final ReactiveProperties properties;
+  private final FileStore fileStore;
+  private final S3MockApplication backend;
+  private final Environment environment;
+  private final ObjectMapper objectMapper;
+  private final String contextPath;
+
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
+  private EventExecutorGroup storeGroup;
+  private Channel httpChannel;
+  private Channel httpsChannel;
+
+  NettyFrontEnd(final ReactiveProperties properties, final FileStore fileStore,
+      final S3MockApplication backend, final Environment environment,
+      final ObjectMapper objectMapper) {
+    this.properties = properties;
+    this.fileStore = fileStore;
+    this.backend = backend;
+    this.environment = environment;
+    this.objectMapper = objectMapper;
+    contextPath = environment.getProperty("com.adobe.testing.s3mock.contextPath", "");
+  }
+
+  @Override
+  public synchronized void start() {
+    bossGroup = new NioEventLoopGroup(1);
+    workerGroup = new NioEventLoopGroup();
+    storeGroup = new DefaultEventExecutorGroup(properties.getStoreThreads());
+    try {
+      httpChannel = bind(properties.getHttpPort(), null);
+      httpsChannel = bind(properties.getHttpsPort(), createSslContext());
+    } catch (final IOException | GeneralSecurityException e) {
+      stop();
+      throw new IllegalStateException("Netty front end can't be started", e);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (httpChannel != null) {
+      httpChannel.close().syncUninterruptibly();
+    }
+    if (httpsChannel != null) {
+      httpsChannel.close().syncUninterruptibly();
+    }
+    bossGroup.shutdownGracefully().syncUninterruptibly();
+    workerGroup.shutdownGracefully().syncUninterruptibly();
+    storeGroup.shutdownGracefully().syncUninterruptibly();
+    httpChannel = null;
+    httpsChannel = null;
+  }
+
+  @Override
+  public synchronized boolean isRunning() {
+    return httpChannel != null;
+  }
+
+  int getHttpPort() {
+    return ((InetSocketAddress) httpChannel.localAddress()).getPort();
+  }
+
+  int getHttpsPort() {
+    return ((InetSocketAddress) httpsChannel.localAddress()).getPort();
+  }
+
+  @SuppressWarnings("deprecation")
+  private Channel bind(final int port, final SslContext sslContext) {
+    return new ServerBootstrap()
+        .group(bossGroup, workerGroup)
+        .channel(NioServerSocketChannel.class)
+        .childOption(ChannelOption.AUTO_READ, false)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(final SocketChannel channel) {
+            final ChannelPipeline pipeline = channel.pipeline();
+            if (sslContext != null) {
+              pipeline.addLast(sslContext.newHandler(channel.alloc()));
+            }
+            pipeline.addLast(new HttpServerCodec());
+            pipeline.addLast(new HttpServerExpectContinueHandler());
+            pipeline.addLast(new ChunkedWriteHandler());
+            // the backend only listens once the web server started, look up its port lazily
+            pipeline.addLast(storeGroup, new S3RequestHandler(fileStore, backend::getHttpPort,
+                objectMapper, contextPath, sslContext != null));
+          }
+        })
+        .bind(port)
+        .syncUninterruptibly()
+        .channel();
+  }
+
+  /**
+   * Creates the server side TLS context from the keystore Spring Boot's web server uses.
+   */
+  private SslContext createSslContext() throws IOException, GeneralSecurityException {
+    final String keyStoreType = environment.getProperty("server.ssl.key-store-type", "JKS");
+    final KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+    final String keyStorePassword = environment.getProperty(SERVER_SSL_KEY_STORE_PASSWORD, "");
+    try (InputStream inputStream = ResourceUtils.getURL(
+        environment.getRequiredProperty(SERVER_SSL_KEY_STORE)).openStream()) {
+      keyStore.load(inputStream, keyStorePassword.toCharArray());
+    }
+    final KeyManagerFactory keyManagerFactory =
+        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagerFactory.init(keyStore,
+        environment.getProperty(SERVER_SSL_KEY_PASSWORD, keyStorePassword).toCharArray());
+    return SslContextBuilder.forServer(keyManagerFactory).build();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.reactive;
+
+import com.adobe.testing.s3mock.store.FileStore;
+import com.adobe.testing.s3mock.store.S3Object;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import java.io.IOException;
+
+/**
+ * Reads a range of an object from the store one chunk at a time, for objects that aren't stored
+ * in a single plain file, e.g. cached, packed or multipart objects.
+ */
+class ObjectDataInput implements ChunkedInput<ByteBuf> {
+
+  private final FileStore fileStore;
+  private final S3Object s3Object;
+  private final long offset;
+  private final long length;
+  private final int chunkSize;
+  private long progress;
+
+  ObjectDataInput(final FileStore fileStore, final S3Object s3Object, final long offset,
+      final long length, final int chunkSize) {
+    this.fileStore = fileStore;
+    this.s3Object = s3Object;
+    this.offset = offset;
+    this.length = length;
+    this.chunkSize = chunkSize;
+  }
+
+  @Override
+  public boolean isEndOfInput() {
+    return progress >= length;
+  }
+
+  @Override
+  public void close() {
+    // nothing to release, every chunk is read separately
+  }
+
+  @Deprecated
+  @Override
+  public ByteBuf readChunk(final ChannelHandlerContext ctx) throws IOException {
+    return readChunk(ctx.alloc());
+  }
+
+  @Override
+  public ByteBuf readChunk(final ByteBufAllocator allocator) throws IOException {
+    if (isEndOfInput()) {
+      return null;
+    }
+    final int size = (int) Math.min(chunkSize, length - progress);
+    final ByteBuf chunk = allocator.buffer(size);
+    try {
+      fileStore.readS3ObjectData(s3Object, offset + progress, size,
+          new ByteBufOutputStream(chunk));
+    } catch (final IOException | RuntimeException e) {
+      chunk.release();
+      throw e;
+    }
+    progress += size;
+    return chunk;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public long progress() {
+    return progress;
+  }
+}
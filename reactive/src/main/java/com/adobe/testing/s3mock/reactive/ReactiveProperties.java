@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.reactive;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("com.adobe.testing.s3mock.reactive")
+class ReactiveProperties {
+
+  /**
+   * The HTTP port of the Netty front end, taken from {@code http.port} at startup.
+   */
+  private int httpPort;
+
+  /**
+   * The HTTPS port of the Netty front end, taken from {@code server.port} at startup.
+   */
+  private int httpsPort;
+
+  /**
+   * Number of threads calling the store, which blocks on disk I/O. Netty's event loops only move
+   * bytes between sockets.
+   */
+  private int storeThreads = 16;
+
+  public int getHttpPort() {
+    return httpPort;
+  }
+
+  public void setHttpPort(final int httpPort) {
+    this.httpPort = httpPort;
+  }
+
+  public int getHttpsPort() {
+    return httpsPort;
+  }
+
+  public void setHttpsPort(final int httpsPort) {
+    this.httpsPort = httpsPort;
+  }
+
+  public int getStoreThreads() {
+    return storeThreads;
+  }
+
+  public void setStoreThreads(final int storeThreads) {
+    this.storeThreads = storeThreads;
+  }
+}
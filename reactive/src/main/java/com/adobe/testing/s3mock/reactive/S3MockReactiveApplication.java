@@ -0,0 +1,157 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.reactive;
+
+import static com.adobe.testing.s3mock.S3MockApplication.DEFAULT_HTTPS_PORT;
+import static com.adobe.testing.s3mock.S3MockApplication.DEFAULT_HTTP_PORT;
+import static com.adobe.testing.s3mock.S3MockApplication.PROP_HTTPS_PORT;
+import static com.adobe.testing.s3mock.S3MockApplication.PROP_HTTP_PORT;
+import static com.adobe.testing.s3mock.S3MockApplication.RANDOM_PORT;
+import static java.util.Collections.emptyMap;
+
+import com.adobe.testing.s3mock.S3MockApplication;
+import com.adobe.testing.s3mock.store.FileStore;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.http.converter.xml.MappingJackson2XmlHttpMessageConverter;
+
+/**
+ * Runs S3Mock behind a Netty front end. Object data is moved by Netty: GETs of objects stored in a
+ * single file are sent with zero-copy file regions, uploads are streamed to disk with
+ * backpressure, a connection is only read from once the previous data is written. All other
+ * requests are forwarded over loopback HTTP to the MVC controllers, so both front ends serve the
+ * same REST surface. Jetty thus keeps running behind the Netty front end, listening on a random
+ * loopback port only.
+ *
+ * <p>Takes the same properties as {@link S3MockApplication}, {@code server.port} and
+ * {@code http.port} are the ports of the Netty front end.</p>
+ *
+ * <p>This class is deliberately no {@code @Configuration}: {@link S3MockApplication} scans its
+ * package and below, the front end must only start if it's run by this class.</p>
+ */
+@EnableConfigurationProperties(ReactiveProperties.class)
+public class S3MockReactiveApplication {
+
+  private static final String PROPERTY_SOURCE = "s3mockReactivePorts";
+
+  @Autowired
+  private ConfigurableApplicationContext context;
+
+  @Autowired
+  private NettyFrontEnd frontEnd;
+
+  /**
+   * Main Class that starts the server using {@link #start(String...)}.
+   *
+   * @param args Default command args.
+   */
+  public static void main(final String[] args) {
+    S3MockReactiveApplication.start(args);
+  }
+
+  /**
+   * Starts the server.
+   *
+   * @param args in program args format, e.g. {@code "--server.port=0"}.
+   *
+   * @return the {@link S3MockReactiveApplication}
+   */
+  public static S3MockReactiveApplication start(final String... args) {
+    return start(emptyMap(), args);
+  }
+
+  /**
+   * Starts the server.
+   *
+   * @param properties properties to pass to the application in key-value format.
+   * @param args in program args format, e.g. {@code "--server.port=0"}.
+   *
+   * @return the {@link S3MockReactiveApplication}
+   */
+  public static S3MockReactiveApplication start(final Map<String, Object> properties,
+      final String... args) {
+    return S3MockApplication.builder(properties)
+        .sources(S3MockReactiveApplication.class)
+        .initializers(new FrontEndPorts())
+        .run(args)
+        .getBean(S3MockReactiveApplication.class);
+  }
+
+  /**
+   * Stops the server.
+   */
+  public void stop() {
+    SpringApplication.exit(context, () -> 0);
+  }
+
+  /**
+   * Gets the Https server port.
+   *
+   * @return Https server port.
+   */
+  public int getPort() {
+    return frontEnd.getHttpsPort();
+  }
+
+  /**
+   * Gets the Http server port.
+   *
+   * @return Http server port.
+   */
+  public int getHttpPort() {
+    return frontEnd.getHttpPort();
+  }
+
+  @Bean
+  static NettyFrontEnd nettyFrontEnd(final ReactiveProperties properties, final FileStore fileStore,
+      final S3MockApplication backend, final Environment environment,
+      final MappingJackson2XmlHttpMessageConverter messageConverter) {
+    return new NettyFrontEnd(properties, fileStore, backend, environment,
+        messageConverter.getObjectMapper());
+  }
+
+  /**
+   * Moves the configured ports to the Netty front end, the MVC controllers listen on random
+   * loopback ports instead.
+   */
+  private static final class FrontEndPorts
+      implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    @Override
+    public void initialize(final ConfigurableApplicationContext context) {
+      final ConfigurableEnvironment environment = context.getEnvironment();
+      final Map<String, Object> ports = new HashMap<>();
+      ports.put("com.adobe.testing.s3mock.reactive.httpsPort",
+          environment.getProperty(PROP_HTTPS_PORT, Integer.class, DEFAULT_HTTPS_PORT));
+      ports.put("com.adobe.testing.s3mock.reactive.httpPort",
+          environment.getProperty(PROP_HTTP_PORT, Integer.class, DEFAULT_HTTP_PORT));
+      ports.put(PROP_HTTPS_PORT, RANDOM_PORT);
+      ports.put(PROP_HTTP_PORT, RANDOM_PORT);
+      ports.put("server.address", "127.0.0.1");
+      environment.getPropertySources().addFirst(new MapPropertySource(PROPERTY_SOURCE, ports));
+    }
+  }
+}
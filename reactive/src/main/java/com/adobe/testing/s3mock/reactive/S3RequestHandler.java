@@ -0,0 +1,647 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.reactive;
+
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.CONTENT_MD5;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.RANGE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_CONTENT_SHA256;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_COPY_SOURCE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_COPY_SOURCE_RANGE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_SERVER_SIDE_ENCRYPTION;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_TAGGING;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_S3MOCK_NAMESPACE;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.PART_NUMBER;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.UPLOAD_ID;
+import static com.adobe.testing.s3mock.util.StringEncoding.decode;
+import static com.adobe.testing.s3mock.util.StringEncoding.encode;
+
+import com.adobe.testing.s3mock.dto.ErrorResponse;
+import com.adobe.testing.s3mock.dto.Range;
+import com.adobe.testing.s3mock.store.FileStore;
+import com.adobe.testing.s3mock.store.S3Exception;
+import com.adobe.testing.s3mock.store.S3Object;
+import com.adobe.testing.s3mock.util.AccessKeyId;
+import com.adobe.testing.s3mock.util.AwsChunkedDecodingInputStream;
+import com.adobe.testing.s3mock.util.DigestUtil;
+import com.adobe.testing.s3mock.util.MetadataUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.stream.ChunkedFile;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+/**
+ * Handles the requests of one connection. Object GETs and uploads are handled here, so their data
+ * is moved by Netty, everything else is forwarded to the MVC controllers. So are requests working
+ * in a namespace other than the default one, which the MVC filters select.
+ *
+ * <p>Messages are processed one at a time, and the connection is only read from once the previous
+ * message is completely processed: uploaded data is written to disk resp. to the MVC controllers,
+ * a response is written to the client. A slow disk, backend or client thus slows down reading
+ * instead of buffering data, and responses are always written in request order.</p>
+ *
+ * <p>Runs on a store thread, as the store blocks on disk I/O.</p>
+ */
+class S3RequestHandler extends ChannelInboundHandlerAdapter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(S3RequestHandler.class);
+
+  private static final String STREAMING_AWS_4_HMAC_SHA_256_PAYLOAD =
+      "STREAMING-AWS4-HMAC-SHA256-PAYLOAD";
+  private static final String HEADER_X_AMZ_META_PREFIX = "x-amz-meta-";
+  private static final String FALLBACK_CONTENT_TYPE = "binary/octet-stream";
+  private static final int CHUNK_SIZE = 1024 * 1024;
+  private static final int MAX_PART_NUMBER = 10000;
+
+  private final FileStore fileStore;
+  private final IntSupplier backendPort;
+  private final ObjectMapper objectMapper;
+  private final String contextPath;
+  private final boolean secure;
+
+  /**
+   * Messages received while {@link #busy}.
+   */
+  private final Deque<HttpObject> received = new ArrayDeque<>();
+
+  /**
+   * Whether the last message is still being processed asynchronously.
+   */
+  private boolean busy;
+
+  /**
+   * The upload the request content is written to, null if the request isn't an upload.
+   */
+  private Upload upload;
+
+  /**
+   * Whether the request content is forwarded to the MVC controllers.
+   */
+  private boolean forwarding;
+
+  /**
+   * The connection to the MVC controllers, opened for the first forwarded request. Connecting
+   * doesn't block, forwarded messages are written once it is connected.
+   */
+  private ChannelFuture backend;
+
+  S3RequestHandler(final FileStore fileStore, final IntSupplier backendPort,
+      final ObjectMapper objectMapper, final String contextPath, final boolean secure) {
+    this.fileStore = fileStore;
+    this.backendPort = backendPort;
+    this.objectMapper = objectMapper;
+    this.contextPath = contextPath;
+    this.secure = secure;
+  }
+
+  @Override
+  public void channelActive(final ChannelHandlerContext ctx) {
+    ctx.read();
+  }
+
+  @Override
+  public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+    received.add((HttpObject) msg);
+    processReceived(ctx);
+  }
+
+  @Override
+  public void channelInactive(final ChannelHandlerContext ctx) {
+    received.forEach(ReferenceCountUtil::release);
+    received.clear();
+    if (upload != null) {
+      upload.discard();
+      upload = null;
+    }
+    if (backend != null) {
+      backend.channel().close();
+    }
+  }
+
+  @Override
+  public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+    LOG.debug("Closing connection", cause);
+    ctx.close();
+  }
+
+  private void processReceived(final ChannelHandlerContext ctx) {
+    HttpObject msg;
+    while (!busy && (msg = received.poll()) != null) {
+      try {
+        if (msg instanceof HttpRequest) {
+          processRequest(ctx, (HttpRequest) msg);
+        }
+        if (msg instanceof HttpContent) {
+          processContent(ctx, (HttpContent) msg);
+        }
+      } catch (final Exception e) {
+        exceptionCaught(ctx, e);
+        return;
+      }
+    }
+    if (!busy) {
+      ctx.read();
+    }
+  }
+
+  /**
+   * Continues with the received messages once an asynchronous step finished.
+   */
+  private void resume(final ChannelHandlerContext ctx) {
+    ctx.executor().execute(() -> {
+      busy = false;
+      processReceived(ctx);
+    });
+  }
+
+  private void processRequest(final ChannelHandlerContext ctx, final HttpRequest request)
+      throws IOException {
+    if (request.decoderResult().isFailure()) {
+      respond(ctx, request, new DefaultFullHttpResponse(request.protocolVersion(),
+          HttpResponseStatus.BAD_REQUEST), false);
+      return;
+    }
+    final QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+    final ObjectPath objectPath = ObjectPath.of(uri.rawPath(), contextPath);
+    if (objectPath != null && isDefaultNamespace(request, uri)) {
+      final Map<String, List<String>> parameters = uri.parameters();
+      if (HttpMethod.GET.equals(request.method()) && parameters.isEmpty()
+          && !request.headers().contains(HttpHeaderNames.IF_MATCH)
+          && !request.headers().contains(HttpHeaderNames.IF_NONE_MATCH)
+          && sendObject(ctx, request, objectPath)) {
+        return;
+      }
+      if (HttpMethod.PUT.equals(request.method()) && isPlainUpload(request)
+          && (parameters.isEmpty() || isPartUpload(parameters))
+          && fileStore.getBucket(objectPath.bucketName) != null) {
+        upload = new Upload(request, objectPath, parameters);
+        return;
+      }
+    }
+    forwarding = true;
+    forward(ctx, request, false);
+  }
+
+  private void processContent(final ChannelHandlerContext ctx, final HttpContent content)
+      throws IOException {
+    final boolean last = content instanceof LastHttpContent;
+    if (upload != null) {
+      try {
+        upload.write(content.content());
+      } finally {
+        content.release();
+      }
+      if (last) {
+        final Upload finished = upload;
+        upload = null;
+        respond(ctx, finished.request, finished.store(), HttpUtil.isKeepAlive(finished.request));
+      }
+    } else if (forwarding) {
+      forwarding = !last;
+      forward(ctx, content, last);
+    } else {
+      content.release();
+    }
+  }
+
+  /**
+   * Sends an object or a range of it like {@code FileStoreController#getObject}, if it exists and
+   * the range is satisfiable. Otherwise the MVC controllers respond with the error.
+   */
+  private boolean sendObject(final ChannelHandlerContext ctx, final HttpRequest request,
+      final ObjectPath objectPath) throws IOException {
+    if (fileStore.getBucket(objectPath.bucketName) == null) {
+      return false;
+    }
+    final S3Object s3Object = fileStore.getS3Object(objectPath.bucketName, objectPath.fileName);
+    if (s3Object == null) {
+      return false;
+    }
+
+    final long size = Long.parseLong(s3Object.getSize());
+    final HttpHeaders headers = new HttpHeaders();
+    HttpResponseStatus status = HttpResponseStatus.OK;
+    long offset = 0;
+    long length = size;
+    final String rangeHeader = request.headers().get(RANGE);
+    if (rangeHeader != null) {
+      final Range range;
+      try {
+        range = new Range(rangeHeader);
+      } catch (final IllegalArgumentException e) {
+        return false;
+      }
+      length = Math.min(size - 1, range.getEnd()) - range.getStart() + 1;
+      if (length < 0 || size < range.getStart()) {
+        return false;
+      }
+      offset = range.getStart();
+      status = HttpResponseStatus.PARTIAL_CONTENT;
+      headers.set(HttpHeaders.CONTENT_RANGE, String.format("bytes %s-%s/%s",
+          offset, offset + length - 1, s3Object.getSize()));
+    }
+    headers.setETag("\"" + s3Object.getEtag() + "\"");
+    if (s3Object.getContentEncoding() != null) {
+      headers.set(HttpHeaders.CONTENT_ENCODING, s3Object.getContentEncoding());
+    }
+    headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+    headers.setAll(MetadataUtil.createUserMetadataHeaders(s3Object));
+    headers.setLastModified(s3Object.getLastModified());
+    headers.setContentLength(length);
+    headers.setContentType(parseMediaType(s3Object.getContentType()));
+
+    final HttpResponse response = new DefaultHttpResponse(request.protocolVersion(), status);
+    headers.forEach(response.headers()::add);
+    final boolean keepAlive = HttpUtil.isKeepAlive(request);
+    HttpUtil.setKeepAlive(response, keepAlive);
+    ctx.write(response);
+
+    final Path dataFile = fileStore.plainDataFile(s3Object, offset, length);
+    final ChannelFuture written;
+    if (dataFile != null && !secure) {
+      // zero-copy, the kernel sends the file
+      ctx.write(new DefaultFileRegion(dataFile.toFile(), offset, length));
+      written = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+    } else if (dataFile != null) {
+      written = ctx.writeAndFlush(new HttpChunkedInput(new ChunkedFile(
+          new RandomAccessFile(dataFile.toFile(), "r"), offset, length, CHUNK_SIZE)));
+    } else {
+      written = ctx.writeAndFlush(new HttpChunkedInput(
+          new ObjectDataInput(fileStore, s3Object, offset, length, CHUNK_SIZE)));
+    }
+    awaitResponse(ctx, written, keepAlive);
+    return true;
+  }
+
+  private void respond(final ChannelHandlerContext ctx, final HttpRequest request,
+      final FullHttpResponse response, final boolean keepAlive) {
+    HttpUtil.setContentLength(response, response.content().readableBytes());
+    HttpUtil.setKeepAlive(response, keepAlive);
+    awaitResponse(ctx, ctx.writeAndFlush(response), keepAlive);
+  }
+
+  private void awaitResponse(final ChannelHandlerContext ctx, final ChannelFuture written,
+      final boolean keepAlive) {
+    busy = true;
+    written.addListener(future -> {
+      if (future.isSuccess() && keepAlive) {
+        resume(ctx);
+      } else {
+        ctx.close();
+      }
+    });
+  }
+
+  /**
+   * Forwards a request message to the MVC controllers. The next message is processed once it's
+   * written, after the last one once the whole response is relayed to the client.
+   */
+  private void forward(final ChannelHandlerContext ctx, final HttpObject msg,
+      final boolean last) {
+    if (backend == null || backend.isDone() && !backend.channel().isActive()) {
+      backend = connect(ctx);
+    }
+    busy = true;
+    backend.addListener((ChannelFuture connected) -> {
+      if (!connected.isSuccess()) {
+        ReferenceCountUtil.release(msg);
+        exceptionCaught(ctx, connected.cause());
+        return;
+      }
+      connected.channel().writeAndFlush(msg).addListener(future -> {
+        if (!future.isSuccess()) {
+          exceptionCaught(ctx, future.cause());
+        } else if (!last) {
+          resume(ctx);
+        }
+      });
+    });
+  }
+
+  private ChannelFuture connect(final ChannelHandlerContext ctx) {
+    return new Bootstrap()
+        .group(ctx.channel().eventLoop())
+        .channel(NioSocketChannel.class)
+        .option(ChannelOption.AUTO_READ, false)
+        .handler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(final SocketChannel channel) {
+            channel.pipeline().addLast(new HttpClientCodec(), new Relay(ctx));
+          }
+        })
+        .connect("127.0.0.1", backendPort.getAsInt());
+  }
+
+  private boolean isDefaultNamespace(final HttpRequest request, final QueryStringDecoder uri) {
+    return !request.headers().contains(X_S3MOCK_NAMESPACE)
+        && !fileStore.hasNamespace(
+            AccessKeyId.of(request.headers().get(HttpHeaderNames.AUTHORIZATION), uri.rawQuery()));
+  }
+
+  private static boolean isPlainUpload(final HttpRequest request) {
+    final io.netty.handler.codec.http.HttpHeaders headers = request.headers();
+    return !headers.contains(X_AMZ_COPY_SOURCE)
+        && !headers.contains(X_AMZ_COPY_SOURCE_RANGE)
+        && !headers.contains(X_AMZ_TAGGING)
+        && !headers.contains(X_AMZ_SERVER_SIDE_ENCRYPTION)
+        && !headers.contains(X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID);
+  }
+
+  private static boolean isPartUpload(final Map<String, List<String>> parameters) {
+    if (parameters.size() != 2 || !parameters.containsKey(UPLOAD_ID)
+        || !parameters.containsKey(PART_NUMBER)) {
+      return false;
+    }
+    try {
+      final int partNumber = Integer.parseInt(parameters.get(PART_NUMBER).get(0));
+      return partNumber >= 1 && partNumber <= MAX_PART_NUMBER;
+    } catch (final NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static MediaType parseMediaType(final String contentType) {
+    try {
+      return MediaType.parseMediaType(contentType);
+    } catch (final InvalidMediaTypeException e) {
+      return MediaType.parseMediaType(FALLBACK_CONTENT_TYPE);
+    }
+  }
+
+  /**
+   * Bucket and file name of a request for an object, named like the store names them.
+   */
+  private static final class ObjectPath {
+
+    private final String bucketName;
+    private final String fileName;
+
+    private ObjectPath(final String bucketName, final String fileName) {
+      this.bucketName = bucketName;
+      this.fileName = fileName;
+    }
+
+    /**
+     * Parses the path of an object request, returns null for all other paths.
+     */
+    private static ObjectPath of(final String rawPath, final String contextPath) {
+      final String prefix = contextPath.isEmpty() ? "/" : "/" + contextPath + "/";
+      if (!rawPath.startsWith(prefix)) {
+        return null;
+      }
+      final int slash = rawPath.indexOf('/', prefix.length());
+      if (slash <= prefix.length() || slash == rawPath.length() - 1) {
+        return null;
+      }
+      return new ObjectPath(rawPath.substring(prefix.length(), slash),
+          encode(decode(rawPath.substring(slash + 1))));
+    }
+  }
+
+  /**
+   * An upload received into a staging file of the store, then moved into the store, or stored
+   * like {@code FileStoreController} stores it if it has to be decoded.
+   */
+  private final class Upload {
+
+    private final HttpRequest request;
+    private final ObjectPath objectPath;
+    private final String uploadId;
+    private final String partNumber;
+    private final Path file;
+    private final FileChannel channel;
+    private long position;
+
+    private Upload(final HttpRequest request, final ObjectPath objectPath,
+        final Map<String, List<String>> parameters) throws IOException {
+      this.request = request;
+      this.objectPath = objectPath;
+      uploadId = parameters.isEmpty() ? null : parameters.get(UPLOAD_ID).get(0);
+      partNumber = parameters.isEmpty() ? null : parameters.get(PART_NUMBER).get(0);
+      file = fileStore.createStagingFile();
+      channel = FileChannel.open(file, StandardOpenOption.WRITE);
+    }
+
+    private void write(final ByteBuf data) throws IOException {
+      while (data.isReadable()) {
+        position += data.readBytes(channel, position, data.readableBytes());
+      }
+    }
+
+    private FullHttpResponse store() {
+      try {
+        channel.close();
+        final HttpHeaders headers = new HttpHeaders();
+        final boolean v4Chunked = STREAMING_AWS_4_HMAC_SHA_256_PAYLOAD.equals(
+            request.headers().get(X_AMZ_CONTENT_SHA256));
+        if (uploadId != null) {
+          final String etag;
+          try (InputStream inputStream = Files.newInputStream(file)) {
+            etag = fileStore.putPart(objectPath.bucketName, objectPath.fileName, uploadId,
+                partNumber, inputStream, v4Chunked);
+          }
+          headers.setETag("\"" + etag + "\"");
+        } else {
+          verifyMd5(request.headers().get(CONTENT_MD5), v4Chunked);
+          final String contentType =
+              parseMediaType(request.headers().get(HttpHeaders.CONTENT_TYPE)).toString();
+          final String contentEncoding = request.headers().get(HttpHeaders.CONTENT_ENCODING);
+          final S3Object s3Object;
+          if (v4Chunked) {
+            try (InputStream inputStream = Files.newInputStream(file)) {
+              s3Object = fileStore.putS3Object(objectPath.bucketName, objectPath.fileName,
+                  contentType, contentEncoding, inputStream, true, userMetadata(), null, null);
+            }
+          } else {
+            s3Object = fileStore.putS3Object(objectPath.bucketName, objectPath.fileName,
+                contentType, contentEncoding, file, userMetadata(), null, null);
+          }
+          fileStore.setObjectTags(objectPath.bucketName, objectPath.fileName, null);
+          headers.setETag("\"" + s3Object.getEtag() + "\"");
+          headers.setLastModified(s3Object.getLastModified());
+        }
+        final FullHttpResponse response =
+            new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.OK);
+        headers.forEach(response.headers()::add);
+        return response;
+      } catch (final S3Exception e) {
+        return errorResponse(e);
+      } catch (final IOException | NoSuchAlgorithmException e) {
+        LOG.error("Object could not be uploaded!", e);
+        return errorResponse(new S3Exception(HttpResponseStatus.INTERNAL_SERVER_ERROR.code(),
+            "InternalServerError", "Error persisting object."));
+      } finally {
+        discard();
+      }
+    }
+
+    private void verifyMd5(final String contentMd5, final boolean v4Chunked)
+        throws IOException, NoSuchAlgorithmException {
+      if (contentMd5 == null) {
+        return;
+      }
+      final String md5;
+      try (InputStream inputStream = v4Chunked
+          ? new AwsChunkedDecodingInputStream(Files.newInputStream(file))
+          : Files.newInputStream(file)) {
+        md5 = DigestUtil.getBase64Digest(inputStream);
+      }
+      if (!md5.equals(contentMd5)) {
+        LOG.error("Content-MD5 {} does not match object md5 {}", contentMd5, md5);
+        throw new S3Exception(HttpResponseStatus.BAD_REQUEST.code(), "BadRequest",
+            "Content-MD5 does not match object md5");
+      }
+    }
+
+    private Map<String, String> userMetadata() {
+      final Map<String, String> userMetadata = new HashMap<>();
+      request.headers().forEach(header -> {
+        if (header.getKey().startsWith(HEADER_X_AMZ_META_PREFIX)) {
+          userMetadata.put(header.getKey().substring(HEADER_X_AMZ_META_PREFIX.length()),
+              header.getValue());
+        }
+      });
+      return userMetadata;
+    }
+
+    private FullHttpResponse errorResponse(final S3Exception e) {
+      final ErrorResponse errorResponse = new ErrorResponse();
+      errorResponse.setCode(e.getCode());
+      errorResponse.setMessage(e.getMessage());
+      ByteBuf content;
+      try {
+        content = Unpooled.wrappedBuffer(objectMapper.writeValueAsBytes(errorResponse));
+      } catch (final IOException serializationFailure) {
+        LOG.error("Error response can't be serialized", serializationFailure);
+        content = Unpooled.EMPTY_BUFFER;
+      }
+      final FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(),
+          HttpResponseStatus.valueOf(e.getStatus()), content);
+      response.headers().set(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_XML_VALUE);
+      return response;
+    }
+
+    private void discard() {
+      try {
+        channel.close();
+        Files.deleteIfExists(file);
+      } catch (final IOException e) {
+        LOG.debug("Upload file can't be deleted", e);
+      }
+    }
+  }
+
+  /**
+   * Relays the responses of the MVC controllers to the client, reading the next part of a
+   * response only once the previous one is written.
+   */
+  private final class Relay extends ChannelInboundHandlerAdapter {
+
+    private final ChannelHandlerContext client;
+    private boolean keepAlive;
+    private boolean responding;
+
+    private Relay(final ChannelHandlerContext client) {
+      this.client = client;
+    }
+
+    @Override
+    public void channelActive(final ChannelHandlerContext ctx) {
+      ctx.read();
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+      if (msg instanceof HttpResponse) {
+        responding = true;
+        keepAlive = HttpUtil.isKeepAlive((HttpResponse) msg);
+      }
+      final boolean last = msg instanceof LastHttpContent;
+      if (last) {
+        responding = false;
+      }
+      client.writeAndFlush(msg).addListener(future -> {
+        if (!future.isSuccess() || last && !keepAlive) {
+          client.close();
+          return;
+        }
+        ctx.read();
+        if (last) {
+          resume(client);
+        }
+      });
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) {
+      if (responding) {
+        client.close();
+      }
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+      LOG.debug("Closing backend connection", cause);
+      ctx.close();
+      client.close();
+    }
+  }
+}
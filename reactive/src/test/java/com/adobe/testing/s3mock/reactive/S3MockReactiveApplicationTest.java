@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.reactive;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.adobe.testing.s3mock.S3MockApplication;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class S3MockReactiveApplicationTest {
+
+  private static final String BUCKET = "testbucket";
+
+  @TempDir
+  File rootFolder;
+
+  private S3MockReactiveApplication s3Mock;
+
+  @BeforeEach
+  void startS3Mock() {
+    final Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_HTTPS_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_HTTP_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_ROOT_DIRECTORY, rootFolder.getAbsolutePath());
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, BUCKET);
+    properties.put(S3MockApplication.PROP_SILENT, true);
+    s3Mock = S3MockReactiveApplication.start(properties);
+  }
+
+  @AfterEach
+  void stopS3Mock() {
+    s3Mock.stop();
+  }
+
+  @Test
+  void shouldTransferObjectData() throws Exception {
+    final byte[] content = new byte[1024 * 1024 + 17];
+    new Random(42).nextBytes(content);
+
+    final HttpURLConnection put = open("/" + BUCKET + "/key");
+    put.setRequestMethod("PUT");
+    put.setRequestProperty("Content-Type", "application/octet-stream");
+    put.setRequestProperty("x-amz-meta-origin", "test");
+    put.setDoOutput(true);
+    put.setChunkedStreamingMode(8192);
+    try (OutputStream outputStream = put.getOutputStream()) {
+      outputStream.write(content);
+    }
+    assertThat(put.getResponseCode()).isEqualTo(200);
+    assertThat(rootFolder.list((dir, name) -> name.startsWith(".staged"))).isEmpty();
+
+    final HttpURLConnection get = open("/" + BUCKET + "/key");
+    assertThat(get.getResponseCode()).isEqualTo(200);
+    assertThat(get.getContentLengthLong()).isEqualTo(content.length);
+    assertThat(get.getHeaderField("x-amz-meta-origin")).isEqualTo("test");
+    assertThat(read(get)).isEqualTo(content);
+
+    final HttpURLConnection range = open("/" + BUCKET + "/key");
+    range.setRequestProperty("Range", "bytes=100000-199999");
+    assertThat(range.getResponseCode()).isEqualTo(206);
+    assertThat(read(range)).isEqualTo(Arrays.copyOfRange(content, 100000, 200000));
+  }
+
+  @Test
+  void shouldForwardOtherRequests() throws Exception {
+    final HttpURLConnection listBuckets = open("/");
+    assertThat(listBuckets.getResponseCode()).isEqualTo(200);
+    assertThat(new String(read(listBuckets), UTF_8)).contains("<Name>" + BUCKET + "</Name>");
+
+    assertThat(open("/" + BUCKET + "/missing").getResponseCode()).isEqualTo(404);
+  }
+
+  private HttpURLConnection open(final String path) throws Exception {
+    return (HttpURLConnection) new URL("http://localhost:" + s3Mock.getHttpPort() + path)
+        .openConnection();
+  }
+
+  private static byte[] read(final HttpURLConnection connection) throws Exception {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (InputStream inputStream = connection.getInputStream()) {
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = inputStream.read(buffer)) > 0) {
+        outputStream.write(buffer, 0, read);
+      }
+    }
+    return outputStream.toByteArray();
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.MediaType.TEXT_PLAIN_VALUE;
+
+import com.adobe.testing.s3mock.store.FileStore;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * A Filter serving the administrative API of the S3Mock below {@value ADMIN_PATH} in the
+ * {@link S3MockProperties#getContextPath() context path} of the S3 API. Bucket names never start
+ * with a dot, so these paths never collide with the paths of buckets.
+ *
+ * <ul>
+ *   <li>{@code GET /.s3mock/namespaces} lists the namespaces, one per line.</li>
+ *   <li>{@code PUT /.s3mock/namespaces/<name>} creates a namespace, see
+ *   {@link FileStore#createNamespace(String)}.</li>
+ *   <li>{@code HEAD /.s3mock/namespaces/<name>} checks if a namespace exists.</li>
+ *   <li>{@code DELETE /.s3mock/namespaces/<name>} drops a namespace, see
+ *   {@link FileStore#dropNamespace(String)}.</li>
+ *   <li>{@code GET /.s3mock/checkpoints} lists the checkpoints, one per line.</li>
+ *   <li>{@code PUT /.s3mock/checkpoints/<name>} takes a checkpoint, see
+ *   {@link FileStore#checkpoint(String)}.</li>
+ *   <li>{@code HEAD /.s3mock/checkpoints/<name>} checks if a checkpoint exists.</li>
+ *   <li>{@code DELETE /.s3mock/checkpoints/<name>} drops a checkpoint.</li>
+ *   <li>{@code POST /.s3mock/checkpoints/<name>/rollback} rolls back to a checkpoint, see
+ *   {@link FileStore#rollback(String)}.</li>
+ *   <li>{@code POST /.s3mock/reset} removes all buckets, see {@link FileStore#reset()}.</li>
+ *   <li>{@code GET /.s3mock/snapshot} streams a tar archive of all namespaces, buckets, objects
+ *   and multipart uploads in progress, see {@link FileStore#exportSnapshot(OutputStream)}.</li>
+ *   <li>{@code POST /.s3mock/snapshot} restores such an archive sent as request body and
+ *   responds with the number of restored objects, see
+ *   {@link FileStore#importSnapshot(InputStream)}.</li>
+ * </ul>
+ *
+ * <p>Responses are plain text, errors carry a message.</p>
+ */
+class AdminFilter extends OncePerRequestFilter {
+
+  static final String ADMIN_PATH = "/.s3mock";
+
+  private static final String NAMESPACES = "/namespaces";
+
+  private static final String CHECKPOINTS = "/checkpoints";
+
+  private static final String ROLLBACK = "/rollback";
+
+  private static final String RESET = "/reset";
+
+  private static final String SNAPSHOT = "/snapshot";
+
+  private static final String TAR_CONTENT_TYPE = "application/x-tar";
+
+  private final FileStore fileStore;
+
+  private final String contextPath;
+
+  /**
+   * Constructs a new {@link AdminFilter}.
+   *
+   * @param fileStore the store to administer.
+   * @param contextPath the path the S3 API is mapped to, see
+   *     {@link S3MockProperties#getContextPath()}.
+   */
+  AdminFilter(final FileStore fileStore, final String contextPath) {
+    this.fileStore = fileStore;
+    this.contextPath = contextPath;
+  }
+
+  @Override
+  protected void doFilterInternal(final HttpServletRequest request,
+      final HttpServletResponse response,
+      final FilterChain filterChain) throws ServletException, IOException {
+    final String path = request.getRequestURI().substring(request.getContextPath().length());
+    final String prefix = contextPath + ADMIN_PATH;
+    if (!path.startsWith(prefix + "/")) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+    try {
+      handle(request, response, path.substring(prefix.length()));
+    } catch (final IllegalArgumentException e) {
+      respond(response, HttpStatus.BAD_REQUEST, e.getMessage());
+    } catch (final IllegalStateException e) {
+      respond(response, HttpStatus.CONFLICT, e.getMessage());
+    }
+  }
+
+  private void handle(final HttpServletRequest request, final HttpServletResponse response,
+      final String resource) throws IOException {
+    final String method = request.getMethod();
+    if (NAMESPACES.equals(resource)) {
+      if (!"GET".equals(method)) {
+        respond(response, HttpStatus.METHOD_NOT_ALLOWED, method + " " + resource);
+        return;
+      }
+      respond(response, HttpStatus.OK, String.join("\n", fileStore.listNamespaces()));
+    } else if (resource.startsWith(NAMESPACES + "/")) {
+      final String namespace = resource.substring(NAMESPACES.length() + 1);
+      switch (method) {
+        case "PUT":
+          respond(response,
+              fileStore.createNamespace(namespace) ? HttpStatus.CREATED : HttpStatus.OK, null);
+          break;
+        case "HEAD":
+        case "GET":
+          respond(response,
+              fileStore.hasNamespace(namespace) ? HttpStatus.OK : HttpStatus.NOT_FOUND, null);
+          break;
+        case "DELETE":
+          respond(response, fileStore.dropNamespace(namespace)
+              ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND, null);
+          break;
+        default:
+          respond(response, HttpStatus.METHOD_NOT_ALLOWED, method + " " + resource);
+      }
+    } else if (CHECKPOINTS.equals(resource)) {
+      if (!"GET".equals(method)) {
+        respond(response, HttpStatus.METHOD_NOT_ALLOWED, method + " " + resource);
+        return;
+      }
+      respond(response, HttpStatus.OK, String.join("\n", fileStore.listCheckpoints()));
+    } else if (resource.startsWith(CHECKPOINTS + "/") && resource.endsWith(ROLLBACK)) {
+      final String checkpoint = resource.substring(CHECKPOINTS.length() + 1,
+          resource.length() - ROLLBACK.length());
+      if (!"POST".equals(method)) {
+        respond(response, HttpStatus.METHOD_NOT_ALLOWED, method + " " + resource);
+        return;
+      }
+      respond(response, fileStore.rollback(checkpoint)
+          ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND, null);
+    } else if (resource.startsWith(CHECKPOINTS + "/")) {
+      final String checkpoint = resource.substring(CHECKPOINTS.length() + 1);
+      switch (method) {
+        case "PUT":
+          respond(response,
+              fileStore.checkpoint(checkpoint) ? HttpStatus.CREATED : HttpStatus.OK, null);
+          break;
+        case "HEAD":
+        case "GET":
+          respond(response,
+              fileStore.hasCheckpoint(checkpoint) ? HttpStatus.OK : HttpStatus.NOT_FOUND, null);
+          break;
+        case "DELETE":
+          respond(response, fileStore.dropCheckpoint(checkpoint)
+              ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND, null);
+          break;
+        default:
+          respond(response, HttpStatus.METHOD_NOT_ALLOWED, method + " " + resource);
+      }
+    } else if (RESET.equals(resource)) {
+      if (!"POST".equals(method)) {
+        respond(response, HttpStatus.METHOD_NOT_ALLOWED, method + " " + resource);
+        return;
+      }
+      fileStore.reset();
+      respond(response, HttpStatus.NO_CONTENT, null);
+    } else if (SNAPSHOT.equals(resource)) {
+      switch (method) {
+        case "GET":
+          response.setStatus(HttpStatus.OK.value());
+          response.setHeader(CONTENT_TYPE, TAR_CONTENT_TYPE);
+          fileStore.exportSnapshot(response.getOutputStream());
+          response.flushBuffer();
+          break;
+        case "PUT":
+        case "POST":
+          respond(response, HttpStatus.OK,
+              Integer.toString(fileStore.importSnapshot(request.getInputStream())));
+          break;
+        default:
+          respond(response, HttpStatus.METHOD_NOT_ALLOWED, method + " " + resource);
+      }
+    } else {
+      respond(response, HttpStatus.NOT_FOUND, "No such resource: " + resource);
+    }
+  }
+
+  private static void respond(final HttpServletResponse response, final HttpStatus status,
+      final String body) throws IOException {
+    response.setStatus(status.value());
+    if (body != null && !body.isEmpty()) {
+      final byte[] bytes = (body + "\n").getBytes(UTF_8);
+      response.setHeader(CONTENT_TYPE, TEXT_PLAIN_VALUE + ";charset=UTF-8");
+      response.setContentLength(bytes.length);
+      response.getOutputStream().write(bytes);
+    } else {
+      response.setContentLength(0);
+    }
+    response.flushBuffer();
+  }
+}
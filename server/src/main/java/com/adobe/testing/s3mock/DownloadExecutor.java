@@ -0,0 +1,142 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+/**
+ * Streams object downloads, returned as
+ * {@link org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody}, on a
+ * dedicated, bounded thread pool instead of Spring Boot's shared task executor.
+ *
+ * <p>If {@link S3MockProperties#isSynchronousDownloads()} is set, downloads are streamed on the
+ * request thread instead, without any hand-off.</p>
+ */
+class DownloadExecutor implements AsyncTaskExecutor, MeterBinder, DisposableBean {
+
+  /**
+   * Null if downloads are streamed on the request thread.
+   */
+  private final ThreadPoolExecutor executor;
+
+  private volatile Timer waitTimer;
+
+  DownloadExecutor(final S3MockProperties properties) {
+    if (properties.isSynchronousDownloads()) {
+      executor = null;
+      return;
+    }
+    final AtomicInteger threadNumber = new AtomicInteger();
+    executor = new ThreadPoolExecutor(properties.getDownloadThreads(),
+        properties.getDownloadThreads(), 60, TimeUnit.SECONDS,
+        queue(properties.getDownloadQueueSize()), runnable -> {
+          final Thread thread =
+              new Thread(runnable, "s3mock-download-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }, rejectionHandler(properties.getDownloadRejectionPolicy()));
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  private static BlockingQueue<Runnable> queue(final int size) {
+    if (size < 0) {
+      return new LinkedBlockingQueue<>();
+    }
+    return size == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(size);
+  }
+
+  private static RejectedExecutionHandler rejectionHandler(
+      final S3MockProperties.RejectionPolicy policy) {
+    return policy == S3MockProperties.RejectionPolicy.CALLER_RUNS
+        ? new ThreadPoolExecutor.CallerRunsPolicy()
+        : new ThreadPoolExecutor.AbortPolicy();
+  }
+
+  @Override
+  public void execute(final Runnable task) {
+    if (executor == null) {
+      task.run();
+      return;
+    }
+    final long queued = System.nanoTime();
+    executor.execute(() -> {
+      final Timer timer = waitTimer;
+      if (timer != null) {
+        timer.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+      }
+      task.run();
+    });
+  }
+
+  @Override
+  public void execute(final Runnable task, final long startTimeout) {
+    execute(task);
+  }
+
+  @Override
+  public Future<?> submit(final Runnable task) {
+    final FutureTask<Object> future = new FutureTask<>(task, null);
+    execute(future);
+    return future;
+  }
+
+  @Override
+  public <T> Future<T> submit(final Callable<T> task) {
+    final FutureTask<T> future = new FutureTask<>(task);
+    execute(future);
+    return future;
+  }
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+    if (executor == null) {
+      return;
+    }
+    Gauge.builder("s3mock.downloads.queued", executor, e -> e.getQueue().size())
+        .description("Downloads waiting for a download thread")
+        .register(registry);
+    Gauge.builder("s3mock.downloads.active", executor, ThreadPoolExecutor::getActiveCount)
+        .description("Downloads being streamed")
+        .register(registry);
+    waitTimer = Timer.builder("s3mock.downloads.wait")
+        .description("Time downloads waited for a download thread")
+        .register(registry);
+  }
+
+  @Override
+  public void destroy() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,325 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static com.adobe.testing.s3mock.S3MockApplication.DEFAULT_HTTPS_PORT;
+import static com.adobe.testing.s3mock.S3MockApplication.DEFAULT_HTTP_PORT;
+import static com.adobe.testing.s3mock.S3MockApplication.DEFAULT_SERVER_SSL_KEY_ALIAS;
+import static com.adobe.testing.s3mock.S3MockApplication.DEFAULT_SERVER_SSL_KEY_PASSWORD;
+import static com.adobe.testing.s3mock.S3MockApplication.DEFAULT_SERVER_SSL_KEY_STORE;
+import static com.adobe.testing.s3mock.S3MockApplication.DEFAULT_SERVER_SSL_KEY_STORE_PASSWORD;
+import static com.adobe.testing.s3mock.S3MockApplication.PROP_HTTPS_PORT;
+import static com.adobe.testing.s3mock.S3MockApplication.PROP_HTTP_PORT;
+import static com.adobe.testing.s3mock.S3MockApplication.SERVER_SSL_KEY_ALIAS;
+import static com.adobe.testing.s3mock.S3MockApplication.SERVER_SSL_KEY_PASSWORD;
+import static com.adobe.testing.s3mock.S3MockApplication.SERVER_SSL_KEY_STORE;
+import static com.adobe.testing.s3mock.S3MockApplication.SERVER_SSL_KEY_STORE_PASSWORD;
+
+import com.adobe.testing.s3mock.S3MockConfiguration.S3MockExceptionHandler;
+import com.adobe.testing.s3mock.store.DomainProperties;
+import com.adobe.testing.s3mock.store.FileStore;
+import com.adobe.testing.s3mock.store.KmsKeyStore;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.http.converter.xml.MappingJackson2XmlHttpMessageConverter;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * S3Mock embedded without Spring Boot: a bare Jetty server with the {@link S3RequestRouter}
+ * dispatching all operations to the {@link FileStoreController}, wired by hand instead of by an
+ * application context. Starts in tens of milliseconds, for unit tests that start a fresh server
+ * per test.
+ *
+ * <p>Takes the same properties as {@link S3MockApplication#start(Map, String...)}, bound to the
+ * same property classes. Like the {@value S3MockApplication#STARTUP_PROFILE} profile it only
+ * serves HTTP if {@value S3MockApplication#PROP_SECURE_CONNECTION} is false. There is no Actuator,
+ * no HTTP/2, no banner and no content negotiation.</p>
+ */
+public final class EmbeddedS3Mock {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EmbeddedS3Mock.class);
+
+  /**
+   * The files mapping the legacy properties, e.g. {@code initialBuckets}, to the property classes.
+   */
+  private static final String[] PROPERTY_FILES = {
+      "application.properties", "application-" + S3MockApplication.STARTUP_PROFILE + ".properties"
+  };
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^:}]+)(:[^}]*)?}");
+
+  private static final String CLASSPATH = ResourceUtils.CLASSPATH_URL_PREFIX;
+
+  private final Server server;
+  private final ServerConnector httpConnector;
+  private final ServerConnector httpsConnector;
+  private final LocalConnector localConnector;
+  private final FileStore fileStore;
+  private final KmsKeyStore kmsKeyStore;
+  private final DownloadExecutor downloadExecutor;
+
+  private EmbeddedS3Mock(final Binder binder) {
+    final S3MockProperties properties =
+        binder.bindOrCreate("com.adobe.testing.s3mock", S3MockProperties.class);
+    final DomainProperties domainProperties =
+        binder.bindOrCreate("com.adobe.testing.s3mock.domain", DomainProperties.class);
+    if (domainProperties.getInitialBuckets() == null) {
+      domainProperties.setInitialBuckets(Collections.emptyList());
+    }
+    if (properties.getHttp2().isEnabled()) {
+      throw new IllegalStateException("HTTP/2 requires the Spring Boot application");
+    }
+
+    fileStore = new FileStore(domainProperties);
+    kmsKeyStore = new KmsKeyStore(domainProperties.getValidKmsKeys());
+    downloadExecutor = new DownloadExecutor(properties);
+    final MappingJackson2XmlHttpMessageConverter messageConverter =
+        new S3MockConfiguration().messageConverter();
+    final S3MockExceptionHandler exceptionHandler = new S3MockExceptionHandler(messageConverter);
+    final FileStoreController controller = new FileStoreController(fileStore,
+        new NonBlockingTransfers(properties, fileStore, exceptionHandler));
+    final S3RequestRouter router = new S3RequestRouter(controller, downloadExecutor,
+        exceptionHandler, messageConverter.getObjectMapper(),
+        properties.getContextPath(), "/favicon.ico", true);
+
+    final S3MockProperties.Jetty jetty = properties.getJetty();
+    server = new Server(new QueuedThreadPool(jetty.getMaxThreads(), jetty.getMinThreads()));
+    final String host = binder.bind("server.address", String.class).orElse(null);
+    httpConnector = new ServerConnector(server, jetty.getAcceptors(), jetty.getSelectors());
+    httpConnector.setHost(host);
+    httpConnector.setPort(properties.getHttpPort());
+    server.addConnector(httpConnector);
+    if (properties.isHttpsConnector()) {
+      httpsConnector = createHttpsConnector(binder, jetty);
+      httpsConnector.setHost(host);
+      httpsConnector.setPort(binder.bind(PROP_HTTPS_PORT, Integer.class).get());
+      server.addConnector(httpsConnector);
+    } else {
+      httpsConnector = null;
+    }
+    if (properties.isLocalConnector()) {
+      localConnector = new LocalConnector(server);
+      server.addConnector(localConnector);
+    } else {
+      localConnector = null;
+    }
+    S3MockConfiguration.tuneConnectors(server, jetty, properties.getHttp2());
+
+    final ServletContextHandler context = new ServletContextHandler();
+    addFilter(context, new AdminFilter(fileStore, properties.getContextPath()));
+    addFilter(context, new NamespaceFilter(fileStore, messageConverter));
+    addFilter(context, new KmsValidationFilter(kmsKeyStore, messageConverter));
+    addFilter(context, router);
+    context.addServlet(new ServletHolder(new FaviconServlet()), "/favicon.ico");
+    server.setHandler(context);
+  }
+
+  /**
+   * Starts the server.
+   *
+   * @param properties properties in key-value format, like for
+   *     {@link S3MockApplication#start(Map, String...)}.
+   *
+   * @return the started {@link EmbeddedS3Mock}.
+   */
+  public static EmbeddedS3Mock start(final Map<String, Object> properties) {
+    final EmbeddedS3Mock s3Mock = new EmbeddedS3Mock(binder(properties));
+    try {
+      s3Mock.server.start();
+    } catch (final Exception e) {
+      s3Mock.stop();
+      throw new IllegalStateException("S3Mock can't be started", e);
+    }
+    LOG.info("Started S3Mock on HTTP port {} and HTTPS port {}", s3Mock.getHttpPort(),
+        s3Mock.httpsConnector != null ? s3Mock.getPort() : "-");
+    return s3Mock;
+  }
+
+  /**
+   * Starts the server from the command line. Environment variables named like a property set it
+   * too, e.g. {@code initialBuckets} in the Docker image, program args take precedence.
+   *
+   * @param args properties in program args format, e.g. {@code "--server.port=0"}.
+   */
+  public static void main(final String[] args) {
+    final Map<String, Object> properties = new HashMap<>(System.getenv());
+    for (final String arg : args) {
+      final int equals = arg.indexOf('=');
+      if (arg.startsWith("--") && equals > 2) {
+        properties.put(arg.substring(2, equals), arg.substring(equals + 1));
+      }
+    }
+    start(properties);
+  }
+
+  /**
+   * Stops the server.
+   */
+  public void stop() {
+    try {
+      server.stop();
+    } catch (final Exception e) {
+      LOG.warn("S3Mock can't be stopped", e);
+    } finally {
+      downloadExecutor.destroy();
+      fileStore.close();
+    }
+  }
+
+  /**
+   * Gets the Https server port, the Http server port if there is no HTTPS connector.
+   *
+   * @return Https server port.
+   */
+  public int getPort() {
+    return httpsConnector != null ? httpsConnector.getLocalPort() : getHttpPort();
+  }
+
+  /**
+   * Gets the Http server port.
+   *
+   * @return Http server port.
+   */
+  public int getHttpPort() {
+    return httpConnector.getLocalPort();
+  }
+
+  /**
+   * Gets the connector serving in-memory connections.
+   *
+   * @return the local connector, null unless {@value S3MockApplication#PROP_LOCAL_CONNECTOR} is
+   *     true.
+   *
+   * @see S3MockApplication#getLocalConnector()
+   */
+  public LocalConnector getLocalConnector() {
+    return localConnector;
+  }
+
+  /**
+   * Registers a valid KMS key reference on the mock server.
+   *
+   * @param keyRef A KMS Key Reference
+   */
+  public void registerKMSKeyRef(final String keyRef) {
+    kmsKeyStore.registerKMSKeyRef(keyRef);
+  }
+
+  /**
+   * Applies the defaults of {@link S3MockApplication#builder(Map)} and the legacy property
+   * mappings of the property files.
+   */
+  private static Binder binder(final Map<String, Object> properties) {
+    final Map<String, Object> resolved = new HashMap<>();
+    resolved.put(PROP_HTTPS_PORT, DEFAULT_HTTPS_PORT);
+    resolved.put(PROP_HTTP_PORT, DEFAULT_HTTP_PORT);
+    resolved.put(SERVER_SSL_KEY_STORE, DEFAULT_SERVER_SSL_KEY_STORE);
+    resolved.put(SERVER_SSL_KEY_STORE_PASSWORD, DEFAULT_SERVER_SSL_KEY_STORE_PASSWORD);
+    resolved.put(SERVER_SSL_KEY_ALIAS, DEFAULT_SERVER_SSL_KEY_ALIAS);
+    resolved.put(SERVER_SSL_KEY_PASSWORD, DEFAULT_SERVER_SSL_KEY_PASSWORD);
+    resolved.putAll(properties);
+    for (final String file : PROPERTY_FILES) {
+      final Properties mappings;
+      try {
+        mappings = PropertiesLoaderUtils.loadProperties(new ClassPathResource(file));
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      for (final String name : mappings.stringPropertyNames()) {
+        final Matcher placeholder = PLACEHOLDER.matcher(mappings.getProperty(name));
+        if (placeholder.matches() && !properties.containsKey(name)
+            && resolved.containsKey(placeholder.group(1))) {
+          resolved.put(name, resolved.get(placeholder.group(1)));
+        }
+      }
+    }
+    return new Binder(new MapConfigurationPropertySource(resolved));
+  }
+
+  private ServerConnector createHttpsConnector(final Binder binder,
+      final S3MockProperties.Jetty jetty) {
+    final SslContextFactory.Server sslContextFactory = new SslContextFactory.Server();
+    final String keyStore = binder.bind(SERVER_SSL_KEY_STORE, String.class).get();
+    try {
+      sslContextFactory.setKeyStoreResource(keyStore.startsWith(CLASSPATH)
+          ? Resource.newClassPathResource(keyStore.substring(CLASSPATH.length()))
+          : Resource.newResource(keyStore));
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    sslContextFactory.setKeyStorePassword(
+        binder.bind(SERVER_SSL_KEY_STORE_PASSWORD, String.class).get());
+    sslContextFactory.setCertAlias(binder.bind(SERVER_SSL_KEY_ALIAS, String.class).get());
+    sslContextFactory.setKeyManagerPassword(
+        binder.bind(SERVER_SSL_KEY_PASSWORD, String.class).get());
+    final HttpConfiguration httpsConfiguration = new HttpConfiguration();
+    httpsConfiguration.addCustomizer(new SecureRequestCustomizer());
+    return new ServerConnector(server, jetty.getAcceptors(), jetty.getSelectors(),
+        new SslConnectionFactory(sslContextFactory, "http/1.1"),
+        new HttpConnectionFactory(httpsConfiguration));
+  }
+
+  private static void addFilter(final ServletContextHandler context, final Filter filter) {
+    final FilterHolder holder = new FilterHolder(filter);
+    holder.setAsyncSupported(true);
+    context.addFilter(holder, "/*", EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC));
+  }
+
+  /**
+   * Answers like the {@link FaviconController}.
+   */
+  private static final class FaviconServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) {
+      // Method is intentionally empty.
+    }
+  }
+}
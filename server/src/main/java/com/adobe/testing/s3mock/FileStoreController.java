@@ -93,11 +93,11 @@ import com.adobe.testing.s3mock.util.DigestUtil;
 import com.adobe.testing.s3mock.util.StringEncoding;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -112,10 +112,8 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.BoundedInputStream;
+import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
@@ -164,9 +162,11 @@ public class FileStoreController {
 
   private final Map<String, String> fileStorePagingStateCache = new ConcurrentHashMap<>();
   private final FileStore fileStore;
+  private final NonBlockingTransfers nonBlockingTransfers;
 
-  public FileStoreController(FileStore fileStore) {
+  public FileStoreController(FileStore fileStore, NonBlockingTransfers nonBlockingTransfers) {
     this.fileStore = fileStore;
+    this.nonBlockingTransfers = nonBlockingTransfers;
   }
 
   //================================================================================================
@@ -644,7 +644,7 @@ public class FileStoreController {
       @RequestHeader(value = RANGE, required = false) final Range range,
       @RequestHeader(value = IF_MATCH, required = false) final List<String> match,
       @RequestHeader(value = IF_NONE_MATCH, required = false) final List<String> noMatch,
-      final HttpServletRequest request) throws IOException {
+      final HttpServletRequest request, final HttpServletResponse response) throws IOException {
     final String filename = filenameFrom(bucketName, request);
 
     verifyBucketExistence(bucketName);
@@ -654,20 +654,26 @@ public class FileStoreController {
     verifyObjectMatching(match, noMatch, s3Object.getEtag());
 
     if (range != null) {
-      return getObjectWithRange(range, s3Object);
+      return getObjectWithRange(range, s3Object, request, response);
     }
 
-    return ResponseEntity
+    final ResponseEntity<StreamingResponseBody> responseEntity = ResponseEntity
         .ok()
         .eTag("\"" + s3Object.getEtag() + "\"")
         .header(HttpHeaders.CONTENT_ENCODING, s3Object.getContentEncoding())
         .header(HttpHeaders.ACCEPT_RANGES, RANGES_BYTES)
         .headers(headers -> headers.setAll(createUserMetadataHeaders(s3Object)))
         .lastModified(s3Object.getLastModified())
-        .contentLength(s3Object.getDataFile().length())
+        .contentLength(Long.parseLong(s3Object.getSize()))
         .contentType(parseMediaType(s3Object.getContentType()))
         .headers(headers -> headers.setAll(addOverrideHeaders(request.getQueryString())))
-        .body(outputStream -> Files.copy(s3Object.getDataFile().toPath(), outputStream));
+        .body(outputStream -> fileStore.readS3ObjectData(s3Object, outputStream));
+    final long size = Long.parseLong(s3Object.getSize());
+    if (nonBlockingTransfers.sendFile(responseEntity,
+        fileStore.plainDataFile(s3Object, 0, size), 0, size, request, response)) {
+      return null;
+    }
+    return responseEntity;
   }
 
   /**
@@ -808,15 +814,21 @@ public class FileStoreController {
       final HttpServletRequest request) throws IOException {
     verifyBucketExistence(bucketName);
     verifyPartNumberLimits(partNumber);
+    if (nonBlockingTransfers.receiveBody(request)) {
+      return null;
+    }
 
     final String filename = filenameFrom(bucketName, request);
 
-    final String etag = fileStore.putPart(bucketName,
-        filename,
-        uploadId,
-        partNumber,
-        request.getInputStream(),
-        isV4ChunkedWithSigningEnabled(sha256Header));
+    final String etag;
+    try (final InputStream inputStream = nonBlockingTransfers.body(request)) {
+      etag = fileStore.putPart(bucketName,
+          filename,
+          uploadId,
+          partNumber,
+          inputStream,
+          isV4ChunkedWithSigningEnabled(sha256Header));
+    }
 
     return ResponseEntity.ok().eTag("\"" + etag + "\"").build();
   }
@@ -908,22 +920,44 @@ public class FileStoreController {
       @RequestHeader(value = X_AMZ_CONTENT_SHA256, required = false) String sha256Header,
       final HttpServletRequest request) throws IOException {
     verifyBucketExistence(bucketName);
+    if (nonBlockingTransfers.receiveBody(request)) {
+      return null;
+    }
 
     final String filename = filenameFrom(bucketName, request);
+    final Path bodyFile = nonBlockingTransfers.bodyFile(request);
     final S3Object s3Object;
-    try (final ServletInputStream inputStream = request.getInputStream()) {
-      InputStream stream = verifyMd5(inputStream, contentMd5, sha256Header);
+    try {
       final Map<String, String> userMetadata = getUserMetadata(request);
-      s3Object =
-          fileStore.putS3Object(bucketName,
-              filename,
-              parseMediaType(contentType).toString(),
-              contentEncoding,
-              stream,
-              isV4ChunkedWithSigningEnabled(sha256Header),
-              userMetadata,
-              encryption,
-              kmsKeyId);
+      if (bodyFile != null && !isV4ChunkedWithSigningEnabled(sha256Header)) {
+        // the received body is moved into the store as it is
+        try (final InputStream inputStream = Files.newInputStream(bodyFile)) {
+          verifyMd5(inputStream, contentMd5);
+        }
+        s3Object =
+            fileStore.putS3Object(bucketName,
+                filename,
+                parseMediaType(contentType).toString(),
+                contentEncoding,
+                bodyFile,
+                userMetadata,
+                encryption,
+                kmsKeyId);
+      } else {
+        try (final InputStream inputStream = nonBlockingTransfers.body(request)) {
+          InputStream stream = verifyMd5(inputStream, contentMd5, sha256Header);
+          s3Object =
+              fileStore.putS3Object(bucketName,
+                  filename,
+                  parseMediaType(contentType).toString(),
+                  contentEncoding,
+                  stream,
+                  isV4ChunkedWithSigningEnabled(sha256Header),
+                  userMetadata,
+                  encryption,
+                  kmsKeyId);
+        }
+      }
 
       fileStore.setObjectTags(bucketName, filename, tags);
 
@@ -943,6 +977,9 @@ public class FileStoreController {
   private static InputStream verifyMd5(InputStream inputStream, String contentMd5,
       String sha256Header)
       throws IOException, NoSuchAlgorithmException {
+    if (contentMd5 == null) {
+      return inputStream;
+    }
     ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
     copyTo(inputStream, byteArrayOutputStream);
 
@@ -1134,17 +1171,20 @@ public class FileStoreController {
    *
    * @param range {@link String}
    * @param s3Object {@link S3Object}
+   * @param request {@link HttpServletRequest}
+   * @param response {@link HttpServletResponse}
    */
   private ResponseEntity<StreamingResponseBody> getObjectWithRange(final Range range,
-      final S3Object s3Object) {
-    final long fileSize = s3Object.getDataFile().length();
+      final S3Object s3Object, final HttpServletRequest request,
+      final HttpServletResponse response) throws IOException {
+    final long fileSize = Long.parseLong(s3Object.getSize());
     final long bytesToRead = Math.min(fileSize - 1, range.getEnd()) - range.getStart() + 1;
 
     if (bytesToRead < 0 || fileSize < range.getStart()) {
       return ResponseEntity.status(REQUESTED_RANGE_NOT_SATISFIABLE.value()).build();
     }
 
-    return ResponseEntity
+    final ResponseEntity<StreamingResponseBody> responseEntity = ResponseEntity
         .status(PARTIAL_CONTENT.value())
         .headers(headers -> headers.setAll(createUserMetadataHeaders(s3Object)))
         .header(HttpHeaders.ACCEPT_RANGES, RANGES_BYTES)
@@ -1155,15 +1195,22 @@ public class FileStoreController {
         .contentType(parseMediaType(s3Object.getContentType()))
         .lastModified(s3Object.getLastModified())
         .contentLength(bytesToRead)
-        .body(outputStream -> {
-          try (final FileInputStream fis = new FileInputStream(s3Object.getDataFile())) {
-            fis.skip(range.getStart());
-            IOUtils.copy(new BoundedInputStream(fis, bytesToRead), outputStream);
-          }
-        });
+        .body(outputStream ->
+            fileStore.readS3ObjectData(s3Object, range.getStart(), bytesToRead, outputStream));
+    if (nonBlockingTransfers.sendFile(responseEntity,
+        fileStore.plainDataFile(s3Object, range.getStart(), bytesToRead), range.getStart(),
+        bytesToRead, request, response)) {
+      return null;
+    }
+    return responseEntity;
   }
 
   private static String filenameFrom(final String bucketName, final HttpServletRequest request) {
+    final S3Request s3Request = S3Request.from(request);
+    if (s3Request != null && bucketName.equals(s3Request.getBucketName())
+        && s3Request.getKey() != null) {
+      return s3Request.getKey();
+    }
     final String requestUri = request.getRequestURI();
     return encode(
         decode(requestUri.substring(requestUri.indexOf(bucketName) + bucketName.length() + 1))
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_S3MOCK_NAMESPACE;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.MediaType.APPLICATION_XML_VALUE;
+
+import com.adobe.testing.s3mock.dto.ErrorResponse;
+import com.adobe.testing.s3mock.store.FileStore;
+import com.adobe.testing.s3mock.store.NamespaceContext;
+import com.adobe.testing.s3mock.util.AccessKeyId;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.converter.xml.MappingJackson2XmlHttpMessageConverter;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * A Filter that selects the namespace of incoming Requests, see {@link NamespaceContext}.
+ *
+ * <p>The namespace is named by the {@value X_S3MOCK_NAMESPACE} header, or else by the access key
+ * id the request was signed with, if a namespace of that name exists. Requests naming a namespace
+ * in the header that doesn't exist are denied immediately, all other requests work in the default
+ * namespace.</p>
+ */
+class NamespaceFilter extends OncePerRequestFilter {
+
+  private final FileStore fileStore;
+
+  private final MappingJackson2XmlHttpMessageConverter messageConverter;
+
+  /**
+   * Constructs a new {@link NamespaceFilter}.
+   *
+   * @param fileStore the store holding the namespaces.
+   * @param messageConverter converter serializing error responses.
+   */
+  NamespaceFilter(final FileStore fileStore,
+      final MappingJackson2XmlHttpMessageConverter messageConverter) {
+    this.fileStore = fileStore;
+    this.messageConverter = messageConverter;
+  }
+
+  /**
+   * Uploads received by {@link NonBlockingTransfers} are dispatched again and stored in the same
+   * namespace.
+   */
+  @Override
+  protected boolean shouldNotFilterAsyncDispatch() {
+    return false;
+  }
+
+  @Override
+  protected void doFilterInternal(final HttpServletRequest request,
+      final HttpServletResponse response,
+      final FilterChain filterChain) throws ServletException, IOException {
+    String namespace = request.getHeader(X_S3MOCK_NAMESPACE);
+    if (namespace != null) {
+      if (!fileStore.hasNamespace(namespace)) {
+        request.getInputStream().close();
+
+        response.setStatus(NOT_FOUND.value());
+        response.setHeader(CONTENT_TYPE, APPLICATION_XML_VALUE);
+
+        final ErrorResponse errorResponse = new ErrorResponse();
+        errorResponse.setCode("NoSuchNamespace");
+        errorResponse.setMessage("The specified namespace does not exist: " + namespace);
+
+        messageConverter.getObjectMapper().writeValue(response.getOutputStream(), errorResponse);
+
+        response.flushBuffer();
+        return;
+      }
+    } else {
+      final String accessKeyId =
+          AccessKeyId.of(request.getHeader(AUTHORIZATION), request.getQueryString());
+      namespace = fileStore.hasNamespace(accessKeyId) ? accessKeyId : null;
+    }
+
+    final String previous = NamespaceContext.set(namespace);
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      NamespaceContext.set(previous);
+    }
+  }
+}
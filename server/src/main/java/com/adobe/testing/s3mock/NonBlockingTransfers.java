@@ -0,0 +1,401 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+
+import com.adobe.testing.s3mock.S3MockConfiguration.S3MockExceptionHandler;
+import com.adobe.testing.s3mock.store.FileStore;
+import com.adobe.testing.s3mock.store.S3Exception;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Transfers object data with Servlet 3.1 non-blocking I/O, so slow clients don't hold a thread
+ * while the socket isn't ready.
+ *
+ * <p>Uploads are received into a staging file of the {@link FileStore} with a
+ * {@link ReadListener}, then the request is dispatched again to the same handler. It moves the
+ * received data into the store, or stores it like a blocking upload if it has to be decoded.
+ * Downloads of objects stored in a single file are written with a {@link WriteListener}, reading
+ * the file with an {@link AsynchronousFileChannel}. Threads are only used while data can be
+ * moved.</p>
+ *
+ * <p>If the staging file can't be written, for example because the disk is full, the upload is
+ * answered with a 500 {@code InternalError}, or the connection is closed if the response was
+ * already committed.</p>
+ *
+ * <p>Disabled unless {@link S3MockProperties#isNonBlockingTransfers()} is set, the handlers then
+ * read and write the data on the request thread as before.</p>
+ */
+class NonBlockingTransfers {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NonBlockingTransfers.class);
+
+  private static final String BODY_FILE = NonBlockingTransfers.class.getName() + ".bodyFile";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final boolean enabled;
+  private final FileStore fileStore;
+  private final S3MockExceptionHandler exceptionHandler;
+
+  NonBlockingTransfers(final S3MockProperties properties, final FileStore fileStore,
+      final S3MockExceptionHandler exceptionHandler) {
+    enabled = properties.isNonBlockingTransfers();
+    this.fileStore = fileStore;
+    this.exceptionHandler = exceptionHandler;
+  }
+
+  /**
+   * Starts receiving the request body asynchronously, unless it was already received or
+   * non-blocking transfers are disabled. If this returns true, the handler has to return without
+   * writing a response, it is called again once the body is received.
+   *
+   * @param request the upload request.
+   *
+   * @return true if the body is being received.
+   *
+   * @throws IOException if the staging file can't be created.
+   */
+  boolean receiveBody(final HttpServletRequest request) throws IOException {
+    if (!enabled || request.getAttribute(BODY_FILE) != null) {
+      return false;
+    }
+    final Path bodyFile = fileStore.createStagingFile();
+    request.setAttribute(BODY_FILE, bodyFile);
+    final AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(0);
+    asyncContext.addListener(new DeleteOnComplete(bodyFile));
+    final ServletInputStream inputStream = request.getInputStream();
+    inputStream.setReadListener(new Upload(asyncContext, inputStream,
+        AsynchronousFileChannel.open(bodyFile, StandardOpenOption.WRITE)));
+    return true;
+  }
+
+  /**
+   * Returns the request body, either as received by {@link #receiveBody(HttpServletRequest)} or
+   * straight from the request.
+   *
+   * @param request the upload request.
+   *
+   * @return the request body, to be closed by the caller.
+   *
+   * @throws IOException if the body can't be read.
+   */
+  InputStream body(final HttpServletRequest request) throws IOException {
+    final Path bodyFile = bodyFile(request);
+    return bodyFile != null ? Files.newInputStream(bodyFile) : request.getInputStream();
+  }
+
+  /**
+   * Returns the staging file holding the request body received by
+   * {@link #receiveBody(HttpServletRequest)}. It can be moved into the store, it is deleted once
+   * the request completed otherwise.
+   *
+   * @param request the upload request.
+   *
+   * @return the staging file, null if the body wasn't received asynchronously.
+   */
+  Path bodyFile(final HttpServletRequest request) {
+    return (Path) request.getAttribute(BODY_FILE);
+  }
+
+  /**
+   * Starts writing a range of a file as the response asynchronously, unless non-blocking transfers
+   * are disabled or there is no file. If this returns true, the status and headers of the given
+   * response entity are applied and the handler has to return null.
+   *
+   * @param responseEntity the status and headers of the response.
+   * @param dataFile the file to send, null if the data isn't stored in a single file.
+   * @param offset the offset of the first byte to send.
+   * @param length the number of bytes to send.
+   * @param request the download request.
+   * @param response the download response.
+   *
+   * @return true if the response is being written.
+   *
+   * @throws IOException if the file can't be opened.
+   */
+  boolean sendFile(final ResponseEntity<?> responseEntity, final Path dataFile,
+      final long offset, final long length, final HttpServletRequest request,
+      final HttpServletResponse response) throws IOException {
+    if (!enabled || dataFile == null) {
+      return false;
+    }
+    final AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(dataFile, StandardOpenOption.READ);
+    response.setStatus(responseEntity.getStatusCodeValue());
+    responseEntity.getHeaders().forEach((name, values) -> values.forEach(
+        value -> response.addHeader(name, value)));
+    final AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(0);
+    final ServletOutputStream outputStream = response.getOutputStream();
+    outputStream.setWriteListener(
+        new Download(asyncContext, outputStream, channel, offset, offset + length));
+    return true;
+  }
+
+  private static void close(final AsynchronousFileChannel channel) {
+    try {
+      channel.close();
+    } catch (final IOException e) {
+      LOG.debug("File channel can't be closed", e);
+    }
+  }
+
+  /**
+   * Answers a failed upload with a 500 {@code InternalError}, so the client doesn't take the empty
+   * response for a stored object. Aborts the connection instead if the response is committed.
+   */
+  private void fail(final AsyncContext asyncContext, final Throwable t) {
+    final HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+    if (response.isCommitted()) {
+      final Request baseRequest = Request.getBaseRequest(asyncContext.getRequest());
+      if (baseRequest != null) {
+        baseRequest.getHttpChannel().abort(t);
+      }
+      return;
+    }
+    final ResponseEntity<byte[]> error = exceptionHandler.handleS3Exception(new S3Exception(
+        INTERNAL_SERVER_ERROR.value(), "InternalError",
+        "We encountered an internal error. Please try again."));
+    try {
+      response.setStatus(error.getStatusCodeValue());
+      for (final Map.Entry<String, List<String>> header : error.getHeaders().entrySet()) {
+        for (final String value : header.getValue()) {
+          response.addHeader(header.getKey(), value);
+        }
+      }
+      final byte[] body = error.getBody();
+      if (body != null) {
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+      }
+    } catch (final IOException e) {
+      LOG.debug("Error response can't be written", e);
+    }
+  }
+
+  /**
+   * Writes the request body to a file, one read at a time: the next read only starts once the
+   * previous one is written, so the body is never held in memory.
+   */
+  private final class Upload implements ReadListener, CompletionHandler<Integer, Void> {
+
+    private final AsyncContext asyncContext;
+    private final ServletInputStream inputStream;
+    private final AsynchronousFileChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * The data being written, the listener and the completion handler never run concurrently.
+     */
+    private volatile ByteBuffer pending;
+    private volatile long position;
+
+    private Upload(final AsyncContext asyncContext, final ServletInputStream inputStream,
+        final AsynchronousFileChannel channel) {
+      this.asyncContext = asyncContext;
+      this.inputStream = inputStream;
+      this.channel = channel;
+    }
+
+    @Override
+    public void onDataAvailable() {
+      readAvailable();
+    }
+
+    @Override
+    public void onAllDataRead() {
+      close(channel);
+      asyncContext.dispatch();
+    }
+
+    @Override
+    public void onError(final Throwable t) {
+      LOG.debug("Upload failed", t);
+      close(channel);
+      try {
+        fail(asyncContext, t);
+      } finally {
+        asyncContext.complete();
+      }
+    }
+
+    @Override
+    public void completed(final Integer written, final Void attachment) {
+      position += written;
+      if (pending.hasRemaining()) {
+        channel.write(pending, position, null, this);
+      } else {
+        readAvailable();
+      }
+    }
+
+    @Override
+    public void failed(final Throwable t, final Void attachment) {
+      onError(t);
+    }
+
+    private void readAvailable() {
+      try {
+        while (inputStream.isReady()) {
+          final int read = inputStream.read(buffer);
+          if (read < 0) {
+            return;
+          }
+          if (read > 0) {
+            pending = ByteBuffer.wrap(buffer, 0, read);
+            channel.write(pending, position, null, this);
+            return;
+          }
+        }
+      } catch (final IOException e) {
+        onError(e);
+      }
+    }
+  }
+
+  /**
+   * Writes a range of a file to the response, one read at a time: the next read only starts once
+   * the response is ready for more data.
+   */
+  private static final class Download implements WriteListener, CompletionHandler<Integer, Void> {
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream outputStream;
+    private final AsynchronousFileChannel channel;
+    private final long end;
+    private final ByteBuffer buffer;
+
+    /**
+     * The listener and the completion handler never run concurrently.
+     */
+    private volatile long position;
+
+    private Download(final AsyncContext asyncContext, final ServletOutputStream outputStream,
+        final AsynchronousFileChannel channel, final long offset, final long end) {
+      this.asyncContext = asyncContext;
+      this.outputStream = outputStream;
+      this.channel = channel;
+      this.position = offset;
+      this.end = end;
+      buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(BUFFER_SIZE, end - offset)));
+      buffer.limit(0);
+    }
+
+    @Override
+    public void onWritePossible() {
+      try {
+        while (outputStream.isReady()) {
+          if (buffer.hasRemaining()) {
+            outputStream.write(buffer.array(), buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+          } else if (position >= end) {
+            close(channel);
+            asyncContext.complete();
+            return;
+          } else {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            channel.read(buffer, position, null, this);
+            return;
+          }
+        }
+      } catch (final IOException e) {
+        onError(e);
+      }
+    }
+
+    @Override
+    public void onError(final Throwable t) {
+      LOG.debug("Download failed", t);
+      close(channel);
+      asyncContext.complete();
+    }
+
+    @Override
+    public void completed(final Integer read, final Void attachment) {
+      if (read < 0) {
+        onError(new IOException("File ends before the requested range"));
+        return;
+      }
+      position += read;
+      buffer.flip();
+      onWritePossible();
+    }
+
+    @Override
+    public void failed(final Throwable t, final Void attachment) {
+      onError(t);
+    }
+  }
+
+  /**
+   * Deletes the received body once the dispatched request completed, unless it was moved into the
+   * store.
+   */
+  private static final class DeleteOnComplete implements AsyncListener {
+
+    private final Path bodyFile;
+
+    private DeleteOnComplete(final Path bodyFile) {
+      this.bodyFile = bodyFile;
+    }
+
+    @Override
+    public void onComplete(final AsyncEvent event) throws IOException {
+      Files.deleteIfExists(bodyFile);
+    }
+
+    @Override
+    public void onTimeout(final AsyncEvent event) {
+      // no timeout
+    }
+
+    @Override
+    public void onError(final AsyncEvent event) {
+      // deleted on complete
+    }
+
+    @Override
+    public void onStartAsync(final AsyncEvent event) {
+      // nothing to do
+    }
+  }
+}
@@ -18,9 +18,11 @@ package com.adobe.testing.s3mock;
 
 import static java.util.Collections.emptyMap;
 
+import com.adobe.testing.s3mock.store.DomainConfiguration;
 import com.adobe.testing.s3mock.store.KmsKeyStore;
 import java.util.HashMap;
 import java.util.Map;
+import org.eclipse.jetty.server.LocalConnector;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.Banner;
 import org.springframework.boot.SpringApplication;
@@ -28,8 +30,8 @@ import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.core.env.Environment;
 
 /**
@@ -46,7 +48,8 @@ import org.springframework.core.env.Environment;
      */
     excludeName = {"org.springframework.boot.actuate.autoconfigure.security.servlet."
         + "ManagementWebSecurityAutoConfiguration"})
-@ComponentScan
+@Import({S3MockConfiguration.class, DomainConfiguration.class,
+    StartupOptimizedConfiguration.class})
 public class S3MockApplication {
 
   public static final int DEFAULT_HTTPS_PORT = 9191;
@@ -63,6 +66,13 @@ public class S3MockApplication {
    */
   public static final String PROP_INITIAL_BUCKETS = "initialBuckets";
 
+  /**
+   * Property name for passing a comma separated list of directories, or zip or tar archives of
+   * them, to import at startup: their top-level directories become buckets, the files below them
+   * objects.
+   */
+  public static final String PROP_FIXTURES = "fixtures";
+
   /**
    * Property name for passing a root directory to use. If omitted a default temp-dir will be used.
    */
@@ -114,6 +124,30 @@ public class S3MockApplication {
    */
   public static final String PROP_SILENT = "silent";
 
+  /**
+   * Property name for starting in the {@value STARTUP_PROFILE} profile.
+   */
+  public static final String PROP_STARTUP_OPTIMIZED = "startupOptimized";
+
+  /**
+   * Property name for starting the {@link EmbeddedS3Mock} without Spring Boot instead, used by
+   * the test support modules. Ignored by {@link #start(Map, String...)}.
+   */
+  public static final String PROP_EMBEDDED = "embedded";
+
+  /**
+   * Property name for serving in-memory connections next to the HTTP(S) ports, see
+   * {@link #getLocalConnector()}.
+   */
+  public static final String PROP_LOCAL_CONNECTOR = "localConnector";
+
+  /**
+   * Profile optimized for startup time: an explicit list of auto-configurations, lazy bean
+   * initialization, no HTTPS connector if {@value PROP_SECURE_CONNECTION} is false and no Actuator
+   * unless {@code actuator} is true. See {@link StartupOptimizedConfiguration}.
+   */
+  public static final String STARTUP_PROFILE = "startup";
+
   @Autowired
   private ConfigurableApplicationContext context;
 
@@ -156,7 +190,18 @@ public class S3MockApplication {
    */
   public static S3MockApplication start(final Map<String, Object> properties,
       final String... args) {
+    return builder(properties).run(args).getBean(S3MockApplication.class);
+  }
 
+  /**
+   * Creates the builder that {@link #start(Map, String...)} runs, with the default ports, SSL
+   * parameters and silent mode applied. Allows front ends to add their own sources.
+   *
+   * @param properties properties to pass to the application in key-value format.
+   *
+   * @return the {@link SpringApplicationBuilder}
+   */
+  public static SpringApplicationBuilder builder(final Map<String, Object> properties) {
     final Map<String, Object> defaults = new HashMap<>();
     defaults.put(PROP_HTTPS_PORT, DEFAULT_HTTPS_PORT);
     defaults.put(PROP_HTTP_PORT, DEFAULT_HTTP_PORT);
@@ -174,14 +219,17 @@ public class S3MockApplication {
       bannerMode = Banner.Mode.OFF;
     }
 
-    final ConfigurableApplicationContext ctx =
-        new SpringApplicationBuilder(S3MockApplication.class)
-            .properties(defaults)
-            .properties(properties)
-            .bannerMode(bannerMode)
-            .run(args);
+    final boolean startupOptimized =
+        Boolean.parseBoolean(String.valueOf(properties.remove(PROP_STARTUP_OPTIMIZED)));
 
-    return ctx.getBean(S3MockApplication.class);
+    final SpringApplicationBuilder builder = new SpringApplicationBuilder(S3MockApplication.class)
+        .properties(defaults)
+        .properties(properties)
+        .bannerMode(bannerMode);
+    if (startupOptimized) {
+      builder.profiles(STARTUP_PROFILE);
+    }
+    return builder;
   }
 
   /**
@@ -192,7 +240,7 @@ public class S3MockApplication {
   }
 
   /**
-   * Gets the Https server port.
+   * Gets the Https server port, the Http server port if there is no HTTPS connector.
    *
    * @return Https server port.
    */
@@ -211,6 +259,16 @@ public class S3MockApplication {
     return config.getHttpServerConnector().getLocalPort();
   }
 
+  /**
+   * Gets the connector serving in-memory connections, which in-process clients use instead of a
+   * socket. Requests go through the same servlet filters and handlers as on the HTTP(S) ports.
+   *
+   * @return the local connector, null unless {@value PROP_LOCAL_CONNECTOR} is true.
+   */
+  public LocalConnector getLocalConnector() {
+    return config.getLocalConnector();
+  }
+
   /**
    * Registers a valid KMS key reference on the mock server.
    *
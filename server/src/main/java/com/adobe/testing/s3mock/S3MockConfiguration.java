@@ -16,31 +16,58 @@
 
 package com.adobe.testing.s3mock;
 
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
 import com.adobe.testing.s3mock.dto.ErrorResponse;
 import com.adobe.testing.s3mock.store.FileStore;
 import com.adobe.testing.s3mock.store.KmsKeyStore;
 import com.adobe.testing.s3mock.store.S3Exception;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.http.HttpServletRequest;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.embedded.jetty.JettyServletWebServerFactory;
+import org.springframework.boot.web.server.Http2;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.boot.web.servlet.filter.OrderedFormContentFilter;
 import org.springframework.boot.web.servlet.server.ServletWebServerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.xml.MappingJackson2XmlHttpMessageConverter;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
@@ -49,6 +76,7 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 @EnableConfigurationProperties(S3MockProperties.class)
 class S3MockConfiguration implements WebMvcConfigurer {
   private ServerConnector httpServerConnector;
+  private LocalConnector localConnector;
 
   /**
    * Create a ServletWebServerFactory bean reconfigured for an additional HTTP port.
@@ -59,21 +87,150 @@ class S3MockConfiguration implements WebMvcConfigurer {
   ServletWebServerFactory webServerFactory(S3MockProperties properties) {
     final JettyServletWebServerFactory factory =
         new JettyServletWebServerFactory();
+    final S3MockProperties.Jetty jetty = properties.getJetty();
+    factory.setThreadPool(new QueuedThreadPool(jetty.getMaxThreads(), jetty.getMinThreads()));
+    factory.setAcceptors(jetty.getAcceptors());
+    factory.setSelectors(jetty.getSelectors());
     factory.addServerCustomizers(
-        server -> server.addConnector(createHttpConnector(server, properties.getHttpPort())));
+        server -> {
+          if (properties.isHttpsConnector()) {
+            server.addConnector(createHttpConnector(server, factory, properties));
+          } else {
+            httpServerConnector = (ServerConnector) server.getConnectors()[0];
+          }
+          if (properties.isLocalConnector()) {
+            localConnector = new LocalConnector(server);
+            server.addConnector(localConnector);
+          }
+        },
+        server -> tuneConnectors(server, jetty, properties.getHttp2()));
     return factory;
   }
 
-  private Connector createHttpConnector(final Server server, int httpPort) {
-    httpServerConnector = new ServerConnector(server);
-    httpServerConnector.setPort(httpPort);
+  /**
+   * Enables HTTP/2 on the HTTPS connector if configured. Runs after Spring Boot's own customizer,
+   * which would otherwise reset it to {@code server.http2.enabled}.
+   *
+   * @return customizer enabling ALPN h2 on the HTTPS connector
+   */
+  @Bean
+  WebServerFactoryCustomizer<JettyServletWebServerFactory> http2Customizer(
+      S3MockProperties properties) {
+    return factory -> {
+      if (properties.getHttp2().isEnabled()) {
+        final Http2 http2 = new Http2();
+        http2.setEnabled(true);
+        factory.setHttp2(http2);
+      }
+    };
+  }
+
+  /**
+   * Moves the server to the HTTP port without SSL if there is no HTTPS connector. Runs after Spring
+   * Boot's own customizer, which would otherwise apply {@code server.ssl.*}.
+   *
+   * @return customizer removing SSL from the server
+   */
+  @Bean
+  WebServerFactoryCustomizer<JettyServletWebServerFactory> httpsConnectorCustomizer(
+      S3MockProperties properties) {
+    return factory -> {
+      if (!properties.isHttpsConnector()) {
+        factory.setSsl(null);
+        factory.setPort(properties.getHttpPort());
+      }
+    };
+  }
+
+  private Connector createHttpConnector(final Server server,
+      final JettyServletWebServerFactory factory, final S3MockProperties properties) {
+    final S3MockProperties.Jetty jetty = properties.getJetty();
+    if (properties.getHttp2().isEnabled()) {
+      final HttpConfiguration httpConfiguration = new HttpConfiguration();
+      httpServerConnector = new ServerConnector(server, jetty.getAcceptors(), jetty.getSelectors(),
+          new HttpConnectionFactory(httpConfiguration),
+          new HTTP2CServerConnectionFactory(httpConfiguration));
+    } else {
+      httpServerConnector = new ServerConnector(server, jetty.getAcceptors(), jetty.getSelectors());
+    }
+    // listen on server.address like the HTTPS connector
+    if (factory.getAddress() != null) {
+      httpServerConnector.setHost(factory.getAddress().getHostAddress());
+    }
+    httpServerConnector.setPort(properties.getHttpPort());
     return httpServerConnector;
   }
 
+  static void tuneConnectors(final Server server, final S3MockProperties.Jetty jetty,
+      final S3MockProperties.Http2 http2) {
+    for (final Connector connector : server.getConnectors()) {
+      if (connector instanceof ServerConnector) {
+        final ServerConnector serverConnector = (ServerConnector) connector;
+        serverConnector.setIdleTimeout(jetty.getIdleTimeout().toMillis());
+        serverConnector.setAcceptQueueSize(jetty.getAcceptQueueSize());
+      }
+      for (final ConnectionFactory connectionFactory : connector.getConnectionFactories()) {
+        if (connectionFactory instanceof HttpConfiguration.ConnectionFactory) {
+          ((HttpConfiguration.ConnectionFactory) connectionFactory).getHttpConfiguration()
+              .setOutputBufferSize((int) jetty.getOutputBufferSize().toBytes());
+        }
+        if (http2.isEnabled()
+            && connectionFactory instanceof AbstractHTTP2ServerConnectionFactory) {
+          tuneHttp2((AbstractHTTP2ServerConnectionFactory) connectionFactory, http2);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets the flow-control windows on HTTP/2 connection factories, both the h2c factory of the HTTP
+   * connector and the h2 factory Spring Boot creates for the HTTPS connector.
+   */
+  private static void tuneHttp2(final AbstractHTTP2ServerConnectionFactory factory,
+      final S3MockProperties.Http2 http2) {
+    factory.setInitialSessionRecvWindow((int) http2.getInitialSessionRecvWindow().toBytes());
+    factory.setInitialStreamRecvWindow((int) http2.getInitialStreamRecvWindow().toBytes());
+    factory.setMaxConcurrentStreams(http2.getMaxConcurrentStreams());
+  }
+
   ServerConnector getHttpServerConnector() {
     return httpServerConnector;
   }
 
+  LocalConnector getLocalConnector() {
+    return localConnector;
+  }
+
+  /**
+   * Registers the {@link AdminFilter} in front of all other filters.
+   *
+   * @return the registration
+   */
+  @Bean
+  FilterRegistrationBean<AdminFilter> adminFilter(final FileStore fileStore,
+      final S3MockProperties properties) {
+    final FilterRegistrationBean<AdminFilter> registration =
+        new FilterRegistrationBean<>(new AdminFilter(fileStore, properties.getContextPath()));
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+    return registration;
+  }
+
+  /**
+   * Registers the {@link NamespaceFilter} right after the {@link AdminFilter}, also for the
+   * uploads dispatched again by {@link NonBlockingTransfers}.
+   *
+   * @return the registration
+   */
+  @Bean
+  FilterRegistrationBean<NamespaceFilter> namespaceFilter(final FileStore fileStore,
+      final MappingJackson2XmlHttpMessageConverter messageConverter) {
+    final FilterRegistrationBean<NamespaceFilter> registration =
+        new FilterRegistrationBean<>(new NamespaceFilter(fileStore, messageConverter));
+    registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+    return registration;
+  }
+
   @Bean
   Filter kmsFilter(final KmsKeyStore kmsKeyStore,
       MappingJackson2XmlHttpMessageConverter messageConverter) {
@@ -117,31 +274,98 @@ class S3MockConfiguration implements WebMvcConfigurer {
     };
   }
 
+  @Bean
+  DownloadExecutor downloadExecutor(S3MockProperties properties) {
+    return new DownloadExecutor(properties);
+  }
+
+  @Bean
+  NonBlockingTransfers nonBlockingTransfers(S3MockProperties properties, FileStore fileStore,
+      S3MockExceptionHandler s3MockExceptionHandler) {
+    return new NonBlockingTransfers(properties, fileStore, s3MockExceptionHandler);
+  }
+
+  @Bean
+  WebMvcConfigurer downloadExecutorConfigurer(final DownloadExecutor downloadExecutor) {
+    return new WebMvcConfigurer() {
+      @Override
+      public void configureAsyncSupport(final AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(downloadExecutor);
+      }
+    };
+  }
+
   @Bean
   FaviconController faviconController() {
     return new FaviconController();
   }
 
   @Bean
-  FileStoreController fileStoreController(FileStore fileStore) {
-    return new FileStoreController(fileStore);
+  FileStoreController fileStoreController(FileStore fileStore,
+      NonBlockingTransfers nonBlockingTransfers) {
+    return new FileStoreController(fileStore, nonBlockingTransfers);
+  }
+
+  /**
+   * Registers the {@link S3RequestRouter} after all other filters, right in front of Spring MVC.
+   *
+   * @return the registration, disabled unless {@link S3MockProperties#isRequestRouter()} is set
+   */
+  @Bean
+  FilterRegistrationBean<S3RequestRouter> s3RequestRouter(final S3MockProperties properties,
+      final FileStoreController fileStoreController, final DownloadExecutor downloadExecutor,
+      final S3MockExceptionHandler s3MockExceptionHandler,
+      final MappingJackson2XmlHttpMessageConverter messageConverter,
+      final Environment environment) {
+    final FilterRegistrationBean<S3RequestRouter> registration =
+        new FilterRegistrationBean<>(new S3RequestRouter(fileStoreController, downloadExecutor,
+            s3MockExceptionHandler, messageConverter.getObjectMapper(),
+            properties.getContextPath(),
+            environment.getProperty("management.endpoints.web.base-path", "/actuator"), false));
+    registration.setOrder(Ordered.LOWEST_PRECEDENCE);
+    registration.setEnabled(properties.isRequestRouter());
+    return registration;
   }
 
   @Bean
-  S3MockExceptionHandler s3MockExceptionHandler() {
-    return new S3MockExceptionHandler();
+  S3MockExceptionHandler s3MockExceptionHandler(
+      final MappingJackson2XmlHttpMessageConverter messageConverter) {
+    return new S3MockExceptionHandler(messageConverter);
   }
 
   /**
    * {@link ResponseEntityExceptionHandler} dealing with {@link S3Exception}s; Serializes them to
    * response output as suitable ErrorResponses. See https://docs.aws.amazon
    * .com/AmazonS3/latest/API/ErrorResponses.html.
+   *
+   * <p>Clients polling for keys cause lots of errors, so the serialized responses are cached,
+   * errors are counted by code, and each code is logged at most once per {@link #LOG_INTERVAL}.
+   * </p>
    */
   @ControllerAdvice
-  static class S3MockExceptionHandler extends ResponseEntityExceptionHandler {
+  static class S3MockExceptionHandler extends ResponseEntityExceptionHandler
+      implements MeterBinder {
 
     private static final Logger LOG = LoggerFactory.getLogger(S3MockExceptionHandler.class);
 
+    private static final long LOG_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Error messages are constants, this only guards against unexpected variety.
+     */
+    private static final int MAX_CACHED_RESPONSES = 256;
+
+    private static final HttpHeaders HEADERS = xmlHeaders();
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, byte[]> responses = new ConcurrentHashMap<>();
+    private final Map<String, ErrorStatistics> statistics = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    S3MockExceptionHandler(final MappingJackson2XmlHttpMessageConverter messageConverter) {
+      objectMapper = messageConverter.getObjectMapper();
+    }
+
     /**
      * Handles the given {@link S3Exception}.
      *
@@ -150,17 +374,109 @@ class S3MockConfiguration implements WebMvcConfigurer {
      * @return A {@link ResponseEntity} representing the handled {@link S3Exception}.
      */
     @ExceptionHandler
-    public ResponseEntity<ErrorResponse> handleS3Exception(final S3Exception s3Exception) {
-      LOG.info("Responding with status {}: {}", s3Exception.getStatus(), s3Exception.getMessage());
+    public ResponseEntity<byte[]> handleS3Exception(final S3Exception s3Exception) {
+      final ErrorStatistics errorStatistics = statistics(s3Exception.getCode());
+      errorStatistics.count.increment();
+      final long suppressed = errorStatistics.logPermit();
+      if (suppressed >= 0) {
+        LOG.info("Responding with status {}: {} ({} similar responses not logged)",
+            s3Exception.getStatus(), s3Exception.getMessage(), suppressed);
+      }
+
+      return ResponseEntity.status(s3Exception.getStatus()).headers(HEADERS)
+          .body(serialize(s3Exception));
+    }
+
+    /**
+     * Handles downloads rejected by the {@link DownloadExecutor}, like S3 handles too many
+     * requests.
+     *
+     * @param e the rejection.
+     *
+     * @return A {@link ResponseEntity} asking the client to slow down.
+     */
+    @ExceptionHandler
+    public ResponseEntity<byte[]> handleRejectedExecution(final RejectedExecutionException e) {
+      return handleS3Exception(new S3Exception(SERVICE_UNAVAILABLE.value(), "SlowDown",
+          "Please reduce your request rate."));
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+      this.registry = registry;
+      statistics.forEach(this::register);
+    }
+
+    private ErrorStatistics statistics(final String code) {
+      final ErrorStatistics existing = statistics.get(code);
+      if (existing != null) {
+        return existing;
+      }
+      final ErrorStatistics created = new ErrorStatistics();
+      final ErrorStatistics previous = statistics.putIfAbsent(code, created);
+      if (previous != null) {
+        return previous;
+      }
+      register(code, created);
+      return created;
+    }
+
+    private void register(final String code, final ErrorStatistics errorStatistics) {
+      final MeterRegistry meterRegistry = registry;
+      if (meterRegistry != null) {
+        FunctionCounter.builder("s3mock.errors", errorStatistics.count, LongAdder::doubleValue)
+            .tag("code", code)
+            .description("S3 error responses")
+            .register(meterRegistry);
+      }
+    }
 
+    private byte[] serialize(final S3Exception s3Exception) {
+      final String key = s3Exception.getCode() + ' ' + s3Exception.getMessage();
+      final byte[] cached = responses.get(key);
+      if (cached != null) {
+        return cached;
+      }
       final ErrorResponse errorResponse = new ErrorResponse();
       errorResponse.setCode(s3Exception.getCode());
       errorResponse.setMessage(s3Exception.getMessage());
+      final byte[] response;
+      try {
+        response = objectMapper.writeValueAsBytes(errorResponse);
+      } catch (final JsonProcessingException e) {
+        throw new IllegalStateException("Can't serialize error response", e);
+      }
+      if (responses.size() < MAX_CACHED_RESPONSES) {
+        responses.put(key, response);
+      }
+      return response;
+    }
 
+    private static HttpHeaders xmlHeaders() {
       final HttpHeaders headers = new HttpHeaders();
       headers.setContentType(MediaType.APPLICATION_XML);
+      return HttpHeaders.readOnlyHttpHeaders(headers);
+    }
 
-      return ResponseEntity.status(s3Exception.getStatus()).headers(headers).body(errorResponse);
+    private static final class ErrorStatistics {
+
+      private final LongAdder count = new LongAdder();
+      private final AtomicLong nextLog = new AtomicLong(System.nanoTime());
+      private final AtomicLong suppressed = new AtomicLong();
+
+      /**
+       * Returns the number of errors not logged since the last message if this one may be logged,
+       * -1 otherwise.
+       */
+      private long logPermit() {
+        final long now = System.nanoTime();
+        final long next = nextLog.get();
+        if (now - next >= 0 && nextLog.compareAndSet(next, now + LOG_INTERVAL)) {
+          return suppressed.getAndSet(0);
+        }
+        suppressed.incrementAndGet();
+        return -1;
+      }
     }
   }
 }
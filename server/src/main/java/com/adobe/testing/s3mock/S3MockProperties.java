@@ -16,7 +16,9 @@
 
 package com.adobe.testing.s3mock;
 
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 @ConfigurationProperties("com.adobe.testing.s3mock")
 class S3MockProperties {
@@ -36,6 +38,75 @@ class S3MockProperties {
    */
   private String contextPath = "";
 
+  /**
+   * Number of threads streaming object downloads.
+   */
+  private int downloadThreads = 16;
+
+  /**
+   * Number of downloads waiting for a download thread before {@link #downloadRejectionPolicy}
+   * applies. Unbounded if negative.
+   */
+  private int downloadQueueSize = 100;
+
+  /**
+   * What happens to downloads if all download threads are busy and the queue is full.
+   */
+  private RejectionPolicy downloadRejectionPolicy = RejectionPolicy.CALLER_RUNS;
+
+  /**
+   * Property name for streaming downloads on the request thread instead of a download thread.
+   */
+  private boolean synchronousDownloads;
+
+  /**
+   * Property name for transferring object data with non-blocking I/O, so slow clients don't hold a
+   * thread each.
+   */
+  private boolean nonBlockingTransfers;
+
+  /**
+   * Property name for dispatching object requests with the {@link S3RequestRouter} instead of
+   * Spring MVC's annotation-driven handler mapping.
+   */
+  private boolean requestRouter;
+
+  /**
+   * Property name for serving HTTPS on {@code server.port} next to HTTP on {@link #httpPort}. If
+   * unset, only HTTP is served, on {@code server.port}, and the keystore isn't loaded.
+   */
+  private boolean httpsConnector = true;
+
+  /**
+   * Property name for serving in-memory connections from Jetty's {@code LocalConnector}, which
+   * in-process clients use without going through a socket.
+   */
+  private boolean localConnector;
+
+  /**
+   * Tuning of the Jetty server, applied to both the HTTPS and the HTTP connector.
+   */
+  private final Jetty jetty = new Jetty();
+
+  /**
+   * HTTP/2 support, h2c on the HTTP connector and ALPN h2 on the HTTPS connector.
+   */
+  private final Http2 http2 = new Http2();
+
+  /**
+   * Handling of downloads exceeding the download threads and queue.
+   */
+  enum RejectionPolicy {
+    /**
+     * Stream the download on the request thread.
+     */
+    CALLER_RUNS,
+    /**
+     * Reject the download with 503 Slow Down.
+     */
+    ABORT
+  }
+
   public int getHttpPort() {
     return httpPort;
   }
@@ -51,4 +122,232 @@ class S3MockProperties {
   public void setContextPath(String contextPath) {
     this.contextPath = contextPath;
   }
+
+  public int getDownloadThreads() {
+    return downloadThreads;
+  }
+
+  public void setDownloadThreads(int downloadThreads) {
+    this.downloadThreads = downloadThreads;
+  }
+
+  public int getDownloadQueueSize() {
+    return downloadQueueSize;
+  }
+
+  public void setDownloadQueueSize(int downloadQueueSize) {
+    this.downloadQueueSize = downloadQueueSize;
+  }
+
+  public RejectionPolicy getDownloadRejectionPolicy() {
+    return downloadRejectionPolicy;
+  }
+
+  public void setDownloadRejectionPolicy(RejectionPolicy downloadRejectionPolicy) {
+    this.downloadRejectionPolicy = downloadRejectionPolicy;
+  }
+
+  public boolean isSynchronousDownloads() {
+    return synchronousDownloads;
+  }
+
+  public void setSynchronousDownloads(boolean synchronousDownloads) {
+    this.synchronousDownloads = synchronousDownloads;
+  }
+
+  public boolean isNonBlockingTransfers() {
+    return nonBlockingTransfers;
+  }
+
+  public void setNonBlockingTransfers(boolean nonBlockingTransfers) {
+    this.nonBlockingTransfers = nonBlockingTransfers;
+  }
+
+  public boolean isRequestRouter() {
+    return requestRouter;
+  }
+
+  public void setRequestRouter(boolean requestRouter) {
+    this.requestRouter = requestRouter;
+  }
+
+  public boolean isHttpsConnector() {
+    return httpsConnector;
+  }
+
+  public void setHttpsConnector(boolean httpsConnector) {
+    this.httpsConnector = httpsConnector;
+  }
+
+  public boolean isLocalConnector() {
+    return localConnector;
+  }
+
+  public void setLocalConnector(boolean localConnector) {
+    this.localConnector = localConnector;
+  }
+
+  public Jetty getJetty() {
+    return jetty;
+  }
+
+  public Http2 getHttp2() {
+    return http2;
+  }
+
+  /**
+   * Jetty thread pool, connector and buffer settings.
+   */
+  static class Jetty {
+
+    /**
+     * Maximum number of threads handling requests.
+     */
+    private int maxThreads = 200;
+
+    /**
+     * Number of threads kept alive when idle.
+     */
+    private int minThreads = 8;
+
+    /**
+     * Number of threads accepting connections per connector. Jetty chooses if negative.
+     */
+    private int acceptors = -1;
+
+    /**
+     * Number of threads selecting ready connections per connector. Jetty chooses if negative.
+     */
+    private int selectors = -1;
+
+    /**
+     * Size of the response buffer, responses are written to the network once it is full.
+     */
+    private DataSize outputBufferSize = DataSize.ofKilobytes(32);
+
+    /**
+     * Time after which idle connections are closed.
+     */
+    private Duration idleTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Number of connections waiting to be accepted. The operating system chooses if zero.
+     */
+    private int acceptQueueSize;
+
+    public int getMaxThreads() {
+      return maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+      this.maxThreads = maxThreads;
+    }
+
+    public int getMinThreads() {
+      return minThreads;
+    }
+
+    public void setMinThreads(int minThreads) {
+      this.minThreads = minThreads;
+    }
+
+    public int getAcceptors() {
+      return acceptors;
+    }
+
+    public void setAcceptors(int acceptors) {
+      this.acceptors = acceptors;
+    }
+
+    public int getSelectors() {
+      return selectors;
+    }
+
+    public void setSelectors(int selectors) {
+      this.selectors = selectors;
+    }
+
+    public DataSize getOutputBufferSize() {
+      return outputBufferSize;
+    }
+
+    public void setOutputBufferSize(DataSize outputBufferSize) {
+      this.outputBufferSize = outputBufferSize;
+    }
+
+    public Duration getIdleTimeout() {
+      return idleTimeout;
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+      this.idleTimeout = idleTimeout;
+    }
+
+    public int getAcceptQueueSize() {
+      return acceptQueueSize;
+    }
+
+    public void setAcceptQueueSize(int acceptQueueSize) {
+      this.acceptQueueSize = acceptQueueSize;
+    }
+  }
+
+  /**
+   * HTTP/2 settings. ALPN on the HTTPS connector requires Java 8u252 or later.
+   */
+  static class Http2 {
+
+    /**
+     * Property name for accepting HTTP/2 in addition to HTTP/1.1 on both connectors.
+     */
+    private boolean enabled;
+
+    /**
+     * Flow-control window of a connection, shared by all of its streams.
+     */
+    private DataSize initialSessionRecvWindow = DataSize.ofMegabytes(1);
+
+    /**
+     * Flow-control window of a single stream, i.e. request, before the server has to acknowledge
+     * received data.
+     */
+    private DataSize initialStreamRecvWindow = DataSize.ofKilobytes(512);
+
+    /**
+     * Number of streams a client may have open on a single connection.
+     */
+    private int maxConcurrentStreams = 128;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public DataSize getInitialSessionRecvWindow() {
+      return initialSessionRecvWindow;
+    }
+
+    public void setInitialSessionRecvWindow(DataSize initialSessionRecvWindow) {
+      this.initialSessionRecvWindow = initialSessionRecvWindow;
+    }
+
+    public DataSize getInitialStreamRecvWindow() {
+      return initialStreamRecvWindow;
+    }
+
+    public void setInitialStreamRecvWindow(DataSize initialStreamRecvWindow) {
+      this.initialStreamRecvWindow = initialStreamRecvWindow;
+    }
+
+    public int getMaxConcurrentStreams() {
+      return maxConcurrentStreams;
+    }
+
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+      this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+  }
 }
@@ -0,0 +1,368 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.RANGE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_COPY_SOURCE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_COPY_SOURCE_RANGE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_SERVER_SIDE_ENCRYPTION;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_TAGGING;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.DELETE;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.PART_NUMBER;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.TAGGING;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.UPLOADS;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.UPLOAD_ID;
+import static com.adobe.testing.s3mock.util.StringEncoding.decode;
+import static com.adobe.testing.s3mock.util.StringEncoding.encode;
+import static org.springframework.http.HttpHeaders.ACCEPT;
+
+import com.adobe.testing.s3mock.dto.Range;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+/**
+ * An S3 request, parsed once from the servlet request: method, bucket, key and the query
+ * parameters naming the subresource, and the {@link Operation}s the {@link S3RequestRouter}
+ * dispatches it to.
+ *
+ * <p>Stored as a request attribute, so the handlers and a re-dispatch of the same request reuse
+ * it instead of parsing the request URI again.</p>
+ */
+final class S3Request {
+
+  private static final String ATTRIBUTE = S3Request.class.getName();
+
+  private static final String LIST_TYPE = "list-type";
+
+  /**
+   * Operations of the S3 API. In front of Spring MVC the {@link S3RequestRouter} dispatches the
+   * ones on the data path, see {@link #getOperation()}, in the {@link EmbeddedS3Mock} all of them,
+   * see {@link #getMappedOperation()}. Requests not dispatched are {@link #OTHER}.
+   */
+  enum Operation {
+    GET_OBJECT,
+    HEAD_OBJECT,
+    PUT_OBJECT,
+    UPLOAD_PART,
+    DELETE_OBJECT,
+    LIST_BUCKETS,
+    CREATE_BUCKET,
+    HEAD_BUCKET,
+    DELETE_BUCKET,
+    LIST_OBJECTS,
+    LIST_OBJECTS_V2,
+    LIST_MULTIPART_UPLOADS,
+    DELETE_OBJECTS,
+    GET_OBJECT_TAGGING,
+    PUT_OBJECT_TAGGING,
+    COPY_OBJECT,
+    UPLOAD_PART_COPY,
+    CREATE_MULTIPART_UPLOAD,
+    COMPLETE_MULTIPART_UPLOAD,
+    ABORT_MULTIPART_UPLOAD,
+    LIST_PARTS,
+    OTHER
+  }
+
+  private final String method;
+  private final String bucketName;
+  private final String rawKey;
+  private final Map<String, String> parameters;
+  private final Range range;
+  private final Operation operation;
+  private final Operation mappedOperation;
+  private String key;
+
+  private S3Request(final HttpServletRequest request, final String bucketName,
+      final String rawKey, final Map<String, String> parameters) {
+    this.method = request.getMethod();
+    this.bucketName = bucketName;
+    this.rawKey = rawKey;
+    this.parameters = parameters;
+    this.range = range(request);
+    this.operation = operation(request);
+    this.mappedOperation = mappedOperation(request);
+  }
+
+  /**
+   * Returns the request parsed by {@link #parse(HttpServletRequest, String, String)}.
+   *
+   * @param request the servlet request.
+   *
+   * @return the parsed request, null if it wasn't parsed.
+   */
+  static S3Request from(final HttpServletRequest request) {
+    return (S3Request) request.getAttribute(ATTRIBUTE);
+  }
+
+  /**
+   * Parses a request and stores it as a request attribute, unless it was parsed before.
+   *
+   * @param request the servlet request.
+   * @param contextPath the path the S3 API is mapped to, see
+   *     {@link S3MockProperties#getContextPath()}.
+   * @param excludedPath path of requests that are never dispatched, e.g. the actuator endpoints.
+   *
+   * @return the parsed request.
+   */
+  static S3Request parse(final HttpServletRequest request, final String contextPath,
+      final String excludedPath) {
+    final S3Request parsed = from(request);
+    if (parsed != null) {
+      return parsed;
+    }
+    final String path = request.getRequestURI().substring(request.getContextPath().length());
+    String bucketName = null;
+    String rawKey = null;
+    if (path.startsWith(contextPath + "/")
+        && !(path.equals(excludedPath) || path.startsWith(excludedPath + "/"))) {
+      final int bucketStart = contextPath.length() + 1;
+      final int slash = path.indexOf('/', bucketStart);
+      if (slash < 0) {
+        bucketName = path.substring(bucketStart);
+      } else if (slash > bucketStart) {
+        bucketName = path.substring(bucketStart, slash);
+        rawKey = path.substring(slash + 1);
+      }
+    }
+    final S3Request s3Request =
+        new S3Request(request, bucketName, rawKey, parameters(request.getQueryString()));
+    request.setAttribute(ATTRIBUTE, s3Request);
+    return s3Request;
+  }
+
+  String getMethod() {
+    return method;
+  }
+
+  /**
+   * Returns the bucket name, null if the request isn't for a bucket or an object.
+   */
+  String getBucketName() {
+    return bucketName;
+  }
+
+  /**
+   * Returns the key like the store names it, null if the request isn't for an object.
+   */
+  String getKey() {
+    if (key == null && rawKey != null) {
+      key = encode(decode(rawKey));
+    }
+    return key;
+  }
+
+  /**
+   * Returns a query parameter, the subresource parameters like {@code tagging} have an empty
+   * value.
+   */
+  String getParameter(final String name) {
+    return parameters.get(name);
+  }
+
+  Range getRange() {
+    return range;
+  }
+
+  /**
+   * Returns the operation on the data path, {@link Operation#OTHER} for all other requests and
+   * for requests with headers Spring MVC has to convert or the KMS filter has to validate.
+   */
+  Operation getOperation() {
+    return operation;
+  }
+
+  /**
+   * Returns the operation Spring MVC maps the request to, regardless of its headers.
+   */
+  Operation getMappedOperation() {
+    return mappedOperation;
+  }
+
+  private Range range(final HttpServletRequest request) {
+    final String header = request.getHeader(RANGE);
+    if (header == null) {
+      return null;
+    }
+    try {
+      return new Range(header);
+    } catch (final IllegalArgumentException e) {
+      // Spring MVC responds to malformed ranges
+      return null;
+    }
+  }
+
+  /**
+   * Dispatches the requests Spring MVC would map to the same {@link FileStoreController} methods,
+   * without request headers Spring MVC has to convert or the KMS filter has to validate.
+   */
+  private Operation operation(final HttpServletRequest request) {
+    if (rawKey == null || rawKey.isEmpty()
+        || request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION) != null
+        || request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID) != null
+        || range == null && request.getHeader(RANGE) != null) {
+      return Operation.OTHER;
+    }
+    switch (method) {
+      case "GET":
+        return parameters.containsKey(TAGGING) || parameters.containsKey(UPLOAD_ID)
+            || !acceptsXml(request) ? Operation.OTHER : Operation.GET_OBJECT;
+      case "HEAD":
+        return Operation.HEAD_OBJECT;
+      case "DELETE":
+        return parameters.containsKey(UPLOAD_ID) ? Operation.OTHER : Operation.DELETE_OBJECT;
+      case "PUT":
+        if (request.getHeader(X_AMZ_COPY_SOURCE) != null
+            || request.getHeader(X_AMZ_COPY_SOURCE_RANGE) != null) {
+          return Operation.OTHER;
+        }
+        if (parameters.containsKey(UPLOAD_ID) && parameters.containsKey(PART_NUMBER)
+            && !parameters.containsKey(TAGGING)) {
+          return Operation.UPLOAD_PART;
+        }
+        return parameters.isEmpty() && request.getHeader(X_AMZ_TAGGING) == null
+            ? Operation.PUT_OBJECT : Operation.OTHER;
+      default:
+        return Operation.OTHER;
+    }
+  }
+
+  /**
+   * Maps the request like the {@link FileStoreController} mappings do: by method, path and the
+   * parameters and headers the mappings name.
+   */
+  private Operation mappedOperation(final HttpServletRequest request) {
+    if (bucketName == null) {
+      return Operation.OTHER;
+    }
+    if (bucketName.isEmpty()) {
+      return "GET".equals(method) ? Operation.LIST_BUCKETS : Operation.OTHER;
+    }
+    if (rawKey == null || rawKey.isEmpty()) {
+      return mappedBucketOperation();
+    }
+    switch (method) {
+      case "GET":
+        if (parameters.containsKey(TAGGING)) {
+          return Operation.GET_OBJECT_TAGGING;
+        }
+        return parameters.containsKey(UPLOAD_ID) ? Operation.LIST_PARTS : Operation.GET_OBJECT;
+      case "HEAD":
+        return Operation.HEAD_OBJECT;
+      case "DELETE":
+        return parameters.containsKey(UPLOAD_ID)
+            ? Operation.ABORT_MULTIPART_UPLOAD : Operation.DELETE_OBJECT;
+      case "PUT":
+        return mappedPutOperation(request);
+      case "POST":
+        if (parameters.containsKey(UPLOADS)) {
+          return Operation.CREATE_MULTIPART_UPLOAD;
+        }
+        return parameters.containsKey(UPLOAD_ID)
+            ? Operation.COMPLETE_MULTIPART_UPLOAD : Operation.OTHER;
+      default:
+        return Operation.OTHER;
+    }
+  }
+
+  private Operation mappedBucketOperation() {
+    switch (method) {
+      case "GET":
+        if (parameters.containsKey(UPLOADS)) {
+          return Operation.LIST_MULTIPART_UPLOADS;
+        }
+        return "2".equals(parameters.get(LIST_TYPE))
+            ? Operation.LIST_OBJECTS_V2 : Operation.LIST_OBJECTS;
+      case "PUT":
+        return Operation.CREATE_BUCKET;
+      case "HEAD":
+        return Operation.HEAD_BUCKET;
+      case "DELETE":
+        return Operation.DELETE_BUCKET;
+      case "POST":
+        return parameters.containsKey(DELETE) ? Operation.DELETE_OBJECTS : Operation.OTHER;
+      default:
+        return Operation.OTHER;
+    }
+  }
+
+  private Operation mappedPutOperation(final HttpServletRequest request) {
+    if (parameters.containsKey(TAGGING)) {
+      return Operation.PUT_OBJECT_TAGGING;
+    }
+    final boolean part = parameters.containsKey(UPLOAD_ID) && parameters.containsKey(PART_NUMBER);
+    if (request.getHeader(X_AMZ_COPY_SOURCE) != null) {
+      if (part) {
+        return Operation.UPLOAD_PART_COPY;
+      }
+      return parameters.containsKey(UPLOAD_ID) ? Operation.PUT_OBJECT : Operation.COPY_OBJECT;
+    }
+    return part && request.getHeader(X_AMZ_COPY_SOURCE_RANGE) == null
+        ? Operation.UPLOAD_PART : Operation.PUT_OBJECT;
+  }
+
+  /**
+   * Object downloads are mapped to produce XML, so Spring MVC rejects other accepted types.
+   */
+  static boolean acceptsXml(final HttpServletRequest request) {
+    final String accept = request.getHeader(ACCEPT);
+    if (accept == null) {
+      return true;
+    }
+    try {
+      return MediaType.parseMediaTypes(accept).stream()
+          .anyMatch(mediaType -> mediaType.isCompatibleWith(MediaType.APPLICATION_XML));
+    } catch (final InvalidMediaTypeException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Parses the query string, without {@link HttpServletRequest#getParameterMap()}: the container
+   * would read form encoded request bodies, too.
+   */
+  private static Map<String, String> parameters(final String query) {
+    if (query == null || query.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    final Map<String, String> parameters = new HashMap<>();
+    for (final String parameter : query.split("&")) {
+      if (parameter.isEmpty()) {
+        continue;
+      }
+      final int equals = parameter.indexOf('=');
+      parameters.putIfAbsent(urlDecode(equals < 0 ? parameter : parameter.substring(0, equals)),
+          equals < 0 ? "" : urlDecode(parameter.substring(equals + 1)));
+    }
+    return parameters;
+  }
+
+  private static String urlDecode(final String value) {
+    try {
+      return URLDecoder.decode(value, "UTF-8");
+    } catch (final UnsupportedEncodingException | IllegalArgumentException e) {
+      return value;
+    }
+  }
+}
@@ -0,0 +1,470 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.CONTENT_MD5;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.RANGE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_CONTENT_SHA256;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_COPY_SOURCE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_COPY_SOURCE_RANGE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_METADATA_DIRECTIVE;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_SERVER_SIDE_ENCRYPTION;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID;
+import static com.adobe.testing.s3mock.util.AwsHttpHeaders.X_AMZ_TAGGING;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.CONTINUATION_TOKEN;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.ENCODING_TYPE;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.MAX_KEYS;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.PART_NUMBER;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.START_AFTER;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.UPLOADS;
+import static com.adobe.testing.s3mock.util.AwsHttpParameters.UPLOAD_ID;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_MATCH;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.LAST_MODIFIED;
+
+import com.adobe.testing.s3mock.S3MockConfiguration.S3MockExceptionHandler;
+import com.adobe.testing.s3mock.S3Request.Operation;
+import com.adobe.testing.s3mock.dto.BatchDeleteRequest;
+import com.adobe.testing.s3mock.dto.CompleteMultipartUploadRequest;
+import com.adobe.testing.s3mock.dto.ObjectRef;
+import com.adobe.testing.s3mock.dto.Range;
+import com.adobe.testing.s3mock.dto.Tag;
+import com.adobe.testing.s3mock.dto.Tagging;
+import com.adobe.testing.s3mock.store.S3Exception;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import javax.servlet.AsyncContext;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.ServletRequestBindingException;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.CorsProcessor;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.cors.DefaultCorsProcessor;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Dispatches the object requests on the data path, GET, HEAD, PUT, DELETE and part uploads,
+ * straight to the {@link FileStoreController}, without Spring MVC's handler mapping, argument
+ * resolution and return value handling.
+ *
+ * <p>Each request is parsed once into an {@link S3Request}, which selects the handler with a
+ * switch. Requests of all other operations, or with headers that need conversion or validation,
+ * pass on to Spring MVC, so responses are the same either way. Only enabled if
+ * {@link S3MockProperties#isRequestRouter()} is set.</p>
+ *
+ * <p>In the {@link EmbeddedS3Mock} there is no Spring MVC, the router dispatches all operations
+ * and converts headers, parameters and XML bodies itself, without content negotiation.</p>
+ */
+class S3RequestRouter extends OncePerRequestFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(S3RequestRouter.class);
+
+  /**
+   * What {@code @CrossOrigin(origins = "*")} on the {@link FileStoreController} configures for
+   * the dispatched methods.
+   */
+  private static final CorsConfiguration CORS = corsConfiguration();
+
+  private final CorsProcessor corsProcessor = new DefaultCorsProcessor();
+
+  private final FileStoreController controller;
+  private final DownloadExecutor downloadExecutor;
+  private final S3MockExceptionHandler exceptionHandler;
+  private final ObjectMapper objectMapper;
+  private final String contextPath;
+  private final String excludedPath;
+  private final boolean allOperations;
+
+  /**
+   * Constructs a new {@link S3RequestRouter}.
+   *
+   * @param controller the controller handling the requests.
+   * @param downloadExecutor the executor streaming downloads, like configured for Spring MVC.
+   * @param exceptionHandler the handler creating error responses.
+   * @param objectMapper the mapper reading and writing XML bodies, like Spring MVC's converter.
+   * @param contextPath the path the S3 API is mapped to.
+   * @param excludedPath path of requests that always pass on to the filter chain.
+   * @param allOperations whether all operations are dispatched, or only the ones on the data
+   *     path.
+   */
+  S3RequestRouter(final FileStoreController controller, final DownloadExecutor downloadExecutor,
+      final S3MockExceptionHandler exceptionHandler, final ObjectMapper objectMapper,
+      final String contextPath, final String excludedPath, final boolean allOperations) {
+    this.controller = controller;
+    this.downloadExecutor = downloadExecutor;
+    this.exceptionHandler = exceptionHandler;
+    this.objectMapper = objectMapper;
+    this.contextPath = normalize(contextPath);
+    this.excludedPath = normalize(excludedPath);
+    this.allOperations = allOperations;
+  }
+
+  /**
+   * Builds the CORS configuration from the {@link CrossOrigin} annotation of the
+   * {@link FileStoreController}, like Spring MVC does for its handler methods: unless the
+   * annotation names methods, the ones mapped by the controller are allowed, and unset values are
+   * Spring's defaults.
+   */
+  static CorsConfiguration corsConfiguration() {
+    final CorsConfiguration configuration = new CorsConfiguration();
+    final CrossOrigin crossOrigin =
+        AnnotatedElementUtils.findMergedAnnotation(FileStoreController.class, CrossOrigin.class);
+    if (crossOrigin != null) {
+      Arrays.stream(crossOrigin.origins()).forEach(configuration::addAllowedOrigin);
+      Arrays.stream(crossOrigin.originPatterns()).forEach(configuration::addAllowedOriginPattern);
+      Arrays.stream(crossOrigin.allowedHeaders()).forEach(configuration::addAllowedHeader);
+      Arrays.stream(crossOrigin.exposedHeaders()).forEach(configuration::addExposedHeader);
+      Arrays.stream(crossOrigin.methods())
+          .forEach(method -> configuration.addAllowedMethod(method.name()));
+      if (!crossOrigin.allowCredentials().isEmpty()) {
+        configuration.setAllowCredentials(Boolean.valueOf(crossOrigin.allowCredentials()));
+      }
+      if (crossOrigin.maxAge() >= 0) {
+        configuration.setMaxAge(crossOrigin.maxAge());
+      }
+    }
+    if (configuration.getAllowedMethods() == null) {
+      final Set<String> methods = new LinkedHashSet<>();
+      for (final Method method : FileStoreController.class.getMethods()) {
+        final RequestMapping mapping =
+            AnnotatedElementUtils.findMergedAnnotation(method, RequestMapping.class);
+        if (mapping != null) {
+          Arrays.stream(mapping.method()).map(Enum::name).forEach(methods::add);
+        }
+      }
+      configuration.setAllowedMethods(new ArrayList<>(methods));
+    }
+    return configuration.applyPermitDefaultValues();
+  }
+
+  private static String normalize(final String path) {
+    final String trimmed = StringUtils.trimTrailingCharacter(path, '/');
+    return trimmed.isEmpty() || trimmed.startsWith("/") ? trimmed : "/" + trimmed;
+  }
+
+  /**
+   * Uploads received by {@link NonBlockingTransfers} are dispatched again to the same handler.
+   */
+  @Override
+  protected boolean shouldNotFilterAsyncDispatch() {
+    return false;
+  }
+
+  @Override
+  protected void doFilterInternal(final HttpServletRequest request,
+      final HttpServletResponse response, final FilterChain filterChain)
+      throws ServletException, IOException {
+    if (allOperations && CorsUtils.isPreFlightRequest(request)) {
+      corsProcessor.processRequest(CORS, request, response);
+      return;
+    }
+    final S3Request s3Request = S3Request.parse(request, contextPath, excludedPath);
+    final Operation operation =
+        allOperations ? s3Request.getMappedOperation() : s3Request.getOperation();
+    if (operation == Operation.OTHER) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+    if (!corsProcessor.processRequest(CORS, request, response)) {
+      return;
+    }
+    ResponseEntity<?> responseEntity;
+    try {
+      responseEntity = dispatch(operation, s3Request, request, response);
+    } catch (final S3Exception e) {
+      responseEntity = exceptionHandler.handleS3Exception(e);
+    } catch (final RejectedExecutionException e) {
+      responseEntity = exceptionHandler.handleRejectedExecution(e);
+    } catch (final ServletRequestBindingException e) {
+      LOG.debug("Can't convert request", e);
+      responseEntity = ResponseEntity.badRequest().build();
+    }
+    if (responseEntity != null) {
+      write(responseEntity, request, response);
+    }
+  }
+
+  /**
+   * Calls the handler Spring MVC maps the request to, with the arguments it would resolve.
+   */
+  private ResponseEntity<?> dispatch(final Operation operation, final S3Request s3Request,
+      final HttpServletRequest request, final HttpServletResponse response)
+      throws IOException, ServletRequestBindingException {
+    final String bucketName = s3Request.getBucketName();
+    switch (operation) {
+      case GET_OBJECT:
+        if (!S3Request.acceptsXml(request)) {
+          return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        }
+        return controller.getObject(bucketName, range(request, RANGE),
+            headerValues(request, IF_MATCH), headerValues(request, IF_NONE_MATCH),
+            request, response);
+      case HEAD_OBJECT:
+        return controller.headObject(bucketName, request);
+      case PUT_OBJECT:
+        return controller.putObject(bucketName, request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION),
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID), tags(request),
+            request.getHeader(CONTENT_ENCODING), request.getHeader(CONTENT_TYPE),
+            request.getHeader(CONTENT_MD5), request.getHeader(X_AMZ_CONTENT_SHA256), request);
+      case UPLOAD_PART:
+        return controller.putObjectPart(bucketName, s3Request.getParameter(UPLOAD_ID),
+            s3Request.getParameter(PART_NUMBER), request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION),
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID),
+            request.getHeader(X_AMZ_CONTENT_SHA256), request);
+      case DELETE_OBJECT:
+        return controller.deleteObject(bucketName, request);
+      case LIST_BUCKETS:
+        return controller.listBuckets();
+      case CREATE_BUCKET:
+        return controller.createBucket(bucketName);
+      case HEAD_BUCKET:
+        return controller.headBucket(bucketName);
+      case DELETE_BUCKET:
+        return controller.deleteBucket(bucketName);
+      case LIST_OBJECTS:
+        return controller.listObjectsInsideBucket(bucketName, s3Request.getParameter("prefix"),
+            s3Request.getParameter("delimiter"), s3Request.getParameter("marker"),
+            s3Request.getParameter(ENCODING_TYPE), maxKeys(s3Request));
+      case LIST_OBJECTS_V2:
+        return controller.listObjectsInsideBucketV2(bucketName, s3Request.getParameter("prefix"),
+            s3Request.getParameter("delimiter"), s3Request.getParameter(ENCODING_TYPE),
+            s3Request.getParameter(START_AFTER), maxKeys(s3Request),
+            s3Request.getParameter(CONTINUATION_TOKEN));
+      case LIST_MULTIPART_UPLOADS:
+        return controller.listMultipartUploads(bucketName, s3Request.getParameter("prefix"),
+            s3Request.getParameter(UPLOADS));
+      case DELETE_OBJECTS:
+        return controller.batchDeleteObjects(bucketName,
+            readBody(request, BatchDeleteRequest.class));
+      case GET_OBJECT_TAGGING:
+        return controller.getObjectTagging(bucketName, request);
+      case PUT_OBJECT_TAGGING:
+        return controller.putObjectTagging(bucketName, readBody(request, Tagging.class), request);
+      case COPY_OBJECT:
+        return controller.copyObject(bucketName, objectRef(request), metadataDirective(request),
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION),
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID), request);
+      case UPLOAD_PART_COPY:
+        return controller.copyObjectPart(objectRef(request),
+            range(request, X_AMZ_COPY_SOURCE_RANGE),
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION),
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID), bucketName,
+            s3Request.getParameter(UPLOAD_ID), s3Request.getParameter(PART_NUMBER), request);
+      case CREATE_MULTIPART_UPLOAD:
+        return controller.initiateMultipartUpload(bucketName,
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION),
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID), request);
+      case COMPLETE_MULTIPART_UPLOAD:
+        return controller.completeMultipartUpload(bucketName, s3Request.getParameter(UPLOAD_ID),
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION),
+            request.getHeader(X_AMZ_SERVER_SIDE_ENCRYPTION_AWS_KMS_KEY_ID),
+            readBody(request, CompleteMultipartUploadRequest.class), request);
+      case ABORT_MULTIPART_UPLOAD:
+        return controller.abortMultipartUpload(bucketName, s3Request.getParameter(UPLOAD_ID),
+            request);
+      case LIST_PARTS:
+        return controller.multipartListParts(bucketName, s3Request.getParameter(UPLOAD_ID),
+            request);
+      default:
+        throw new IllegalStateException("Not dispatched: " + operation);
+    }
+  }
+
+  private static Range range(final HttpServletRequest request, final String name)
+      throws ServletRequestBindingException {
+    final String header = request.getHeader(name);
+    try {
+      return header == null ? null : new Range(header);
+    } catch (final IllegalArgumentException e) {
+      throw new ServletRequestBindingException("Invalid " + name + " header", e);
+    }
+  }
+
+  private static ObjectRef objectRef(final HttpServletRequest request)
+      throws ServletRequestBindingException {
+    try {
+      return new ObjectRef(request.getHeader(X_AMZ_COPY_SOURCE));
+    } catch (final IllegalArgumentException e) {
+      throw new ServletRequestBindingException("Invalid " + X_AMZ_COPY_SOURCE + " header", e);
+    }
+  }
+
+  private static MetadataDirective metadataDirective(final HttpServletRequest request)
+      throws ServletRequestBindingException {
+    final String header = request.getHeader(X_AMZ_METADATA_DIRECTIVE);
+    try {
+      return StringUtils.hasText(header)
+          ? MetadataDirective.valueOf(header.trim()) : MetadataDirective.COPY;
+    } catch (final IllegalArgumentException e) {
+      throw new ServletRequestBindingException(
+          "Invalid " + X_AMZ_METADATA_DIRECTIVE + " header", e);
+    }
+  }
+
+  private static List<Tag> tags(final HttpServletRequest request)
+      throws ServletRequestBindingException {
+    final List<String> values = headerValues(request, X_AMZ_TAGGING);
+    if (values == null) {
+      return null;
+    }
+    final List<Tag> tags = new ArrayList<>();
+    try {
+      for (final String value : values) {
+        tags.add(new Tag(value));
+      }
+    } catch (final RuntimeException e) {
+      throw new ServletRequestBindingException("Invalid " + X_AMZ_TAGGING + " header", e);
+    }
+    return tags;
+  }
+
+  private static Integer maxKeys(final S3Request s3Request)
+      throws ServletRequestBindingException {
+    final String value = s3Request.getParameter(MAX_KEYS);
+    try {
+      return StringUtils.hasLength(value) ? Integer.valueOf(value) : 1000;
+    } catch (final NumberFormatException e) {
+      throw new ServletRequestBindingException("Invalid " + MAX_KEYS + " parameter", e);
+    }
+  }
+
+  private <T> T readBody(final HttpServletRequest request, final Class<T> type)
+      throws IOException, ServletRequestBindingException {
+    try {
+      return objectMapper.readValue(request.getInputStream(), type);
+    } catch (final JsonProcessingException e) {
+      throw new ServletRequestBindingException("Can't read " + type.getSimpleName(), e);
+    }
+  }
+
+  /**
+   * Resolves a header like {@code @RequestHeader List<String>}: a single header is split at
+   * commas, repeated headers are taken as they are.
+   */
+  private static List<String> headerValues(final HttpServletRequest request, final String name) {
+    final Enumeration<String> headers = request.getHeaders(name);
+    if (headers == null || !headers.hasMoreElements()) {
+      return null;
+    }
+    final List<String> values = Collections.list(headers);
+    if (values.size() > 1) {
+      return values;
+    }
+    final List<String> split = new ArrayList<>();
+    for (final String value : StringUtils.commaDelimitedListToStringArray(values.get(0))) {
+      split.add(value.trim());
+    }
+    return split;
+  }
+
+  /**
+   * Writes the response like Spring MVC's return value handlers, streaming bodies on the
+   * {@link DownloadExecutor}.
+   */
+  private void write(final ResponseEntity<?> responseEntity, final HttpServletRequest request,
+      final HttpServletResponse response) throws IOException {
+    response.setStatus(responseEntity.getStatusCodeValue());
+    final HttpHeaders headers = responseEntity.getHeaders();
+    final Object body = responseEntity.getBody();
+    final boolean conditional = responseEntity.getStatusCodeValue() == HttpStatus.OK.value()
+        && !(body instanceof StreamingResponseBody)
+        && ("GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod()));
+    for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if (conditional && (ETAG.equalsIgnoreCase(header.getKey())
+          || LAST_MODIFIED.equalsIgnoreCase(header.getKey()))) {
+        continue;
+      }
+      for (final String value : header.getValue()) {
+        if (value != null) {
+          response.addHeader(header.getKey(), value);
+        }
+      }
+    }
+    if (conditional && new ServletWebRequest(request, response)
+        .checkNotModified(headers.getETag(), headers.getLastModified())) {
+      return;
+    }
+    if (body instanceof byte[]) {
+      final byte[] bytes = (byte[]) body;
+      response.setContentLength(bytes.length);
+      response.getOutputStream().write(bytes);
+    } else if (body instanceof StreamingResponseBody) {
+      stream((StreamingResponseBody) body, request, response);
+    } else if (body != null) {
+      if (response.getContentType() == null) {
+        response.setContentType(MediaType.APPLICATION_XML_VALUE);
+      }
+      try {
+        objectMapper.writeValue(response.getOutputStream(), body);
+      } catch (final JsonProcessingException e) {
+        // like with Spring MVC's converter, the response ends with what was written so far
+        LOG.debug("Can't write response", e);
+      }
+    }
+  }
+
+  private void stream(final StreamingResponseBody body, final HttpServletRequest request,
+      final HttpServletResponse response) throws IOException {
+    final AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(0);
+    try {
+      downloadExecutor.execute(() -> {
+        try {
+          body.writeTo(response.getOutputStream());
+          response.flushBuffer();
+        } catch (final IOException | RuntimeException e) {
+          LOG.debug("Download failed", e);
+        } finally {
+          asyncContext.complete();
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      response.reset();
+      write(exceptionHandler.handleRejectedExecution(e), request, response);
+      asyncContext.complete();
+    }
+  }
+}
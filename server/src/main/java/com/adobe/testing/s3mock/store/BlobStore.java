@@ -0,0 +1,247 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed storage for object data.
+ *
+ * <p>Every distinct content is stored exactly once as a blob named after its SHA-256 digest.
+ * Objects refer to their blob through a hard link used as their data file, so the link count of a
+ * blob is its reference count: deleting or overwriting an object only drops its own reference and
+ * never touches data still shared by other objects. Blobs referenced by no object anymore are
+ * removed by a periodic garbage collection.</p>
+ */
+class BlobStore {
+
+  static final String BLOB_FOLDER = ".blobs";
+  private static final String TEMP_FOLDER = "tmp";
+  private static final int LOCK_STRIPES = 64;
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlobStore.class);
+
+  private final Path blobFolder;
+  private final Path tempFolder;
+  private final Object[] locks = new Object[LOCK_STRIPES];
+  private final ScheduledExecutorService garbageCollector;
+
+  /**
+   * Constructs a new {@link BlobStore}.
+   *
+   * @param rootFolder the root folder of the {@link FileStore}, blobs are kept below it.
+   * @param garbageCollectionInterval interval of the orphaned blob collection.
+   */
+  BlobStore(final File rootFolder, final Duration garbageCollectionInterval) {
+    blobFolder = rootFolder.toPath().resolve(BLOB_FOLDER);
+    tempFolder = blobFolder.resolve(TEMP_FOLDER);
+    try {
+      Files.createDirectories(tempFolder);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Can't create blob directory!", e);
+    }
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+
+    garbageCollector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "s3mock-blob-gc");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final long interval = garbageCollectionInterval.toMillis();
+    garbageCollector.scheduleWithFixedDelay(this::collectGarbageQuietly, interval, interval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Checks if the file system holding the given folder supports hard links and link counts, both
+   * are required for reference counting.
+   *
+   * @param folder the folder to check.
+   *
+   * @return true if content-addressed storage can be used in the given folder.
+   */
+  static boolean isSupported(final File folder) {
+    final Path probe = folder.toPath().resolve(".probe" + UUID.randomUUID());
+    final Path link = folder.toPath().resolve(".probe" + UUID.randomUUID());
+    try {
+      Files.createFile(probe);
+      Files.createLink(link, probe);
+      return linkCount(probe) == 2;
+    } catch (final IOException | UnsupportedOperationException e) {
+      LOG.debug("Hard links are not supported in {}", folder, e);
+      return false;
+    } finally {
+      try {
+        Files.deleteIfExists(link);
+        Files.deleteIfExists(probe);
+      } catch (final IOException e) {
+        LOG.debug("Could not delete probe files in {}", folder, e);
+      }
+    }
+  }
+
+  /**
+   * Creates a new, empty file for staging content before it is handed to
+   * {@link #store(Path, String, Path)}. It is located on the same file system as the blobs, so
+   * storing it is a rename.
+   *
+   * @return the path of the temporary file.
+   *
+   * @throws IOException if the file can't be created.
+   */
+  Path createTempFile() throws IOException {
+    return Files.createFile(tempFolder.resolve(UUID.randomUUID().toString()));
+  }
+
+  /**
+   * Stores the given content as blob and links the blob to {@code target}, replacing an existing
+   * file there. If a blob with the same digest exists, the content is dropped and the existing blob
+   * is referenced instead.
+   *
+   * @param source file holding the content, is consumed by this method.
+   * @param sha256 hex encoded SHA-256 digest of the content.
+   * @param target the data file of the object referencing the content.
+   *
+   * @throws IOException if the blob can't be stored or linked.
+   */
+  void store(final Path source, final String sha256, final Path target) throws IOException {
+    final Path blob = blobPath(sha256);
+    synchronized (lockFor(sha256)) {
+      if (Files.exists(blob)) {
+        Files.delete(source);
+      } else {
+        Files.createDirectories(blob.getParent());
+        Files.move(source, blob, ATOMIC_MOVE);
+      }
+      link(blob, target);
+    }
+  }
+
+  /**
+   * Lets {@code target} reference the same content as {@code source} without copying it.
+   *
+   * @param source data file of an existing object.
+   * @param target the data file of the object to reference the content.
+   *
+   * @throws IOException if the link can't be created.
+   */
+  void share(final Path source, final Path target) throws IOException {
+    if (!source.equals(target)) {
+      link(source, target);
+    }
+  }
+
+  /**
+   * Removes all blobs no object refers to anymore.
+   *
+   * @return the number of removed blobs.
+   *
+   * @throws IOException if the blob folder can't be read.
+   */
+  int collectGarbage() throws IOException {
+    int removed = 0;
+    try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(blobFolder,
+        path -> !TEMP_FOLDER.equals(path.getFileName().toString()) && Files.isDirectory(path))) {
+      for (final Path prefix : prefixes) {
+        try (DirectoryStream<Path> blobs = Files.newDirectoryStream(prefix)) {
+          for (final Path blob : blobs) {
+            if (removeIfOrphaned(blob)) {
+              removed++;
+            }
+          }
+        }
+      }
+    }
+    if (removed > 0) {
+      LOG.debug("Removed {} orphaned blobs", removed);
+    }
+    return removed;
+  }
+
+  /**
+   * Stops the garbage collection.
+   */
+  void close() {
+    garbageCollector.shutdownNow();
+  }
+
+  private boolean removeIfOrphaned(final Path blob) throws IOException {
+    synchronized (lockFor(blob.getFileName().toString())) {
+      try {
+        if (linkCount(blob) <= 1) {
+          Files.delete(blob);
+          return true;
+        }
+      } catch (final NoSuchFileException e) {
+        // removed concurrently, nothing to do.
+      }
+      return false;
+    }
+  }
+
+  private void collectGarbageQuietly() {
+    try {
+      collectGarbage();
+    } catch (final IOException | RuntimeException e) {
+      LOG.error("Could not collect orphaned blobs", e);
+    }
+  }
+
+  /**
+   * Creates the link under a unique name first and moves it into place afterwards, so concurrent
+   * writers and readers of {@code target} never observe a partially replaced file.
+   */
+  private void link(final Path existing, final Path target) throws IOException {
+    final Path link = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID());
+    Files.createLink(link, existing);
+    try {
+      Files.move(link, target, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (final IOException e) {
+      Files.deleteIfExists(link);
+      throw e;
+    }
+  }
+
+  private Path blobPath(final String sha256) {
+    return blobFolder.resolve(sha256.substring(0, 2)).resolve(sha256);
+  }
+
+  private Object lockFor(final String sha256) {
+    return locks[Math.floorMod(sha256.hashCode(), LOCK_STRIPES)];
+  }
+
+  private static int linkCount(final Path path) throws IOException {
+    return (Integer) Files.getAttribute(path, "unix:nlink");
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps fixed-size blocks of large objects in memory, for repeated ranged reads.
+ *
+ * <p>Blocks are held in direct buffers and keyed by object path, object version and block index,
+ * so blocks of an overwritten object are never served for the new version. They are not removed
+ * eagerly, but age out least recently used first once the cache exceeds its size. Concurrent
+ * misses on the same block wait for a single load. When a read continues where the previous block
+ * ended, the following blocks can be loaded ahead in the background. If the direct memory is
+ * exhausted, a missing block is served from the heap without caching it.</p>
+ */
+class BlockCache implements MeterBinder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlockCache.class);
+
+  /**
+   * Reads a block of an object, called on a cache miss.
+   */
+  interface Loader {
+
+    /**
+     * Reads object data into the given buffer, until it is full or the object ends.
+     *
+     * @param position the offset in the object of the first byte to read.
+     * @param target the buffer to read into.
+     *
+     * @throws IOException if the data can't be read.
+     */
+    void read(long position, ByteBuffer target) throws IOException;
+  }
+
+  private final long maxSize;
+  private final int blockSize;
+  private final int readAhead;
+
+  /**
+   * Cached and loading blocks in access order, guarded by itself.
+   */
+  private final LinkedHashMap<BlockKey, CompletableFuture<ByteBuffer>> blocks =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+
+  /**
+   * Loads blocks ahead of sequential reads, null if read-ahead is disabled.
+   */
+  private final ExecutorService readAheadExecutor;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder bytesServed = new LongAdder();
+
+  /**
+   * Constructs a new {@link BlockCache}.
+   *
+   * @param maxSize total size of the cached blocks.
+   * @param blockSize size of a block.
+   * @param readAhead number of blocks loaded ahead of sequential reads, zero to disable.
+   */
+  BlockCache(final long maxSize, final int blockSize, final int readAhead) {
+    this.maxSize = maxSize;
+    this.blockSize = blockSize;
+    this.readAhead = readAhead;
+    readAheadExecutor = readAhead > 0
+        ? Executors.newFixedThreadPool(2, runnable -> {
+          final Thread thread = new Thread(runnable, "s3mock-block-read-ahead");
+          thread.setDaemon(true);
+          return thread;
+        })
+        : null;
+  }
+
+  /**
+   * Writes a range of the data of an object to the given stream, block by block, loading missing
+   * blocks into the cache.
+   *
+   * @param key the path of the object.
+   * @param version identifies the version of the object data, as found in its metadata.
+   * @param objectSize the size of the object data.
+   * @param offset the offset of the first byte to write.
+   * @param length the number of bytes to write, capped at the end of the object.
+   * @param loader reads missing blocks of the object.
+   * @param outputStream the stream to write to.
+   *
+   * @throws IOException if a block can't be loaded or written.
+   */
+  void transferTo(final String key, final String version, final long objectSize,
+      final long offset, final long length, final Loader loader,
+      final OutputStream outputStream) throws IOException {
+    final long end = offset + Math.min(length, objectSize - offset);
+    final WritableByteChannel target = Channels.newChannel(outputStream);
+    long position = offset;
+    while (position < end) {
+      final long index = position / blockSize;
+      final BlockKey blockKey = blockKey(key, version, index, objectSize);
+      final ByteBuffer block = get(blockKey, loader).duplicate();
+      final int blockOffset = (int) (position - index * blockSize);
+      final int count = (int) Math.min(block.limit() - blockOffset, end - position);
+      if (count <= 0) {
+        throw new IOException("Block " + index + " of " + key + " ends unexpectedly");
+      }
+      if (position > offset || isCached(blockKey(key, version, index - 1, objectSize))) {
+        // the read continues a previous one or crossed into the next block
+        loadAhead(blockKey, objectSize, loader);
+      }
+      block.limit(blockOffset + count);
+      block.position(blockOffset);
+      bytesServed.add(count);
+      while (block.hasRemaining()) {
+        target.write(block);
+      }
+      position += count;
+    }
+  }
+
+  /**
+   * Removes all blocks from the cache, because the store was reset.
+   */
+  void clear() {
+    synchronized (blocks) {
+      blocks.clear();
+      size = 0;
+    }
+  }
+
+  /**
+   * Stops loading blocks ahead.
+   */
+  void close() {
+    if (readAheadExecutor != null) {
+      readAheadExecutor.shutdownNow();
+    }
+  }
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+    FunctionCounter.builder("s3mock.block.cache.requests", hits, LongAdder::doubleValue)
+        .tag("result", "hit")
+        .description("Block reads served from the block cache")
+        .register(registry);
+    FunctionCounter.builder("s3mock.block.cache.requests", misses, LongAdder::doubleValue)
+        .tag("result", "miss")
+        .description("Block reads loading the block into the block cache")
+        .register(registry);
+    FunctionCounter.builder("s3mock.block.cache.served", bytesServed, LongAdder::doubleValue)
+        .baseUnit("bytes")
+        .description("Object data served from the block cache")
+        .register(registry);
+    Gauge.builder("s3mock.block.cache.size", this, BlockCache::cachedBytes)
+        .baseUnit("bytes")
+        .description("Object data held in the block cache")
+        .register(registry);
+  }
+
+  double cachedBytes() {
+    synchronized (blocks) {
+      return size;
+    }
+  }
+
+  private ByteBuffer get(final BlockKey blockKey, final Loader loader) throws IOException {
+    final CompletableFuture<ByteBuffer> load = new CompletableFuture<>();
+    final CompletableFuture<ByteBuffer> cached = putIfAbsent(blockKey, load);
+    if (cached != null) {
+      hits.increment();
+      return await(cached);
+    }
+    misses.increment();
+    load(blockKey, loader, load);
+    return await(load);
+  }
+
+  private void loadAhead(final BlockKey blockKey, final long objectSize, final Loader loader) {
+    if (readAheadExecutor == null) {
+      return;
+    }
+    for (long index = blockKey.index + 1;
+        index <= blockKey.index + readAhead && index * blockSize < objectSize; index++) {
+      final BlockKey next = blockKey(blockKey.key, blockKey.version, index, objectSize);
+      final CompletableFuture<ByteBuffer> load = new CompletableFuture<>();
+      if (putIfAbsent(next, load) == null) {
+        try {
+          readAheadExecutor.execute(() -> load(next, loader, load));
+        } catch (final RejectedExecutionException e) {
+          load.cancel(false);
+          remove(next, load);
+        }
+      }
+    }
+  }
+
+  private boolean isCached(final BlockKey blockKey) {
+    synchronized (blocks) {
+      return blocks.containsKey(blockKey);
+    }
+  }
+
+  private void load(final BlockKey blockKey, final Loader loader,
+      final CompletableFuture<ByteBuffer> load) {
+    final ByteBuffer direct = DirectMemory.allocate(blockKey.length);
+    final ByteBuffer block = direct != null ? direct : ByteBuffer.allocate(blockKey.length);
+    try {
+      loader.read(blockKey.index * blockSize, block);
+      block.flip();
+      if (direct == null) {
+        // served once from the heap to those waiting for it, but not cached
+        remove(blockKey, load);
+      }
+      load.complete(block);
+    } catch (final IOException | RuntimeException e) {
+      LOG.debug("Block {} of {} can not be read", blockKey.index, blockKey.key, e);
+      remove(blockKey, load);
+      load.completeExceptionally(e);
+    }
+  }
+
+  private CompletableFuture<ByteBuffer> putIfAbsent(final BlockKey blockKey,
+      final CompletableFuture<ByteBuffer> load) {
+    synchronized (blocks) {
+      final CompletableFuture<ByteBuffer> cached = blocks.get(blockKey);
+      if (cached != null) {
+        return cached;
+      }
+      blocks.put(blockKey, load);
+      size += blockKey.length;
+      final Iterator<Map.Entry<BlockKey, CompletableFuture<ByteBuffer>>> eldest =
+          blocks.entrySet().iterator();
+      while (size > maxSize && eldest.hasNext()) {
+        final Map.Entry<BlockKey, CompletableFuture<ByteBuffer>> entry = eldest.next();
+        if (entry.getKey().equals(blockKey)) {
+          continue;
+        }
+        size -= entry.getKey().length;
+        eldest.remove();
+      }
+      return null;
+    }
+  }
+
+  private void remove(final BlockKey blockKey, final CompletableFuture<ByteBuffer> load) {
+    synchronized (blocks) {
+      if (blocks.get(blockKey) == load) {
+        blocks.remove(blockKey);
+        size -= blockKey.length;
+      }
+    }
+  }
+
+  private BlockKey blockKey(final String key, final String version, final long index,
+      final long objectSize) {
+    final int length = (int) Math.max(0, Math.min(blockSize, objectSize - index * blockSize));
+    return new BlockKey(key, version, index, length);
+  }
+
+  private static ByteBuffer await(final CompletableFuture<ByteBuffer> load) throws IOException {
+    try {
+      return load.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for object data", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static final class BlockKey {
+
+    private final String key;
+    private final String version;
+    private final long index;
+    private final int length;
+
+    private BlockKey(final String key, final String version, final long index,
+        final int length) {
+      this.key = key;
+      this.version = version;
+      this.index = index;
+      this.length = length;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      final BlockKey that = (BlockKey) o;
+      return index == that.index && key.equals(that.key) && version.equals(that.version);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(key, version, index);
+    }
+  }
+}
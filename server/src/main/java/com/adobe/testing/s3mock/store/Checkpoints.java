@@ -0,0 +1,304 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Named snapshots of the buckets of a {@link FileStore}, kept below the root folder, and the
+ * rollbacks to them and resets of the store.
+ *
+ * <p>A checkpoint mirrors the folders of the store and hard links its files, so taking and
+ * restoring one takes time in the number of files, not in their size. This only works because
+ * the store never modifies a file it wrote in place: it replaces it by a new one, leaving the
+ * linked content unchanged. If the file system doesn't support hard links, files are copied.</p>
+ *
+ * <p>Small objects packed into segments of the {@link SegmentStore} are captured by sealing the
+ * current segment, which is never appended to afterwards, and linking all segments into the
+ * checkpoint. A rollback replaces the segments by the ones of the checkpoint, a reset removes
+ * them.</p>
+ *
+ * <p>Checkpoints, rollbacks and resets are guarded by the {@link Namespaces} and meant to be used
+ * between tests, while no requests are in flight.</p>
+ */
+class Checkpoints {
+
+  static final String CHECKPOINT_FOLDER = ".checkpoints";
+
+  private static final Logger LOG = LoggerFactory.getLogger(Checkpoints.class);
+
+  private final FileStore fileStore;
+  private final File rootFolder;
+  private final Path checkpointFolder;
+  private final Namespaces namespaces;
+  private final SegmentStore segmentStore;
+  private final DirectoryReaper reaper;
+  private final boolean deleteOnExit;
+  private volatile boolean linksSupported = true;
+
+  /**
+   * Constructs a new {@link Checkpoints}.
+   *
+   * @param fileStore the store to take checkpoints of.
+   * @param rootFolder the root folder of the {@link FileStore}, checkpoints are kept below it.
+   * @param namespaces the namespaces of the store.
+   * @param segmentStore the segments of the store, or null if small objects aren't packed.
+   * @param reaper removes the folders of replaced checkpoints and of rolled back buckets.
+   * @param deleteOnExit whether checkpoints and restored files are deleted when the JVM exits.
+   */
+  Checkpoints(final FileStore fileStore, final File rootFolder, final Namespaces namespaces,
+      final SegmentStore segmentStore, final DirectoryReaper reaper, final boolean deleteOnExit) {
+    this.fileStore = fileStore;
+    this.rootFolder = rootFolder;
+    checkpointFolder = new File(rootFolder, CHECKPOINT_FOLDER).toPath();
+    this.namespaces = namespaces;
+    this.segmentStore = segmentStore;
+    this.reaper = reaper;
+    this.deleteOnExit = deleteOnExit;
+  }
+
+  /**
+   * Takes a checkpoint, replacing an existing one of the same name. Multipart uploads in progress
+   * are left out.
+   *
+   * @param name the name of the checkpoint.
+   *
+   * @return true if the checkpoint was created, false if an existing one was replaced.
+   *
+   * @throws IOException if the checkpoint can't be written.
+   */
+  boolean take(final String name) throws IOException {
+    synchronized (namespaces) {
+      final boolean exists = exists(name);
+      reaper.reap(folder(name));
+      final Path checkpoint = create(name);
+      final Set<String> uploadIds = fileStore.uploadIds();
+      for (final File folder : storeFolders()) {
+        mirror(folder.toPath(), checkpoint.resolve(folder.getName()),
+            dir -> uploadIds.contains(dir.getFileName().toString()));
+      }
+      if (segmentStore != null) {
+        segmentStore.seal();
+        mirror(rootFolder.toPath().resolve(SegmentStore.SEGMENT_FOLDER),
+            checkpoint.resolve(SegmentStore.SEGMENT_FOLDER), dir -> false);
+      }
+      return !exists;
+    }
+  }
+
+  /**
+   * Returns the store to the state of a checkpoint. The checkpoint is kept.
+   *
+   * @param name the name of the checkpoint.
+   *
+   * @return true if the store was rolled back, false if the checkpoint doesn't exist.
+   *
+   * @throws IOException if the checkpoint can't be restored.
+   */
+  boolean rollback(final String name) throws IOException {
+    synchronized (namespaces) {
+      if (!exists(name)) {
+        return false;
+      }
+      clear();
+      final Path checkpoint = folder(name);
+      final File[] folders = checkpoint.toFile().listFiles(folder -> folder.isDirectory()
+          && !SegmentStore.SEGMENT_FOLDER.equals(folder.getName()));
+      for (final File folder : folders != null ? folders : new File[0]) {
+        mirror(folder.toPath(), new File(rootFolder, folder.getName()).toPath(), dir -> false);
+      }
+      if (segmentStore != null) {
+        final Path segments = checkpoint.resolve(SegmentStore.SEGMENT_FOLDER);
+        segmentStore.replace(segmentFolder -> {
+          reaper.reap(segmentFolder);
+          if (Files.isDirectory(segments)) {
+            mirror(segments, segmentFolder, dir -> false);
+          }
+        });
+      }
+      namespaces.load();
+      fileStore.discardAll();
+    }
+    return true;
+  }
+
+  /**
+   * Removes all buckets, namespaces and segments. Checkpoints are kept.
+   *
+   * @throws IOException if a folder can't be removed.
+   */
+  void reset() throws IOException {
+    synchronized (namespaces) {
+      clear();
+      if (segmentStore != null) {
+        segmentStore.replace(reaper::reap);
+      }
+      fileStore.discardAll();
+    }
+  }
+
+  /**
+   * Checks if a checkpoint exists.
+   *
+   * @param name the name of the checkpoint.
+   *
+   * @return true if the checkpoint exists.
+   */
+  boolean exists(final String name) {
+    return Namespaces.isValidName(name) && Files.isDirectory(folder(name));
+  }
+
+  /**
+   * Lists the checkpoints.
+   *
+   * @return the names of the checkpoints.
+   */
+  Set<String> list() {
+    final Set<String> names = new TreeSet<>();
+    final File[] folders = checkpointFolder.toFile().listFiles(File::isDirectory);
+    if (folders != null) {
+      for (final File folder : folders) {
+        names.add(folder.getName());
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Drops a checkpoint, its files are deleted in the background.
+   *
+   * @param name the name of the checkpoint.
+   *
+   * @return true if the checkpoint was dropped, false if it doesn't exist.
+   *
+   * @throws IOException if the checkpoint folder can't be removed.
+   */
+  boolean drop(final String name) throws IOException {
+    synchronized (namespaces) {
+      if (!exists(name)) {
+        return false;
+      }
+      reaper.reap(folder(name));
+    }
+    return true;
+  }
+
+  private Path folder(final String name) {
+    return checkpointFolder.resolve(name);
+  }
+
+  private Path create(final String name) throws IOException {
+    if (!Files.isDirectory(checkpointFolder)) {
+      Files.createDirectories(checkpointFolder);
+      if (deleteOnExit) {
+        checkpointFolder.toFile().deleteOnExit();
+      }
+    }
+    final Path folder = Files.createDirectory(folder(name));
+    if (deleteOnExit) {
+      folder.toFile().deleteOnExit();
+    }
+    return folder;
+  }
+
+  /**
+   * Returns the bucket folders of the default namespace and the folder holding the other
+   * namespaces.
+   */
+  private File[] storeFolders() {
+    final File[] folders = rootFolder.listFiles(folder -> folder.isDirectory()
+        && (!folder.getName().startsWith(FileStore.INTERNAL_FOLDER_PREFIX)
+        || Namespaces.NAMESPACE_FOLDER.equals(folder.getName())));
+    return folders != null ? folders : new File[0];
+  }
+
+  /**
+   * Removes all buckets of all namespaces.
+   */
+  private void clear() throws IOException {
+    for (final File folder : storeFolders()) {
+      reaper.reap(folder.toPath());
+    }
+    namespaces.clear();
+  }
+
+  /**
+   * Mirrors a folder tree, linking its files.
+   *
+   * @param source the folder to mirror.
+   * @param target the folder to create, must not exist.
+   * @param skip folders below {@code source} left out of the mirror.
+   *
+   * @throws IOException if the tree can't be mirrored.
+   */
+  private void mirror(final Path source, final Path target, final Predicate<Path> skip)
+      throws IOException {
+    Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+          throws IOException {
+        if (!dir.equals(source) && skip.test(dir)) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        final Path folder = Files.createDirectory(target.resolve(source.relativize(dir)));
+        if (deleteOnExit) {
+          folder.toFile().deleteOnExit();
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+          throws IOException {
+        final Path copy = target.resolve(source.relativize(file));
+        link(file, copy);
+        if (deleteOnExit) {
+          copy.toFile().deleteOnExit();
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void link(final Path existing, final Path target) throws IOException {
+    if (linksSupported) {
+      try {
+        Files.createLink(target, existing);
+        return;
+      } catch (final UnsupportedOperationException | IOException e) {
+        if (Files.exists(target) || !Files.exists(existing)) {
+          throw e;
+        }
+        LOG.warn("Hard links are not supported, copying files into checkpoints instead.", e);
+        linksSupported = false;
+      }
+    }
+    Files.copy(existing, target, StandardCopyOption.COPY_ATTRIBUTES);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allocation of the direct buffers held by the caches.
+ *
+ * <p>Direct buffers count against {@code -XX:MaxDirectMemorySize}, which defaults to the maximum
+ * heap size, and evicted buffers are only freed once garbage collected. Cache budgets are therefore
+ * capped at a share of that limit, and a failed allocation is served from the heap without caching
+ * instead of failing the read.</p>
+ */
+final class DirectMemory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DirectMemory.class);
+
+  private DirectMemory() {
+    // utility class
+  }
+
+  /**
+   * Returns the maximum amount of direct memory the JVM allocates.
+   */
+  static long limit() {
+    try {
+      final String value = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+          .getVMOption("MaxDirectMemorySize").getValue();
+      final long limit = Long.parseLong(value);
+      if (limit > 0) {
+        return limit;
+      }
+    } catch (final RuntimeException | LinkageError e) {
+      LOG.debug("Can't determine MaxDirectMemorySize, assuming the maximum heap size.", e);
+    }
+    return Runtime.getRuntime().maxMemory();
+  }
+
+  /**
+   * Allocates a direct buffer to be cached.
+   *
+   * @param capacity the capacity of the buffer.
+   *
+   * @return the buffer, or null if the direct memory is exhausted.
+   */
+  static ByteBuffer allocate(final int capacity) {
+    try {
+      return ByteBuffer.allocateDirect(capacity);
+    } catch (final OutOfMemoryError e) {
+      LOG.debug("Direct memory is exhausted, reading {} bytes without caching them.", capacity);
+      return null;
+    }
+  }
+}
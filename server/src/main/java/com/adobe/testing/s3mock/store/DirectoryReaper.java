@@ -0,0 +1,144 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes directory trees in the background.
+ *
+ * <p>A directory to remove is renamed into a trash folder below the root folder first, which takes
+ * constant time no matter how many files it holds, and is deleted by a background thread
+ * afterwards. Trees left in the trash by an earlier run are deleted on startup.</p>
+ */
+class DirectoryReaper {
+
+  static final String TRASH_FOLDER = ".trash";
+
+  private static final Logger LOG = LoggerFactory.getLogger(DirectoryReaper.class);
+
+  private final Path trashFolder;
+  private final ExecutorService executor;
+  private final boolean deleteOnExit;
+
+  /**
+   * Constructs a new {@link DirectoryReaper}.
+   *
+   * @param rootFolder the root folder of the {@link FileStore}, the trash is kept below it.
+   * @param deleteOnExit whether the trash folder is deleted when the JVM exits.
+   */
+  DirectoryReaper(final File rootFolder, final boolean deleteOnExit) {
+    trashFolder = rootFolder.toPath().resolve(TRASH_FOLDER);
+    this.deleteOnExit = deleteOnExit;
+    executor = Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "s3mock-reaper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    if (Files.isDirectory(trashFolder)) {
+      try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(trashFolder)) {
+        for (final Path leftover : leftovers) {
+          executor.execute(() -> delete(leftover));
+        }
+      } catch (final IOException e) {
+        LOG.warn("Can't list trash folder \"{}\".", trashFolder, e);
+      }
+    }
+  }
+
+  /**
+   * Removes a directory tree. It is gone from its location on return, its files are deleted
+   * later.
+   *
+   * @param directory the directory to remove.
+   *
+   * @throws IOException if the directory can't be moved to the trash nor deleted.
+   */
+  void reap(final Path directory) throws IOException {
+    if (!Files.exists(directory)) {
+      return;
+    }
+    final Path trash = trashFolder.resolve(UUID.randomUUID().toString());
+    try {
+      if (!Files.isDirectory(trashFolder)) {
+        Files.createDirectories(trashFolder);
+        if (deleteOnExit) {
+          trashFolder.toFile().deleteOnExit();
+        }
+      }
+      Files.move(directory, trash, ATOMIC_MOVE);
+    } catch (final IOException e) {
+      LOG.debug("Can't move \"{}\" to the trash, deleting it in place.", directory, e);
+      FileUtils.deleteDirectory(directory.toFile());
+      return;
+    }
+    executor.execute(() -> delete(trash));
+  }
+
+  /**
+   * Waits until all trees removed so far are deleted. Visible for testing.
+   */
+  boolean awaitIdle(final long timeout, final TimeUnit unit) throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (isNotEmpty()) {
+      if (System.nanoTime() > deadline) {
+        return false;
+      }
+      Thread.sleep(10);
+    }
+    return true;
+  }
+
+  private boolean isNotEmpty() {
+    if (!Files.isDirectory(trashFolder)) {
+      return false;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(trashFolder)) {
+      return stream.iterator().hasNext();
+    } catch (final IOException e) {
+      return true;
+    }
+  }
+
+  /**
+   * Stops deleting. Trees not deleted yet stay in the trash until the next start.
+   */
+  void close() {
+    executor.shutdownNow();
+  }
+
+  private static void delete(final Path directory) {
+    try {
+      FileUtils.deleteDirectory(directory.toFile());
+    } catch (final IOException e) {
+      LOG.warn("Can't delete \"{}\".", directory, e);
+    }
+  }
+}
@@ -16,18 +16,33 @@
 
 package com.adobe.testing.s3mock.store;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+/**
+ * Configures the store, imported by the {@link com.adobe.testing.s3mock.S3MockApplication}.
+ */
 @Configuration
 @EnableConfigurationProperties(DomainProperties.class)
-class DomainConfiguration {
+public class DomainConfiguration {
 
   @Bean
   FileStore fileStore(DomainProperties properties) {
-    return new FileStore(properties.getRoot(), properties.isRetainFilesOnExit(),
-        properties.getInitialBuckets());
+    return new FileStore(properties);
+  }
+
+  @Bean
+  MeterBinder cacheMetrics(FileStore fileStore) {
+    return registry -> {
+      if (fileStore.objectCache() != null) {
+        fileStore.objectCache().bindTo(registry);
+      }
+      if (fileStore.blockCache() != null) {
+        fileStore.blockCache().bindTo(registry);
+      }
+    };
   }
 
   @Bean
@@ -16,13 +16,20 @@
 
 package com.adobe.testing.s3mock.store;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
+/**
+ * Configures the {@link FileStore}, bound by the {@link DomainConfiguration}, or without Spring by
+ * the {@link com.adobe.testing.s3mock.EmbeddedS3Mock}.
+ */
 @ConfigurationProperties("com.adobe.testing.s3mock.domain")
-class DomainProperties {
+public class DomainProperties {
 
   /**
    * Property.
@@ -41,6 +48,86 @@ class DomainProperties {
    */
   private List<String> initialBuckets;
 
+  /**
+   * Property name for passing a comma separated list of directories, or zip or tar archives of
+   * them, to import at startup: their top-level directories become buckets, the files below them
+   * objects. See {@link FixtureImporter}.
+   */
+  private List<String> fixtures = new ArrayList<>();
+
+  /**
+   * Property name for storing object data content-addressed: identical content is stored only
+   * once and shared between all objects holding it.
+   */
+  private boolean contentAddressedStorage;
+
+  /**
+   * Interval in which blobs no longer referenced by any object are removed, if
+   * {@link #contentAddressedStorage} is enabled.
+   */
+  private Duration blobGarbageCollectionInterval = Duration.ofMinutes(1);
+
+  /**
+   * Property name for writing multipart upload parts directly into the object data at their final
+   * offsets, inferred from the size of part 1.
+   */
+  private boolean positionalMultipartUploads;
+
+  /**
+   * Property name for keeping completed multipart uploads as their parts, read through a manifest,
+   * instead of concatenating them.
+   */
+  private boolean multipartManifests;
+
+  /**
+   * Property name for packing the data of objects up to this size into shared segment files
+   * instead of a data file per object. Packing is disabled if zero.
+   */
+  private DataSize packingThreshold = DataSize.ofBytes(0);
+
+  /**
+   * Size at which a new segment file is started, if {@link #packingThreshold} is set.
+   */
+  private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+  /**
+   * Interval in which segment files mostly holding overwritten or deleted data are compacted.
+   */
+  private Duration compactionInterval = Duration.ofMinutes(1);
+
+  /**
+   * Property name for keeping the data of small objects in memory, up to this total size. The
+   * cache is disabled if zero.
+   */
+  private DataSize objectCacheSize = DataSize.ofBytes(0);
+
+  /**
+   * Size up to which objects are cached, if {@link #objectCacheSize} is set.
+   */
+  private DataSize objectCacheMaxObjectSize = DataSize.ofMegabytes(1);
+
+  /**
+   * Property name for keeping blocks of objects read in ranges in memory, up to this total size.
+   * The cache is disabled if zero.
+   */
+  private DataSize blockCacheSize = DataSize.ofBytes(0);
+
+  /**
+   * Size of the blocks cached, if {@link #blockCacheSize} is set.
+   */
+  private DataSize blockCacheBlockSize = DataSize.ofMegabytes(1);
+
+  /**
+   * Number of blocks loaded ahead of sequential ranged reads, if {@link #blockCacheSize} is set.
+   */
+  private int blockCacheReadAhead;
+
+  /**
+   * Property name for remembering this many keys per bucket found missing, so repeated lookups of
+   * them need no file system access. Disabled if zero.
+   */
+  private int negativeLookupCacheSize;
+
   public List<String> getInitialBuckets() {
     return initialBuckets;
   }
@@ -49,6 +136,14 @@ class DomainProperties {
     this.initialBuckets = initialBuckets;
   }
 
+  public List<String> getFixtures() {
+    return fixtures;
+  }
+
+  public void setFixtures(List<String> fixtures) {
+    this.fixtures = fixtures;
+  }
+
   public boolean isRetainFilesOnExit() {
     return retainFilesOnExit;
   }
@@ -72,4 +167,108 @@ class DomainProperties {
   public void setValidKmsKeys(Set<String> validKmsKeys) {
     this.validKmsKeys = validKmsKeys;
   }
+
+  public boolean isContentAddressedStorage() {
+    return contentAddressedStorage;
+  }
+
+  public void setContentAddressedStorage(boolean contentAddressedStorage) {
+    this.contentAddressedStorage = contentAddressedStorage;
+  }
+
+  public Duration getBlobGarbageCollectionInterval() {
+    return blobGarbageCollectionInterval;
+  }
+
+  public void setBlobGarbageCollectionInterval(Duration blobGarbageCollectionInterval) {
+    this.blobGarbageCollectionInterval = blobGarbageCollectionInterval;
+  }
+
+  public boolean isPositionalMultipartUploads() {
+    return positionalMultipartUploads;
+  }
+
+  public void setPositionalMultipartUploads(boolean positionalMultipartUploads) {
+    this.positionalMultipartUploads = positionalMultipartUploads;
+  }
+
+  public boolean isMultipartManifests() {
+    return multipartManifests;
+  }
+
+  public void setMultipartManifests(boolean multipartManifests) {
+    this.multipartManifests = multipartManifests;
+  }
+
+  public DataSize getPackingThreshold() {
+    return packingThreshold;
+  }
+
+  public void setPackingThreshold(DataSize packingThreshold) {
+    this.packingThreshold = packingThreshold;
+  }
+
+  public DataSize getSegmentSize() {
+    return segmentSize;
+  }
+
+  public void setSegmentSize(DataSize segmentSize) {
+    this.segmentSize = segmentSize;
+  }
+
+  public Duration getCompactionInterval() {
+    return compactionInterval;
+  }
+
+  public void setCompactionInterval(Duration compactionInterval) {
+    this.compactionInterval = compactionInterval;
+  }
+
+  public DataSize getObjectCacheSize() {
+    return objectCacheSize;
+  }
+
+  public void setObjectCacheSize(DataSize objectCacheSize) {
+    this.objectCacheSize = objectCacheSize;
+  }
+
+  public DataSize getObjectCacheMaxObjectSize() {
+    return objectCacheMaxObjectSize;
+  }
+
+  public void setObjectCacheMaxObjectSize(DataSize objectCacheMaxObjectSize) {
+    this.objectCacheMaxObjectSize = objectCacheMaxObjectSize;
+  }
+
+  public DataSize getBlockCacheSize() {
+    return blockCacheSize;
+  }
+
+  public void setBlockCacheSize(DataSize blockCacheSize) {
+    this.blockCacheSize = blockCacheSize;
+  }
+
+  public DataSize getBlockCacheBlockSize() {
+    return blockCacheBlockSize;
+  }
+
+  public void setBlockCacheBlockSize(DataSize blockCacheBlockSize) {
+    this.blockCacheBlockSize = blockCacheBlockSize;
+  }
+
+  public int getBlockCacheReadAhead() {
+    return blockCacheReadAhead;
+  }
+
+  public void setBlockCacheReadAhead(int blockCacheReadAhead) {
+    this.blockCacheReadAhead = blockCacheReadAhead;
+  }
+
+  public int getNegativeLookupCacheSize() {
+    return negativeLookupCacheSize;
+  }
+
+  public void setNegativeLookupCacheSize(int negativeLookupCacheSize) {
+    this.negativeLookupCacheSize = negativeLookupCacheSize;
+  }
 }
@@ -32,6 +32,7 @@ import com.adobe.testing.s3mock.dto.Tag;
 import com.adobe.testing.s3mock.util.AwsChunkedDecodingInputStream;
 import com.adobe.testing.s3mock.util.DigestUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -39,15 +40,25 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -56,13 +67,19 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
@@ -71,6 +88,7 @@ import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.unit.DataSize;
 
 /**
  * S3 Mock file store.
@@ -85,6 +103,17 @@ public class FileStore {
   private static final String DATA_FILE = "fileData";
   private static final String PART_SUFFIX = ".part";
   private static final String DEFAULT_CONTENT_TYPE = "binary/octet-stream";
+  static final String INTERNAL_FOLDER_PREFIX = ".";
+  /**
+   * Direct buffer per thread that parts are copied through, read from the source, digested and
+   * written to the part file in one pass.
+   */
+  private static final ThreadLocal<ByteBuffer> COPY_BUFFER =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1024 * 1024));
+  /**
+   * Packed objects are buffered in memory while they are stored.
+   */
+  private static final long MAX_PACKING_THRESHOLD = 16 * 1024 * 1024;
 
   private static final Logger LOG = LoggerFactory.getLogger(FileStore.class);
 
@@ -95,17 +124,217 @@ public class FileStore {
 
   private final Map<String, MultipartUploadInfo> uploadIdToInfo = new ConcurrentHashMap<>();
 
+  /**
+   * The namespaces other than the default one, see {@link NamespaceContext}.
+   */
+  private final Namespaces namespaces;
+
+  private final DirectoryReaper reaper;
+
+  private final Checkpoints checkpoints;
+
+  private final List<String> initialBuckets;
+
+  private final SharedFileChannels sourceChannels = new SharedFileChannels();
+
+  /**
+   * Stores object data content-addressed if enabled, null otherwise.
+   */
+  private final BlobStore blobStore;
+
+  private final boolean positionalMultipartUploads;
+
+  private final boolean multipartManifests;
+
+  /**
+   * Packs the data of small objects into segments if enabled, null otherwise. Also kept if
+   * packing was enabled in an earlier run, so packed objects stay readable.
+   */
+  private final SegmentStore segmentStore;
+
+  private final long packingThreshold;
+
+  /**
+   * Keeps the data of small objects in memory if enabled, null otherwise.
+   */
+  private final ObjectCache objectCache;
+
+  /**
+   * Keeps blocks of objects read in ranges in memory if enabled, null otherwise.
+   */
+  private final BlockCache blockCache;
+
+  /**
+   * Remembers keys found missing if enabled, null otherwise.
+   */
+  private final NegativeLookupCache negativeLookups;
+
+  /**
+   * Serializes metadata updates of an object, striped by object folder.
+   */
+  private final Object[] objectLocks = new Object[64];
+
   /**
    * Constructs a new {@link FileStore}.
    *
    * @param rootDirectory The directory to use. If omitted, a temp directory will be used.
    */
   public FileStore(String rootDirectory, boolean retainFilesOnExit, List<String> initialBuckets) {
-    rootFolder = createRootFolder(rootDirectory);
-    this.retainFilesOnExit = retainFilesOnExit;
+    this(domainProperties(rootDirectory, retainFilesOnExit, initialBuckets));
+  }
+
+  /**
+   * Constructs a new {@link FileStore} from the given {@link DomainProperties}.
+   *
+   * @param properties the store configuration.
+   */
+  public FileStore(final DomainProperties properties) {
+    rootFolder = createRootFolder(properties.getRoot());
+    this.retainFilesOnExit = properties.isRetainFilesOnExit();
     LOG.info("Using \"{}\" as root folder. Will retain files on exit: {}",
         rootFolder.getAbsolutePath(), retainFilesOnExit);
+    blobStore = createBlobStore(properties);
+    positionalMultipartUploads = properties.isPositionalMultipartUploads();
+    multipartManifests = properties.isMultipartManifests();
+    for (int i = 0; i < objectLocks.length; i++) {
+      objectLocks[i] = new Object();
+    }
+    packingThreshold = properties.getPackingThreshold().toBytes();
+    segmentStore = createSegmentStore(properties);
+    objectCache = createObjectCache(properties);
+    blockCache = createBlockCache(properties);
+    negativeLookups = properties.getNegativeLookupCacheSize() > 0
+        ? new NegativeLookupCache(properties.getNegativeLookupCacheSize())
+        : null;
+    reaper = new DirectoryReaper(rootFolder, !retainFilesOnExit);
+    namespaces = new Namespaces(rootFolder, reaper, !retainFilesOnExit);
+    checkpoints =
+        new Checkpoints(this, rootFolder, namespaces, segmentStore, reaper, !retainFilesOnExit);
+    initialBuckets = new ArrayList<>(properties.getInitialBuckets());
     initialBuckets.forEach(this::createBucket);
+    if (properties.getFixtures() != null) {
+      for (final String fixture : properties.getFixtures()) {
+        try {
+          importFixture(Paths.get(fixture));
+        } catch (final IOException e) {
+          throw new IllegalStateException("Can't import fixture " + fixture, e);
+        }
+      }
+    }
+  }
+
+  private static DomainProperties domainProperties(final String rootDirectory,
+      final boolean retainFilesOnExit, final List<String> initialBuckets) {
+    final DomainProperties properties = new DomainProperties();
+    properties.setRoot(rootDirectory);
+    properties.setRetainFilesOnExit(retainFilesOnExit);
+    properties.setInitialBuckets(initialBuckets);
+    return properties;
+  }
+
+  private BlobStore createBlobStore(final DomainProperties properties) {
+    if (!properties.isContentAddressedStorage()) {
+      return null;
+    }
+    if (!BlobStore.isSupported(rootFolder)) {
+      LOG.warn("Content-addressed storage requires hard links, which are not supported in \"{}\"."
+          + " Storing a full copy of every object instead.", rootFolder.getAbsolutePath());
+      return null;
+    }
+    LOG.info("Storing object data content-addressed.");
+    return new BlobStore(rootFolder, properties.getBlobGarbageCollectionInterval());
+  }
+
+  private SegmentStore createSegmentStore(final DomainProperties properties) {
+    if (packingThreshold <= 0 && !new File(rootFolder, SegmentStore.SEGMENT_FOLDER).exists()) {
+      return null;
+    }
+    if (packingThreshold >= MAX_PACKING_THRESHOLD) {
+      throw new IllegalStateException("Packing threshold must be less than "
+          + MAX_PACKING_THRESHOLD + " bytes.");
+    }
+    return new SegmentStore(rootFolder, properties.getSegmentSize().toBytes(),
+        properties.getCompactionInterval(), this::relocatePackedData);
+  }
+
+  private static ObjectCache createObjectCache(final DomainProperties properties) {
+    final long size = cacheBudget("objectCacheSize", properties.getObjectCacheSize(), 0);
+    if (size <= 0) {
+      return null;
+    }
+    LOG.info("Caching objects up to {} in {} of memory.", properties.getObjectCacheMaxObjectSize(),
+        DataSize.ofBytes(size));
+    return new ObjectCache(size, properties.getObjectCacheMaxObjectSize().toBytes());
+  }
+
+  private static BlockCache createBlockCache(final DomainProperties properties) {
+    final long size = cacheBudget("blockCacheSize", properties.getBlockCacheSize(),
+        Math.max(0, cacheBudget(null, properties.getObjectCacheSize(), 0)));
+    if (size <= 0) {
+      return null;
+    }
+    final long blockSize = properties.getBlockCacheBlockSize().toBytes();
+    if (blockSize <= 0 || blockSize > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Block size must be between 1 and "
+          + Integer.MAX_VALUE + " bytes.");
+    }
+    LOG.info("Caching blocks of {} of ranged reads in {} of memory.",
+        properties.getBlockCacheBlockSize(), DataSize.ofBytes(size));
+    return new BlockCache(size, (int) blockSize, properties.getBlockCacheReadAhead());
+  }
+
+  /**
+   * Caps the size of a cache, so the caches together hold at most half of the direct memory, which
+   * leaves the rest for transfers, see {@link DirectMemory}.
+   *
+   * @param property the name of the configured size, null to cap it silently.
+   * @param size the configured size.
+   * @param reserved the direct memory already given to other caches.
+   *
+   * @return the size of the cache, zero or less if it is disabled.
+   */
+  private static long cacheBudget(final String property, final DataSize size,
+      final long reserved) {
+    final long budget = Math.max(0, DirectMemory.limit() / 2 - reserved);
+    if (size.toBytes() <= budget) {
+      return size.toBytes();
+    }
+    if (property != null) {
+      LOG.warn("{} of {} exceeds the direct memory left to caches, capping it at {}."
+          + " Raise -XX:MaxDirectMemorySize to cache more.", property, size,
+          DataSize.ofBytes(budget));
+    }
+    return budget;
+  }
+
+  /**
+   * Returns the cache of small objects, or null if caching is disabled.
+   */
+  ObjectCache objectCache() {
+    return objectCache;
+  }
+
+  /**
+   * Returns the cache of blocks read in ranges, or null if caching is disabled.
+   */
+  BlockCache blockCache() {
+    return blockCache;
+  }
+
+  /**
+   * Stops background tasks of this store. Called by Spring when the application stops.
+   */
+  public void close() {
+    if (blobStore != null) {
+      blobStore.close();
+    }
+    if (segmentStore != null) {
+      segmentStore.close();
+    }
+    if (blockCache != null) {
+      blockCache.close();
+    }
+    reaper.close();
   }
 
   private File createRootFolder(final String rootDirectory) {
@@ -130,6 +359,419 @@ public class FileStore {
     return rootFolder;
   }
 
+  /**
+   * Creates a namespace, a bucket registry of its own. Buckets of different namespaces are
+   * isolated from each other, even if their names are equal. Threads select the namespace they
+   * work in with {@link NamespaceContext}.
+   *
+   * @param namespace name of the namespace, up to 128 letters, digits, '.', '_' and '-'.
+   *
+   * @return true if the namespace was created, false if it exists already.
+   *
+   * @throws IllegalArgumentException if the name is invalid.
+   */
+  public boolean createNamespace(final String namespace) {
+    Namespaces.checkName("namespace", namespace);
+    return namespaces.create(namespace);
+  }
+
+  /**
+   * Drops a namespace with all of its buckets, objects and multipart uploads. The namespace is
+   * gone on return, its files are deleted in the background.
+   *
+   * @param namespace name of the namespace.
+   *
+   * @return true if the namespace was dropped, false if it doesn't exist.
+   *
+   * @throws IOException if the namespace folder can't be removed.
+   */
+  public boolean dropNamespace(final String namespace) throws IOException {
+    final File folder = namespaces.drop(namespace);
+    if (folder == null) {
+      return false;
+    }
+    discardUploads(info -> namespace.equals(info.namespace));
+    final String prefix = objectPath(folder) + File.separator;
+    if (negativeLookups != null) {
+      negativeLookups.invalidateBucketsWithPrefix(prefix);
+    }
+    if (objectCache != null) {
+      objectCache.invalidatePrefix(prefix);
+    }
+    return true;
+  }
+
+  /**
+   * Checks if a namespace exists.
+   *
+   * @param namespace name of the namespace.
+   *
+   * @return true if the namespace exists.
+   */
+  public boolean hasNamespace(final String namespace) {
+    return namespaces.contains(namespace);
+  }
+
+  /**
+   * Lists the namespaces other than the default one.
+   *
+   * @return the names of the namespaces.
+   */
+  public Set<String> listNamespaces() {
+    return namespaces.names();
+  }
+
+  /**
+   * Imports a directory, or a zip or tar archive of one, into the default namespace: its
+   * top-level directories become buckets, the files below them objects, replacing existing ones.
+   * Objects are imported in parallel and files of a directory are hard linked instead of copied
+   * where possible, see {@link FixtureImporter}.
+   *
+   * @param source the directory or archive.
+   *
+   * @return the number of imported objects.
+   *
+   * @throws IOException if the source can't be read or an object can't be stored.
+   */
+  public int importFixture(final Path source) throws IOException {
+    final long start = System.nanoTime();
+    final String previous = NamespaceContext.set(null);
+    try {
+      final int count = new FixtureImporter(this, Runtime.getRuntime().availableProcessors())
+          .importFrom(source);
+      LOG.info("Imported {} objects from \"{}\" in {} ms.", count, source,
+          (System.nanoTime() - start) / 1_000_000);
+      return count;
+    } finally {
+      NamespaceContext.set(previous);
+    }
+  }
+
+  /**
+   * Stores a file as object, computing its ETag and writing its metadata directly. Used by the
+   * {@link FixtureImporter}, which calls it from several threads.
+   *
+   * @param bucketName the bucket of the object, must exist.
+   * @param key the key of the object.
+   * @param source the file holding the data of the object.
+   * @param staged if {@code source} was created by {@link #createStagingFile()} and is moved into
+   *     the store. Otherwise it is hard linked if possible and copied if not, and always copied
+   *     into the blob store with content-addressed storage. It is never modified either way.
+   *
+   * @throws IOException if the object can't be stored.
+   */
+  void importObject(final String bucketName, final String key, final Path source,
+      final boolean staged) throws IOException {
+    final S3Object s3Object = new S3Object();
+    s3Object.setName(key);
+    final String contentType = URLConnection.guessContentTypeFromName(key);
+    s3Object.setContentType(contentType != null ? contentType : DEFAULT_CONTENT_TYPE);
+
+    final File objectRootFolder = createObjectRootFolder(getBucket(bucketName), key);
+    if (packingThreshold > 0 && Files.size(source) <= packingThreshold) {
+      final byte[] data = Files.readAllBytes(source);
+      if (staged) {
+        Files.delete(source);
+      }
+      writePackedObject(s3Object, objectRootFolder, data, null);
+      return;
+    }
+
+    final Path dataFile = objectRootFolder.toPath().resolve(DATA_FILE);
+    storeDataFile(source, staged, dataFile);
+    writeObjectMetadata(s3Object, objectRootFolder, dataFile.toFile(), null);
+  }
+
+  /**
+   * Stores an object exported by {@link #exportSnapshot(OutputStream)}, keeping its ETag, dates,
+   * tags and user metadata. Used by the {@link StoreSnapshot}, which calls it from several
+   * threads.
+   *
+   * @param bucketName the bucket of the object, must exist.
+   * @param s3Object the exported metadata of the object.
+   * @param staged the data of the object, created by {@link #createStagingFile()} and moved into
+   *     the store.
+   *
+   * @throws IOException if the object can't be stored.
+   */
+  void restoreObject(final String bucketName, final S3Object s3Object, final Path staged)
+      throws IOException {
+    final File objectRootFolder =
+        createObjectRootFolder(getBucket(bucketName), s3Object.getName());
+    final File dataFile = new File(objectRootFolder, DATA_FILE);
+    s3Object.setDataFile(dataFile);
+    s3Object.setSize(Long.toString(Files.size(staged)));
+    synchronized (lockFor(objectRootFolder)) {
+      removePartManifest(objectRootFolder);
+      if (packingThreshold > 0 && Files.size(staged) <= packingThreshold) {
+        final byte[] data = Files.readAllBytes(staged);
+        Files.delete(staged);
+        s3Object.setPackedData(segmentStore.append(objectPath(objectRootFolder), data));
+        publishMetadata(objectRootFolder, s3Object);
+        Files.deleteIfExists(dataFile.toPath());
+      } else {
+        s3Object.setPackedData(null);
+        storeDataFile(staged, true, dataFile.toPath());
+        publishMetadata(objectRootFolder, s3Object);
+      }
+    }
+  }
+
+  /**
+   * Stores the data file of an object, through the blob store if there is one.
+   *
+   * @param staged if {@code source} is moved into the store, instead of being hard linked or
+   *     copied. Unstaged sources are always copied into the blob store, a blob must be the only
+   *     file system entry of its content besides the data files of objects.
+   */
+  private void storeDataFile(final Path source, final boolean staged, final Path dataFile)
+      throws IOException {
+    if (blobStore != null) {
+      final String sha256;
+      try (InputStream inputStream = Files.newInputStream(source)) {
+        sha256 = DigestUtils.sha256Hex(inputStream);
+      }
+      // a copy, a linked template file could never be reclaimed and would change the blob if
+      // the template is edited
+      final Path blob = staged ? source : Files.copy(source, blobStore.createTempFile(),
+          StandardCopyOption.REPLACE_EXISTING);
+      blobStore.store(blob, sha256, dataFile);
+    } else if (staged) {
+      Files.move(source, dataFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } else {
+      linkOrCopy(source, dataFile);
+    }
+    if (!retainFilesOnExit) {
+      dataFile.toFile().deleteOnExit();
+    }
+  }
+
+  /**
+   * Creates an empty file to stage object data in, on the same file system as the buckets, see
+   * {@link #importObject(String, String, Path, boolean)} and
+   * {@link #putS3Object(String, String, String, String, Path, Map, String, String)}.
+   *
+   * @return the path of the file, to be deleted by the caller unless it is moved into the store.
+   *
+   * @throws IOException if the file can't be created.
+   */
+  public Path createStagingFile() throws IOException {
+    return Files.createTempFile(rootFolder.toPath(), INTERNAL_FOLDER_PREFIX + "staged", null);
+  }
+
+  /**
+   * Replaces {@code target} by a hard link to {@code source}, or by a copy of it if the file
+   * system can't link them.
+   */
+  private static Path linkOrCopy(final Path source, final Path target) throws IOException {
+    Files.deleteIfExists(target);
+    try {
+      return Files.createLink(target, source);
+    } catch (final UnsupportedOperationException | IOException e) {
+      LOG.debug("Can't link \"{}\", copying it.", source, e);
+      return Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+  }
+
+  /**
+   * Writes all namespaces, buckets, objects and multipart uploads in progress to a tar stream,
+   * object by object, see {@link StoreSnapshot}. The store should not be modified meanwhile.
+   *
+   * @param outputStream the stream to write to, is not closed.
+   *
+   * @throws IOException if the store can't be read or the stream can't be written.
+   */
+  public void exportSnapshot(final OutputStream outputStream) throws IOException {
+    new StoreSnapshot(this, Runtime.getRuntime().availableProcessors()).export(outputStream);
+  }
+
+  /**
+   * Restores a snapshot written by {@link #exportSnapshot(OutputStream)}, possibly by another
+   * S3Mock, creating missing namespaces and buckets and replacing existing objects. Objects are
+   * stored in parallel, while reading the stream.
+   *
+   * @param inputStream the stream to read from, is not closed.
+   *
+   * @return the number of restored objects.
+   *
+   * @throws IOException if the stream can't be read or an object can't be stored.
+   */
+  public int importSnapshot(final InputStream inputStream) throws IOException {
+    return new StoreSnapshot(this, Runtime.getRuntime().availableProcessors())
+        .importFrom(inputStream);
+  }
+
+  /**
+   * Takes a checkpoint of the buckets of all namespaces, to return to it with
+   * {@link #rollback(String)}, replacing an existing checkpoint of the same name. Files are hard
+   * linked into the checkpoint, so it takes time in the number of objects, not in their size,
+   * see {@link Checkpoints}. Multipart uploads in progress are not part of a checkpoint.
+   *
+   * <p>Checkpoints, rollbacks and resets are meant to be used between tests, while no requests
+   * are in flight.</p>
+   *
+   * @param name name of the checkpoint, up to 128 letters, digits, '.', '_' and '-'.
+   *
+   * @return true if the checkpoint was created, false if an existing one was replaced.
+   *
+   * @throws IOException if the checkpoint can't be written.
+   * @throws IllegalArgumentException if the name is invalid.
+   */
+  public boolean checkpoint(final String name) throws IOException {
+    Namespaces.checkName("checkpoint", name);
+    return checkpoints.take(name);
+  }
+
+  /**
+   * Returns all namespaces to the state of a checkpoint taken with {@link #checkpoint(String)}.
+   * Buckets, objects and multipart uploads created since are gone on return, their files are
+   * deleted in the background. The checkpoint is kept, so it can be rolled back to again.
+   *
+   * @param name name of the checkpoint.
+   *
+   * @return true if the store was rolled back, false if the checkpoint doesn't exist.
+   *
+   * @throws IOException if the checkpoint can't be restored.
+   */
+  public boolean rollback(final String name) throws IOException {
+    Namespaces.checkName("checkpoint", name);
+    return checkpoints.rollback(name);
+  }
+
+  /**
+   * Removes all buckets, objects, multipart uploads and namespaces, returning the store to the
+   * state it started in: holding the initial buckets only. Each bucket folder is renamed into the
+   * trash and deleted in the background, so a reset doesn't wait for files to be deleted. Packed
+   * objects start over in a new segment. Checkpoints are kept.
+   *
+   * @throws IOException if a bucket folder can't be removed.
+   */
+  public void reset() throws IOException {
+    checkpoints.reset();
+    final String previous = NamespaceContext.set(null);
+    try {
+      initialBuckets.forEach(this::createBucket);
+    } finally {
+      NamespaceContext.set(previous);
+    }
+  }
+
+  /**
+   * Checks if a checkpoint exists.
+   *
+   * @param name name of the checkpoint.
+   *
+   * @return true if the checkpoint exists.
+   */
+  public boolean hasCheckpoint(final String name) {
+    return checkpoints.exists(name);
+  }
+
+  /**
+   * Lists the checkpoints.
+   *
+   * @return the names of the checkpoints.
+   */
+  public Set<String> listCheckpoints() {
+    return checkpoints.list();
+  }
+
+  /**
+   * Drops a checkpoint. Its files are deleted in the background.
+   *
+   * @param name name of the checkpoint.
+   *
+   * @return true if the checkpoint was dropped, false if it doesn't exist.
+   *
+   * @throws IOException if the checkpoint folder can't be removed.
+   */
+  public boolean dropCheckpoint(final String name) throws IOException {
+    return checkpoints.drop(name);
+  }
+
+  /**
+   * Returns the ids of the multipart uploads in progress. Used by the {@link Checkpoints}, which
+   * leave their folders out.
+   */
+  Set<String> uploadIds() {
+    return uploadIdToInfo.keySet();
+  }
+
+  /**
+   * Forgets all multipart uploads and drops all cached lookups and data. Called by the
+   * {@link Checkpoints} after the folders of the store were replaced.
+   */
+  void discardAll() {
+    discardUploads(info -> true);
+    invalidateCaches();
+  }
+
+  private void discardUploads(final Predicate<MultipartUploadInfo> filter) {
+    uploadIdToInfo.values().removeIf(info -> {
+      if (!filter.test(info)) {
+        return false;
+      }
+      if (info.positionalUpload != null) {
+        try {
+          info.positionalUpload.close();
+        } catch (final IOException e) {
+          LOG.debug("Can't close multipart upload {}.", info.upload.getUploadId(), e);
+        }
+      }
+      return true;
+    });
+  }
+
+  private void invalidateCaches() {
+    if (negativeLookups != null) {
+      negativeLookups.invalidateBucketsWithPrefix("");
+    }
+    if (objectCache != null) {
+      objectCache.invalidatePrefix("");
+    }
+    if (blockCache != null) {
+      blockCache.clear();
+    }
+  }
+
+  /**
+   * Returns the folder holding the buckets of the namespace of the current thread.
+   */
+  private File bucketsFolder() {
+    final String namespace = NamespaceContext.current();
+    if (namespace == null) {
+      return rootFolder;
+    }
+    final File folder = namespaces.folder(namespace);
+    if (folder == null) {
+      throw new S3Exception(404, "NoSuchNamespace",
+          "The specified namespace does not exist: " + namespace);
+    }
+    return folder;
+  }
+
+  /**
+   * Returns the key of a bucket of the namespace of the current thread in the
+   * {@link NegativeLookupCache}: its folder, relative to the root folder.
+   */
+  private static String bucketKey(final String bucketName) {
+    final String namespace = NamespaceContext.current();
+    return namespace == null ? bucketName
+        : Namespaces.NAMESPACE_FOLDER + File.separator + namespace + File.separator + bucketName;
+  }
+
+  /**
+   * Returns the key of the bucket of an object, see {@link #bucketKey(String)}.
+   *
+   * @param objectPath the object folder, relative to the root folder.
+   */
+  private static String bucketKeyOf(final Path objectPath) {
+    final int bucketIndex =
+        Namespaces.NAMESPACE_FOLDER.equals(objectPath.getName(0).toString()) ? 2 : 0;
+    return objectPath.subpath(0, bucketIndex + 1).toString();
+  }
+
   /**
    * Creates a new bucket.
    *
@@ -141,7 +783,7 @@ public class FileStore {
    *     not a directory.
    */
   public Bucket createBucket(final String bucketName) {
-    final File newBucket = new File(rootFolder, bucketName);
+    final File newBucket = new File(bucketsFolder(), bucketName);
     try {
       FileUtils.forceMkdir(newBucket);
     } catch (final IOException e) {
@@ -150,6 +792,9 @@ public class FileStore {
     if (!retainFilesOnExit) {
       newBucket.deleteOnExit();
     }
+    if (negativeLookups != null) {
+      negativeLookups.invalidateBucket(bucketKey(bucketName));
+    }
     return bucketFromPath(newBucket.toPath());
   }
 
@@ -159,7 +804,7 @@ public class FileStore {
    * @return List of all Buckets.
    */
   public List<Bucket> listBuckets() {
-    final DirectoryStream.Filter<Path> filter = Files::isDirectory;
+    final DirectoryStream.Filter<Path> filter = file -> isBucketFolder(file);
 
     return findBucketsByFilter(filter);
   }
@@ -172,15 +817,22 @@ public class FileStore {
    * @return the Bucket or null if not found
    */
   public Bucket getBucket(final String bucketName) {
+    if (negativeLookups != null) {
+      final Bucket bucket = negativeLookups.bucket(bucketKey(bucketName));
+      if (bucket != null) {
+        return bucket;
+      }
+    }
     final DirectoryStream.Filter<Path> filter =
-        file -> (Files.isDirectory(file) && file.getFileName().endsWith(bucketName));
+        file -> (isBucketFolder(file) && file.getFileName().endsWith(bucketName));
 
     final List<Bucket> buckets = findBucketsByFilter(filter);
     return buckets.size() > 0 ? buckets.get(0) : null;
   }
 
   /**
-   * Searches for folders in the rootFolder that match the given {@link DirectoryStream.Filter}.
+   * Searches for folders in the current namespace that match the given
+   * {@link DirectoryStream.Filter}.
    *
    * @param filter the Filter to apply.
    *
@@ -189,7 +841,7 @@ public class FileStore {
   private List<Bucket> findBucketsByFilter(final DirectoryStream.Filter<Path> filter) {
     final List<Bucket> buckets = new ArrayList<>();
     try (final DirectoryStream<Path> stream = Files
-        .newDirectoryStream(rootFolder.toPath(), filter)) {
+        .newDirectoryStream(bucketsFolder().toPath(), filter)) {
       for (final Path path : stream) {
         buckets.add(bucketFromPath(path));
       }
@@ -200,6 +852,15 @@ public class FileStore {
     return buckets;
   }
 
+  /**
+   * Folders in the root starting with {@value INTERNAL_FOLDER_PREFIX} hold internal data of the
+   * store. Valid bucket names never start with it.
+   */
+  private static boolean isBucketFolder(final Path path) {
+    return Files.isDirectory(path)
+        && !path.getFileName().toString().startsWith(INTERNAL_FOLDER_PREFIX);
+  }
+
   private Bucket bucketFromPath(final Path path) {
     Bucket result = null;
     final BasicFileAttributes attributes;
@@ -297,26 +958,197 @@ public class FileStore {
       final boolean useV4ChunkedWithSigningFormat,
       final Map<String, String> userMetadata,
       final String encryption, final String kmsKeyId) throws IOException {
-    boolean encrypted = isNotBlank(encryption) && isNotBlank(kmsKeyId);
+    final S3Object s3Object = newS3Object(fileName, contentType, contentEncoding, userMetadata,
+        encryption, kmsKeyId);
+    final File objectRootFolder =
+        createObjectRootFolder(getBucketOrCreateNewOne(bucketName), fileName);
+
+    InputStream inputStream = wrapStream(dataStream, useV4ChunkedWithSigningFormat);
+    if (packingThreshold > 0) {
+      final byte[] head =
+          IOUtils.toByteArray(new BoundedInputStream(inputStream, packingThreshold + 1));
+      if (head.length <= packingThreshold) {
+        inputStream.close();
+        return writePackedObject(s3Object, objectRootFolder, head, kmsKeyId);
+      }
+      inputStream = new SequenceInputStream(new ByteArrayInputStream(head), inputStream);
+    }
+
+    final File dataFile = storeData(inputStream, objectRootFolder.toPath().resolve(DATA_FILE));
+    return writeObjectMetadata(s3Object, objectRootFolder, dataFile, kmsKeyId);
+  }
+
+  /**
+   * Stores a File inside a Bucket, moving data already received into a staging file instead of
+   * copying it.
+   *
+   * @param bucketName Bucket to store the File in.
+   * @param fileName name of the File to be stored.
+   * @param contentType The files Content Type.
+   * @param contentEncoding The files Content Encoding.
+   * @param staged the data of the File, created by {@link #createStagingFile()}. It is moved into
+   *     the store, or deleted if the data is packed.
+   * @param userMetadata User metadata to store for this object, will be available for the
+   *     object with the key prefixed with "x-amz-meta-".
+   * @param encryption The Encryption Type.
+   * @param kmsKeyId The KMS encryption key id.
+   *
+   * @return {@link S3Object}.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  public S3Object putS3Object(final String bucketName,
+      final String fileName,
+      final String contentType,
+      final String contentEncoding,
+      final Path staged,
+      final Map<String, String> userMetadata,
+      final String encryption, final String kmsKeyId) throws IOException {
+    final S3Object s3Object = newS3Object(fileName, contentType, contentEncoding, userMetadata,
+        encryption, kmsKeyId);
+    final File objectRootFolder =
+        createObjectRootFolder(getBucketOrCreateNewOne(bucketName), fileName);
+
+    if (packingThreshold > 0 && Files.size(staged) <= packingThreshold) {
+      final byte[] data = Files.readAllBytes(staged);
+      Files.delete(staged);
+      return writePackedObject(s3Object, objectRootFolder, data, kmsKeyId);
+    }
+
+    final Path dataFile = objectRootFolder.toPath().resolve(DATA_FILE);
+    storeDataFile(staged, true, dataFile);
+    return writeObjectMetadata(s3Object, objectRootFolder, dataFile.toFile(), kmsKeyId);
+  }
+
+  private static S3Object newS3Object(final String fileName, final String contentType,
+      final String contentEncoding, final Map<String, String> userMetadata,
+      final String encryption, final String kmsKeyId) {
     final S3Object s3Object = new S3Object();
     s3Object.setName(fileName);
     s3Object.setContentType(contentType != null ? contentType : DEFAULT_CONTENT_TYPE);
     s3Object.setContentEncoding(contentEncoding);
     s3Object.setUserMetadata(userMetadata);
-    s3Object.setEncrypted(encrypted);
+    s3Object.setEncrypted(isNotBlank(encryption) && isNotBlank(kmsKeyId));
     s3Object.setKmsEncryption(encryption);
     s3Object.setKmsEncryptionKeyId(kmsKeyId);
+    return s3Object;
+  }
+
+  /**
+   * Stores the data of a small object in a segment instead of its own data file.
+   */
+  private S3Object writePackedObject(final S3Object s3Object, final File objectRootFolder,
+      final byte[] data, final String kmsKeyId) throws IOException {
+    final File dataFile = new File(objectRootFolder, DATA_FILE);
+    s3Object.setPackedData(segmentStore.append(objectPath(objectRootFolder), data));
+    s3Object.setDataFile(dataFile);
+    s3Object.setSize(Long.toString(data.length));
+
+    final Instant now = Instant.now();
+    s3Object.setCreationDate(S3_OBJECT_DATE_FORMAT.format(now));
+    s3Object.setModificationDate(S3_OBJECT_DATE_FORMAT.format(now));
+    s3Object.setLastModified(now.toEpochMilli());
+
+    s3Object.setEtag(digest(kmsKeyId, new ByteArrayInputStream(data)));
+
+    publishMetadata(objectRootFolder, s3Object);
+    Files.deleteIfExists(dataFile.toPath());
+    removePartManifest(objectRootFolder);
+    return s3Object;
+  }
+
+  /**
+   * Writes the metadata of an object, releasing the packed data it replaces.
+   */
+  private void publishMetadata(final File objectRootFolder, final S3Object s3Object)
+      throws IOException {
+    final File metaFile = new File(objectRootFolder, META_FILE);
+    synchronized (lockFor(objectRootFolder)) {
+      final SegmentLocation previous = segmentStore != null ? packedDataOf(metaFile) : null;
+      writeMetadata(metaFile, s3Object);
+      if (previous != null && !previous.equals(s3Object.getPackedData())) {
+        segmentStore.release(previous);
+      }
+      invalidateCachedObject(objectRootFolder);
+      if (negativeLookups != null) {
+        final Path objectPath = rootFolder.toPath().relativize(objectRootFolder.toPath());
+        negativeLookups.invalidate(bucketKeyOf(objectPath), objectPath.toString());
+      }
+    }
+    if (!retainFilesOnExit) {
+      metaFile.deleteOnExit();
+    }
+  }
+
+  /**
+   * Replaces the metadata file of an object instead of writing into it, as it may be linked into
+   * a checkpoint.
+   */
+  private void writeMetadata(final File metaFile, final S3Object s3Object) throws IOException {
+    final File tempFile = new File(metaFile.getParentFile(), META_FILE + "." + UUID.randomUUID());
+    try {
+      objectMapper.writeValue(tempFile, s3Object);
+      Files.move(tempFile.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  private SegmentLocation packedDataOf(final File metaFile) throws IOException {
+    if (!metaFile.exists()) {
+      return null;
+    }
+    return objectMapper.readValue(metaFile, S3Object.class).getPackedData();
+  }
 
-    final Bucket theBucket = getBucketOrCreateNewOne(bucketName);
+  /**
+   * Moves packed data during segment compaction, if it is still the data of its object.
+   */
+  private void relocatePackedData(final String objectPath, final SegmentLocation location)
+      throws IOException {
+    final File objectRootFolder = new File(rootFolder, objectPath);
+    final File metaFile = new File(objectRootFolder, META_FILE);
+    synchronized (lockFor(objectRootFolder)) {
+      if (!location.equals(packedDataOf(metaFile))) {
+        return;
+      }
+      final S3Object s3Object = objectMapper.readValue(metaFile, S3Object.class);
+      s3Object.setPackedData(segmentStore.append(objectPath, segmentStore.read(location)));
+      writeMetadata(metaFile, s3Object);
+    }
+  }
 
-    final File objectRootFolder = createObjectRootFolder(theBucket, s3Object.getName());
-    if (!retainFilesOnExit) {
-      objectRootFolder.deleteOnExit();
+  /**
+   * Compacts the segments holding packed objects now, instead of waiting for the next scheduled
+   * compaction.
+   *
+   * @return the number of compacted segments.
+   *
+   * @throws IOException if a segment can't be compacted.
+   */
+  int compactSegments() throws IOException {
+    return segmentStore != null ? segmentStore.compact() : 0;
+  }
+
+  private String objectPath(final File objectRootFolder) {
+    return rootFolder.toPath().relativize(objectRootFolder.toPath()).toString();
+  }
+
+  private void invalidateCachedObject(final File objectRootFolder) {
+    if (objectCache != null) {
+      objectCache.invalidate(objectPath(objectRootFolder));
     }
+  }
+
+  private Object lockFor(final File objectRootFolder) {
+    final int hash = objectRootFolder.getAbsoluteFile().toPath().normalize().hashCode();
+    return objectLocks[Math.floorMod(hash, objectLocks.length)];
+  }
 
-    final File dataFile =
-        inputStreamToFile(wrapStream(dataStream, useV4ChunkedWithSigningFormat),
-            objectRootFolder.toPath().resolve(DATA_FILE));
+  private S3Object writeObjectMetadata(final S3Object s3Object, final File objectRootFolder,
+      final File dataFile, final String kmsKeyId) throws IOException {
+    removePartManifest(objectRootFolder);
     s3Object.setDataFile(dataFile);
 
     s3Object.setSize(Long.toString(dataFile.length()));
@@ -331,11 +1163,7 @@ public class FileStore {
 
     s3Object.setEtag(digest(kmsKeyId, dataFile));
 
-    File metaFile = new File(objectRootFolder, META_FILE);
-    if (!retainFilesOnExit) {
-      metaFile.deleteOnExit();
-    }
-    objectMapper.writeValue(metaFile, s3Object);
+    publishMetadata(objectRootFolder, s3Object);
 
     return s3Object;
   }
@@ -421,14 +1249,16 @@ public class FileStore {
   public void setObjectTags(final String bucketName,
       final String fileName,
       final List<Tag> tags) throws IOException {
-    final S3Object s3Object = getS3Object(bucketName, fileName);
-
     final Bucket theBucket = getBucket(bucketName);
 
-    final File objectRootFolder = createObjectRootFolder(theBucket, s3Object.getName());
+    final File objectRootFolder = createObjectRootFolder(theBucket, fileName);
 
-    s3Object.setTags(tags);
-    objectMapper.writeValue(new File(objectRootFolder, META_FILE), s3Object);
+    synchronized (lockFor(objectRootFolder)) {
+      final S3Object s3Object = getS3Object(bucketName, fileName);
+      s3Object.setTags(tags);
+      writeMetadata(new File(objectRootFolder, META_FILE), s3Object);
+      invalidateCachedObject(objectRootFolder);
+    }
   }
 
   /**
@@ -466,6 +1296,41 @@ public class FileStore {
     return objectRootFolder;
   }
 
+  /**
+   * Stores the object data read from an InputStream. With content-addressed storage enabled, the
+   * data file is linked to the blob holding the content, otherwise the stream is written into it.
+   *
+   * @param inputStream the Stream to be saved.
+   * @param filePath Path of the data file.
+   *
+   * @return the data file.
+   *
+   * @throws IOException if the content can't be stored as blob.
+   */
+  private File storeData(final InputStream inputStream, final Path filePath)
+      throws IOException {
+    if (blobStore == null) {
+      return inputStreamToFile(inputStream, filePath);
+    }
+    final Path tempFile = blobStore.createTempFile();
+    try (final DigestInputStream digestStream =
+        new DigestInputStream(inputStream, MessageDigest.getInstance("SHA-256"))) {
+      Files.copy(digestStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+      blobStore.store(tempFile, Hex.encodeHexString(digestStream.getMessageDigest().digest()),
+          filePath);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      // consumed by the blob store unless storing failed, it is never collected otherwise
+      Files.deleteIfExists(tempFile);
+    }
+    final File targetFile = filePath.toFile();
+    if (!retainFilesOnExit) {
+      targetFile.deleteOnExit();
+    }
+    return targetFile;
+  }
+
   /**
    * Stores the Content of an InputStream in a File Creates File if it not exists.
    *
@@ -478,11 +1343,11 @@ public class FileStore {
     OutputStream outputStream = null;
     final File targetFile = filePath.toFile();
     try {
-      if (!targetFile.exists()) {
-        targetFile.createNewFile();
-        if (!retainFilesOnExit) {
-          targetFile.deleteOnExit();
-        }
+      // a new file, the existing one may be linked into a checkpoint
+      Files.deleteIfExists(filePath);
+      targetFile.createNewFile();
+      if (!retainFilesOnExit) {
+        targetFile.deleteOnExit();
       }
 
       outputStream = new FileOutputStream(targetFile);
@@ -542,12 +1407,24 @@ public class FileStore {
    * @return the retrieved S3Object or null if not found
    */
   public S3Object getS3Object(final String bucketName, final String objectName) {
-    final Bucket theBucket = getBucket(requireNonNull(bucketName, "bucketName == null"));
-
-    S3Object theObject = null;
+    requireNonNull(bucketName, "bucketName == null");
     // Path can't be resolved in the local bucket root if it's absolute.
     final String relativeObjectName = removeStart(objectName, "/");
+
+    // only keys within the bucket are remembered as missing, the generation of the key is taken
+    // before the bucket is looked up, so writes of either racing with the lookup are noticed
+    final Path bucketPath = rootFolder.toPath().resolve(bucketKey(bucketName));
+    final Path objectFolder = bucketPath.resolve(relativeObjectName);
+    final String objectPath = negativeLookups != null && objectFolder.startsWith(bucketPath)
+        ? objectPath(objectFolder.toFile()) : null;
+    final long generation = objectPath != null ? negativeLookups.generation(objectPath) : 0;
+    final Bucket theBucket = getBucket(bucketName);
+
+    S3Object theObject = null;
     final Path metaPath = theBucket.getPath().resolve(relativeObjectName + "/" + META_FILE);
+    if (objectPath != null && negativeLookups.isMissing(bucketKey(bucketName), objectPath)) {
+      return null;
+    }
 
     if (Files.exists(metaPath)) {
       try {
@@ -558,10 +1435,171 @@ public class FileStore {
         LOG.error("File can not be read", e);
         e.printStackTrace();
       }
+    } else if (objectPath != null) {
+      negativeLookups.recordMiss(bucketKey(bucketName), theBucket, objectPath, generation);
     }
     return theObject;
   }
 
+  /**
+   * Writes the data of an object to the given stream.
+   *
+   * @param s3Object the object as retrieved by {@link #getS3Object(String, String)}.
+   * @param outputStream the stream to write to.
+   *
+   * @throws IOException if the data can't be read.
+   */
+  public void readS3ObjectData(final S3Object s3Object, final OutputStream outputStream)
+      throws IOException {
+    readS3ObjectData(s3Object, 0, Long.MAX_VALUE, outputStream);
+  }
+
+  /**
+   * Writes a range of the data of an object to the given stream.
+   *
+   * @param s3Object the object as retrieved by {@link #getS3Object(String, String)}.
+   * @param offset the offset of the first byte to write.
+   * @param length the number of bytes to write, capped at the end of the object.
+   * @param outputStream the stream to write to.
+   *
+   * @throws IOException if the data can't be read.
+   */
+  public void readS3ObjectData(final S3Object s3Object, final long offset, final long length,
+      final OutputStream outputStream) throws IOException {
+    final long size = Long.parseLong(s3Object.getSize());
+    if (objectCache != null && objectCache.isCacheable(size)) {
+      objectCache.transferTo(objectPath(s3Object.getDataFile().getParentFile()),
+          s3Object.getEtag(), size, offset, length, () -> openS3ObjectData(s3Object),
+          outputStream);
+      return;
+    }
+    if (blockCache != null && s3Object.getPackedData() == null && (offset > 0 || length < size)) {
+      blockCache.transferTo(objectPath(s3Object.getDataFile().getParentFile()),
+          s3Object.getEtag() + "@" + s3Object.getLastModified(), size, offset, length,
+          (position, target) -> readBlock(s3Object, position, target), outputStream);
+      return;
+    }
+    if (s3Object.getPackedData() != null) {
+      packedData().transferTo(s3Object.getPackedData(), offset, length, outputStream);
+      return;
+    }
+    final Path objectFolder = s3Object.getDataFile().getParentFile().toPath();
+    final PartManifest manifest = readPartManifest(objectFolder);
+    if (manifest != null) {
+      manifest.transferTo(objectFolder, offset, length, outputStream);
+    } else if (offset == 0 && length >= s3Object.getDataFile().length()) {
+      Files.copy(s3Object.getDataFile().toPath(), outputStream);
+    } else {
+      try (final FileChannel channel =
+          FileChannel.open(s3Object.getDataFile().toPath(), StandardOpenOption.READ)) {
+        final long count = Math.max(0, Math.min(length, channel.size() - offset));
+        final WritableByteChannel target = Channels.newChannel(outputStream);
+        long transferred = 0;
+        while (transferred < count) {
+          transferred += channel.transferTo(offset + transferred, count - transferred, target);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the file holding the data of an object, if a range of the data is read from that file
+   * as is, i.e. it is neither served from a cache, nor packed, nor stored in parts. Callers may
+   * then read the file themselves, e.g. asynchronously.
+   *
+   * @param s3Object the object as retrieved by {@link #getS3Object(String, String)}.
+   * @param offset the offset of the first byte to read.
+   * @param length the number of bytes to read.
+   *
+   * @return the data file, or null if the data has to be read with
+   *     {@link #readS3ObjectData(S3Object, long, long, OutputStream)}.
+   */
+  public Path plainDataFile(final S3Object s3Object, final long offset, final long length) {
+    final long size = Long.parseLong(s3Object.getSize());
+    if (objectCache != null && objectCache.isCacheable(size)
+        || blockCache != null && (offset > 0 || length < size)
+        || s3Object.getPackedData() != null) {
+      return null;
+    }
+    final Path objectFolder = s3Object.getDataFile().getParentFile().toPath();
+    return Files.exists(objectFolder.resolve(PartManifest.MANIFEST_FILE))
+        ? null : s3Object.getDataFile().toPath();
+  }
+
+  /**
+   * Determines the size of the data actually stored for an object, which may differ from the
+   * size in its metadata if files were changed behind the store's back.
+   *
+   * @param s3Object the object.
+   *
+   * @return the number of bytes, -1 if the data is missing.
+   *
+   * @throws IOException if the data can't be inspected.
+   */
+  long dataSize(final S3Object s3Object) throws IOException {
+    if (s3Object.getPackedData() != null) {
+      return s3Object.getPackedData().getLength();
+    }
+    final PartManifest manifest =
+        readPartManifest(s3Object.getDataFile().getParentFile().toPath());
+    if (manifest != null) {
+      return manifest.size();
+    }
+    return s3Object.getDataFile().exists() ? s3Object.getDataFile().length() : -1;
+  }
+
+  /**
+   * Reads object data into the given buffer, until it is full or the object ends.
+   */
+  private void readBlock(final S3Object s3Object, final long position, final ByteBuffer target)
+      throws IOException {
+    final Path objectFolder = s3Object.getDataFile().getParentFile().toPath();
+    final PartManifest manifest = readPartManifest(objectFolder);
+    if (manifest != null) {
+      manifest.transferTo(objectFolder, position, target.remaining(), new OutputStream() {
+        @Override
+        public void write(final int b) {
+          target.put((byte) b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+          target.put(b, off, len);
+        }
+      });
+      return;
+    }
+    try (final FileChannel channel =
+        FileChannel.open(s3Object.getDataFile().toPath(), StandardOpenOption.READ)) {
+      while (target.hasRemaining()
+          && channel.read(target, position + target.position()) >= 0) {
+        // read until the buffer is full or the file ends
+      }
+    }
+  }
+
+  private SegmentStore packedData() throws IOException {
+    if (segmentStore == null) {
+      throw new IOException("Object data is packed, but there are no segments.");
+    }
+    return segmentStore;
+  }
+
+  /**
+   * Opens a stream reading the data of an object.
+   */
+  private InputStream openS3ObjectData(final S3Object s3Object) throws IOException {
+    if (s3Object.getPackedData() != null) {
+      return new ByteArrayInputStream(packedData().read(s3Object.getPackedData()));
+    }
+    final Path objectFolder = s3Object.getDataFile().getParentFile().toPath();
+    final PartManifest manifest = readPartManifest(objectFolder);
+    if (manifest != null) {
+      return manifest.openInputStream(objectFolder);
+    }
+    return new FileInputStream(s3Object.getDataFile());
+  }
+
   /**
    * Retrieves list of Objects from a bucket.
    *
@@ -703,12 +1741,16 @@ public class FileStore {
     if (userMetadata != null && !userMetadata.isEmpty()) {
       copyUserMetadata = userMetadata;
     }
+    if (blobStore != null && sourceObject.getDataFile().exists()) {
+      return shareS3Object(sourceObject, destinationBucketName, destinationObjectName,
+          encryption, kmsKeyId, copyUserMetadata);
+    }
     final S3Object copiedObject =
         putS3Object(destinationBucketName,
             destinationObjectName,
             sourceObject.getContentType(),
             sourceObject.getContentEncoding(),
-            new FileInputStream(sourceObject.getDataFile()),
+            openS3ObjectData(sourceObject),
             false,
             copyUserMetadata,
             encryption,
@@ -717,6 +1759,37 @@ public class FileStore {
     return new CopyObjectResult(copiedObject.getModificationDate(), copiedObject.getEtag());
   }
 
+  /**
+   * Copies an object by letting the destination reference the content of the source.
+   */
+  private CopyObjectResult shareS3Object(final S3Object sourceObject,
+      final String destinationBucketName,
+      final String destinationObjectName,
+      final String encryption,
+      final String kmsKeyId,
+      final Map<String, String> userMetadata) throws IOException {
+    final S3Object s3Object = new S3Object();
+    s3Object.setName(destinationObjectName);
+    s3Object.setContentType(sourceObject.getContentType());
+    s3Object.setContentEncoding(sourceObject.getContentEncoding());
+    s3Object.setUserMetadata(userMetadata);
+    s3Object.setEncrypted(isNotBlank(encryption) && isNotBlank(kmsKeyId));
+    s3Object.setKmsEncryption(encryption);
+    s3Object.setKmsEncryptionKeyId(kmsKeyId);
+
+    final Bucket theBucket = getBucketOrCreateNewOne(destinationBucketName);
+    final File objectRootFolder = createObjectRootFolder(theBucket, destinationObjectName);
+    final File dataFile = new File(objectRootFolder, DATA_FILE);
+    blobStore.share(sourceObject.getDataFile().toPath(), dataFile.toPath());
+    if (!retainFilesOnExit) {
+      dataFile.deleteOnExit();
+    }
+
+    final S3Object copiedObject =
+        writeObjectMetadata(s3Object, objectRootFolder, dataFile, kmsKeyId);
+    return new CopyObjectResult(copiedObject.getModificationDate(), copiedObject.getEtag());
+  }
+
   /**
    * Checks if the specified bucket exists. Amazon S3 buckets are named in a global namespace; use
    * this method to determine if a specified bucket name already exists, and therefore can't be used
@@ -743,7 +1816,16 @@ public class FileStore {
   public boolean deleteObject(final String bucketName, final String objectName) throws IOException {
     final S3Object s3Object = getS3Object(bucketName, objectName);
     if (s3Object != null) {
-      FileUtils.deleteDirectory(s3Object.getDataFile().getParentFile());
+      final File objectRootFolder = s3Object.getDataFile().getParentFile();
+      synchronized (lockFor(objectRootFolder)) {
+        final SegmentLocation packedData =
+            segmentStore != null ? packedDataOf(new File(objectRootFolder, META_FILE)) : null;
+        FileUtils.deleteDirectory(objectRootFolder);
+        if (packedData != null) {
+          segmentStore.release(packedData);
+        }
+        invalidateCachedObject(objectRootFolder);
+      }
       return true;
     } else {
       return false;
@@ -763,6 +1845,12 @@ public class FileStore {
     final Bucket bucket = getBucket(bucketName);
     if (bucket != null) {
       FileUtils.deleteDirectory(bucket.getPath().toFile());
+      if (negativeLookups != null) {
+        negativeLookups.invalidateBucket(bucketKey(bucketName));
+      }
+      if (objectCache != null) {
+        objectCache.invalidatePrefix(objectPath(bucket.getPath().toFile()) + File.separator);
+      }
       return true;
     } else {
       return false;
@@ -787,15 +1875,25 @@ public class FileStore {
       final String contentType, final String contentEncoding, final String uploadId,
       final Owner owner, final Owner initiator, final Map<String, String> userMetadata) {
 
-    if (!Paths.get(rootFolder.getAbsolutePath(), bucketName, fileName, uploadId).toFile()
-        .mkdirs()) {
+    final Path uploadFolder = Paths.get(bucketsFolder().getAbsolutePath(), bucketName, fileName,
+        uploadId);
+    if (!uploadFolder.toFile().mkdirs()) {
       throw new IllegalStateException(
           "Directories for storing multipart uploads couldn't be created.");
     }
+    PositionalUpload positionalUpload = null;
+    if (positionalMultipartUploads) {
+      try {
+        positionalUpload = new PositionalUpload(uploadFolder);
+      } catch (final IOException e) {
+        throw new IllegalStateException("Target file of multipart upload couldn't be created.", e);
+      }
+    }
     final MultipartUpload upload =
         new MultipartUpload(fileName, uploadId, owner, initiator, new Date());
     uploadIdToInfo.put(uploadId, new MultipartUploadInfo(upload,
-        contentType, contentEncoding, userMetadata, bucketName));
+        contentType, contentEncoding, userMetadata, bucketName, NamespaceContext.current(),
+        positionalUpload));
 
     return upload;
   }
@@ -840,6 +1938,7 @@ public class FileStore {
   public Collection<MultipartUpload> listMultipartUploads(String bucketName) {
     return uploadIdToInfo.values()
         .stream()
+        .filter(info -> Objects.equals(NamespaceContext.current(), info.namespace))
         .filter(info -> bucketName == null || bucketName.equals(info.bucket))
         .map(info -> info.upload)
         .collect(Collectors.toList());
@@ -858,6 +1957,9 @@ public class FileStore {
     synchronizedUpload(uploadId, uploadInfo -> {
 
       try {
+        if (uploadInfo.positionalUpload != null) {
+          uploadInfo.positionalUpload.close();
+        }
         final File partFolder = retrieveFile(bucketName, fileName, uploadId);
         FileUtils.deleteDirectory(partFolder);
 
@@ -893,16 +1995,39 @@ public class FileStore {
       final String partNumber,
       final InputStream inputStream,
       final boolean useV4ChunkedWithSigningFormat) throws IOException {
-    try (final DigestInputStream digestingInputStream =
-        new DigestInputStream(wrapStream(inputStream, useV4ChunkedWithSigningFormat),
-            MessageDigest.getInstance("MD5"))) {
-      inputStreamToFile(digestingInputStream,
-          Paths.get(rootFolder.getAbsolutePath(), bucketName, fileName, uploadId,
-              partNumber + PART_SUFFIX));
-
-      return new String(Hex.encodeHex(digestingInputStream.getMessageDigest().digest()));
-    } catch (final NoSuchAlgorithmException e) {
-      throw new IllegalStateException(e);
+    final MultipartUploadInfo uploadInfo = uploadIdToInfo.get(uploadId);
+    final String etag;
+    if (uploadInfo != null && uploadInfo.positionalUpload != null) {
+      try (final InputStream partStream = wrapStream(inputStream, useV4ChunkedWithSigningFormat)) {
+        etag = uploadInfo.positionalUpload.write(Integer.parseInt(partNumber), partStream,
+            Paths.get(bucketsFolder().getAbsolutePath(), bucketName, fileName, uploadId,
+                partNumber + PART_SUFFIX), uploadInfo.partEtags);
+      }
+      return etag;
+    } else {
+      try (final DigestInputStream digestingInputStream =
+          new DigestInputStream(wrapStream(inputStream, useV4ChunkedWithSigningFormat),
+              MessageDigest.getInstance("MD5"))) {
+        inputStreamToFile(digestingInputStream,
+            Paths.get(bucketsFolder().getAbsolutePath(), bucketName, fileName, uploadId,
+                partNumber + PART_SUFFIX));
+
+        etag = new String(Hex.encodeHex(digestingInputStream.getMessageDigest().digest()));
+      } catch (final NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    rememberPartEtag(uploadInfo, partNumber, etag);
+    return etag;
+  }
+
+  /**
+   * Keeps the digest of a stored part, so completing the upload doesn't have to read it again.
+   */
+  private static void rememberPartEtag(final MultipartUploadInfo uploadInfo,
+      final String partNumber, final String etag) {
+    if (uploadInfo != null) {
+      uploadInfo.partEtags.put(Integer.parseInt(partNumber), etag);
     }
   }
 
@@ -958,14 +2083,29 @@ public class FileStore {
       final String[] partNames =
           parts.stream().map(part -> part.getPartNumber() + PART_SUFFIX).toArray(String[]::new);
 
-      final long size = writeEntireFile(entireFile, partFolder, partNames);
+      final boolean compose = multipartManifests && uploadInfo.positionalUpload == null;
 
       try {
-        final byte[] allMd5s = concatenateMd5sForAllParts(partFolder, partNames);
+        final byte[] allMd5s = concatenateMd5sForAllParts(partFolder, uploadInfo, partNames);
+        final long size;
+        final File dataFile;
+        if (compose) {
+          size = writeManifest(partFolder, partNames);
+          dataFile = new File(entireFile.getParentFile(), PartManifest.MANIFEST_FILE);
+        } else {
+          size = writeEntireFile(entireFile, partFolder, uploadInfo.positionalUpload, partNames);
+          dataFile = entireFile;
+        }
+        if (uploadInfo.positionalUpload != null) {
+          uploadInfo.positionalUpload.close();
+        }
         FileUtils.deleteDirectory(partFolder);
+        if (!compose) {
+          removePartManifest(entireFile.getParentFile());
+        }
 
         final BasicFileAttributes attributes =
-            Files.readAttributes(entireFile.toPath(), BasicFileAttributes.class);
+            Files.readAttributes(dataFile.toPath(), BasicFileAttributes.class);
         s3Object.setCreationDate(S3_OBJECT_DATE_FORMAT.format(
             attributes.creationTime().toInstant()));
         s3Object.setModificationDate(S3_OBJECT_DATE_FORMAT.format(
@@ -985,9 +2125,7 @@ public class FileStore {
       }
 
       try {
-        objectMapper.writeValue(
-            Paths.get(rootFolder.getAbsolutePath(), bucketName, fileName, META_FILE).toFile(),
-            s3Object);
+        publishMetadata(entireFile.getParentFile(), s3Object);
       } catch (final IOException e) {
         throw new IllegalStateException("Could not write metadata-file", e);
       }
@@ -1008,16 +2146,26 @@ public class FileStore {
    * Calculates the MD5 for each part and concatenates the result to a large array.
    *
    * @param partFolder the folder where all parts are located.
+   * @param uploadInfo the upload, holding the digests of the parts stored so far.
    * @param partNames the name of each part file
    *
    * @return a byte array containing all md5 bytes for each part concatenated.
    *
    * @throws IOException if a part file could not be read.
    */
-  private byte[] concatenateMd5sForAllParts(final File partFolder, final String[] partNames)
-      throws IOException {
+  private byte[] concatenateMd5sForAllParts(final File partFolder,
+      final MultipartUploadInfo uploadInfo, final String[] partNames) throws IOException {
     byte[] allMd5s = new byte[0];
     for (final String partName : partNames) {
+      final String etag = uploadInfo.partEtags.get(partNumber(partName));
+      if (etag != null) {
+        try {
+          allMd5s = ArrayUtils.addAll(allMd5s, Hex.decodeHex(etag));
+        } catch (final DecoderException e) {
+          throw new IllegalStateException(e);
+        }
+        continue;
+      }
       try (final InputStream inputStream =
           Files.newInputStream(Paths.get(partFolder.getAbsolutePath(), partName))) {
         allMd5s = ArrayUtils.addAll(allMd5s, DigestUtils.md5(inputStream));
@@ -1037,6 +2185,10 @@ public class FileStore {
       final String fileName,
       final String uploadId) {
     final File partsDirectory = retrieveFile(bucketName, fileName, uploadId);
+    final MultipartUploadInfo uploadInfo = uploadIdToInfo.get(uploadId);
+    if (uploadInfo != null && uploadInfo.positionalUpload != null) {
+      return positionalUploadParts(partsDirectory, uploadInfo.positionalUpload);
+    }
     final String[] partNames = listAndSortPartsInFromDirectory(partsDirectory);
 
     if (partNames != null) {
@@ -1047,8 +2199,67 @@ public class FileStore {
     }
   }
 
+  /**
+   * Writes the data of a part of a multipart upload in progress.
+   *
+   * @param bucketName name of the bucket
+   * @param fileName name of the file (object key)
+   * @param uploadId upload identifier
+   * @param partNumber number of the part
+   * @param outputStream the stream to write to, is not closed.
+   *
+   * @throws IOException if the part can't be read.
+   */
+  void readPart(final String bucketName, final String fileName, final String uploadId,
+      final int partNumber, final OutputStream outputStream) throws IOException {
+    final MultipartUploadInfo uploadInfo = uploadIdToInfo.get(uploadId);
+    if (uploadInfo != null && uploadInfo.positionalUpload != null
+        && uploadInfo.positionalUpload.parts().get(partNumber) != null) {
+      uploadInfo.positionalUpload.transferTo(partNumber, outputStream);
+    } else {
+      Files.copy(Paths.get(bucketsFolder().getAbsolutePath(), bucketName, fileName, uploadId,
+          partNumber + PART_SUFFIX), outputStream);
+    }
+  }
+
+  MultipartUploadInfo uploadInfo(final String uploadId) {
+    return uploadIdToInfo.get(uploadId);
+  }
+
+  private List<Part> positionalUploadParts(final File partsDirectory,
+      final PositionalUpload positionalUpload) {
+    final Map<Integer, Part> parts = new TreeMap<>();
+    positionalUpload.parts().forEach((partNumber, record) -> {
+      final Part part = new Part();
+      part.setLastModified(new Date(record.lastModified));
+      part.setETag(record.etag);
+      part.setPartNumber(partNumber);
+      part.setSize(record.size);
+      parts.put(partNumber, part);
+    });
+    for (final String partName : listAndSortPartsInFromDirectory(partsDirectory)) {
+      final File partFile = new File(partsDirectory, partName);
+      final Part part = new Part();
+      part.setLastModified(new Date(partFile.lastModified()));
+      part.setETag(calculateDigestOfFilePart(partFile));
+      part.setPartNumber(partNumber(partName));
+      part.setSize(partFile.length());
+      parts.putIfAbsent(part.getPartNumber(), part);
+    }
+    return new ArrayList<>(parts.values());
+  }
+
+  private static int partNumber(final String partName) {
+    return Integer.parseInt(partName.substring(0, partName.indexOf(PART_SUFFIX)));
+  }
+
+  private static PositionalUpload.PartRecord positionalPart(
+      final PositionalUpload positionalUpload, final String partName) {
+    return positionalUpload != null ? positionalUpload.parts().get(partNumber(partName)) : null;
+  }
+
   private File retrieveFile(final String bucketName, final String fileName, final String uploadId) {
-    return Paths.get(rootFolder.getAbsolutePath(), bucketName, fileName, uploadId).toFile();
+    return Paths.get(bucketsFolder().getAbsolutePath(), bucketName, fileName, uploadId).toFile();
   }
 
   private List<Part> arrangeSeparateParts(final File[] files, final String bucketName,
@@ -1093,12 +2304,170 @@ public class FileStore {
   }
 
   private long writeEntireFile(final File entireFile, final File partFolder,
-      final String... partNames) {
+      final PositionalUpload positionalUpload, final String... partNames) {
+    if (positionalUpload != null) {
+      final long size = completeInPlace(entireFile, partFolder, positionalUpload, partNames);
+      if (size >= 0) {
+        return size;
+      }
+    }
+    if (blobStore != null) {
+      return storeEntireFile(entireFile, partFolder, positionalUpload, partNames);
+    }
+    try {
+      Files.deleteIfExists(entireFile.toPath());
+    } catch (final IOException e) {
+      throw new IllegalStateException("Error replacing entire file "
+          + entireFile.getAbsolutePath(), e);
+    }
     try (final OutputStream targetStream = new FileOutputStream(entireFile)) {
-      long size = 0;
-      for (final String partName : partNames) {
+      return concatenateParts(targetStream, partFolder, positionalUpload, partNames);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Error writing entire file "
+          + entireFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Concatenates the parts into a blob instead of writing to the data file, which may be shared.
+   */
+  private long storeEntireFile(final File entireFile, final File partFolder,
+      final PositionalUpload positionalUpload, final String... partNames) {
+    try {
+      final Path tempFile = blobStore.createTempFile();
+      final long size;
+      final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+      try (final OutputStream targetStream =
+          new DigestOutputStream(new FileOutputStream(tempFile.toFile()), messageDigest)) {
+        size = concatenateParts(targetStream, partFolder, positionalUpload, partNames);
+      }
+      blobStore.store(tempFile, Hex.encodeHexString(messageDigest.digest()), entireFile.toPath());
+      return size;
+    } catch (final IOException | NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Error writing entire file "
+          + entireFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Completes a multipart upload by keeping its part files and writing a manifest to read them
+   * as one object.
+   *
+   * @return the size of the object.
+   */
+  private long writeManifest(final File partFolder, final String... partNames) throws IOException {
+    final Path objectFolder = partFolder.getParentFile().toPath();
+    final String partsFolderName = PartManifest.PARTS_FOLDER_PREFIX + partFolder.getName();
+    final Path partsFolder = objectFolder.resolve(partsFolderName);
+    final PartManifest previousManifest = readPartManifest(objectFolder);
+
+    final Set<String> listedParts = new HashSet<>(Arrays.asList(partNames));
+    final long[] sizes = new long[partNames.length];
+    for (int i = 0; i < partNames.length; i++) {
+      sizes[i] = Files.size(partFolder.toPath().resolve(partNames[i]));
+    }
+    try (Stream<Path> files = Files.list(partFolder.toPath())) {
+      for (final Path file : (Iterable<Path>) files::iterator) {
+        if (!listedParts.contains(file.getFileName().toString())) {
+          Files.delete(file);
+        }
+      }
+    }
+    Files.move(partFolder.toPath(), partsFolder, StandardCopyOption.ATOMIC_MOVE);
+
+    final PartManifest manifest =
+        new PartManifest(partsFolderName, Arrays.asList(partNames), sizes);
+    final Path tempManifest = objectFolder.resolve(PartManifest.MANIFEST_FILE + ".tmp");
+    objectMapper.writeValue(tempManifest.toFile(), manifest);
+    Files.move(tempManifest, objectFolder.resolve(PartManifest.MANIFEST_FILE),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    Files.deleteIfExists(objectFolder.resolve(DATA_FILE));
+    if (previousManifest != null) {
+      FileUtils.deleteDirectory(objectFolder.resolve(previousManifest.getPartsFolder()).toFile());
+    }
+    if (!retainFilesOnExit) {
+      objectFolder.resolve(PartManifest.MANIFEST_FILE).toFile().deleteOnExit();
+    }
+    return manifest.size();
+  }
+
+  /**
+   * Removes the manifest and parts of a multipart object after it was replaced by a data file.
+   */
+  private void removePartManifest(final File objectFolder) throws IOException {
+    final PartManifest manifest = readPartManifest(objectFolder.toPath());
+    if (manifest != null) {
+      Files.delete(objectFolder.toPath().resolve(PartManifest.MANIFEST_FILE));
+      FileUtils.deleteDirectory(new File(objectFolder, manifest.getPartsFolder()));
+    }
+  }
+
+  private PartManifest readPartManifest(final Path objectFolder) throws IOException {
+    final File manifestFile = objectFolder.resolve(PartManifest.MANIFEST_FILE).toFile();
+    if (!manifestFile.exists()) {
+      return null;
+    }
+    try {
+      return objectMapper.readValue(manifestFile, PartManifest.class);
+    } catch (final FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static long concatenateParts(final OutputStream targetStream, final File partFolder,
+      final PositionalUpload positionalUpload, final String... partNames) throws IOException {
+    long size = 0;
+    for (final String partName : partNames) {
+      final PositionalUpload.PartRecord record = positionalPart(positionalUpload, partName);
+      if (record != null) {
+        positionalUpload.transferTo(partNumber(partName), targetStream);
+        size += record.size;
+      } else {
         size += Files.copy(Paths.get(partFolder.getAbsolutePath(), partName), targetStream);
       }
+    }
+    return size;
+  }
+
+  /**
+   * Completes a multipart upload by moving the target file of the positional upload into place,
+   * if the parts form a contiguous object in it.
+   *
+   * @return the size of the object or -1 if the parts have to be concatenated.
+   */
+  private long completeInPlace(final File entireFile, final File partFolder,
+      final PositionalUpload positionalUpload, final String... partNames) {
+    final int[] partNumbers = Arrays.stream(partNames).mapToInt(FileStore::partNumber).toArray();
+    final long[] sizes = new long[partNames.length];
+    long size = 0;
+    for (int i = 0; i < partNames.length; i++) {
+      final PositionalUpload.PartRecord record = positionalPart(positionalUpload, partNames[i]);
+      sizes[i] = record != null ? record.size : new File(partFolder, partNames[i]).length();
+      size += sizes[i];
+    }
+    if (!positionalUpload.isContiguous(partNumbers, sizes)) {
+      return -1;
+    }
+
+    try {
+      for (final String partName : partNames) {
+        if (positionalPart(positionalUpload, partName) == null) {
+          positionalUpload.copyIntoPlace(partNumber(partName),
+              Paths.get(partFolder.getAbsolutePath(), partName));
+        }
+      }
+      if (blobStore == null) {
+        positionalUpload.moveTo(size, entireFile.toPath());
+      } else {
+        final Path tempFile = blobStore.createTempFile();
+        positionalUpload.moveTo(size, tempFile);
+        final String sha256;
+        try (final InputStream inputStream = Files.newInputStream(tempFile)) {
+          sha256 = DigestUtils.sha256Hex(inputStream);
+        }
+        blobStore.store(tempFile, sha256, entireFile.toPath());
+      }
       return size;
     } catch (final IOException e) {
       throw new IllegalStateException("Error writing entire file "
@@ -1134,6 +2503,12 @@ public class FileStore {
 
   private String digest(final String salt, final File dataFile) throws IOException {
     try (final FileInputStream inputStream = new FileInputStream(dataFile)) {
+      return digest(salt, inputStream);
+    }
+  }
+
+  private String digest(final String salt, final InputStream inputStream) throws IOException {
+    try {
       return DigestUtil.getHexDigest(salt, inputStream);
     } catch (final NoSuchAlgorithmException e) {
       LOG.error("Digest can not be calculated!", e);
@@ -1167,10 +2542,16 @@ public class FileStore {
 
     verifyMultipartUploadPreparation(destinationBucket, destinationFilename, uploadId);
 
+    final MultipartUploadInfo uploadInfo = uploadIdToInfo.get(uploadId);
+    if (uploadInfo != null && uploadInfo.positionalUpload != null) {
+      uploadInfo.positionalUpload.discard(Integer.parseInt(partNumber));
+    }
     final File targetPartFile =
         ensurePartFile(partNumber, destinationBucket, destinationFilename, uploadId);
 
-    return copyPart(bucket, key, copyRange, targetPartFile);
+    final String etag = copyPart(bucket, key, copyRange, targetPartFile);
+    rememberPartEtag(uploadInfo, partNumber, etag);
+    return etag;
   }
 
   private String copyPart(final String bucket,
@@ -1179,27 +2560,50 @@ public class FileStore {
       final File partFile) throws IOException {
     long from = 0;
     final S3Object s3Object = resolveS3Object(bucket, key);
-    long len = s3Object.getDataFile().length();
+    long len = Long.parseLong(s3Object.getSize());
     if (copyRange != null) {
       from = copyRange.getStart();
       len = copyRange.getEnd() - copyRange.getStart() + 1;
     }
 
-    try (final InputStream sourceStream = FileUtils.openInputStream(s3Object.getDataFile());
-        final OutputStream targetStream = new FileOutputStream(partFile)) {
-      sourceStream.skip(from);
-      IOUtils.copy(new BoundedInputStream(sourceStream, len), targetStream);
+    final MessageDigest md5 = DigestUtils.getMd5Digest();
+    if (!s3Object.getDataFile().exists()) {
+      // composed of parts, nothing to read from a single file.
+      try (final OutputStream targetStream =
+          new DigestOutputStream(new FileOutputStream(partFile), md5)) {
+        readS3ObjectData(s3Object, from, len, targetStream);
+      }
+      return Hex.encodeHexString(md5.digest());
     }
-    try (final InputStream is = FileUtils.openInputStream(partFile)) {
-      return DigestUtils.md5Hex(is);
+    try (final SharedFileChannels.Handle source =
+        sourceChannels.acquire(s3Object.getDataFile().toPath());
+        final FileChannel target = FileChannel.open(partFile.toPath(),
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      final long end = Math.min(from + len, source.channel().size());
+      final ByteBuffer buffer = COPY_BUFFER.get();
+      long position = from;
+      while (position < end) {
+        buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+        final int read = source.channel().read(buffer, position);
+        if (read < 0) {
+          break;
+        }
+        buffer.flip();
+        md5.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+          target.write(buffer);
+        }
+        position += read;
+      }
     }
+    return Hex.encodeHexString(md5.digest());
   }
 
   private File ensurePartFile(final String partNumber,
       final String destinationBucket,
       final String destinationFilename,
       final String uploadId) throws IOException {
-    final File partFile = Paths.get(rootFolder.getAbsolutePath(),
+    final File partFile = Paths.get(bucketsFolder().getAbsolutePath(),
         destinationBucket,
         destinationFilename,
         uploadId,
@@ -1213,8 +2617,8 @@ public class FileStore {
 
   private void verifyMultipartUploadPreparation(final String destinationBucket,
       final String destinationFilename, final String uploadId) {
-    final Path partsFolder =
-        Paths.get(rootFolder.getAbsolutePath(), destinationBucket, destinationFilename, uploadId);
+    final Path partsFolder = Paths.get(bucketsFolder().getAbsolutePath(), destinationBucket,
+        destinationFilename, uploadId);
 
     if (!partsFolder.toFile().exists() || !partsFolder.toFile().isDirectory()) {
       throw new IllegalStateException("Missed preparing Multipart Request");
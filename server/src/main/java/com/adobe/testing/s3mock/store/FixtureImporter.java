@@ -0,0 +1,248 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports fixtures into a {@link FileStore}: a directory, or a zip or tar archive of one, whose
+ * top-level directories are buckets and whose files are objects, keyed by their path below the
+ * bucket directory.
+ *
+ * <p>Objects are imported in parallel, computing their ETags and writing their metadata directly
+ * instead of going through the S3 API. Files of a directory are hard linked into the store where
+ * the file system allows, so a read-only template directory is imported without copying any data.
+ * With content-addressed storage they are copied into the blob store instead.
+ * Entries of archives are extracted one after the other, but processed in parallel as well.</p>
+ */
+class FixtureImporter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FixtureImporter.class);
+
+  private final FileStore fileStore;
+
+  private final int parallelism;
+
+  /**
+   * Constructs a new {@link FixtureImporter}.
+   *
+   * @param fileStore the store to import into.
+   * @param parallelism the number of objects imported at the same time.
+   */
+  FixtureImporter(final FileStore fileStore, final int parallelism) {
+    this.fileStore = fileStore;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Imports a directory or archive, creating missing buckets and replacing existing objects.
+   *
+   * @param source the directory, or a {@code .zip}, {@code .tar}, {@code .tar.gz} or
+   *     {@code .tgz} archive.
+   *
+   * @return the number of imported objects.
+   *
+   * @throws IOException if the source can't be read or an object can't be stored.
+   * @throws IllegalArgumentException if the source is neither a directory nor a known archive.
+   */
+  int importFrom(final Path source) throws IOException {
+    final ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+      final Thread thread = new Thread(runnable, "s3mock-fixture-import");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final List<Future<?>> imports = new ArrayList<>();
+    try {
+      final String name = source.getFileName().toString().toLowerCase(Locale.ROOT);
+      if (Files.isDirectory(source)) {
+        importDirectory(source, executor, imports);
+      } else if (name.endsWith(".zip")) {
+        importZip(source, executor, imports);
+      } else if (name.endsWith(".tar")) {
+        try (InputStream inputStream = Files.newInputStream(source)) {
+          importTar(inputStream, executor, imports);
+        }
+      } else if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(source))) {
+          importTar(inputStream, executor, imports);
+        }
+      } else {
+        throw new IllegalArgumentException("Fixtures must be a directory or a zip or tar archive: "
+            + source);
+      }
+      for (final Future<?> objectImport : imports) {
+        objectImport.get();
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted importing " + source, e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Can't import " + source, e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return imports.size();
+  }
+
+  private void importDirectory(final Path source, final ExecutorService executor,
+      final List<Future<?>> imports) throws IOException {
+    try (Stream<Path> buckets = Files.list(source)) {
+      for (final Path bucket : (Iterable<Path>) buckets::iterator) {
+        final String bucketName = bucket.getFileName().toString();
+        if (!Files.isDirectory(bucket) || bucketName.startsWith(".")) {
+          LOG.warn("Ignoring fixture \"{}\" outside of a bucket directory.", bucket);
+          continue;
+        }
+        fileStore.createBucket(bucketName);
+        try (Stream<Path> files = Files.walk(bucket)) {
+          for (final Path file : (Iterable<Path>) files::iterator) {
+            if (Files.isRegularFile(file)) {
+              final String key = key(bucket.relativize(file));
+              imports.add(executor.submit(() -> {
+                fileStore.importObject(bucketName, key, file, false);
+                return null;
+              }));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void importZip(final Path source, final ExecutorService executor,
+      final List<Future<?>> imports) throws IOException, InterruptedException,
+      ExecutionException {
+    // entries are inflated by the import threads, the archive must stay open until they are done.
+    try (ZipFile zipFile = new ZipFile(source.toFile())) {
+      final Set<String> buckets = new HashSet<>();
+      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        final String[] bucketAndKey = bucketAndKey(entry.getName(), entry.isDirectory());
+        if (bucketAndKey == null) {
+          continue;
+        }
+        if (buckets.add(bucketAndKey[0])) {
+          fileStore.createBucket(bucketAndKey[0]);
+        }
+        imports.add(executor.submit(() -> {
+          try (InputStream inputStream = zipFile.getInputStream(entry)) {
+            importStaged(bucketAndKey, inputStream);
+          }
+          return null;
+        }));
+      }
+      for (final Future<?> objectImport : imports) {
+        objectImport.get();
+      }
+    }
+  }
+
+  private void importTar(final InputStream inputStream, final ExecutorService executor,
+      final List<Future<?>> imports) throws IOException {
+    final Set<String> buckets = new HashSet<>();
+    final TarArchiveInputStream tar =
+        new TarArchiveInputStream(new BufferedInputStream(inputStream));
+    TarArchiveEntry entry;
+    while ((entry = tar.getNextTarEntry()) != null) {
+      final String[] bucketAndKey = bucketAndKey(entry.getName(), !entry.isFile());
+      if (bucketAndKey == null) {
+        continue;
+      }
+      if (buckets.add(bucketAndKey[0])) {
+        fileStore.createBucket(bucketAndKey[0]);
+      }
+      // the stream is read in order, extract here and leave digests and metadata to the threads
+      final Path staged = fileStore.createStagingFile();
+      Files.copy(tar, staged, StandardCopyOption.REPLACE_EXISTING);
+      imports.add(executor.submit(() -> {
+        try {
+          fileStore.importObject(bucketAndKey[0], bucketAndKey[1], staged, true);
+        } finally {
+          Files.deleteIfExists(staged);
+        }
+        return null;
+      }));
+    }
+  }
+
+  private void importStaged(final String[] bucketAndKey, final InputStream inputStream)
+      throws IOException {
+    final Path staged = fileStore.createStagingFile();
+    try {
+      Files.copy(inputStream, staged, StandardCopyOption.REPLACE_EXISTING);
+      fileStore.importObject(bucketAndKey[0], bucketAndKey[1], staged, true);
+    } finally {
+      Files.deleteIfExists(staged);
+    }
+  }
+
+  /**
+   * Splits the name of an archive entry into bucket and key.
+   *
+   * @return bucket and key, or null if the entry is no object.
+   */
+  private static String[] bucketAndKey(final String entryName, final boolean directory) {
+    final String name = entryName.startsWith("./") ? entryName.substring(2) : entryName;
+    final int slash = name.indexOf('/');
+    if (directory || slash <= 0 || slash == name.length() - 1 || name.startsWith(".")
+        || ("/" + name + "/").contains("/../")) {
+      if (!directory && !name.isEmpty()) {
+        LOG.warn("Ignoring fixture \"{}\" outside of a bucket directory.", entryName);
+      }
+      return null;
+    }
+    return new String[] {name.substring(0, slash), name.substring(slash + 1)};
+  }
+
+  private static String key(final Path relativePath) {
+    final StringBuilder key = new StringBuilder();
+    for (final Path name : relativePath) {
+      if (key.length() > 0) {
+        key.append('/');
+      }
+      key.append(name);
+    }
+    return key.toString();
+  }
+}
@@ -18,6 +18,7 @@ package com.adobe.testing.s3mock.store;
 
 import com.adobe.testing.s3mock.dto.MultipartUpload;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Encapsulates {@link MultipartUpload} and corresponding {@code contentType}.
@@ -29,15 +30,32 @@ class MultipartUploadInfo {
   final String contentEncoding;
   final Map<String, String> userMetadata;
   final String bucket;
+  /**
+   * The namespace of the bucket, null for the default namespace.
+   */
+  final String namespace;
+  final PositionalUpload positionalUpload;
+  final Map<Integer, String> partEtags = new ConcurrentHashMap<>();
 
   MultipartUploadInfo(final MultipartUpload upload, final String contentType,
       final String contentEncoding,
       final Map<String, String> userMetadata,
       String bucket) {
+    this(upload, contentType, contentEncoding, userMetadata, bucket, null, null);
+  }
+
+  MultipartUploadInfo(final MultipartUpload upload, final String contentType,
+      final String contentEncoding,
+      final Map<String, String> userMetadata,
+      String bucket,
+      final String namespace,
+      final PositionalUpload positionalUpload) {
     this.upload = upload;
     this.contentType = contentType;
     this.contentEncoding = contentEncoding;
     this.userMetadata = userMetadata;
     this.bucket = bucket;
+    this.namespace = namespace;
+    this.positionalUpload = positionalUpload;
   }
 }
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+/**
+ * Holds the namespace the current thread works in. The {@link FileStore} resolves bucket names in
+ * the bucket registry of this namespace, or in the default one if none is set.
+ */
+public final class NamespaceContext {
+
+  private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+  private NamespaceContext() {
+    // utility class
+  }
+
+  /**
+   * Returns the namespace of the current thread.
+   *
+   * @return the name of the namespace, null for the default namespace.
+   */
+  public static String current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Sets the namespace of the current thread.
+   *
+   * @param namespace the name of the namespace, null for the default namespace.
+   *
+   * @return the namespace set before, to be restored afterwards.
+   */
+  public static String set(final String namespace) {
+    final String previous = CURRENT.get();
+    if (namespace == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(namespace);
+    }
+    return previous;
+  }
+}
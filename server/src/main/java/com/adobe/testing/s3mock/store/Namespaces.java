@@ -0,0 +1,175 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Registry of the namespaces of a {@link FileStore} other than the default one, see
+ * {@link NamespaceContext}.
+ *
+ * <p>Each namespace is a folder below {@link #NAMESPACE_FOLDER} holding the buckets of the
+ * namespace. Lookups don't lock, changes to the registry and to the folders of all namespaces,
+ * like checkpoints and rollbacks, are guarded by this object.</p>
+ */
+class Namespaces {
+
+  static final String NAMESPACE_FOLDER = ".namespaces";
+  private static final Pattern NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,127}");
+
+  private final File namespaceFolder;
+  private final DirectoryReaper reaper;
+  private final boolean deleteOnExit;
+  private final Map<String, File> folders = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs a new {@link Namespaces}, holding the namespaces found below the root folder.
+   *
+   * @param rootFolder the root folder of the {@link FileStore}, namespaces are kept below it.
+   * @param reaper removes the folders of dropped namespaces.
+   * @param deleteOnExit whether the folders of new namespaces are deleted when the JVM exits.
+   */
+  Namespaces(final File rootFolder, final DirectoryReaper reaper, final boolean deleteOnExit) {
+    namespaceFolder = new File(rootFolder, NAMESPACE_FOLDER);
+    this.reaper = reaper;
+    this.deleteOnExit = deleteOnExit;
+    load();
+  }
+
+  /**
+   * Checks if a name is valid for a namespace or a checkpoint: up to 128 letters, digits, '.',
+   * '_' and '-', starting with a letter or digit.
+   */
+  static boolean isValidName(final String name) {
+    return name != null && NAME.matcher(name).matches();
+  }
+
+  /**
+   * Rejects names that are not valid for a namespace or a checkpoint.
+   *
+   * @param kind what the name is for, used in the message.
+   * @param name the name.
+   *
+   * @throws IllegalArgumentException if the name is invalid.
+   */
+  static void checkName(final String kind, final String name) {
+    if (!isValidName(name)) {
+      throw new IllegalArgumentException("Invalid " + kind + " name: " + name);
+    }
+  }
+
+  /**
+   * Registers the namespaces found on disk, after their folders were replaced.
+   */
+  synchronized void load() {
+    final File[] namespaces = namespaceFolder.listFiles(File::isDirectory);
+    if (namespaces != null) {
+      for (final File folder : namespaces) {
+        folders.put(folder.getName(), folder);
+      }
+    }
+  }
+
+  /**
+   * Creates a namespace.
+   *
+   * @param namespace name of the namespace.
+   *
+   * @return true if the namespace was created, false if it exists already.
+   */
+  synchronized boolean create(final String namespace) {
+    if (folders.containsKey(namespace)) {
+      return false;
+    }
+    final File folder = new File(namespaceFolder, namespace);
+    if (deleteOnExit) {
+      namespaceFolder.deleteOnExit();
+    }
+    try {
+      FileUtils.forceMkdir(folder);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Can't create namespace directory!", e);
+    }
+    if (deleteOnExit) {
+      folder.deleteOnExit();
+    }
+    folders.put(namespace, folder);
+    return true;
+  }
+
+  /**
+   * Drops a namespace, its folder is deleted in the background.
+   *
+   * @param namespace name of the namespace.
+   *
+   * @return the folder the namespace had, or null if it doesn't exist.
+   *
+   * @throws IOException if the folder can't be removed.
+   */
+  synchronized File drop(final String namespace) throws IOException {
+    final File folder = folders.remove(namespace);
+    if (folder != null) {
+      reaper.reap(folder.toPath());
+    }
+    return folder;
+  }
+
+  /**
+   * Forgets all namespaces, after their folders were removed.
+   */
+  synchronized void clear() {
+    folders.clear();
+  }
+
+  /**
+   * Returns the folder holding the buckets of a namespace.
+   *
+   * @param namespace name of the namespace.
+   *
+   * @return the folder, or null if the namespace doesn't exist.
+   */
+  File folder(final String namespace) {
+    return folders.get(namespace);
+  }
+
+  /**
+   * Checks if a namespace exists.
+   *
+   * @param namespace name of the namespace.
+   *
+   * @return true if the namespace exists.
+   */
+  boolean contains(final String namespace) {
+    return namespace != null && folders.containsKey(namespace);
+  }
+
+  /**
+   * Lists the namespaces.
+   *
+   * @return the names of the namespaces.
+   */
+  Set<String> names() {
+    return new TreeSet<>(folders.keySet());
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import com.adobe.testing.s3mock.dto.Bucket;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers keys found missing, per bucket, so repeated lookups of keys that don't exist are
+ * answered without file system access.
+ *
+ * <p>Writes remove the key they create, deleting or creating a bucket forgets all of its keys.
+ * Writes also increment a generation striped by the hash of their key, bucket changes one shared by
+ * all keys, and a miss is only recorded if neither generation of its key changed since the lookup
+ * started, so a lookup racing with the creation of its key never records it as missing, while
+ * writes of other keys don't keep misses from being recorded. Writes and lookups don't share a
+ * lock, only recording and forgetting misses of the same bucket does. The number of keys
+ * remembered per bucket is bounded, the oldest are forgotten first.</p>
+ *
+ * <p>Buckets are named by their folder relative to the root folder, which is the bucket name in
+ * the default namespace, so equally named buckets of different namespaces are kept apart.</p>
+ */
+class NegativeLookupCache {
+
+  private static final int GENERATION_STRIPES = 1024;
+
+  private final int maxKeysPerBucket;
+  private final Map<String, BucketMisses> buckets = new ConcurrentHashMap<>();
+
+  /**
+   * Incremented on every write of a key hashing to the stripe.
+   */
+  private final AtomicLongArray keyGenerations = new AtomicLongArray(GENERATION_STRIPES);
+
+  /**
+   * Incremented whenever buckets are created or deleted.
+   */
+  private final AtomicLong bucketGeneration = new AtomicLong();
+
+  /**
+   * Constructs a new {@link NegativeLookupCache}.
+   *
+   * @param maxKeysPerBucket number of missing keys remembered per bucket.
+   */
+  NegativeLookupCache(final int maxKeysPerBucket) {
+    this.maxKeysPerBucket = maxKeysPerBucket;
+  }
+
+  /**
+   * Returns the current generation of a key, to be passed to {@link #recordMiss} after the lookup.
+   * Both generations only ever grow, so their sum changes whenever one of them does.
+   *
+   * @param objectPath the path of the object folder, relative to the root folder.
+   */
+  long generation(final String objectPath) {
+    return bucketGeneration.get() + keyGenerations.get(stripe(objectPath));
+  }
+
+  /**
+   * Returns a bucket known to exist because keys were found missing in it, or null.
+   *
+   * @param bucketName the name of the bucket.
+   */
+  Bucket bucket(final String bucketName) {
+    final BucketMisses misses = buckets.get(bucketName);
+    return misses != null ? misses.bucket : null;
+  }
+
+  /**
+   * Checks if a key was found missing.
+   *
+   * @param bucketName the name of the bucket.
+   * @param objectPath the path of the object folder, relative to the root folder.
+   *
+   * @return true if the key is known not to exist.
+   */
+  boolean isMissing(final String bucketName, final String objectPath) {
+    final BucketMisses misses = buckets.get(bucketName);
+    return misses != null && misses.keys.contains(objectPath);
+  }
+
+  /**
+   * Records a key found missing, unless it or its bucket was written since the lookup started.
+   *
+   * @param bucketName the name of the bucket.
+   * @param bucket the bucket looked in.
+   * @param objectPath the path of the object folder, relative to the root folder.
+   * @param lookupGeneration the generation of the key from before the lookup.
+   */
+  void recordMiss(final String bucketName, final Bucket bucket, final String objectPath,
+      final long lookupGeneration) {
+    if (generation(objectPath) != lookupGeneration) {
+      return;
+    }
+    final BucketMisses misses =
+        buckets.computeIfAbsent(bucketName, name -> new BucketMisses(bucket));
+    synchronized (misses) {
+      if (!misses.keys.add(objectPath)) {
+        return;
+      }
+      misses.order.add(objectPath);
+      while (misses.order.size() > maxKeysPerBucket) {
+        misses.keys.remove(misses.order.poll());
+      }
+    }
+    // writes increment the generation before forgetting, so a write racing with the check above
+    // either forgets the recorded miss, or is seen here, which rarely drops the bucket's misses
+    if (generation(objectPath) != lookupGeneration) {
+      buckets.remove(bucketName, misses);
+    }
+  }
+
+  /**
+   * Forgets a key, because it was written.
+   *
+   * @param bucketName the name of the bucket.
+   * @param objectPath the path of the object folder, relative to the root folder.
+   */
+  void invalidate(final String bucketName, final String objectPath) {
+    keyGenerations.incrementAndGet(stripe(objectPath));
+    final BucketMisses misses = buckets.get(bucketName);
+    if (misses != null && misses.keys.contains(objectPath)) {
+      synchronized (misses) {
+        if (misses.keys.remove(objectPath)) {
+          misses.order.remove(objectPath);
+        }
+      }
+    }
+  }
+
+  /**
+   * Forgets all keys of a bucket, because it was created or deleted.
+   *
+   * @param bucketName the name of the bucket.
+   */
+  void invalidateBucket(final String bucketName) {
+    bucketGeneration.incrementAndGet();
+    buckets.remove(bucketName);
+  }
+
+  /**
+   * Forgets all keys of the buckets whose names start with a prefix, because they were deleted.
+   *
+   * @param prefix the prefix of the bucket names.
+   */
+  void invalidateBucketsWithPrefix(final String prefix) {
+    bucketGeneration.incrementAndGet();
+    buckets.keySet().removeIf(bucketName -> bucketName.startsWith(prefix));
+  }
+
+  private static int stripe(final String objectPath) {
+    final int hash = objectPath.hashCode();
+    return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+  }
+
+  private static final class BucketMisses {
+
+    private final Bucket bucket;
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Keys in the order they were recorded, guarded by this.
+     */
+    private final Queue<String> order = new ArrayDeque<>();
+
+    private BucketMisses(final Bucket bucket) {
+      this.bucket = bucket;
+    }
+  }
+}
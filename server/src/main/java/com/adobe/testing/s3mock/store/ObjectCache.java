@@ -0,0 +1,302 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the data of small, frequently read objects in memory.
+ *
+ * <p>Object data is held in direct buffers, outside of the heap, and evicted least recently used
+ * first once the cache exceeds its size. Entries are keyed by object path and remember the etag of
+ * the data, so a reader holding newer metadata never gets older data. Concurrent misses on the same
+ * object wait for a single load. If the direct memory is exhausted, a miss is served from the heap
+ * without caching the data.</p>
+ */
+class ObjectCache implements MeterBinder {
+
+  /**
+   * Opens a stream reading the data of an object, called on a cache miss.
+   */
+  interface Loader {
+
+    /**
+     * Opens the data of the object.
+     *
+     * @return a stream reading the data.
+     *
+     * @throws IOException if the data can't be read.
+     */
+    InputStream open() throws IOException;
+  }
+
+  private final long maxSize;
+  private final long maxObjectSize;
+
+  /**
+   * Cached entries in access order, guarded by itself.
+   */
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, CompletableFuture<Entry>> loads = new ConcurrentHashMap<>();
+
+  /**
+   * Incremented on every invalidation, so loads racing with a mutation are not cached.
+   */
+  private long generation;
+  private long size;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder bytesServed = new LongAdder();
+
+  /**
+   * Constructs a new {@link ObjectCache}.
+   *
+   * @param maxSize total size of the cached data.
+   * @param maxObjectSize size up to which objects are cached.
+   */
+  ObjectCache(final long maxSize, final long maxObjectSize) {
+    this.maxSize = maxSize;
+    this.maxObjectSize = Math.min(maxObjectSize, Math.min(maxSize, Integer.MAX_VALUE));
+  }
+
+  /**
+   * Checks if an object is small enough to be cached.
+   *
+   * @param size the size of the object.
+   *
+   * @return true if the object can be cached.
+   */
+  boolean isCacheable(final long size) {
+    return size <= maxObjectSize;
+  }
+
+  /**
+   * Writes a range of the data of an object to the given stream, loading it into the cache on a
+   * miss.
+   *
+   * @param key the path of the object.
+   * @param etag the etag of the object data, as found in its metadata.
+   * @param objectSize the size of the object data, as found in its metadata.
+   * @param offset the offset of the first byte to write.
+   * @param length the number of bytes to write, capped at the end of the object.
+   * @param loader opens the data of the object on a cache miss.
+   * @param outputStream the stream to write to.
+   *
+   * @throws IOException if the data can't be loaded or written.
+   */
+  void transferTo(final String key, final String etag, final long objectSize,
+      final long offset, final long length, final Loader loader,
+      final OutputStream outputStream) throws IOException {
+    final ByteBuffer data = get(key, etag, objectSize, loader).duplicate();
+    final long end = offset + Math.min(length, data.limit() - offset);
+    if (offset >= end) {
+      return;
+    }
+    data.limit((int) end).position((int) offset);
+    bytesServed.add(data.remaining());
+    final WritableByteChannel target = Channels.newChannel(outputStream);
+    while (data.hasRemaining()) {
+      target.write(data);
+    }
+  }
+
+  /**
+   * Removes an object from the cache, because it was overwritten or deleted.
+   *
+   * @param key the path of the object.
+   */
+  void invalidate(final String key) {
+    synchronized (entries) {
+      generation++;
+      remove(entries.remove(key));
+    }
+    loads.remove(key);
+  }
+
+  /**
+   * Removes all objects below a path from the cache, because their bucket was deleted.
+   *
+   * @param prefix the path of the bucket.
+   */
+  void invalidatePrefix(final String prefix) {
+    synchronized (entries) {
+      generation++;
+      final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        final Map.Entry<String, Entry> entry = iterator.next();
+        if (entry.getKey().startsWith(prefix)) {
+          remove(entry.getValue());
+          iterator.remove();
+        }
+      }
+    }
+    loads.keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+    FunctionCounter.builder("s3mock.object.cache.requests", hits, LongAdder::doubleValue)
+        .tag("result", "hit")
+        .description("Reads served from the object cache")
+        .register(registry);
+    FunctionCounter.builder("s3mock.object.cache.requests", misses, LongAdder::doubleValue)
+        .tag("result", "miss")
+        .description("Reads loading object data into the object cache")
+        .register(registry);
+    Gauge.builder("s3mock.object.cache.hit.ratio", this, ObjectCache::hitRatio)
+        .description("Share of cacheable reads served from the object cache")
+        .register(registry);
+    FunctionCounter.builder("s3mock.object.cache.served", bytesServed, LongAdder::doubleValue)
+        .baseUnit("bytes")
+        .description("Object data served from the object cache")
+        .register(registry);
+    Gauge.builder("s3mock.object.cache.size", this, ObjectCache::cachedBytes)
+        .baseUnit("bytes")
+        .description("Object data held in the object cache")
+        .register(registry);
+  }
+
+  double hitRatio() {
+    final double requests = hits.doubleValue() + misses.doubleValue();
+    return requests > 0 ? hits.doubleValue() / requests : 0;
+  }
+
+  double cachedBytes() {
+    synchronized (entries) {
+      return size;
+    }
+  }
+
+  private ByteBuffer get(final String key, final String etag, final long objectSize,
+      final Loader loader) throws IOException {
+    final long loadGeneration;
+    synchronized (entries) {
+      final Entry entry = entries.get(key);
+      if (entry != null && entry.etag.equals(etag)) {
+        hits.increment();
+        return entry.data;
+      }
+      loadGeneration = generation;
+    }
+
+    final CompletableFuture<Entry> load = new CompletableFuture<>();
+    final CompletableFuture<Entry> running = loads.putIfAbsent(key, load);
+    if (running != null) {
+      final Entry entry = await(running);
+      if (entry.etag.equals(etag)) {
+        hits.increment();
+        return entry.data;
+      }
+    }
+
+    misses.increment();
+    try {
+      final Entry entry = new Entry(etag, read(loader, objectSize));
+      load.complete(entry);
+      if (entry.data.isDirect()) {
+        put(key, entry, loadGeneration);
+      }
+      return entry.data;
+    } catch (final IOException | RuntimeException e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      loads.remove(key, load);
+    }
+  }
+
+  private static Entry await(final CompletableFuture<Entry> load) throws IOException {
+    try {
+      return load.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for object data", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static ByteBuffer read(final Loader loader, final long size) throws IOException {
+    final ByteBuffer direct = DirectMemory.allocate((int) size);
+    // served once from the heap, but not cached, if the direct memory is exhausted
+    final ByteBuffer buffer = direct != null ? direct : ByteBuffer.allocate((int) size);
+    try (InputStream inputStream = loader.open();
+        ReadableByteChannel source = Channels.newChannel(inputStream)) {
+      while (buffer.hasRemaining() && source.read(buffer) >= 0) {
+        // read until the buffer is full or the data ends
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private void put(final String key, final Entry entry, final long loadGeneration) {
+    synchronized (entries) {
+      if (generation != loadGeneration) {
+        return;
+      }
+      remove(entries.put(key, entry));
+      size += entry.data.capacity();
+      final Iterator<Entry> eldest = entries.values().iterator();
+      while (size > maxSize && eldest.hasNext()) {
+        remove(eldest.next());
+        eldest.remove();
+      }
+    }
+  }
+
+  private void remove(final Entry entry) {
+    if (entry != null) {
+      size -= entry.data.capacity();
+    }
+  }
+
+  private static final class Entry {
+
+    private final String etag;
+    private final ByteBuffer data;
+
+    private Entry(final String etag, final ByteBuffer data) {
+      this.etag = etag;
+      this.data = data;
+    }
+  }
+}
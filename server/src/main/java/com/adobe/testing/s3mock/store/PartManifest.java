@@ -0,0 +1,181 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The data of a multipart object kept as its original part files instead of one data file.
+ *
+ * <p>Lists the part files in order, together with the offset of each part in the object. Reads
+ * locate the part holding a given offset by binary search over the offsets and continue with the
+ * following parts from there.</p>
+ */
+class PartManifest {
+
+  static final String MANIFEST_FILE = "fileData.manifest";
+  static final String PARTS_FOLDER_PREFIX = "fileData.parts.";
+
+  private String partsFolder;
+
+  private List<String> parts;
+
+  /**
+   * Offset of each part in the object, followed by the size of the object.
+   */
+  private long[] offsets;
+
+  PartManifest() {
+    // for Jackson
+  }
+
+  PartManifest(final String partsFolder, final List<String> parts, final long[] sizes) {
+    this.partsFolder = partsFolder;
+    this.parts = parts;
+    offsets = new long[sizes.length + 1];
+    for (int i = 0; i < sizes.length; i++) {
+      offsets[i + 1] = offsets[i] + sizes[i];
+    }
+  }
+
+  public String getPartsFolder() {
+    return partsFolder;
+  }
+
+  public void setPartsFolder(final String partsFolder) {
+    this.partsFolder = partsFolder;
+  }
+
+  public List<String> getParts() {
+    return parts;
+  }
+
+  public void setParts(final List<String> parts) {
+    this.parts = parts;
+  }
+
+  public long[] getOffsets() {
+    return offsets;
+  }
+
+  public void setOffsets(final long[] offsets) {
+    this.offsets = offsets;
+  }
+
+  long size() {
+    return offsets[offsets.length - 1];
+  }
+
+  /**
+   * Writes a range of the object to the given stream.
+   *
+   * @param objectFolder the folder of the object.
+   * @param offset the offset of the first byte to write.
+   * @param length the number of bytes to write, capped at the end of the object.
+   * @param outputStream the stream to write to.
+   *
+   * @throws IOException if a part can't be read.
+   */
+  void transferTo(final Path objectFolder, final long offset, final long length,
+      final OutputStream outputStream) throws IOException {
+    final WritableByteChannel target = Channels.newChannel(outputStream);
+    final long end = offset + Math.min(length, size() - offset);
+    long position = offset;
+    int part = partIndex(offset);
+    while (position < end) {
+      final long partOffset = position - offsets[part];
+      final long count = Math.min(end, offsets[part + 1]) - position;
+      try (FileChannel source = FileChannel.open(partPath(objectFolder, part),
+          StandardOpenOption.READ)) {
+        long transferred = 0;
+        while (transferred < count) {
+          final long written =
+              source.transferTo(partOffset + transferred, count - transferred, target);
+          if (written == 0 && partOffset + transferred >= source.size()) {
+            throw new IOException("Part " + partPath(objectFolder, part) + " ends at "
+                + source.size() + " bytes, the manifest expects " + (partOffset + count));
+          }
+          transferred += written;
+        }
+      }
+      position += count;
+      part++;
+    }
+  }
+
+  /**
+   * Opens a stream reading the whole object, one part after the other.
+   *
+   * @param objectFolder the folder of the object.
+   *
+   * @return the stream.
+   */
+  InputStream openInputStream(final Path objectFolder) {
+    return new SequenceInputStream(new Enumeration<InputStream>() {
+      private int part = 0;
+
+      @Override
+      public boolean hasMoreElements() {
+        return part < parts.size();
+      }
+
+      @Override
+      public InputStream nextElement() {
+        if (!hasMoreElements()) {
+          throw new NoSuchElementException();
+        }
+        try {
+          return Files.newInputStream(partPath(objectFolder, part++));
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Finds the part holding the byte at the given offset. Empty parts are skipped.
+   */
+  int partIndex(final long offset) {
+    int index = Arrays.binarySearch(offsets, 0, parts.size(), offset);
+    if (index < 0) {
+      return -index - 2;
+    }
+    while (index < parts.size() - 1 && offsets[index + 1] == offset) {
+      index++;
+    }
+    return index;
+  }
+
+  private Path partPath(final Path objectFolder, final int part) {
+    return objectFolder.resolve(partsFolder).resolve(parts.get(part));
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Target file of a multipart upload that parts are written into at their final offsets.
+ *
+ * <p>The part size is taken from part 1. Once it is known, every part {@code n} is written to
+ * offset {@code (n - 1) * partSize} of a sparse target file, so parallel part uploads write in
+ * parallel and completing the upload only renames the target file. Parts arriving before part 1
+ * completed, or larger than part 1, are written to their own part file as usual and copied into
+ * place on completion. If the completed parts turn out not to have a uniform size, the upload is
+ * assembled by concatenation like a regular one.</p>
+ *
+ * <p>Clients uploading parts in parallel usually start all of them before part 1 completed, so
+ * most parts of such an upload take the part file route, only parts started later are written in
+ * place.</p>
+ */
+class PositionalUpload implements Closeable {
+
+  static final String TARGET_FILE = "positional.upload";
+  private static final String ATTEMPT_SUFFIX = ".attempt";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path targetFile;
+  private final FileChannel target;
+  private final AtomicLong partSize = new AtomicLong(-1);
+  private final Map<Integer, PartRecord> parts = new ConcurrentHashMap<>();
+  private final Set<Integer> writing = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Creates the target file in the given upload folder.
+   *
+   * @param uploadFolder the folder holding the data of the upload.
+   *
+   * @throws IOException if the target file can't be created.
+   */
+  PositionalUpload(final Path uploadFolder) throws IOException {
+    targetFile = uploadFolder.resolve(TARGET_FILE);
+    target = FileChannel.open(targetFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+  }
+
+  /**
+   * Stores a part, at its final offset if possible, in {@code partFile} otherwise.
+   *
+   * <p>Only one attempt per part number writes at the offset of the part, it is claimed for the
+   * duration of the attempt. Concurrent attempts of the same part, for example retries, as well as
+   * parts arriving before the size of part 1 is known, are written to a file of their own and moved
+   * to {@code partFile} once complete. Whichever attempt completes last replaces the part, together
+   * with its ETag in {@code etags}.</p>
+   *
+   * @param partNumber number of the part.
+   * @param inputStream the data of the part.
+   * @param partFile the file to store the part in if it can't be written at its offset.
+   * @param etags the ETags of the stored parts, updated together with the part.
+   *
+   * @return hex encoded MD5 digest of the part.
+   *
+   * @throws IOException if the part can't be stored.
+   */
+  String write(final int partNumber, final InputStream inputStream, final Path partFile,
+      final Map<Integer, String> etags) throws IOException {
+    final long knownPartSize = partSize.get();
+    if (knownPartSize < 0 && partNumber != 1 || !writing.add(partNumber)) {
+      final Path attemptFile = createAttemptFile(partFile);
+      try {
+        return publish(partNumber, attemptFile, partFile, etags,
+            writeToFile(inputStream, attemptFile, DigestUtils.getMd5Digest()));
+      } finally {
+        Files.deleteIfExists(attemptFile);
+      }
+    }
+    try {
+      // the region is rewritten, it doesn't hold the previous attempt any longer.
+      parts.remove(partNumber);
+      final long offset = knownPartSize < 0 ? 0 : (partNumber - 1) * knownPartSize;
+      final long limit = knownPartSize < 0 ? Long.MAX_VALUE : knownPartSize;
+      final MessageDigest md5 = DigestUtils.getMd5Digest();
+      final byte[] bytes = new byte[BUFFER_SIZE];
+      long size = 0;
+      int read;
+      while ((read = inputStream.read(bytes)) != -1) {
+        if (size + read > limit) {
+          // larger than part 1, move what we have into a part file and continue there.
+          final Path attemptFile = createAttemptFile(partFile);
+          try {
+            try (OutputStream outputStream = Files.newOutputStream(attemptFile)) {
+              copyRange(offset, size, outputStream);
+              outputStream.write(bytes, 0, read);
+            }
+            md5.update(bytes, 0, read);
+            return publish(partNumber, attemptFile, partFile, etags,
+                writeToFile(inputStream, attemptFile, md5, StandardOpenOption.APPEND));
+          } finally {
+            Files.deleteIfExists(attemptFile);
+          }
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+        md5.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+          size += target.write(buffer, offset + size);
+        }
+      }
+      final String etag = Hex.encodeHexString(md5.digest());
+      synchronized (this) {
+        Files.deleteIfExists(partFile);
+        parts.put(partNumber, new PartRecord(size, etag, System.currentTimeMillis()));
+        etags.put(partNumber, etag);
+      }
+      if (partNumber == 1) {
+        partSize.compareAndSet(-1, size);
+      }
+      return etag;
+    } finally {
+      writing.remove(partNumber);
+    }
+  }
+
+  /**
+   * Forgets a part written at its offset, because it is replaced by a part file.
+   *
+   * @param partNumber number of the part.
+   */
+  void discard(final int partNumber) {
+    parts.remove(partNumber);
+  }
+
+  /**
+   * Returns the parts written at their offset.
+   */
+  Map<Integer, PartRecord> parts() {
+    return parts;
+  }
+
+  /**
+   * Checks if the given parts lie at their final offsets in the target file, that is, they are
+   * numbered consecutively starting with 1 and all of them but the last have the part size.
+   *
+   * @param partNumbers numbers of the parts forming the object.
+   * @param sizes sizes of the parts.
+   *
+   * @return true if the target file can become the object data.
+   */
+  boolean isContiguous(final int[] partNumbers, final long[] sizes) {
+    final long knownPartSize = partSize.get();
+    if (knownPartSize < 0) {
+      return false;
+    }
+    for (int i = 0; i < partNumbers.length; i++) {
+      if (partNumbers[i] != i + 1 || (i < partNumbers.length - 1 && sizes[i] != knownPartSize)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies a part stored in its own file to its offset in the target file.
+   *
+   * @param partNumber number of the part.
+   * @param partFile the file holding the part.
+   *
+   * @throws IOException if the part can't be copied.
+   */
+  void copyIntoPlace(final int partNumber, final Path partFile) throws IOException {
+    final long offset = (partNumber - 1) * partSize.get();
+    try (FileChannel source = FileChannel.open(partFile, StandardOpenOption.READ)) {
+      final long size = source.size();
+      long transferred = 0;
+      while (transferred < size) {
+        transferred += target.transferFrom(source, offset + transferred, size - transferred);
+      }
+    }
+  }
+
+  /**
+   * Cuts the target file to the given size and moves it to {@code destination}.
+   *
+   * @param size the size of the object.
+   * @param destination the data file of the object.
+   *
+   * @throws IOException if the file can't be moved.
+   */
+  void moveTo(final long size, final Path destination) throws IOException {
+    target.truncate(size);
+    target.close();
+    Files.move(targetFile, destination, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+
+  /**
+   * Writes a part written at its offset to the given stream.
+   *
+   * @param partNumber number of the part.
+   * @param outputStream the stream to write to.
+   *
+   * @throws IOException if the part can't be read.
+   */
+  void transferTo(final int partNumber, final OutputStream outputStream) throws IOException {
+    copyRange((partNumber - 1) * Math.max(partSize.get(), 0), parts.get(partNumber).size,
+        outputStream);
+  }
+
+  @Override
+  public void close() throws IOException {
+    target.close();
+  }
+
+  private void copyRange(final long offset, final long length, final OutputStream outputStream)
+      throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    long position = offset;
+    while (position < offset + length) {
+      buffer.clear().limit((int) Math.min(BUFFER_SIZE, offset + length - position));
+      final int read = target.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of " + targetFile);
+      }
+      outputStream.write(buffer.array(), 0, read);
+      position += read;
+    }
+  }
+
+  /**
+   * Creates the file an attempt to store a part in its own file writes to, next to the part file.
+   */
+  private static Path createAttemptFile(final Path partFile) throws IOException {
+    return Files.createTempFile(partFile.getParent(), partFile.getFileName() + ".",
+        ATTEMPT_SUFFIX);
+  }
+
+  /**
+   * Replaces the part with the completely written file of an attempt.
+   */
+  private synchronized String publish(final int partNumber, final Path attemptFile,
+      final Path partFile, final Map<Integer, String> etags, final String etag)
+      throws IOException {
+    Files.move(attemptFile, partFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    parts.remove(partNumber);
+    etags.put(partNumber, etag);
+    return etag;
+  }
+
+  private static String writeToFile(final InputStream inputStream, final Path partFile,
+      final MessageDigest md5, final StandardOpenOption... options) throws IOException {
+    try (OutputStream outputStream = Files.newOutputStream(partFile, options)) {
+      final byte[] bytes = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = inputStream.read(bytes)) != -1) {
+        md5.update(bytes, 0, read);
+        outputStream.write(bytes, 0, read);
+      }
+    }
+    return Hex.encodeHexString(md5.digest());
+  }
+
+  /**
+   * A part written at its offset.
+   */
+  static final class PartRecord {
+
+    final long size;
+    final String etag;
+    final long lastModified;
+
+    PartRecord(final long size, final String etag, final long lastModified) {
+      this.size = size;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+  }
+}
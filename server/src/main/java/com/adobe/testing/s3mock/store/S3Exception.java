@@ -20,6 +20,9 @@ package com.adobe.testing.s3mock.store;
  * {@link RuntimeException} to communicate general S3 errors. These are handled by {@code
  * com.adobe.testing.s3mock.util.S3ExceptionResolver}, mapped to {@link
  * com.adobe.testing.s3mock.dto.ErrorResponse} and serialized.
+ *
+ * <p>S3 errors are regular responses, e.g. to lookups of missing keys, so no stack trace is
+ * recorded for them.</p>
  */
 public class S3Exception extends RuntimeException {
 
@@ -36,7 +39,7 @@ public class S3Exception extends RuntimeException {
    * @param message The Error Message.
    */
   public S3Exception(final int status, final String code, final String message) {
-    super(message);
+    super(message, null, false, false);
     this.status = status;
     this.code = code;
     this.message = message;
@@ -17,6 +17,8 @@
 package com.adobe.testing.s3mock.store;
 
 import com.adobe.testing.s3mock.dto.Tag;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -58,6 +60,10 @@ public class S3Object {
 
   private List<Tag> tags;
 
+  @JsonProperty
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private SegmentLocation packedData;
+
   public String getName() {
     return name;
   }
@@ -178,4 +184,15 @@ public class S3Object {
     return tags == null ? new ArrayList<>() : tags;
   }
 
+  /**
+   * Returns the location of the data if it is packed into a segment, null otherwise.
+   */
+  SegmentLocation getPackedData() {
+    return packedData;
+  }
+
+  void setPackedData(final SegmentLocation packedData) {
+    this.packedData = packedData;
+  }
+
 }
@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import java.util.Objects;
+
+/**
+ * Location of the data of a packed object in a segment of the {@link SegmentStore}.
+ */
+class SegmentLocation {
+
+  private int segment;
+
+  private long offset;
+
+  private long length;
+
+  SegmentLocation() {
+    // for Jackson
+  }
+
+  SegmentLocation(final int segment, final long offset, final long length) {
+    this.segment = segment;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public int getSegment() {
+    return segment;
+  }
+
+  public void setSegment(final int segment) {
+    this.segment = segment;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public void setOffset(final long offset) {
+    this.offset = offset;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public void setLength(final long length) {
+    this.length = length;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final SegmentLocation that = (SegmentLocation) o;
+    return segment == that.segment && offset == that.offset && length == that.length;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(segment, offset, length);
+  }
+
+  @Override
+  public String toString() {
+    return segment + ":" + offset + "+" + length;
+  }
+}
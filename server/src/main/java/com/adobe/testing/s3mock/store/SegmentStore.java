@@ -0,0 +1,394 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only segment files holding the data of small objects.
+ *
+ * <p>Instead of a data file per object, the data of small objects is appended to the current
+ * segment file, and the object metadata records its {@link SegmentLocation}. Each entry is
+ * preceded by the path of its object, so segments can be compacted without an index: overwritten
+ * and deleted entries are counted per segment, and a segment consisting mostly of such entries is
+ * rewritten by moving the entries still referenced by their object to the current segment.
+ * Compacted segments are deleted one compaction run later, so reads that started before the
+ * compaction can finish.</p>
+ *
+ * <p>Dead entries are only counted while S3Mock is running, entries of objects deleted in earlier
+ * runs or with their whole bucket are reclaimed once their segment is compacted for other
+ * reasons.</p>
+ *
+ * <p>Like all other files of the store, a segment is never modified once it is sealed, so
+ * {@link Checkpoints} can hard link sealed segments. {@link #seal()} seals the current segment,
+ * {@link #replace(Replacement)} swaps all segments for the ones of a checkpoint, or none.</p>
+ */
+class SegmentStore {
+
+  static final String SEGMENT_FOLDER = ".segments";
+  private static final String SEGMENT_SUFFIX = ".segment";
+
+  /**
+   * Share of overwritten and deleted data at which a segment is compacted.
+   */
+  private static final double COMPACTION_THRESHOLD = 0.5;
+
+  private static final Logger LOG = LoggerFactory.getLogger(SegmentStore.class);
+
+  /**
+   * Moves an entry to a new location if its object still references it.
+   */
+  interface Relocator {
+
+    /**
+     * Called for every entry of a segment being compacted.
+     *
+     * @param objectPath path of the object folder, relative to the root folder.
+     * @param location the location of the entry.
+     *
+     * @throws IOException if the entry can't be moved.
+     */
+    void relocate(String objectPath, SegmentLocation location) throws IOException;
+  }
+
+  /**
+   * Replaces the folder holding the segments while they are closed.
+   */
+  interface Replacement {
+
+    /**
+     * Called with the segment folder, which may be removed and has to be recreated.
+     *
+     * @param segmentFolder the folder holding the segments.
+     *
+     * @throws IOException if the folder can't be replaced.
+     */
+    void replace(Path segmentFolder) throws IOException;
+  }
+
+  private final Path segmentFolder;
+  private final long segmentSize;
+  private final Relocator relocator;
+  private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+  private final List<Segment> compacted = new ArrayList<>();
+  private final ScheduledExecutorService compactor;
+
+  private Segment current;
+  private int nextSegment;
+
+  /**
+   * Constructs a new {@link SegmentStore}, continuing with the segments of an earlier run.
+   *
+   * @param rootFolder the root folder of the {@link FileStore}, segments are kept below it.
+   * @param segmentSize size at which a new segment is started.
+   * @param compactionInterval interval of the segment compaction.
+   * @param relocator moves entries still in use during compaction.
+   */
+  SegmentStore(final File rootFolder, final long segmentSize, final Duration compactionInterval,
+      final Relocator relocator) {
+    segmentFolder = rootFolder.toPath().resolve(SEGMENT_FOLDER);
+    this.segmentSize = segmentSize;
+    this.relocator = relocator;
+    try {
+      open();
+    } catch (final IOException e) {
+      throw new IllegalStateException("Can't open segment directory!", e);
+    }
+
+    compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "s3mock-segment-compaction");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final long interval = compactionInterval.toMillis();
+    compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Appends the data of an object to the current segment.
+   *
+   * @param objectPath path of the object folder, relative to the root folder.
+   * @param data the data of the object.
+   *
+   * @return the location of the data.
+   *
+   * @throws IOException if the data can't be written.
+   */
+  synchronized SegmentLocation append(final String objectPath, final byte[] data)
+      throws IOException {
+    final byte[] path = objectPath.getBytes(UTF_8);
+    final ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + path.length + Long.BYTES
+        + data.length);
+    entry.putInt(path.length).put(path).putLong(data.length).put(data).flip();
+
+    if (current == null || (current.size > 0 && current.size + entry.limit() > segmentSize)) {
+      current = new Segment(nextSegment++, null, true);
+      segments.put(current.id, current);
+    }
+    final long offset = current.size;
+    while (entry.hasRemaining()) {
+      current.channel.write(entry, offset + entry.position());
+    }
+    current.size += entry.limit();
+    current.dataBytes += data.length;
+    return new SegmentLocation(current.id, offset + entry.limit() - data.length, data.length);
+  }
+
+  /**
+   * Writes a range of an entry to the given stream, transferring directly from the segment file.
+   *
+   * @param location the location of the entry.
+   * @param offset the offset in the entry of the first byte to write.
+   * @param length the number of bytes to write, capped at the end of the entry.
+   * @param outputStream the stream to write to.
+   *
+   * @throws IOException if the entry can't be read.
+   */
+  void transferTo(final SegmentLocation location, final long offset, final long length,
+      final OutputStream outputStream) throws IOException {
+    final FileChannel channel = segment(location).channel;
+    final WritableByteChannel target = Channels.newChannel(outputStream);
+    final long count = Math.max(0, Math.min(length, location.getLength() - offset));
+    long transferred = 0;
+    while (transferred < count) {
+      transferred += channel.transferTo(location.getOffset() + offset + transferred,
+          count - transferred, target);
+    }
+  }
+
+  /**
+   * Reads an entry.
+   *
+   * @param location the location of the entry.
+   *
+   * @return the data of the entry.
+   *
+   * @throws IOException if the entry can't be read.
+   */
+  byte[] read(final SegmentLocation location) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate((int) location.getLength());
+    final FileChannel channel = segment(location).channel;
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, location.getOffset() + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of segment " + location.getSegment());
+      }
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Marks an entry as no longer referenced, because its object was overwritten or deleted.
+   *
+   * @param location the location of the entry.
+   */
+  void release(final SegmentLocation location) {
+    final Segment segment = segments.get(location.getSegment());
+    if (segment != null) {
+      segment.deadBytes.addAndGet(location.getLength());
+    }
+  }
+
+  /**
+   * Compacts all segments mostly consisting of overwritten or deleted entries. Segments compacted
+   * in the previous run are deleted.
+   *
+   * @return the number of compacted segments.
+   *
+   * @throws IOException if a segment can't be compacted.
+   */
+  int compact() throws IOException {
+    synchronized (compacted) {
+      for (final Segment segment : compacted) {
+        segments.remove(segment.id);
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+      }
+      compacted.clear();
+
+      for (final Segment segment : new ArrayList<>(segments.values())) {
+        if (segment != current() && segment.size > 0
+            && segment.deadBytes.get() >= segment.dataBytes * COMPACTION_THRESHOLD) {
+          compactSegment(segment);
+          compacted.add(segment);
+        }
+      }
+      if (!compacted.isEmpty()) {
+        LOG.debug("Compacted {} segments", compacted.size());
+      }
+      return compacted.size();
+    }
+  }
+
+  /**
+   * Seals the current segment: the next entry is appended to a new segment, so all existing
+   * segments stay unchanged.
+   */
+  synchronized void seal() {
+    current = null;
+  }
+
+  /**
+   * Closes all segments, lets {@code replacement} replace the segment folder and opens the
+   * segments found in it. Entries are appended to a new segment afterwards. Must not be called
+   * while entries are read or appended.
+   *
+   * @param replacement replaces the segment folder.
+   *
+   * @throws IOException if the folder can't be replaced or the new segments can't be opened.
+   */
+  void replace(final Replacement replacement) throws IOException {
+    synchronized (compacted) {
+      synchronized (this) {
+        closeSegments();
+        segments.clear();
+        compacted.clear();
+        current = null;
+        replacement.replace(segmentFolder);
+        open();
+      }
+    }
+  }
+
+  /**
+   * Stops the compaction and closes all segments.
+   */
+  void close() {
+    compactor.shutdownNow();
+    closeSegments();
+  }
+
+  private void open() throws IOException {
+    Files.createDirectories(segmentFolder);
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(segmentFolder, "*" + SEGMENT_SUFFIX)) {
+      for (final Path file : files) {
+        final String name = file.getFileName().toString();
+        final int id =
+            Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        segments.put(id, new Segment(id, file, false));
+        nextSegment = Math.max(nextSegment, id + 1);
+      }
+    }
+  }
+
+  private void closeSegments() {
+    for (final Segment segment : segments.values()) {
+      try {
+        segment.channel.close();
+      } catch (final IOException e) {
+        LOG.error("Segment can not be closed!", e);
+      }
+    }
+  }
+
+  private void compactSegment(final Segment segment) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+    long position = 0;
+    while (position < segment.size) {
+      header.clear().limit(Integer.BYTES);
+      readFully(segment.channel, header, position);
+      final ByteBuffer path = ByteBuffer.allocate(header.getInt(0));
+      readFully(segment.channel, path, position + Integer.BYTES);
+      final ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+      readFully(segment.channel, length, position + Integer.BYTES + path.capacity());
+      final long dataOffset = position + Integer.BYTES + path.capacity() + Long.BYTES;
+      final SegmentLocation location =
+          new SegmentLocation(segment.id, dataOffset, length.getLong(0));
+      relocator.relocate(new String(path.array(), UTF_8), location);
+      position = dataOffset + location.getLength();
+    }
+  }
+
+  private void compactQuietly() {
+    try {
+      compact();
+    } catch (final IOException | RuntimeException e) {
+      LOG.error("Could not compact segments", e);
+    }
+  }
+
+  private synchronized Segment current() {
+    return current;
+  }
+
+  private Segment segment(final SegmentLocation location) throws IOException {
+    final Segment segment = segments.get(location.getSegment());
+    if (segment == null) {
+      throw new IOException("Segment " + location.getSegment() + " does not exist");
+    }
+    return segment;
+  }
+
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer,
+      final long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of segment");
+      }
+    }
+  }
+
+  private final class Segment {
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final AtomicLong deadBytes = new AtomicLong();
+    private long size;
+
+    /**
+     * Size of the entries without their headers. Unknown for segments of an earlier run, the
+     * segment size is used for them instead.
+     */
+    private long dataBytes;
+
+    private Segment(final int id, final Path path, final boolean create) throws IOException {
+      this.id = id;
+      this.path = path != null ? path : segmentFolder.resolve(id + SEGMENT_SUFFIX);
+      channel = create
+          ? FileChannel.open(this.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+              StandardOpenOption.WRITE)
+          : FileChannel.open(this.path, StandardOpenOption.READ);
+      size = channel.size();
+      dataBytes = size;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only {@link FileChannel}s shared by concurrent readers of the same file.
+ *
+ * <p>Parallel UploadPartCopy requests usually copy different ranges of the same source object.
+ * They only read at explicit positions, so one channel serves all of them. A channel is closed
+ * once the last reader released it. If the file was replaced in the meantime, e.g. by overwriting
+ * the object, new readers get a channel on the new file.</p>
+ */
+class SharedFileChannels {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SharedFileChannels.class);
+
+  private final Map<Path, Handle> handles = new HashMap<>();
+
+  /**
+   * Acquires a channel for reading the given file. Must be closed after use.
+   *
+   * @param path the file to read.
+   *
+   * @return the handle holding the channel.
+   *
+   * @throws IOException if the file can't be opened.
+   */
+  Handle acquire(final Path path) throws IOException {
+    final Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    synchronized (handles) {
+      final Handle existing = handles.get(path);
+      if (existing != null && fileKey != null && Objects.equals(existing.fileKey, fileKey)) {
+        existing.references++;
+        return existing;
+      }
+      final Handle handle =
+          new Handle(path, fileKey, FileChannel.open(path, StandardOpenOption.READ));
+      handles.put(path, handle);
+      return handle;
+    }
+  }
+
+  /**
+   * Returns the number of files currently open.
+   */
+  int openFiles() {
+    synchronized (handles) {
+      return handles.size();
+    }
+  }
+
+  private void release(final Handle handle) {
+    synchronized (handles) {
+      if (--handle.references > 0) {
+        return;
+      }
+      handles.remove(handle.path, handle);
+    }
+    try {
+      handle.channel.close();
+    } catch (final IOException e) {
+      LOG.error("FileChannel can not be closed!", e);
+    }
+  }
+
+  /**
+   * A reference to a shared channel.
+   */
+  final class Handle implements AutoCloseable {
+
+    private final Path path;
+    private final Object fileKey;
+    private final FileChannel channel;
+    private int references = 1;
+
+    private Handle(final Path path, final Object fileKey, final FileChannel channel) {
+      this.path = path;
+      this.fileKey = fileKey;
+      this.channel = channel;
+    }
+
+    /**
+     * Returns the channel, which must only be used with explicit positions.
+     */
+    FileChannel channel() {
+      return channel;
+    }
+
+    @Override
+    public void close() {
+      release(this);
+    }
+  }
+}
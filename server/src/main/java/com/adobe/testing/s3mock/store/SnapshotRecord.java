@@ -0,0 +1,132 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import com.adobe.testing.s3mock.dto.Owner;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Map;
+
+/**
+ * Describes a namespace, bucket, object or multipart upload in a snapshot written by
+ * {@link StoreSnapshot}. Only the properties of the described item are set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+class SnapshotRecord {
+
+  /**
+   * The namespace of the item, null for the default namespace.
+   */
+  private String namespace;
+
+  private String bucket;
+
+  private S3Object object;
+
+  private String key;
+
+  private String uploadId;
+
+  private String contentType;
+
+  private String contentEncoding;
+
+  private Map<String, String> userMetadata;
+
+  private Owner owner;
+
+  private Owner initiator;
+
+  public String getNamespace() {
+    return namespace;
+  }
+
+  public void setNamespace(final String namespace) {
+    this.namespace = namespace;
+  }
+
+  public String getBucket() {
+    return bucket;
+  }
+
+  public void setBucket(final String bucket) {
+    this.bucket = bucket;
+  }
+
+  public S3Object getObject() {
+    return object;
+  }
+
+  public void setObject(final S3Object object) {
+    this.object = object;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public void setKey(final String key) {
+    this.key = key;
+  }
+
+  public String getUploadId() {
+    return uploadId;
+  }
+
+  public void setUploadId(final String uploadId) {
+    this.uploadId = uploadId;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public void setContentType(final String contentType) {
+    this.contentType = contentType;
+  }
+
+  public String getContentEncoding() {
+    return contentEncoding;
+  }
+
+  public void setContentEncoding(final String contentEncoding) {
+    this.contentEncoding = contentEncoding;
+  }
+
+  public Map<String, String> getUserMetadata() {
+    return userMetadata;
+  }
+
+  public void setUserMetadata(final Map<String, String> userMetadata) {
+    this.userMetadata = userMetadata;
+  }
+
+  public Owner getOwner() {
+    return owner;
+  }
+
+  public void setOwner(final Owner owner) {
+    this.owner = owner;
+  }
+
+  public Owner getInitiator() {
+    return initiator;
+  }
+
+  public void setInitiator(final Owner initiator) {
+    this.initiator = initiator;
+  }
+}
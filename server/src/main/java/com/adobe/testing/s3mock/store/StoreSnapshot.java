@@ -0,0 +1,301 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import com.adobe.testing.s3mock.dto.Bucket;
+import com.adobe.testing.s3mock.dto.MultipartUpload;
+import com.adobe.testing.s3mock.dto.Part;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the contents of a {@link FileStore} to a tar stream and reads them back, to move a data
+ * set between S3Mock instances.
+ *
+ * <p>The archive holds a JSON {@link SnapshotRecord} for each namespace, bucket, object and
+ * multipart upload in progress, each object record followed by the object data and each upload
+ * record followed by its parts:</p>
+ *
+ * <pre>
+ * namespaces/0.json
+ * buckets/1.json
+ * objects/2.json
+ * objects/2
+ * uploads/3.json
+ * uploads/3/1
+ * </pre>
+ *
+ * <p>Exports are written straight to the stream, object by object, without staging anything on
+ * disk. Imports read the stream in order and extract each object into a staging file, its
+ * metadata and data are stored in parallel. The number of objects waiting to be stored is bounded,
+ * so neither memory nor the staged data grows with the size of the archive. The store should not
+ * be modified while a snapshot is exported. Objects whose data doesn't match the size in their
+ * metadata are skipped with a warning, as they can't be described by a tar entry.</p>
+ */
+class StoreSnapshot {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StoreSnapshot.class);
+
+  private static final String NAMESPACES = "namespaces/";
+  private static final String BUCKETS = "buckets/";
+  private static final String OBJECTS = "objects/";
+  private static final String UPLOADS = "uploads/";
+  private static final String JSON_SUFFIX = ".json";
+
+  private final FileStore fileStore;
+
+  private final int parallelism;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  /**
+   * Constructs a new {@link StoreSnapshot}.
+   *
+   * @param fileStore the store to export or import.
+   * @param parallelism the number of objects stored at the same time on import.
+   */
+  StoreSnapshot(final FileStore fileStore, final int parallelism) {
+    this.fileStore = fileStore;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Writes all namespaces, buckets, objects and multipart uploads in progress to a stream.
+   *
+   * @param outputStream the stream to write the tar archive to, is not closed.
+   *
+   * @throws IOException if the store can't be read or the stream can't be written.
+   */
+  void export(final OutputStream outputStream) throws IOException {
+    final TarArchiveOutputStream tar = new TarArchiveOutputStream(outputStream);
+    tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+    tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+    final List<String> namespaces = new ArrayList<>();
+    namespaces.add(null);
+    namespaces.addAll(fileStore.listNamespaces());
+    final String previous = NamespaceContext.current();
+    int sequence = 0;
+    try {
+      for (final String namespace : namespaces) {
+        NamespaceContext.set(namespace);
+        if (namespace != null) {
+          final SnapshotRecord record = new SnapshotRecord();
+          record.setNamespace(namespace);
+          writeRecord(tar, NAMESPACES + sequence++, record);
+        }
+        for (final Bucket bucket : fileStore.listBuckets()) {
+          sequence = exportBucket(tar, namespace, bucket.getName(), sequence);
+        }
+      }
+    } finally {
+      NamespaceContext.set(previous);
+    }
+    tar.finish();
+    tar.flush();
+  }
+
+  private int exportBucket(final TarArchiveOutputStream tar, final String namespace,
+      final String bucketName, final int start) throws IOException {
+    int sequence = start;
+    final SnapshotRecord bucketRecord = record(namespace, bucketName);
+    writeRecord(tar, BUCKETS + sequence++, bucketRecord);
+
+    for (final S3Object s3Object : fileStore.getS3Objects(bucketName, null)) {
+      // the entry header holds the size, data of another length would corrupt the archive
+      final long size = fileStore.dataSize(s3Object);
+      if (size != Long.parseLong(s3Object.getSize())) {
+        LOG.warn("Skipping object \"{}\" of bucket \"{}\": its metadata states {} bytes, its data"
+            + " has {}.", s3Object.getName(), bucketName, s3Object.getSize(), size);
+        continue;
+      }
+      final File dataFile = s3Object.getDataFile();
+      final SegmentLocation packedData = s3Object.getPackedData();
+      s3Object.setDataFile(null);
+      s3Object.setPackedData(null);
+      final SnapshotRecord record = record(namespace, bucketName);
+      record.setObject(s3Object);
+      final String name = OBJECTS + sequence++;
+      writeRecord(tar, name, record);
+      s3Object.setDataFile(dataFile);
+      s3Object.setPackedData(packedData);
+
+      tar.putArchiveEntry(entry(name, size));
+      fileStore.readS3ObjectData(s3Object, tar);
+      tar.closeArchiveEntry();
+    }
+
+    for (final MultipartUpload upload : fileStore.listMultipartUploads(bucketName)) {
+      final MultipartUploadInfo info = fileStore.uploadInfo(upload.getUploadId());
+      if (info == null) {
+        continue;
+      }
+      final SnapshotRecord record = record(namespace, bucketName);
+      record.setKey(upload.getKey());
+      record.setUploadId(upload.getUploadId());
+      record.setContentType(info.contentType);
+      record.setContentEncoding(info.contentEncoding);
+      record.setUserMetadata(info.userMetadata);
+      record.setOwner(upload.getOwner());
+      record.setInitiator(upload.getInitiator());
+      final String name = UPLOADS + sequence++;
+      writeRecord(tar, name, record);
+      for (final Part part : fileStore.getMultipartUploadParts(bucketName, upload.getKey(),
+          upload.getUploadId())) {
+        tar.putArchiveEntry(entry(name + "/" + part.getPartNumber(), part.getSize()));
+        fileStore.readPart(bucketName, upload.getKey(), upload.getUploadId(),
+            part.getPartNumber(), tar);
+        tar.closeArchiveEntry();
+      }
+    }
+    return sequence;
+  }
+
+  private static SnapshotRecord record(final String namespace, final String bucketName) {
+    final SnapshotRecord record = new SnapshotRecord();
+    record.setNamespace(namespace);
+    record.setBucket(bucketName);
+    return record;
+  }
+
+  private void writeRecord(final TarArchiveOutputStream tar, final String name,
+      final SnapshotRecord record) throws IOException {
+    final byte[] json = objectMapper.writeValueAsBytes(record);
+    tar.putArchiveEntry(entry(name + JSON_SUFFIX, json.length));
+    tar.write(json);
+    tar.closeArchiveEntry();
+  }
+
+  private static TarArchiveEntry entry(final String name, final long size) {
+    final TarArchiveEntry entry = new TarArchiveEntry(name);
+    entry.setSize(size);
+    return entry;
+  }
+
+  /**
+   * Restores namespaces, buckets, objects and multipart uploads from a stream written by
+   * {@link #export(OutputStream)}, replacing existing objects of the same keys.
+   *
+   * @param inputStream the stream to read the tar archive from, is not closed.
+   *
+   * @return the number of restored objects.
+   *
+   * @throws IOException if the stream can't be read or an object can't be stored.
+   */
+  int importFrom(final InputStream inputStream) throws IOException {
+    final long start = System.nanoTime();
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    final AtomicInteger objects = new AtomicInteger();
+    // a full queue makes the reading thread store the next object itself
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism,
+        0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(parallelism), runnable -> {
+          final Thread thread = new Thread(runnable, "s3mock-snapshot-import");
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    final String previous = NamespaceContext.current();
+    try {
+      final TarArchiveInputStream tar =
+          new TarArchiveInputStream(new BufferedInputStream(inputStream));
+      SnapshotRecord record = null;
+      TarArchiveEntry entry;
+      while ((entry = tar.getNextTarEntry()) != null && failure.get() == null) {
+        final String name = entry.getName();
+        if (name.endsWith(JSON_SUFFIX)) {
+          record = objectMapper.readValue(CloseShieldInputStream.wrap(tar),
+              SnapshotRecord.class);
+          NamespaceContext.set(null);
+          if (name.startsWith(NAMESPACES)) {
+            fileStore.createNamespace(record.getNamespace());
+          } else if (name.startsWith(BUCKETS)) {
+            NamespaceContext.set(record.getNamespace());
+            fileStore.createBucket(record.getBucket());
+          } else if (name.startsWith(UPLOADS)) {
+            NamespaceContext.set(record.getNamespace());
+            fileStore.prepareMultipartUpload(record.getBucket(), record.getKey(),
+                record.getContentType(), record.getContentEncoding(), record.getUploadId(),
+                record.getOwner(), record.getInitiator(), record.getUserMetadata());
+          }
+        } else if (record != null) {
+          final Path staged = fileStore.createStagingFile();
+          Files.copy(tar, staged, StandardCopyOption.REPLACE_EXISTING);
+          final SnapshotRecord owner = record;
+          final String partNumber = name.startsWith(UPLOADS)
+              ? name.substring(name.lastIndexOf('/') + 1) : null;
+          executor.execute(() -> {
+            final String namespace = NamespaceContext.set(owner.getNamespace());
+            try {
+              try {
+                if (partNumber == null) {
+                  fileStore.restoreObject(owner.getBucket(), owner.getObject(), staged);
+                  objects.incrementAndGet();
+                } else {
+                  try (InputStream partStream = Files.newInputStream(staged)) {
+                    fileStore.putPart(owner.getBucket(), owner.getKey(), owner.getUploadId(),
+                        partNumber, partStream, false);
+                  }
+                }
+              } finally {
+                Files.deleteIfExists(staged);
+              }
+            } catch (final Exception e) {
+              failure.compareAndSet(null, e);
+            } finally {
+              NamespaceContext.set(namespace);
+            }
+          });
+        }
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted importing snapshot", e);
+    } finally {
+      executor.shutdownNow();
+      NamespaceContext.set(previous);
+    }
+    final Exception e = failure.get();
+    if (e instanceof IOException) {
+      throw (IOException) e;
+    } else if (e != null) {
+      throw new IllegalStateException("Can't import snapshot", e);
+    }
+    LOG.info("Imported {} objects from a snapshot in {} ms.", objects.get(),
+        (System.nanoTime() - start) / 1_000_000);
+    return objects.get();
+  }
+}
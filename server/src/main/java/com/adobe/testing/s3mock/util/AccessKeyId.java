@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.util;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+/**
+ * Extracts the access key id a request was signed with. Signatures are not verified.
+ */
+public final class AccessKeyId {
+
+  private static final String SIGNATURE_V4_CREDENTIAL = "Credential=";
+  private static final String SIGNATURE_V2_PREFIX = "AWS ";
+  private static final String PRESIGNED_V4_CREDENTIAL = "X-Amz-Credential";
+  private static final String PRESIGNED_V2_ACCESS_KEY = "AWSAccessKeyId";
+
+  private AccessKeyId() {
+    // empty private constructor
+  }
+
+  /**
+   * Extracts the access key id from the authorization header, or from the query of presigned
+   * URLs.
+   *
+   * @param authorization the authorization header, may be null.
+   * @param query the raw query string, may be null.
+   *
+   * @return the access key id, null if the request isn't signed.
+   */
+  public static String of(final String authorization, final String query) {
+    if (authorization != null) {
+      final int credential = authorization.indexOf(SIGNATURE_V4_CREDENTIAL);
+      if (credential >= 0) {
+        final int start = credential + SIGNATURE_V4_CREDENTIAL.length();
+        final int end = authorization.indexOf('/', start);
+        return end > start ? authorization.substring(start, end) : null;
+      }
+      if (authorization.startsWith(SIGNATURE_V2_PREFIX)) {
+        final int end = authorization.lastIndexOf(':');
+        return end > SIGNATURE_V2_PREFIX.length()
+            ? authorization.substring(SIGNATURE_V2_PREFIX.length(), end).trim() : null;
+      }
+      return null;
+    }
+    if (query == null || query.isEmpty()) {
+      return null;
+    }
+    final String credential = queryParameter(query, PRESIGNED_V4_CREDENTIAL);
+    if (credential != null) {
+      final int end = credential.indexOf('/');
+      return end > 0 ? credential.substring(0, end) : null;
+    }
+    return queryParameter(query, PRESIGNED_V2_ACCESS_KEY);
+  }
+
+  /**
+   * Reads a parameter from the query only: {@code ServletRequest#getParameter(String)} would also
+   * read form bodies, consuming the request.
+   */
+  private static String queryParameter(final String query, final String name) {
+    for (final String parameter : query.split("&")) {
+      if (parameter.startsWith(name + "=")) {
+        try {
+          return URLDecoder.decode(parameter.substring(name.length() + 1), "UTF-8");
+        } catch (final UnsupportedEncodingException | IllegalArgumentException e) {
+          return null;
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -43,6 +43,12 @@ public final class AwsHttpHeaders {
   public static final String X_AMZ_TAGGING = "x-amz-tagging";
   public static final String CONTENT_MD5 = "Content-MD5";
 
+  /**
+   * Selects the namespace of a request, see
+   * {@link com.adobe.testing.s3mock.store.NamespaceContext}. Not an AWS header.
+   */
+  public static final String X_S3MOCK_NAMESPACE = "x-s3mock-namespace";
+
   private AwsHttpHeaders() {
     // empty private constructor
   }
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class DownloadExecutorTest {
+
+  @Test
+  void shouldQueueAndRejectDownloadsBeyondBounds() throws Exception {
+    final S3MockProperties properties = new S3MockProperties();
+    properties.setDownloadThreads(1);
+    properties.setDownloadQueueSize(1);
+    properties.setDownloadRejectionPolicy(S3MockProperties.RejectionPolicy.ABORT);
+    final DownloadExecutor executor = new DownloadExecutor(properties);
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    executor.bindTo(registry);
+    try {
+      final CountDownLatch release = new CountDownLatch(1);
+      final Future<?> running = executor.submit(() -> {
+        release.await();
+        return null;
+      });
+      final Future<String> queued = executor.submit(() -> Thread.currentThread().getName());
+
+      assertThat(registry.get("s3mock.downloads.queued").gauge().value()).isEqualTo(1);
+      assertThatThrownBy(() -> executor.execute(() -> { }))
+          .isInstanceOf(RejectedExecutionException.class);
+
+      release.countDown();
+      running.get(10, TimeUnit.SECONDS);
+      assertThat(queued.get(10, TimeUnit.SECONDS)).startsWith("s3mock-download-");
+      assertThat(registry.get("s3mock.downloads.wait").timer().count()).isEqualTo(2);
+    } finally {
+      executor.destroy();
+    }
+  }
+
+  @Test
+  void shouldStreamSynchronouslyOnRequestThread() throws Exception {
+    final S3MockProperties properties = new S3MockProperties();
+    properties.setSynchronousDownloads(true);
+    final DownloadExecutor executor = new DownloadExecutor(properties);
+
+    final Future<String> download = executor.submit(() -> Thread.currentThread().getName());
+
+    assertThat(download.isDone()).isTrue();
+    assertThat(download.get()).isEqualTo(Thread.currentThread().getName());
+  }
+}
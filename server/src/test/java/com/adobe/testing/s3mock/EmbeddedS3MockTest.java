@@ -0,0 +1,193 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.adobe.testing.s3mock.util.AwsHttpHeaders;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EmbeddedS3MockTest {
+
+  private static final String BUCKET = "testbucket";
+
+  @TempDir
+  File rootFolder;
+
+  private EmbeddedS3Mock s3Mock;
+
+  @BeforeEach
+  void startS3Mock() {
+    final Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_HTTPS_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_HTTP_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_ROOT_DIRECTORY, rootFolder.getAbsolutePath());
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, BUCKET);
+    s3Mock = EmbeddedS3Mock.start(properties);
+  }
+
+  @AfterEach
+  void stopS3Mock() {
+    s3Mock.stop();
+  }
+
+  @Test
+  void shouldServeTheS3Api() throws Exception {
+    assertThat(s3Mock.getPort()).isPositive().isNotEqualTo(s3Mock.getHttpPort());
+
+    final HttpURLConnection put = open("PUT", "/" + BUCKET + "/dir/key");
+    put.setDoOutput(true);
+    try (OutputStream outputStream = put.getOutputStream()) {
+      outputStream.write("content".getBytes(UTF_8));
+    }
+    assertThat(put.getResponseCode()).isEqualTo(200);
+
+    final HttpURLConnection copy = open("PUT", "/" + BUCKET + "/copy");
+    copy.setRequestProperty("x-amz-copy-source", "/" + BUCKET + "/dir/key");
+    assertThat(copy.getResponseCode()).isEqualTo(200);
+    assertThat(copy.getContentType()).isEqualTo("application/xml");
+
+    final HttpURLConnection get = open("GET", "/" + BUCKET + "/copy");
+    assertThat(get.getResponseCode()).isEqualTo(200);
+    assertThat(read(get.getInputStream())).isEqualTo("content");
+
+    final HttpURLConnection list = open("GET", "/" + BUCKET + "?list-type=2&prefix=dir%2F");
+    assertThat(list.getResponseCode()).isEqualTo(200);
+    assertThat(read(list.getInputStream())).contains("<Key>dir/key</Key>")
+        .doesNotContain("<Key>copy</Key>");
+
+    final HttpURLConnection missing = open("GET", "/" + BUCKET + "/missing");
+    assertThat(missing.getResponseCode()).isEqualTo(404);
+    assertThat(read(missing.getErrorStream())).contains("<Code>NoSuchKey</Code>");
+  }
+
+  @Test
+  void shouldValidateKmsKeys() throws Exception {
+    final HttpURLConnection unknownKey = open("PUT", "/" + BUCKET + "/key");
+    unknownKey.setRequestProperty("x-amz-server-side-encryption", "aws:kms");
+    unknownKey.setRequestProperty("x-amz-server-side-encryption-aws-kms-key-id", "key");
+    unknownKey.setDoOutput(true);
+    unknownKey.getOutputStream().close();
+    assertThat(unknownKey.getResponseCode()).isEqualTo(400);
+
+    s3Mock.registerKMSKeyRef("key");
+    final HttpURLConnection knownKey = open("PUT", "/" + BUCKET + "/key");
+    knownKey.setRequestProperty("x-amz-server-side-encryption", "aws:kms");
+    knownKey.setRequestProperty("x-amz-server-side-encryption-aws-kms-key-id", "key");
+    knownKey.setDoOutput(true);
+    knownKey.getOutputStream().close();
+    assertThat(knownKey.getResponseCode()).isEqualTo(200);
+  }
+
+  @Test
+  void shouldIsolateNamespaces() throws Exception {
+    assertThat(open("PUT", "/.s3mock/namespaces/tenant").getResponseCode()).isEqualTo(201);
+    assertThat(open("PUT", "/.s3mock/namespaces/tenant").getResponseCode()).isEqualTo(200);
+    assertThat(open("PUT", "/.s3mock/namespaces/..").getResponseCode()).isEqualTo(400);
+    assertThat(read(open("GET", "/.s3mock/namespaces").getInputStream())).isEqualTo("tenant\n");
+
+    final HttpURLConnection createBucket = open("PUT", "/" + BUCKET);
+    createBucket.setRequestProperty(AwsHttpHeaders.X_S3MOCK_NAMESPACE, "tenant");
+    assertThat(createBucket.getResponseCode()).isEqualTo(200);
+    final HttpURLConnection put = open("PUT", "/" + BUCKET + "/key");
+    put.setRequestProperty("Authorization", "AWS4-HMAC-SHA256 "
+        + "Credential=tenant/20220101/us-east-1/s3/aws4_request, SignedHeaders=host, Signature=0");
+    put.setDoOutput(true);
+    try (OutputStream outputStream = put.getOutputStream()) {
+      outputStream.write("content".getBytes(UTF_8));
+    }
+    assertThat(put.getResponseCode()).isEqualTo(200);
+
+    final HttpURLConnection get = open("GET", "/" + BUCKET + "/key");
+    get.setRequestProperty(AwsHttpHeaders.X_S3MOCK_NAMESPACE, "tenant");
+    assertThat(read(get.getInputStream())).isEqualTo("content");
+    assertThat(open("GET", "/" + BUCKET + "/key").getResponseCode()).isEqualTo(404);
+
+    assertThat(open("DELETE", "/.s3mock/namespaces/tenant").getResponseCode()).isEqualTo(204);
+    assertThat(open("DELETE", "/.s3mock/namespaces/tenant").getResponseCode()).isEqualTo(404);
+    final HttpURLConnection dropped = open("GET", "/" + BUCKET + "/key");
+    dropped.setRequestProperty(AwsHttpHeaders.X_S3MOCK_NAMESPACE, "tenant");
+    assertThat(dropped.getResponseCode()).isEqualTo(404);
+    assertThat(read(dropped.getErrorStream())).contains("<Code>NoSuchNamespace</Code>");
+  }
+
+  @Test
+  void shouldRollBackToCheckpoints() throws Exception {
+    put("/" + BUCKET + "/key", "seeded");
+    assertThat(open("PUT", "/.s3mock/checkpoints/seeded").getResponseCode()).isEqualTo(201);
+    assertThat(read(open("GET", "/.s3mock/checkpoints").getInputStream())).isEqualTo("seeded\n");
+
+    put("/" + BUCKET + "/key", "changed");
+    put("/" + BUCKET + "/other", "added");
+    assertThat(open("POST", "/.s3mock/checkpoints/seeded/rollback").getResponseCode())
+        .isEqualTo(204);
+    assertThat(read(open("GET", "/" + BUCKET + "/key").getInputStream())).isEqualTo("seeded");
+    assertThat(open("GET", "/" + BUCKET + "/other").getResponseCode()).isEqualTo(404);
+    assertThat(open("POST", "/.s3mock/checkpoints/missing/rollback").getResponseCode())
+        .isEqualTo(404);
+
+    assertThat(open("POST", "/.s3mock/reset").getResponseCode()).isEqualTo(204);
+    assertThat(open("GET", "/" + BUCKET + "/key").getResponseCode()).isEqualTo(404);
+    assertThat(open("HEAD", "/" + BUCKET).getResponseCode()).isEqualTo(200);
+
+    assertThat(open("DELETE", "/.s3mock/checkpoints/seeded").getResponseCode()).isEqualTo(204);
+    assertThat(open("HEAD", "/.s3mock/checkpoints/seeded").getResponseCode()).isEqualTo(404);
+  }
+
+  @Test
+  void shouldAnswerRequestsOutsideTheApi() throws Exception {
+    assertThat(open("GET", "/favicon.ico").getResponseCode()).isEqualTo(200);
+    assertThat(open("POST", "/" + BUCKET + "/key").getResponseCode()).isEqualTo(405);
+  }
+
+  private void put(final String path, final String content) throws Exception {
+    final HttpURLConnection put = open("PUT", path);
+    put.setDoOutput(true);
+    try (OutputStream outputStream = put.getOutputStream()) {
+      outputStream.write(content.getBytes(UTF_8));
+    }
+    assertThat(put.getResponseCode()).isEqualTo(200);
+  }
+
+  @SuppressWarnings("deprecation")
+  private HttpURLConnection open(final String method, final String path) throws Exception {
+    final HttpURLConnection connection = (HttpURLConnection) new URL(
+        "http://localhost:" + s3Mock.getHttpPort() + path).openConnection();
+    connection.setRequestMethod(method);
+    return connection;
+  }
+
+  private static String read(final InputStream inputStream) throws Exception {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (InputStream in = inputStream) {
+      FileStoreController.copyTo(in, outputStream);
+    }
+    return new String(outputStream.toByteArray(), UTF_8);
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.adobe.testing.s3mock.S3MockConfiguration.S3MockExceptionHandler;
+import com.adobe.testing.s3mock.store.FileStore;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+class NonBlockingTransfersTest {
+
+  private static final String BUCKET = "testbucket";
+
+  @TempDir
+  File rootFolder;
+
+  private S3MockApplication s3Mock;
+
+  @BeforeEach
+  void startS3Mock() {
+    final Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_HTTPS_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_HTTP_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_ROOT_DIRECTORY, rootFolder.getAbsolutePath());
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, BUCKET);
+    properties.put(S3MockApplication.PROP_SILENT, true);
+    properties.put("com.adobe.testing.s3mock.nonBlockingTransfers", true);
+    s3Mock = S3MockApplication.start(properties);
+  }
+
+  @AfterEach
+  void stopS3Mock() {
+    s3Mock.stop();
+  }
+
+  @Test
+  void shouldTransferObjectData() throws Exception {
+    final byte[] content = new byte[1024 * 1024 + 17];
+    new Random(42).nextBytes(content);
+
+    final HttpURLConnection put = open("key");
+    put.setRequestMethod("PUT");
+    put.setRequestProperty("Content-Type", "application/octet-stream");
+    put.setDoOutput(true);
+    put.setChunkedStreamingMode(8192);
+    try (OutputStream outputStream = put.getOutputStream()) {
+      outputStream.write(content);
+    }
+    assertThat(put.getResponseCode()).isEqualTo(200);
+    assertThat(awaitStagingFiles()).isEmpty();
+
+    final HttpURLConnection get = open("key");
+    assertThat(get.getResponseCode()).isEqualTo(200);
+    assertThat(get.getContentLengthLong()).isEqualTo(content.length);
+    assertThat(read(get)).isEqualTo(content);
+
+    final HttpURLConnection range = open("key");
+    range.setRequestProperty("Range", "bytes=100000-199999");
+    assertThat(range.getResponseCode()).isEqualTo(206);
+    assertThat(read(range)).isEqualTo(Arrays.copyOfRange(content, 100000, 200000));
+  }
+
+  @Test
+  void shouldReportErrorsAfterReceivingTheBody() throws Exception {
+    final HttpURLConnection put = open("key");
+    put.setRequestMethod("PUT");
+    put.setRequestProperty("Content-Type", "application/octet-stream");
+    put.setRequestProperty("Content-MD5", "AAAAAAAAAAAAAAAAAAAAAA==");
+    put.setDoOutput(true);
+    try (OutputStream outputStream = put.getOutputStream()) {
+      outputStream.write(new byte[] {1, 2, 3});
+    }
+    assertThat(put.getResponseCode()).isEqualTo(400);
+    assertThat(open("key").getResponseCode()).isEqualTo(404);
+    assertThat(awaitStagingFiles()).isEmpty();
+  }
+
+  @Test
+  void shouldAnswerFailedStagingWritesWithInternalError() throws Exception {
+    final Path full = Paths.get("/dev/full");
+    assumeTrue(Files.isWritable(full));
+    final Path stagingFile = Files.createSymbolicLink(rootFolder.toPath().resolve("full"), full);
+    final FileStore fileStore = mock(FileStore.class);
+    when(fileStore.createStagingFile()).thenReturn(stagingFile);
+    final S3MockProperties properties = new S3MockProperties();
+    properties.setNonBlockingTransfers(true);
+    final NonBlockingTransfers transfers = new NonBlockingTransfers(properties, fileStore,
+        new S3MockExceptionHandler(new S3MockConfiguration().messageConverter()));
+
+    final HttpServletRequest request = mock(HttpServletRequest.class);
+    final HttpServletResponse response = mock(HttpServletResponse.class);
+    final AsyncContext asyncContext = mock(AsyncContext.class);
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    when(request.startAsync()).thenReturn(asyncContext);
+    when(request.getInputStream()).thenReturn(new OneReadInputStream(new byte[] {1, 2, 3}));
+    when(asyncContext.getResponse()).thenReturn(response);
+    when(response.getOutputStream()).thenReturn(new CapturingOutputStream(body));
+
+    assertThat(transfers.receiveBody(request)).isTrue();
+
+    verify(asyncContext, timeout(5000)).complete();
+    final ArgumentCaptor<Integer> status = ArgumentCaptor.forClass(Integer.class);
+    verify(response).setStatus(status.capture());
+    assertThat(status.getValue()).isEqualTo(500);
+    assertThat(body.toString("UTF-8")).contains("<Code>InternalError</Code>");
+    verify(asyncContext, never()).dispatch();
+  }
+
+  /**
+   * Returns the staging files left once the request completed, which the container may signal
+   * only after the response was sent.
+   */
+  private String[] awaitStagingFiles() throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    String[] stagingFiles = rootFolder.list((dir, name) -> name.startsWith(".staged"));
+    while (stagingFiles.length > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+      stagingFiles = rootFolder.list((dir, name) -> name.startsWith(".staged"));
+    }
+    return stagingFiles;
+  }
+
+  @SuppressWarnings("deprecation")
+  private HttpURLConnection open(final String key) throws Exception {
+    return (HttpURLConnection) new URL(
+        "http://localhost:" + s3Mock.getHttpPort() + "/" + BUCKET + "/" + key).openConnection();
+  }
+
+  private static byte[] read(final HttpURLConnection connection) throws Exception {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (InputStream inputStream = connection.getInputStream()) {
+      FileStoreController.copyTo(inputStream, outputStream);
+    }
+    return outputStream.toByteArray();
+  }
+
+  /**
+   * Ready input stream returning the given data once, then the end of the stream.
+   */
+  private static final class OneReadInputStream extends ServletInputStream {
+
+    private final byte[] data;
+    private boolean read;
+
+    private OneReadInputStream(final byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public boolean isFinished() {
+      return read;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setReadListener(final ReadListener readListener) {
+      try {
+        readListener.onDataAvailable();
+      } catch (final IOException e) {
+        readListener.onError(e);
+      }
+    }
+
+    @Override
+    public int read() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+      if (read) {
+        return -1;
+      }
+      read = true;
+      System.arraycopy(data, 0, b, off, data.length);
+      return data.length;
+    }
+  }
+
+  /**
+   * Blocking output stream writing to the given stream.
+   */
+  private static final class CapturingOutputStream extends ServletOutputStream {
+
+    private final ByteArrayOutputStream outputStream;
+
+    private CapturingOutputStream(final ByteArrayOutputStream outputStream) {
+      this.outputStream = outputStream;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener writeListener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void write(final int b) {
+      outputStream.write(b);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+import com.adobe.testing.s3mock.S3MockConfiguration.S3MockExceptionHandler;
+import com.adobe.testing.s3mock.store.S3Exception;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.xml.MappingJackson2XmlHttpMessageConverter;
+
+class S3MockExceptionHandlerTest {
+
+  private final S3MockExceptionHandler handler =
+      new S3MockExceptionHandler(new MappingJackson2XmlHttpMessageConverter());
+
+  @Test
+  void shouldRespondWithCachedErrorResponses() {
+    final ResponseEntity<byte[]> first = handler.handleS3Exception(noSuchKey());
+    final ResponseEntity<byte[]> second = handler.handleS3Exception(noSuchKey());
+
+    assertThat(first.getStatusCodeValue()).isEqualTo(404);
+    assertThat(first.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_XML);
+    assertThat(new String(first.getBody(), UTF_8))
+        .isEqualTo("<Error><Code>NoSuchKey</Code>"
+            + "<Message>The specified key does not exist.</Message>"
+            + "<Resource/><RequestId/></Error>");
+    assertThat(second.getBody()).isSameAs(first.getBody());
+  }
+
+  @Test
+  void shouldCountErrorsByCode() {
+    handler.handleS3Exception(noSuchKey());
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    handler.bindTo(registry);
+    handler.handleS3Exception(noSuchKey());
+    handler.handleS3Exception(new S3Exception(304, "NotModified", "Not Modified"));
+
+    assertThat(registry.get("s3mock.errors").tag("code", "NoSuchKey").functionCounter().count())
+        .isEqualTo(2);
+    assertThat(registry.get("s3mock.errors").tag("code", "NotModified").functionCounter().count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void shouldAskClientsToSlowDownWhenDownloadsAreRejected() throws Exception {
+    final S3MockProperties properties = new S3MockProperties();
+    properties.setDownloadThreads(1);
+    properties.setDownloadQueueSize(0);
+    properties.setDownloadRejectionPolicy(S3MockProperties.RejectionPolicy.ABORT);
+    final DownloadExecutor executor = new DownloadExecutor(properties);
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      executor.execute(() -> {
+        try {
+          release.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      final RejectedExecutionException rejected = catchThrowableOfType(
+          () -> executor.execute(() -> { }), RejectedExecutionException.class);
+
+      final ResponseEntity<byte[]> response = handler.handleRejectedExecution(rejected);
+
+      assertThat(response.getStatusCodeValue()).isEqualTo(503);
+      assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_XML);
+      assertThat(new String(response.getBody(), UTF_8))
+          .isEqualTo("<Error><Code>SlowDown</Code>"
+              + "<Message>Please reduce your request rate.</Message>"
+              + "<Resource/><RequestId/></Error>");
+    } finally {
+      release.countDown();
+      executor.destroy();
+    }
+  }
+
+  @Test
+  void shouldNotRecordStackTraces() {
+    assertThat(noSuchKey().getStackTrace()).isEmpty();
+  }
+
+  private static S3Exception noSuchKey() {
+    return new S3Exception(404, "NoSuchKey", "The specified key does not exist.");
+  }
+}
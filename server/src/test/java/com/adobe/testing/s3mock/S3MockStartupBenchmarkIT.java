@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Measures the time from {@link S3MockApplication#start(Map, String...)} to the first answered
+ * request, like a test class starting its own S3Mock pays it, with the default settings, in
+ * the {@value S3MockApplication#STARTUP_PROFILE} profile and for the {@link EmbeddedS3Mock}.
+ * Fails if the median of the startup profile exceeds the budget set with
+ * {@code -Ds3mock.startupBudget=<millis>}.
+ *
+ * <p>Runs in the integration-test phase, in a JVM of its own, so the first start pays the class
+ * loading like it does in a test run. The medians are published as report entries.</p>
+ */
+class S3MockStartupBenchmarkIT {
+
+  private static final int STARTS = 7;
+  private static final long BUDGET_MILLIS = Long.getLong("s3mock.startupBudget", 1000);
+
+  @TempDir
+  File rootFolder;
+
+  @Test
+  void shouldStartWithinBudget(final TestReporter reporter) throws Exception {
+    // the first start in a JVM loads the classes, all later ones are measured
+    timeToFirstRequest(false);
+    embeddedTimeToFirstRequest();
+    final long[] defaults = new long[STARTS];
+    final long[] optimized = new long[STARTS];
+    final long[] embedded = new long[STARTS];
+    for (int i = 0; i < STARTS; i++) {
+      defaults[i] = timeToFirstRequest(false);
+      optimized[i] = timeToFirstRequest(true);
+      embedded[i] = embeddedTimeToFirstRequest();
+    }
+
+    reporter.publishEntry("workload", String.format(
+        "median time to first request of %d starts, budget %d ms", STARTS, BUDGET_MILLIS));
+    reporter.publishEntry("default ms", Long.toString(median(defaults)));
+    reporter.publishEntry("startup profile ms", Long.toString(median(optimized)));
+    reporter.publishEntry("embedded ms", Long.toString(median(embedded)));
+    assertThat(median(optimized)).isLessThanOrEqualTo(BUDGET_MILLIS);
+  }
+
+  private long timeToFirstRequest(final boolean startupOptimized) throws Exception {
+    final Map<String, Object> properties = properties();
+    properties.put(S3MockApplication.PROP_STARTUP_OPTIMIZED, startupOptimized);
+    final long start = System.nanoTime();
+    final S3MockApplication s3Mock = S3MockApplication.start(properties);
+    try {
+      assertThat(listBuckets(s3Mock.getHttpPort())).isEqualTo(200);
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    } finally {
+      s3Mock.stop();
+    }
+  }
+
+  private long embeddedTimeToFirstRequest() throws Exception {
+    final long start = System.nanoTime();
+    final EmbeddedS3Mock s3Mock = EmbeddedS3Mock.start(properties());
+    try {
+      assertThat(listBuckets(s3Mock.getHttpPort())).isEqualTo(200);
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    } finally {
+      s3Mock.stop();
+    }
+  }
+
+  private Map<String, Object> properties() {
+    final Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_HTTPS_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_HTTP_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_ROOT_DIRECTORY, rootFolder.getAbsolutePath());
+    properties.put(S3MockApplication.PROP_SILENT, true);
+    properties.put(S3MockApplication.PROP_SECURE_CONNECTION, false);
+    return properties;
+  }
+
+  private static int listBuckets(final int port) throws Exception {
+    @SuppressWarnings("deprecation")
+    final HttpURLConnection listBuckets =
+        (HttpURLConnection) new URL("http://localhost:" + port + "/").openConnection();
+    return listBuckets.getResponseCode();
+  }
+
+  private static long median(final long[] values) {
+    final long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the requests per second of small object GETs and PUTs dispatched by the
+ * {@link S3RequestRouter} and by Spring MVC, with the same number of clients. Both run side by
+ * side and are warmed up before either is measured, the rates are published as report entries.
+ *
+ * <p>Only runs with {@code -Ds3mock.benchmark=true}.</p>
+ */
+@EnabledIfSystemProperty(named = "s3mock.benchmark", matches = "true")
+class S3RequestRouterBenchmarkTest {
+
+  private static final String BUCKET = "benchmark";
+  private static final int CLIENTS = 16;
+  /**
+   * A multiple of {@link #CLIENTS}, so no two clients write the same object at the same time.
+   */
+  private static final int OBJECTS = 16 * CLIENTS;
+  private static final int OBJECT_SIZE = 1024;
+  private static final int REQUESTS = 20000;
+
+  @TempDir
+  File rootFolder;
+
+  @Test
+  void shouldDispatchObjectRequestsFasterThanSpringMvc(final TestReporter reporter)
+      throws Exception {
+    final S3MockApplication mvc = start(false);
+    final S3MockApplication router = start(true);
+    final ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+    try {
+      // both modes are warmed up before either is measured, so neither profits from the order.
+      for (final S3MockApplication s3Mock : Arrays.asList(mvc, router)) {
+        run(clients, endpoint(s3Mock), "PUT");
+        run(clients, endpoint(s3Mock), "GET");
+      }
+      final double mvcGet = run(clients, endpoint(mvc), "GET");
+      final double routerGet = run(clients, endpoint(router), "GET");
+      final double mvcPut = run(clients, endpoint(mvc), "PUT");
+      final double routerPut = run(clients, endpoint(router), "PUT");
+
+      reporter.publishEntry("workload", String.format("%d requests of %d bytes, %d clients",
+          REQUESTS, OBJECT_SIZE, CLIENTS));
+      reporter.publishEntry("Spring MVC GET requests/s", String.format("%.0f", mvcGet));
+      reporter.publishEntry("request router GET requests/s", String.format("%.0f", routerGet));
+      reporter.publishEntry("Spring MVC PUT requests/s", String.format("%.0f", mvcPut));
+      reporter.publishEntry("request router PUT requests/s", String.format("%.0f", routerPut));
+      assertThat(Arrays.asList(mvcGet, routerGet, mvcPut, routerPut)).allMatch(rate -> rate > 0);
+    } finally {
+      clients.shutdownNow();
+      mvc.stop();
+      router.stop();
+    }
+  }
+
+  private S3MockApplication start(final boolean requestRouter) {
+    final Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_HTTPS_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_HTTP_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_ROOT_DIRECTORY,
+        new File(rootFolder, String.valueOf(requestRouter)).getAbsolutePath());
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, BUCKET);
+    properties.put(S3MockApplication.PROP_SILENT, true);
+    properties.put("com.adobe.testing.s3mock.requestRouter", requestRouter);
+    return S3MockApplication.start(properties);
+  }
+
+  private static String endpoint(final S3MockApplication s3Mock) {
+    return "http://localhost:" + s3Mock.getHttpPort() + "/" + BUCKET + "/";
+  }
+
+  private static double run(final ExecutorService clients, final String endpoint,
+      final String method) throws Exception {
+    final byte[] content = new byte[OBJECT_SIZE];
+    final long start = System.nanoTime();
+    final List<Future<?>> requests = new ArrayList<>();
+    for (int client = 0; client < CLIENTS; client++) {
+      final int first = client;
+      requests.add(clients.submit(() -> {
+        for (int i = first; i < REQUESTS; i += CLIENTS) {
+          request(endpoint + "key" + i % OBJECTS, method, content);
+        }
+        return null;
+      }));
+    }
+    for (final Future<?> request : requests) {
+      request.get(5, TimeUnit.MINUTES);
+    }
+    return REQUESTS / ((System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @SuppressWarnings("deprecation")
+  private static void request(final String url, final String method, final byte[] content)
+      throws Exception {
+    final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setRequestMethod(method);
+    if ("PUT".equals(method)) {
+      connection.setRequestProperty("Content-Type", "application/octet-stream");
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(content.length);
+      try (OutputStream outputStream = connection.getOutputStream()) {
+        outputStream.write(content);
+      }
+    }
+    assertThat(connection.getResponseCode()).isEqualTo(200);
+    final byte[] buffer = new byte[OBJECT_SIZE];
+    try (InputStream inputStream = connection.getInputStream()) {
+      while (inputStream.read(buffer) >= 0) {
+        // drain, so the connection is reused
+      }
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.adobe.testing.s3mock.S3MockConfiguration.S3MockExceptionHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.xml.MappingJackson2XmlHttpMessageConverter;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class S3RequestRouterTest {
+
+  @Test
+  void shouldAnswerPreflightRequestsLikeTheController() throws Exception {
+    final MappingJackson2XmlHttpMessageConverter messageConverter =
+        new MappingJackson2XmlHttpMessageConverter();
+    final S3RequestRouter router = new S3RequestRouter(null, null,
+        new S3MockExceptionHandler(messageConverter), messageConverter.getObjectMapper(), "",
+        "/favicon.ico", true);
+    final MockHttpServletRequest request = new MockHttpServletRequest("OPTIONS", "/bucket/key");
+    request.addHeader("Origin", "https://example.com");
+    request.addHeader("Access-Control-Request-Method", "POST");
+    final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    router.doFilter(request, response, new MockFilterChain());
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getHeader("Access-Control-Allow-Origin")).isEqualTo("*");
+    assertThat(response.getHeader("Access-Control-Allow-Methods"))
+        .isEqualTo(String.join(",", S3RequestRouter.corsConfiguration().getAllowedMethods()));
+    assertThat(S3RequestRouter.corsConfiguration().getAllowedMethods())
+        .containsExactlyInAnyOrder("GET", "HEAD", "PUT", "POST", "DELETE");
+    assertThat(response.getHeader("Access-Control-Max-Age")).isEqualTo("1800");
+  }
+}
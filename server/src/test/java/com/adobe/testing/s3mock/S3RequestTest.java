@@ -0,0 +1,145 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.adobe.testing.s3mock.S3Request.Operation;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+class S3RequestTest {
+
+  @Test
+  void shouldParseObjectRequests() {
+    final MockHttpServletRequest request = request("GET", "/s3-mock/bucket/dir/a%20b.txt");
+    final S3Request s3Request = S3Request.parse(request, "/s3-mock", "/actuator");
+
+    assertThat(s3Request.getBucketName()).isEqualTo("bucket");
+    assertThat(s3Request.getKey()).isEqualTo("dir%2Fa+b.txt");
+    assertThat(s3Request.getOperation()).isEqualTo(Operation.GET_OBJECT);
+    assertThat(S3Request.from(request)).isSameAs(s3Request);
+    assertThat(S3Request.parse(request, "/s3-mock", "/actuator")).isSameAs(s3Request);
+
+    final MockHttpServletRequest part = request("PUT", "/bucket/key");
+    part.setQueryString("partNumber=2&uploadId=a%2Fb");
+    final S3Request partRequest = S3Request.parse(part, "", "/actuator");
+    assertThat(partRequest.getOperation()).isEqualTo(Operation.UPLOAD_PART);
+    assertThat(partRequest.getParameter("uploadId")).isEqualTo("a/b");
+    assertThat(partRequest.getParameter("partNumber")).isEqualTo("2");
+
+    final MockHttpServletRequest range = request("GET", "/bucket/key");
+    range.addHeader("Range", "bytes=1-2");
+    assertThat(S3Request.parse(range, "", "/actuator").getRange().getEnd()).isEqualTo(2);
+
+    assertThat(operation(request("HEAD", "/bucket/key"))).isEqualTo(Operation.HEAD_OBJECT);
+    assertThat(operation(request("PUT", "/bucket/key"))).isEqualTo(Operation.PUT_OBJECT);
+    assertThat(operation(request("DELETE", "/bucket/key"))).isEqualTo(Operation.DELETE_OBJECT);
+  }
+
+  @Test
+  void shouldLeaveOtherRequestsToSpringMvc() {
+    assertThat(operation(request("GET", "/bucket"))).isEqualTo(Operation.OTHER);
+    assertThat(operation(request("GET", "/bucket/"))).isEqualTo(Operation.OTHER);
+    assertThat(operation(request("GET", "/actuator/health"))).isEqualTo(Operation.OTHER);
+    assertThat(operation(request("POST", "/bucket/key"))).isEqualTo(Operation.OTHER);
+
+    final MockHttpServletRequest tagging = request("GET", "/bucket/key");
+    tagging.setQueryString("tagging");
+    assertThat(operation(tagging)).isEqualTo(Operation.OTHER);
+
+    final MockHttpServletRequest abort = request("DELETE", "/bucket/key");
+    abort.setQueryString("uploadId=1");
+    assertThat(operation(abort)).isEqualTo(Operation.OTHER);
+
+    final MockHttpServletRequest copy = request("PUT", "/bucket/key");
+    copy.addHeader("x-amz-copy-source", "/bucket/source");
+    assertThat(operation(copy)).isEqualTo(Operation.OTHER);
+
+    final MockHttpServletRequest tags = request("PUT", "/bucket/key");
+    tags.addHeader("x-amz-tagging", "a=b");
+    assertThat(operation(tags)).isEqualTo(Operation.OTHER);
+
+    final MockHttpServletRequest encrypted = request("PUT", "/bucket/key");
+    encrypted.addHeader("x-amz-server-side-encryption", "aws:kms");
+    assertThat(operation(encrypted)).isEqualTo(Operation.OTHER);
+
+    final MockHttpServletRequest malformedRange = request("GET", "/bucket/key");
+    malformedRange.addHeader("Range", "chars=1-2");
+    assertThat(operation(malformedRange)).isEqualTo(Operation.OTHER);
+
+    final MockHttpServletRequest image = request("GET", "/bucket/key");
+    image.addHeader("Accept", "image/png");
+    assertThat(operation(image)).isEqualTo(Operation.OTHER);
+  }
+
+  @Test
+  void shouldMapAllOperations() {
+    assertThat(mappedOperation(request("GET", "/"))).isEqualTo(Operation.LIST_BUCKETS);
+    assertThat(mappedOperation(request("PUT", "/bucket"))).isEqualTo(Operation.CREATE_BUCKET);
+    assertThat(mappedOperation(request("GET", "/bucket/"))).isEqualTo(Operation.LIST_OBJECTS);
+    assertThat(mappedOperation(request("GET", "/bucket", "list-type=2")))
+        .isEqualTo(Operation.LIST_OBJECTS_V2);
+    assertThat(mappedOperation(request("GET", "/bucket/", "uploads")))
+        .isEqualTo(Operation.LIST_MULTIPART_UPLOADS);
+    assertThat(mappedOperation(request("POST", "/bucket", "delete")))
+        .isEqualTo(Operation.DELETE_OBJECTS);
+    assertThat(mappedOperation(request("GET", "/bucket/key", "tagging")))
+        .isEqualTo(Operation.GET_OBJECT_TAGGING);
+    assertThat(mappedOperation(request("POST", "/bucket/key", "uploads")))
+        .isEqualTo(Operation.CREATE_MULTIPART_UPLOAD);
+    assertThat(mappedOperation(request("POST", "/bucket/key", "uploadId=1")))
+        .isEqualTo(Operation.COMPLETE_MULTIPART_UPLOAD);
+    assertThat(mappedOperation(request("DELETE", "/bucket/key", "uploadId=1")))
+        .isEqualTo(Operation.ABORT_MULTIPART_UPLOAD);
+
+    final MockHttpServletRequest copy = request("PUT", "/bucket/key");
+    copy.addHeader("x-amz-copy-source", "/bucket/source");
+    assertThat(mappedOperation(copy)).isEqualTo(Operation.COPY_OBJECT);
+
+    final MockHttpServletRequest copyPart =
+        request("PUT", "/bucket/key", "partNumber=1&uploadId=1");
+    copyPart.addHeader("x-amz-copy-source", "/bucket/source");
+    assertThat(mappedOperation(copyPart)).isEqualTo(Operation.UPLOAD_PART_COPY);
+
+    final MockHttpServletRequest encrypted = request("PUT", "/bucket/key");
+    encrypted.addHeader("x-amz-server-side-encryption", "aws:kms");
+    assertThat(mappedOperation(encrypted)).isEqualTo(Operation.PUT_OBJECT);
+
+    assertThat(mappedOperation(request("GET", "/actuator/health"))).isEqualTo(Operation.OTHER);
+    assertThat(mappedOperation(request("POST", "/bucket/key"))).isEqualTo(Operation.OTHER);
+  }
+
+  private static Operation operation(final MockHttpServletRequest request) {
+    return S3Request.parse(request, "", "/actuator").getOperation();
+  }
+
+  private static Operation mappedOperation(final MockHttpServletRequest request) {
+    return S3Request.parse(request, "", "/actuator").getMappedOperation();
+  }
+
+  private static MockHttpServletRequest request(final String method, final String uri) {
+    return new MockHttpServletRequest(method, uri);
+  }
+
+  private static MockHttpServletRequest request(final String method, final String uri,
+      final String query) {
+    final MockHttpServletRequest request = request(method, uri);
+    request.setQueryString(query);
+    return request;
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.util.Files.contentOf;
+
+import com.adobe.testing.s3mock.dto.Bucket;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+class BlobStoreTest {
+
+  private static final String CONTENT = "some content";
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  private File rootFolder;
+  private FileStore fileStore;
+  private BlobStore blobStore;
+
+  @BeforeEach
+  void setUp() {
+    rootFolder = store.rootFolder();
+    Assumptions.assumeTrue(BlobStore.isSupported(rootFolder), "hard links not supported");
+
+    fileStore = store.open(properties -> {
+      properties.setContentAddressedStorage(true);
+      properties.setBlobGarbageCollectionInterval(Duration.ofDays(1));
+    });
+    blobStore = new BlobStore(rootFolder, Duration.ofDays(1));
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (blobStore != null) {
+      blobStore.close();
+    }
+  }
+
+  @Test
+  void shouldStoreIdenticalContentOnce() throws Exception {
+    store.put("a", CONTENT);
+    store.put("b", CONTENT);
+    fileStore.copyS3Object(BUCKET, "a", BUCKET, "c");
+
+    assertThat(blobs()).hasSize(1);
+    assertThat(contentOf(fileStore.getS3Object(BUCKET, "c").getDataFile(), UTF_8))
+        .isEqualTo(CONTENT);
+  }
+
+  @Test
+  void shouldKeepSharedContentOnOverwriteAndDelete() throws Exception {
+    store.put("a", CONTENT);
+    store.put("b", CONTENT);
+
+    store.put("a", "other content");
+    fileStore.deleteObject(BUCKET, "a");
+
+    assertThat(contentOf(fileStore.getS3Object(BUCKET, "b").getDataFile(), UTF_8))
+        .isEqualTo(CONTENT);
+    assertThat(blobStore.collectGarbage()).isEqualTo(1);
+    assertThat(contentOf(fileStore.getS3Object(BUCKET, "b").getDataFile(), UTF_8))
+        .isEqualTo(CONTENT);
+
+    fileStore.deleteObject(BUCKET, "b");
+    assertThat(blobStore.collectGarbage()).isEqualTo(1);
+    assertThat(blobs()).isEmpty();
+  }
+
+  @Test
+  void shouldNotListBlobFolderAsBucket() throws Exception {
+    store.put("a", CONTENT);
+
+    assertThat(fileStore.listBuckets()).extracting(Bucket::getName).containsExactly(BUCKET);
+    assertThat(fileStore.getBucket(BlobStore.BLOB_FOLDER)).isNull();
+  }
+
+  @Test
+  void shouldRemoveTempFileWhenStoringFails() {
+    final InputStream failing = new SequenceInputStream(
+        new ByteArrayInputStream(CONTENT.getBytes(UTF_8)), new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("connection reset");
+          }
+        });
+
+    assertThatThrownBy(() -> fileStore.putS3Object(BUCKET, "a", null, null, failing, false))
+        .isInstanceOf(IOException.class);
+    assertThat(rootFolder.toPath().resolve(BlobStore.BLOB_FOLDER).resolve("tmp").toFile().list())
+        .isEmpty();
+    assertThat(fileStore.getS3Object(BUCKET, "a")).isNull();
+  }
+
+  private List<Path> blobs() throws IOException {
+    try (Stream<Path> files = Files.walk(rootFolder.toPath().resolve(BlobStore.BLOB_FOLDER))) {
+      return files.filter(Files::isRegularFile)
+          .filter(path -> !path.getParent().getFileName().toString().equals("tmp"))
+          .collect(Collectors.toList());
+    }
+  }
+}
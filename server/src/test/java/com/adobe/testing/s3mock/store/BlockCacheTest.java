@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.util.unit.DataSize;
+
+class BlockCacheTest {
+
+  private static final String CONTENT = "0123456789abcdefghij";
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  private final List<Long> loads = new CopyOnWriteArrayList<>();
+
+  @Test
+  void shouldServeRepeatedRangesFromBlocks() throws Exception {
+    final BlockCache cache = new BlockCache(100, 4, 0);
+    try {
+      assertThat(read(cache, "v1", 18, 10)).isEqualTo("ij");
+      assertThat(read(cache, "v1", 18, 10)).isEqualTo("ij");
+      assertThat(read(cache, "v1", 3, 6)).isEqualTo("345678");
+      assertThat(loads).containsExactly(16L, 0L, 4L, 8L);
+      assertThat(cache.cachedBytes()).isEqualTo(16);
+
+      assertThat(read(cache, "v2", 18, 10)).isEqualTo("ij");
+      assertThat(loads).hasSize(5);
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedBlocks() throws Exception {
+    final BlockCache cache = new BlockCache(8, 4, 0);
+    try {
+      read(cache, "v1", 0, 1);
+      read(cache, "v1", 4, 1);
+      read(cache, "v1", 0, 1);
+      read(cache, "v1", 8, 1);
+      assertThat(loads).containsExactly(0L, 4L, 8L);
+
+      read(cache, "v1", 0, 1);
+      read(cache, "v1", 4, 1);
+      assertThat(loads).containsExactly(0L, 4L, 8L, 4L);
+      assertThat(cache.cachedBytes()).isEqualTo(8);
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  void shouldLoadAheadOfSequentialReads() throws Exception {
+    final BlockCache cache = new BlockCache(100, 4, 2);
+    try {
+      assertThat(read(cache, "v1", 2, 4)).isEqualTo("2345");
+      awaitLoads(4);
+      assertThat(loads).containsExactlyInAnyOrder(0L, 4L, 8L, 12L);
+
+      assertThat(read(cache, "v1", 6, 6)).isEqualTo("6789ab");
+      awaitLoads(5);
+      assertThat(loads).contains(16L);
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  void shouldReadRangesOfStoredObjects() throws Exception {
+    final FileStore fileStore = store.open(properties -> {
+      properties.setBlockCacheSize(DataSize.ofKilobytes(1));
+      properties.setBlockCacheBlockSize(DataSize.ofBytes(4));
+    });
+    store.put("key", CONTENT);
+    assertThat(store.read(fileStore.getS3Object(BUCKET, "key"), 5, 10)).isEqualTo("56789abcde");
+    assertThat(fileStore.blockCache().cachedBytes()).isEqualTo(12);
+
+    store.put("key", "ABCDEFGHIJKLMNOPQRST");
+    assertThat(store.read(fileStore.getS3Object(BUCKET, "key"), 5, 10)).isEqualTo("FGHIJKLMNO");
+  }
+
+  private String read(final BlockCache cache, final String version, final long offset,
+      final long length) throws Exception {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    cache.transferTo("key", version, CONTENT.length(), offset, length, (position, target) -> {
+      loads.add(position);
+      target.put(CONTENT.getBytes(UTF_8), (int) position, target.remaining());
+    }, outputStream);
+    return new String(outputStream.toByteArray(), UTF_8);
+  }
+
+  private void awaitLoads(final int count) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10_000;
+    while (loads.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.adobe.testing.s3mock.dto.Bucket;
+import com.adobe.testing.s3mock.dto.Owner;
+import com.adobe.testing.s3mock.dto.Tag;
+import java.io.File;
+import java.util.Collections;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.util.unit.DataSize;
+
+class CheckpointsTest {
+
+  private static final String OTHER_BUCKET = "otherbucket";
+  private static final String NAMESPACE = "tenant";
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  private FileStore fileStore;
+
+  @Test
+  void shouldRollBackToCheckpoint() throws Exception {
+    fileStore = open(false);
+    store.put("key", "seeded");
+    fileStore.setObjectTags(BUCKET, "key", Collections.singletonList(new Tag("tag", "seeded")));
+    fileStore.createNamespace(NAMESPACE);
+    NamespaceContext.set(NAMESPACE);
+    fileStore.createBucket(BUCKET);
+    store.put("key", "tenant");
+    NamespaceContext.set(null);
+
+    assertThat(fileStore.checkpoint("seeded")).isTrue();
+    assertThat(fileStore.listCheckpoints()).containsExactly("seeded");
+
+    store.put("key", "changed");
+    fileStore.setObjectTags(BUCKET, "key", Collections.singletonList(new Tag("tag", "changed")));
+    store.put("added", "added");
+    fileStore.createBucket(OTHER_BUCKET);
+    fileStore.dropNamespace(NAMESPACE);
+    fileStore.prepareMultipartUpload(BUCKET, "upload", null, null, UUID.randomUUID().toString(),
+        new Owner(1L, "owner"), new Owner(1L, "owner"));
+
+    assertThat(fileStore.rollback("seeded")).isTrue();
+    assertThat(fileStore.listBuckets()).extracting(Bucket::getName).containsExactly(BUCKET);
+    assertThat(store.read("key")).isEqualTo("seeded");
+    assertThat(fileStore.getS3Object(BUCKET, "key").getTags())
+        .containsExactly(new Tag("tag", "seeded"));
+    assertThat(fileStore.getS3Object(BUCKET, "added")).isNull();
+    assertThat(fileStore.listMultipartUploads()).isEmpty();
+    assertThat(fileStore.hasNamespace(NAMESPACE)).isTrue();
+    NamespaceContext.set(NAMESPACE);
+    assertThat(store.read("key")).isEqualTo("tenant");
+    NamespaceContext.set(null);
+
+    // the checkpoint is kept and unchanged by writes after a rollback
+    store.put("key", "changed again");
+    assertThat(fileStore.rollback("seeded")).isTrue();
+    assertThat(store.read("key")).isEqualTo("seeded");
+
+    assertThat(fileStore.rollback("missing")).isFalse();
+    assertThat(fileStore.dropCheckpoint("seeded")).isTrue();
+    assertThat(fileStore.hasCheckpoint("seeded")).isFalse();
+  }
+
+  @Test
+  void shouldRollBackContentAddressedObjects() throws Exception {
+    fileStore = store.open(properties -> {
+      configure(properties, false);
+      properties.setContentAddressedStorage(true);
+    });
+    store.put("key", "seeded");
+    fileStore.checkpoint("seeded");
+
+    store.put("key", "changed");
+    fileStore.deleteObject(BUCKET, "key");
+    fileStore.rollback("seeded");
+
+    assertThat(store.read("key")).isEqualTo("seeded");
+  }
+
+  @Test
+  void shouldResetToInitialBuckets() throws Exception {
+    fileStore = open(false);
+    store.put("key", "content");
+    fileStore.createBucket(OTHER_BUCKET);
+    fileStore.createNamespace(NAMESPACE);
+    fileStore.checkpoint("kept");
+
+    fileStore.reset();
+
+    assertThat(fileStore.listBuckets()).extracting(Bucket::getName).containsExactly(BUCKET);
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNull();
+    assertThat(fileStore.listNamespaces()).isEmpty();
+    assertThat(fileStore.listCheckpoints()).containsExactly("kept");
+  }
+
+  @Test
+  void shouldRollBackAndResetPackedObjects() throws Exception {
+    fileStore = open(true);
+    store.put("key", "seeded");
+    assertThat(fileStore.checkpoint("seeded")).isTrue();
+
+    // appended to a new segment, the sealed ones linked into the checkpoint stay unchanged
+    store.put("key", "changed");
+    store.put("added", "added");
+    assertThat(fileStore.compactSegments()).isPositive();
+    fileStore.compactSegments();
+
+    assertThat(fileStore.rollback("seeded")).isTrue();
+    assertThat(store.read("key")).isEqualTo("seeded");
+    assertThat(fileStore.getS3Object(BUCKET, "added")).isNull();
+
+    store.put("key", "changed again");
+    assertThat(fileStore.rollback("seeded")).isTrue();
+    assertThat(store.read("key")).isEqualTo("seeded");
+
+    fileStore.reset();
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNull();
+    assertThat(new File(store.rootFolder(), SegmentStore.SEGMENT_FOLDER).list()).isEmpty();
+    store.put("key", "after reset");
+    assertThat(store.read("key")).isEqualTo("after reset");
+
+    assertThat(fileStore.rollback("seeded")).isTrue();
+    assertThat(store.read("key")).isEqualTo("seeded");
+    assertThatThrownBy(() -> fileStore.checkpoint("a/b"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private FileStore open(final boolean packing) {
+    return store.open(properties -> configure(properties, packing));
+  }
+
+  private static void configure(final DomainProperties properties, final boolean packing) {
+    properties.setNegativeLookupCacheSize(100);
+    properties.setObjectCacheSize(DataSize.ofMegabytes(1));
+    if (packing) {
+      properties.setPackingThreshold(DataSize.ofKilobytes(4));
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.function.Consumer;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * A {@link FileStore} in a root folder of its own, for tests configuring the store themselves,
+ * unlike {@link FileStoreTest}. Writes and reads objects with text content.
+ *
+ * <p>Registered as extension, it creates the root folder before each test. After it, it closes the
+ * store, deletes the folder and leaves the default namespace, see {@link NamespaceContext}.</p>
+ */
+class FileStoreFixture implements BeforeEachCallback, AfterEachCallback {
+
+  static final String BUCKET = "testbucket";
+
+  private File rootFolder;
+  private FileStore fileStore;
+
+  @Override
+  public void beforeEach(final ExtensionContext context) throws IOException {
+    rootFolder = Files.createTempDirectory("s3mockFileStore").toFile();
+  }
+
+  @Override
+  public void afterEach(final ExtensionContext context) throws IOException {
+    NamespaceContext.set(null);
+    close();
+    FileUtils.deleteDirectory(rootFolder);
+  }
+
+  File rootFolder() {
+    return rootFolder;
+  }
+
+  FileStore fileStore() {
+    return fileStore;
+  }
+
+  /**
+   * Opens a store with the default properties, see {@link #open(Consumer)}.
+   */
+  FileStore open() {
+    return open(properties -> {
+    });
+  }
+
+  /**
+   * Opens a store in the root folder, closing the one opened before. It creates {@value BUCKET}
+   * and retains its files on close, so a store opened again finds them.
+   *
+   * @param configuration changes the properties of the store.
+   *
+   * @return the store.
+   */
+  FileStore open(final Consumer<DomainProperties> configuration) {
+    close();
+    final DomainProperties properties = new DomainProperties();
+    properties.setRoot(rootFolder.getAbsolutePath());
+    properties.setRetainFilesOnExit(true);
+    properties.setInitialBuckets(Collections.singletonList(BUCKET));
+    configuration.accept(properties);
+    fileStore = new FileStore(properties);
+    return fileStore;
+  }
+
+  /**
+   * Closes the store, if one is open.
+   */
+  void close() {
+    if (fileStore != null) {
+      fileStore.close();
+      fileStore = null;
+    }
+  }
+
+  void put(final String key, final String content) throws IOException {
+    put(BUCKET, key, content);
+  }
+
+  void put(final String bucket, final String key, final String content) throws IOException {
+    fileStore.putS3Object(bucket, key, null, null,
+        new ByteArrayInputStream(content.getBytes(UTF_8)), false);
+  }
+
+  String read(final String key) throws IOException {
+    return read(BUCKET, key);
+  }
+
+  String read(final String bucket, final String key) throws IOException {
+    return read(fileStore.getS3Object(bucket, key));
+  }
+
+  String read(final S3Object s3Object) throws IOException {
+    return read(s3Object, 0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Reads a range of an object, see
+   * {@link FileStore#readS3ObjectData(S3Object, long, long, java.io.OutputStream)}.
+   */
+  String read(final S3Object s3Object, final long offset, final long length)
+      throws IOException {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    fileStore.readS3ObjectData(s3Object, offset, length, outputStream);
+    return new String(outputStream.toByteArray(), UTF_8);
+  }
+}
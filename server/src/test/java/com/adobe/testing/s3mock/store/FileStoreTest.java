@@ -33,11 +33,15 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.UUID;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
@@ -187,6 +191,30 @@ class FileStoreTest {
         contentOf(returnedObject.getDataFile(), UTF_8));
   }
 
+  /**
+   * Checks that staged data is moved into the store.
+   *
+   * @throws Exception If an Exception occurred.
+   */
+  @Test
+  void shouldMoveStagedFileIntoBucket() throws Exception {
+    final File sourceFile = new File(TEST_FILE_PATH);
+    final String name = sourceFile.getName();
+    final String md5 = DigestUtil.getHexDigest(new FileInputStream(sourceFile));
+    final Path staged = fileStore.createStagingFile();
+    Files.copy(sourceFile.toPath(), staged, StandardCopyOption.REPLACE_EXISTING);
+
+    final S3Object returnedObject =
+        fileStore.putS3Object(TEST_BUCKET_NAME, name, null, ENCODING_GZIP, staged,
+            Collections.emptyMap(), null, null);
+
+    assertThat(returnedObject.getEtag()).isEqualTo(md5);
+    assertThat(returnedObject.getSize()).isEqualTo(Long.toString(sourceFile.length()));
+    assertThat(staged).doesNotExist();
+    assertThat(contentOf(fileStore.getS3Object(TEST_BUCKET_NAME, name).getDataFile(), UTF_8))
+        .isEqualTo(contentOf(sourceFile, UTF_8));
+  }
+
   /**
    * Checks that an object can be stored in a bucket.
    *
@@ -780,6 +808,37 @@ class FileStoreTest {
     fileStore.abortMultipartUpload(TEST_BUCKET_NAME, targetFile, uploadId);
   }
 
+  @Test
+  void copyPartShouldCopyRangeAndReturnItsDigest() throws Exception {
+
+    final String sourceFile = UUID.randomUUID().toString();
+    final String uploadId = UUID.randomUUID().toString();
+
+    final String targetFile = UUID.randomUUID().toString();
+    final String partNumber = "1";
+
+    // spans several reads of the copy buffer.
+    final byte[] contentBytes = new byte[3 * 1024 * 1024];
+    new Random(42).nextBytes(contentBytes);
+    fileStore.putS3Object(TEST_BUCKET_NAME, sourceFile, DEFAULT_CONTENT_TYPE, ENCODING_GZIP,
+        new ByteArrayInputStream(contentBytes), false);
+
+    fileStore.prepareMultipartUpload(TEST_BUCKET_NAME, targetFile, DEFAULT_CONTENT_TYPE,
+        ENCODING_GZIP, uploadId, TEST_OWNER, TEST_OWNER);
+
+    final Range range = new Range(5, 2_500_004);
+    final String etag = fileStore.copyPart(
+        TEST_BUCKET_NAME, sourceFile, range, partNumber,
+        TEST_BUCKET_NAME, targetFile, uploadId);
+
+    final byte[] expected = ArrayUtils.subarray(contentBytes, 5, 2_500_005);
+    assertThat(etag).isEqualTo(DigestUtils.md5Hex(expected));
+    assertThat(FileUtils.readFileToByteArray(
+        Paths.get(fileStore.getRootFolder().getAbsolutePath(), TEST_BUCKET_NAME, targetFile,
+            uploadId, partNumber + ".part").toFile())).isEqualTo(expected);
+    fileStore.abortMultipartUpload(TEST_BUCKET_NAME, targetFile, uploadId);
+  }
+
   @Test
   void missingUploadPreparation() {
     Range range = new Range(0, 0);
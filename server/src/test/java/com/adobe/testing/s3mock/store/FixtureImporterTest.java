@@ -0,0 +1,163 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.adobe.testing.s3mock.dto.Bucket;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class FixtureImporterTest {
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  @TempDir
+  Path fixtures;
+
+  private FileStore fileStore;
+
+  @Test
+  void shouldLinkFilesOfDirectoriesAtStartup() throws Exception {
+    final Path template = fixtures.resolve("template");
+    write(template.resolve("bucket-a/dir/page.html"), "<html/>");
+    write(template.resolve("bucket-b/data"), "data");
+    write(template.resolve("ignored"), "outside of a bucket");
+
+    fileStore = open(properties ->
+        properties.setFixtures(Collections.singletonList(template.toString())));
+
+    assertThat(fileStore.listBuckets()).extracting(Bucket::getName)
+        .containsExactlyInAnyOrder("bucket-a", "bucket-b");
+    final S3Object page = fileStore.getS3Object("bucket-a", "dir/page.html");
+    assertThat(page.getEtag()).isEqualTo(DigestUtils.md5Hex("<html/>"));
+    assertThat(page.getContentType()).isEqualTo("text/html");
+    assertThat(page.getSize()).isEqualTo("7");
+    assertThat(Files.isSameFile(page.getDataFile().toPath(),
+        template.resolve("bucket-a/dir/page.html"))).isTrue();
+    assertThat(store.read("bucket-b", "data")).isEqualTo("data");
+
+    // the template stays unchanged when objects are overwritten
+    fileStore.putS3Object("bucket-a", "dir/page.html", null, null,
+        new ByteArrayInputStream("changed".getBytes(UTF_8)), false);
+    assertThat(new String(Files.readAllBytes(template.resolve("bucket-a/dir/page.html")), UTF_8))
+        .isEqualTo("<html/>");
+  }
+
+  @Test
+  void shouldCopyFilesOfDirectoriesIntoBlobStore() throws Exception {
+    Assumptions.assumeTrue(BlobStore.isSupported(store.rootFolder()),
+        "hard links not supported");
+    final Path template = fixtures.resolve("template");
+    write(template.resolve("bucket/a"), "shared");
+    write(template.resolve("bucket/b"), "shared");
+
+    fileStore = open(properties -> properties.setContentAddressedStorage(true));
+    assertThat(fileStore.importFixture(template)).isEqualTo(2);
+
+    final Path dataFile = fileStore.getS3Object("bucket", "a").getDataFile().toPath();
+    assertThat(Files.isSameFile(dataFile, template.resolve("bucket/a"))).isFalse();
+    assertThat(Files.isSameFile(dataFile,
+        fileStore.getS3Object("bucket", "b").getDataFile().toPath())).isTrue();
+    write(template.resolve("bucket/a"), "edited");
+    assertThat(store.read("bucket", "b")).isEqualTo("shared");
+  }
+
+  @Test
+  void shouldImportZipArchives() throws Exception {
+    final Path archive = fixtures.resolve("fixtures.zip");
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+      for (final String name : Arrays.asList("bucket/", "bucket/a/key", "bucket/b", "../evil")) {
+        zip.putNextEntry(new ZipEntry(name));
+        if (!name.endsWith("/")) {
+          zip.write(name.getBytes(UTF_8));
+        }
+        zip.closeEntry();
+      }
+    }
+    fileStore = open(properties -> {
+    });
+
+    assertThat(fileStore.importFixture(archive)).isEqualTo(2);
+    assertThat(store.read("bucket", "a/key")).isEqualTo("bucket/a/key");
+    assertThat(fileStore.getS3Object("bucket", "b").getEtag())
+        .isEqualTo(DigestUtils.md5Hex("bucket/b"));
+    assertThat(new File(store.rootFolder().getParentFile(), "evil")).doesNotExist();
+  }
+
+  @Test
+  void shouldImportCompressedTarArchives() throws Exception {
+    final Path archive = fixtures.resolve("fixtures.tar.gz");
+    try (TarArchiveOutputStream tar = new TarArchiveOutputStream(
+        new GZIPOutputStream(Files.newOutputStream(archive)))) {
+      for (int i = 0; i < 50; i++) {
+        final byte[] data = ("object " + i).getBytes(UTF_8);
+        final TarArchiveEntry entry = new TarArchiveEntry("./bucket/key" + i);
+        entry.setSize(data.length);
+        tar.putArchiveEntry(entry);
+        tar.write(data);
+        tar.closeArchiveEntry();
+      }
+    }
+    fileStore = open(properties -> {
+      properties.setContentAddressedStorage(true);
+      properties.setPackingThreshold(DataSize.ofBytes(8));
+    });
+
+    assertThat(fileStore.importFixture(archive)).isEqualTo(50);
+    assertThat(fileStore.getS3Objects("bucket", null)).hasSize(50);
+    assertThat(store.read("bucket", "key7")).isEqualTo("object 7");
+    assertThat(store.read("bucket", "key42")).isEqualTo("object 42");
+    assertThat(store.rootFolder().list((dir, name) -> name.startsWith(".staged"))).isEmpty();
+  }
+
+  /**
+   * Opens a store without initial buckets, so only the buckets of fixtures exist.
+   */
+  private FileStore open(final Consumer<DomainProperties> configuration) {
+    return store.open(properties -> {
+      properties.setInitialBuckets(Collections.emptyList());
+      configuration.accept(properties);
+    });
+  }
+
+  private static void write(final Path file, final String content) throws Exception {
+    Files.createDirectories(file.getParent());
+    try (OutputStream outputStream = Files.newOutputStream(file)) {
+      outputStream.write(content.getBytes(UTF_8));
+    }
+  }
+}
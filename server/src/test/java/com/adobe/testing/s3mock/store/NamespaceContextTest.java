@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.adobe.testing.s3mock.dto.Bucket;
+import com.adobe.testing.s3mock.dto.Owner;
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+class NamespaceContextTest {
+
+  private static final String NAMESPACE = "tenant";
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  private FileStore fileStore;
+
+  @BeforeEach
+  void setUp() {
+    fileStore = store.open(properties -> properties.setNegativeLookupCacheSize(100));
+  }
+
+  @Test
+  void shouldIsolateBucketsOfNamespaces() throws Exception {
+    assertThat(fileStore.createNamespace(NAMESPACE)).isTrue();
+    assertThat(fileStore.createNamespace(NAMESPACE)).isFalse();
+    assertThat(fileStore.listNamespaces()).containsExactly(NAMESPACE);
+
+    NamespaceContext.set(NAMESPACE);
+    assertThat(fileStore.listBuckets()).isEmpty();
+    // remembered as missing in the bucket of the same name in the namespace only
+    assertThat(fileStore.getBucket(BUCKET)).isNull();
+    fileStore.createBucket(BUCKET);
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNull();
+    store.put("key", "content");
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNotNull();
+    fileStore.prepareMultipartUpload(BUCKET, "upload", null, null, UUID.randomUUID().toString(),
+        new Owner(1L, "owner"), new Owner(1L, "owner"));
+    assertThat(fileStore.listMultipartUploads(BUCKET)).hasSize(1);
+
+    NamespaceContext.set(null);
+    assertThat(fileStore.listBuckets()).extracting(Bucket::getName).containsExactly(BUCKET);
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNull();
+    assertThat(fileStore.listMultipartUploads(BUCKET)).isEmpty();
+    store.put("key", "content");
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNotNull();
+  }
+
+  @Test
+  void shouldDropNamespaces() throws Exception {
+    fileStore.createNamespace(NAMESPACE);
+    NamespaceContext.set(NAMESPACE);
+    fileStore.createBucket(BUCKET);
+    store.put("key", "content");
+    NamespaceContext.set(null);
+
+    assertThat(fileStore.dropNamespace(NAMESPACE)).isTrue();
+    assertThat(fileStore.dropNamespace(NAMESPACE)).isFalse();
+    assertThat(fileStore.hasNamespace(NAMESPACE)).isFalse();
+    assertThat(new File(store.rootFolder(), Namespaces.NAMESPACE_FOLDER + "/" + NAMESPACE))
+        .doesNotExist();
+
+    NamespaceContext.set(NAMESPACE);
+    assertThatThrownBy(() -> fileStore.getBucket(BUCKET)).isInstanceOf(S3Exception.class);
+    NamespaceContext.set(null);
+
+    fileStore.createNamespace(NAMESPACE);
+    NamespaceContext.set(NAMESPACE);
+    assertThat(fileStore.getBucket(BUCKET)).isNull();
+    NamespaceContext.set(null);
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNull();
+
+    final DirectoryReaper reaper = new DirectoryReaper(store.rootFolder(), false);
+    assertThat(reaper.awaitIdle(10, TimeUnit.SECONDS)).isTrue();
+    reaper.close();
+  }
+
+  @Test
+  void shouldRejectInvalidNames() {
+    assertThatThrownBy(() -> fileStore.createNamespace("..")).isInstanceOf(
+        IllegalArgumentException.class);
+    assertThatThrownBy(() -> fileStore.createNamespace("a/b")).isInstanceOf(
+        IllegalArgumentException.class);
+  }
+
+  @Test
+  void shouldRestoreNamespacesOnRestart() {
+    fileStore.createNamespace(NAMESPACE);
+    fileStore = store.open();
+
+    assertThat(fileStore.hasNamespace(NAMESPACE)).isTrue();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.adobe.testing.s3mock.dto.Bucket;
+import java.io.File;
+import java.nio.file.Paths;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+class NegativeLookupCacheTest {
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  private FileStore fileStore;
+
+  @BeforeEach
+  void setUp() {
+    fileStore = store.open(properties -> properties.setNegativeLookupCacheSize(100));
+  }
+
+  @Test
+  void shouldAnswerRepeatedMissesFromMemory() throws Exception {
+    store.put("existing", "content");
+    assertThat(fileStore.getS3Object(BUCKET, "missing")).isNull();
+
+    // created behind the store's back, so only a file system lookup would find it
+    FileUtils.copyDirectory(new File(store.rootFolder(), BUCKET + "/existing"),
+        new File(store.rootFolder(), BUCKET + "/missing"));
+
+    assertThat(fileStore.getS3Object(BUCKET, "missing")).isNull();
+    assertThat(fileStore.getS3Object(BUCKET, "/missing")).isNull();
+    assertThat(fileStore.getS3Object(BUCKET, "existing")).isNotNull();
+  }
+
+  @Test
+  void shouldForgetWrittenKeys() throws Exception {
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNull();
+
+    store.put("key", "content");
+
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNotNull();
+  }
+
+  @Test
+  void shouldForgetKeysOfDeletedBuckets() throws Exception {
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNull();
+    assertThat(fileStore.getBucket(BUCKET)).isNotNull();
+
+    fileStore.deleteBucket(BUCKET);
+
+    assertThat(fileStore.getBucket(BUCKET)).isNull();
+    fileStore.createBucket(BUCKET);
+    store.put("key", "content");
+    assertThat(fileStore.getS3Object(BUCKET, "key")).isNotNull();
+  }
+
+  @Test
+  void shouldNotRecordMissesRacingWithWrites() {
+    final NegativeLookupCache cache = new NegativeLookupCache(2);
+    final Bucket bucket = new Bucket(Paths.get(BUCKET), BUCKET, "date");
+
+    final long generation = cache.generation("testbucket/a");
+    cache.invalidate(BUCKET, "testbucket/a");
+    cache.recordMiss(BUCKET, bucket, "testbucket/a", generation);
+    assertThat(cache.isMissing(BUCKET, "testbucket/a")).isFalse();
+
+    cache.recordMiss(BUCKET, bucket, "testbucket/a",
+        cache.generation("testbucket/a"));
+    cache.recordMiss(BUCKET, bucket, "testbucket/b",
+        cache.generation("testbucket/b"));
+    cache.recordMiss(BUCKET, bucket, "testbucket/c",
+        cache.generation("testbucket/c"));
+    assertThat(cache.isMissing(BUCKET, "testbucket/a")).isFalse();
+    assertThat(cache.isMissing(BUCKET, "testbucket/b")).isTrue();
+    assertThat(cache.isMissing(BUCKET, "testbucket/c")).isTrue();
+    assertThat(cache.bucket(BUCKET)).isSameAs(bucket);
+  }
+
+  @Test
+  void shouldRecordMissesRacingWithWritesOfOtherKeys() {
+    final NegativeLookupCache cache = new NegativeLookupCache(2);
+    final Bucket bucket = new Bucket(Paths.get(BUCKET), BUCKET, "date");
+
+    final long generation = cache.generation("testbucket/a");
+    cache.invalidate(BUCKET, "testbucket/b");
+    cache.invalidate("otherbucket", "otherbucket/a");
+    cache.recordMiss(BUCKET, bucket, "testbucket/a", generation);
+    assertThat(cache.isMissing(BUCKET, "testbucket/a")).isTrue();
+
+    final long bucketGeneration = cache.generation("testbucket/b");
+    cache.invalidateBucket("otherbucket");
+    cache.recordMiss(BUCKET, bucket, "testbucket/b", bucketGeneration);
+    assertThat(cache.isMissing(BUCKET, "testbucket/b")).isFalse();
+  }
+}
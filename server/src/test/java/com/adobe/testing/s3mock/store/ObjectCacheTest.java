@@ -0,0 +1,176 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.util.unit.DataSize;
+
+class ObjectCacheTest {
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  void shouldServeRangesFromCache() throws Exception {
+    final ObjectCache cache = new ObjectCache(100, 10);
+
+    assertThat(read(cache, "a", "etag", "0123456789", 0, Long.MAX_VALUE)).isEqualTo("0123456789");
+    assertThat(read(cache, "a", "etag", "0123456789", 2, 3)).isEqualTo("234");
+    assertThat(read(cache, "a", "etag", "0123456789", 8, 100)).isEqualTo("89");
+    assertThat(loads).hasValue(1);
+    assertThat(cache.isCacheable(11)).isFalse();
+
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    cache.bindTo(registry);
+    assertThat(registry.get("s3mock.object.cache.hit.ratio").gauge().value())
+        .isEqualTo(2.0 / 3);
+    assertThat(registry.get("s3mock.object.cache.served").functionCounter().count())
+        .isEqualTo(15);
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedObjects() throws Exception {
+    final ObjectCache cache = new ObjectCache(8, 4);
+    read(cache, "a", "etag", "aaaa", 0, Long.MAX_VALUE);
+    read(cache, "b", "etag", "bbbb", 0, Long.MAX_VALUE);
+    read(cache, "a", "etag", "aaaa", 0, Long.MAX_VALUE);
+    read(cache, "c", "etag", "cccc", 0, Long.MAX_VALUE);
+    assertThat(loads).hasValue(3);
+
+    read(cache, "a", "etag", "aaaa", 0, Long.MAX_VALUE);
+    assertThat(loads).hasValue(3);
+    read(cache, "b", "etag", "bbbb", 0, Long.MAX_VALUE);
+    assertThat(loads).hasValue(4);
+    assertThat(cache.cachedBytes()).isEqualTo(8);
+  }
+
+  @Test
+  void shouldReloadChangedObjects() throws Exception {
+    final ObjectCache cache = new ObjectCache(100, 10);
+    read(cache, "a", "etag1", "old", 0, Long.MAX_VALUE);
+
+    assertThat(read(cache, "a", "etag2", "new", 0, Long.MAX_VALUE)).isEqualTo("new");
+    cache.invalidate("a");
+    assertThat(read(cache, "a", "etag2", "new", 0, Long.MAX_VALUE)).isEqualTo("new");
+    assertThat(loads).hasValue(3);
+  }
+
+  @Test
+  void shouldLoadConcurrentMissesOnce() throws Exception {
+    final ObjectCache cache = new ObjectCache(100, 10);
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<String>> reads = new ArrayList<>();
+      reads.add(executor.submit(() -> read(cache, "a", "etag", () -> {
+        loading.countDown();
+        release.await();
+        return "data";
+      })));
+      loading.await();
+      for (int i = 0; i < 3; i++) {
+        reads.add(executor.submit(() -> read(cache, "a", "etag", () -> "other")));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      for (final Future<String> read : reads) {
+        assertThat(read.get(10, TimeUnit.SECONDS)).isEqualTo("data");
+      }
+      assertThat(loads).hasValue(1);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldInvalidateOnMutation() throws Exception {
+    final FileStore fileStore =
+        store.open(properties -> properties.setObjectCacheSize(DataSize.ofKilobytes(1)));
+    store.put("key", "first");
+    assertThat(store.read("key")).isEqualTo("first");
+    assertThat(fileStore.objectCache().cachedBytes()).isEqualTo(5);
+
+    store.put("key", "second");
+    assertThat(fileStore.objectCache().cachedBytes()).isZero();
+    assertThat(store.read("key")).isEqualTo("second");
+
+    fileStore.deleteObject(BUCKET, "key");
+    assertThat(fileStore.objectCache().cachedBytes()).isZero();
+  }
+
+  @Test
+  void shouldCapCachesAtTheDirectMemoryLimit() {
+    final FileStore fileStore = store.open(properties -> {
+      properties.setObjectCacheSize(DataSize.ofTerabytes(1));
+      properties.setObjectCacheMaxObjectSize(DataSize.ofTerabytes(1));
+      properties.setBlockCacheSize(DataSize.ofTerabytes(1));
+    });
+    final long limit = DirectMemory.limit();
+    assertThat(fileStore.objectCache().isCacheable(limit / 2)).isTrue();
+    assertThat(fileStore.objectCache().isCacheable(limit / 2 + 1)).isFalse();
+    assertThat(fileStore.blockCache()).isNull();
+  }
+
+  private String read(final ObjectCache cache, final String key, final String etag,
+      final String content, final long offset, final long length) throws Exception {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    cache.transferTo(key, etag, content.length(), offset, length, () -> {
+      loads.incrementAndGet();
+      return new ByteArrayInputStream(content.getBytes(UTF_8));
+    }, outputStream);
+    return new String(outputStream.toByteArray(), UTF_8);
+  }
+
+  private String read(final ObjectCache cache, final String key, final String etag,
+      final ContentSupplier content) throws Exception {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    cache.transferTo(key, etag, 4, 0, Long.MAX_VALUE, () -> {
+      loads.incrementAndGet();
+      try {
+        return new ByteArrayInputStream(content.get().getBytes(UTF_8));
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }, outputStream);
+    return new String(outputStream.toByteArray(), UTF_8);
+  }
+
+  private interface ContentSupplier {
+
+    String get() throws InterruptedException;
+  }
+}
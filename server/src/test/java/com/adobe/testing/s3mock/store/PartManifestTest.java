@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import com.adobe.testing.s3mock.dto.Owner;
+import com.adobe.testing.s3mock.dto.Part;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+class PartManifestTest {
+
+  private static final String KEY = "key";
+  private static final Owner OWNER = new Owner(123, "s3-mock-file-store");
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  private File rootFolder;
+  private FileStore fileStore;
+
+  @BeforeEach
+  void setUp() {
+    rootFolder = store.rootFolder();
+    fileStore = store.open(properties -> properties.setMultipartManifests(true));
+  }
+
+  @Test
+  void shouldFindPartByOffset() {
+    final PartManifest manifest =
+        new PartManifest("parts", Arrays.asList("1.part", "2.part", "3.part", "4.part"),
+            new long[] {4, 0, 4, 2});
+
+    assertThat(manifest.size()).isEqualTo(10);
+    assertThat(manifest.partIndex(0)).isZero();
+    assertThat(manifest.partIndex(3)).isZero();
+    assertThat(manifest.partIndex(4)).isEqualTo(2);
+    assertThat(manifest.partIndex(7)).isEqualTo(2);
+    assertThat(manifest.partIndex(8)).isEqualTo(3);
+    assertThat(manifest.partIndex(9)).isEqualTo(3);
+  }
+
+  @Test
+  void shouldReadObjectAcrossParts() throws Exception {
+    upload("upload1", "aaaa", "bbbb", "cc");
+
+    final S3Object s3Object = fileStore.getS3Object(BUCKET, KEY);
+    assertThat(s3Object.getSize()).isEqualTo("10");
+    assertThat(s3Object.getDataFile()).doesNotExist();
+    assertThat(store.read(s3Object)).isEqualTo("aaaabbbbcc");
+    assertThat(store.read(s3Object, 3, 6)).isEqualTo("abbbbc");
+    assertThat(store.read(s3Object, 8, 100)).isEqualTo("cc");
+
+    fileStore.copyS3Object(BUCKET, KEY, BUCKET, "copy");
+    assertThat(store.read("copy")).isEqualTo("aaaabbbbcc");
+  }
+
+  @Test
+  void shouldReplaceComposedObject() throws Exception {
+    upload("upload1", "aaaa", "bbbb");
+    upload("upload2", "cccc", "dd");
+
+    assertThat(store.read(KEY)).isEqualTo("ccccdd");
+    assertThat(new File(rootFolder, BUCKET + "/" + KEY).list())
+        .containsExactlyInAnyOrder(PartManifest.MANIFEST_FILE, "metadata",
+            PartManifest.PARTS_FOLDER_PREFIX + "upload2");
+
+    store.put(KEY, "plain");
+
+    assertThat(store.read(KEY)).isEqualTo("plain");
+    assertThat(new File(rootFolder, BUCKET + "/" + KEY).list())
+        .containsExactlyInAnyOrder("fileData", "metadata");
+  }
+
+  @Test
+  void shouldFailOnTruncatedPart() throws Exception {
+    upload("upload1", "aaaa", "bbbb", "cc");
+    final File part = new File(rootFolder,
+        BUCKET + "/" + KEY + "/" + PartManifest.PARTS_FOLDER_PREFIX + "upload1/2.part");
+    try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+      file.setLength(2);
+    }
+
+    final S3Object s3Object = fileStore.getS3Object(BUCKET, KEY);
+    assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+        assertThatThrownBy(() -> store.read(s3Object))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("2.part"));
+  }
+
+  private void upload(final String uploadId, final String... parts) throws Exception {
+    fileStore.prepareMultipartUpload(BUCKET, KEY, null, null, uploadId, OWNER, OWNER);
+    for (int i = 0; i < parts.length; i++) {
+      fileStore.putPart(BUCKET, KEY, uploadId, String.valueOf(i + 1),
+          new ByteArrayInputStream(parts[i].getBytes(UTF_8)), false);
+    }
+    final List<Part> partList = IntStream.rangeClosed(1, parts.length).mapToObj(partNumber -> {
+      final Part part = new Part();
+      part.setPartNumber(partNumber);
+      return part;
+    }).collect(Collectors.toList());
+    fileStore.completeMultipartUpload(BUCKET, KEY, uploadId, partList);
+  }
+}
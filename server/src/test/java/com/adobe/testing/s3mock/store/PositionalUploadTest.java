@@ -0,0 +1,254 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.assertj.core.util.Files.contentOf;
+
+import com.adobe.testing.s3mock.dto.Owner;
+import com.adobe.testing.s3mock.dto.Part;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+class PositionalUploadTest {
+
+  private static final String KEY = "key";
+  private static final String UPLOAD_ID = "uploadId";
+  private static final Owner OWNER = new Owner(123, "s3-mock-file-store");
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  private FileStore fileStore;
+
+  @BeforeEach
+  void setUp() {
+    fileStore = store.open(properties -> properties.setPositionalMultipartUploads(true));
+    fileStore.prepareMultipartUpload(BUCKET, KEY, null, null, UPLOAD_ID, OWNER, OWNER);
+  }
+
+  @Test
+  void shouldAssembleUniformPartsInPlace() throws Exception {
+    // part 2 arrives before the part size is known and is copied into place on completion.
+    putPart(2, "bbbb");
+    putPart(1, "aaaa");
+    putPart(3, "cc");
+
+    assertThat(new File(uploadFolder(), "1.part")).doesNotExist();
+    assertThat(new File(uploadFolder(), "2.part")).exists();
+    assertThat(fileStore.getMultipartUploadParts(BUCKET, KEY, UPLOAD_ID))
+        .extracting(Part::getPartNumber, Part::getSize, Part::getETag)
+        .containsExactly(
+            tuple(1, 4L, DigestUtils.md5Hex("aaaa")),
+            tuple(2, 4L, DigestUtils.md5Hex("bbbb")),
+            tuple(3, 2L, DigestUtils.md5Hex("cc")));
+
+    final String etag = complete(3);
+
+    assertThat(etag).isEqualTo(expectedEtag("aaaa", "bbbb", "cc"));
+    assertThat(contentOf(fileStore.getS3Object(BUCKET, KEY).getDataFile(), UTF_8))
+        .isEqualTo("aaaabbbbcc");
+    assertThat(fileStore.getS3Object(BUCKET, KEY).getSize()).isEqualTo("10");
+    assertThat(uploadFolder()).doesNotExist();
+  }
+
+  @Test
+  void shouldConcatenatePartsOfOtherSizes() throws Exception {
+    putPart(1, "aaaa");
+    putPart(2, "bbbbbb");
+    putPart(3, "c");
+
+    final String etag = complete(3);
+
+    assertThat(etag).isEqualTo(expectedEtag("aaaa", "bbbbbb", "c"));
+    assertThat(contentOf(fileStore.getS3Object(BUCKET, KEY).getDataFile(), UTF_8))
+        .isEqualTo("aaaabbbbbbc");
+  }
+
+  @Test
+  void shouldConcatenatePartsWithGaps() throws Exception {
+    putPart(1, "aaaa");
+    putPart(3, "cc");
+
+    final List<Part> parts = fileStore.getMultipartUploadParts(BUCKET, KEY, UPLOAD_ID);
+    fileStore.completeMultipartUpload(BUCKET, KEY, UPLOAD_ID, parts);
+
+    assertThat(contentOf(fileStore.getS3Object(BUCKET, KEY).getDataFile(), UTF_8))
+        .isEqualTo("aaaacc");
+  }
+
+  @Test
+  void shouldAssembleParallelPartsStartedBeforePart1Completed() throws Exception {
+    // like a parallel SDK upload: all parts are in flight before part 1 completed.
+    final String[] contents = {"aaaa", "bbbb", "cccc", "dddd", "ee"};
+    final CountDownLatch started = new CountDownLatch(contents.length);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(contents.length);
+    try {
+      final List<Future<String>> etags = new ArrayList<>();
+      for (int i = contents.length; i > 0; i--) {
+        final int partNumber = i;
+        etags.add(executor.submit(() -> putPart(partNumber,
+            new GatedInputStream(contents[partNumber - 1], started, release))));
+      }
+      assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+      release.countDown();
+      for (final Future<String> etag : etags) {
+        etag.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(new File(uploadFolder(), "1.part")).doesNotExist();
+    assertThat(new File(uploadFolder(), "2.part")).exists();
+    assertThat(uploadFolder().list((dir, name) -> name.endsWith(".attempt"))).isEmpty();
+
+    final String etag = complete(contents.length);
+
+    assertThat(etag).isEqualTo(expectedEtag(contents));
+    assertThat(contentOf(fileStore.getS3Object(BUCKET, KEY).getDataFile(), UTF_8))
+        .isEqualTo(String.join("", contents));
+  }
+
+  @Test
+  void shouldKeepTheLastCompletedAttemptOfAPart() throws Exception {
+    putPart(1, "aaaa");
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // the first retry claims the offset of part 2, the second one is written to a part file.
+      final Future<String> first =
+          executor.submit(() -> putPart(2, new GatedInputStream("xxxx", started, release)));
+      assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+      putPart(2, "yyyy");
+      release.countDown();
+      assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(DigestUtils.md5Hex("xxxx"));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(fileStore.getMultipartUploadParts(BUCKET, KEY, UPLOAD_ID))
+        .extracting(Part::getPartNumber, Part::getETag)
+        .containsExactly(
+            tuple(1, DigestUtils.md5Hex("aaaa")),
+            tuple(2, DigestUtils.md5Hex("xxxx")));
+
+    final String etag = complete(2);
+
+    assertThat(etag).isEqualTo(expectedEtag("aaaa", "xxxx"));
+    assertThat(contentOf(fileStore.getS3Object(BUCKET, KEY).getDataFile(), UTF_8))
+        .isEqualTo("aaaaxxxx");
+  }
+
+  private String putPart(final int partNumber, final InputStream inputStream) throws Exception {
+    return fileStore.putPart(BUCKET, KEY, UPLOAD_ID, String.valueOf(partNumber), inputStream,
+        false);
+  }
+
+  private void putPart(final int partNumber, final String content) throws Exception {
+    fileStore.putPart(BUCKET, KEY, UPLOAD_ID, String.valueOf(partNumber),
+        new ByteArrayInputStream(content.getBytes(UTF_8)), false);
+  }
+
+  private String complete(final int partCount) {
+    final List<Part> parts = IntStream.rangeClosed(1, partCount).mapToObj(partNumber -> {
+      final Part part = new Part();
+      part.setPartNumber(partNumber);
+      return part;
+    }).collect(Collectors.toList());
+    return fileStore.completeMultipartUpload(BUCKET, KEY, UPLOAD_ID, parts);
+  }
+
+  private File uploadFolder() {
+    return Paths.get(store.rootFolder().getAbsolutePath(), BUCKET, KEY, UPLOAD_ID).toFile();
+  }
+
+  private static String expectedEtag(final String... parts) {
+    byte[] allMd5s = new byte[0];
+    for (final String part : parts) {
+      allMd5s = ArrayUtils.addAll(allMd5s, DigestUtils.md5(part));
+    }
+    return DigestUtils.md5Hex(allMd5s) + "-" + parts.length;
+  }
+
+  /**
+   * Returns the first half of its content, then blocks until released before returning the rest.
+   */
+  private static final class GatedInputStream extends InputStream {
+
+    private final byte[] content;
+    private final CountDownLatch started;
+    private final CountDownLatch release;
+    private int position;
+
+    private GatedInputStream(final String content, final CountDownLatch started,
+        final CountDownLatch release) {
+      this.content = content.getBytes(UTF_8);
+      this.started = started;
+      this.release = release;
+    }
+
+    @Override
+    public int read() {
+      final byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0];
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+      if (position >= content.length) {
+        return -1;
+      }
+      final int half = content.length / 2;
+      if (position == half) {
+        started.countDown();
+        try {
+          release.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return -1;
+        }
+      }
+      final int end = position < half ? half : content.length;
+      final int count = Math.min(len, end - position);
+      System.arraycopy(content, position, b, off, count);
+      position += count;
+      return count;
+    }
+  }
+}
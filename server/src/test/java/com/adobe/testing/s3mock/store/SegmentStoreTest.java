@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.util.unit.DataSize;
+
+class SegmentStoreTest {
+
+  @RegisterExtension
+  final FileStoreFixture store = new FileStoreFixture();
+
+  private FileStore fileStore;
+
+  @BeforeEach
+  void setUp() {
+    fileStore = open(DataSize.ofBytes(8));
+  }
+
+  @Test
+  void shouldPackSmallObjects() throws Exception {
+    store.put("small", "tiny");
+    store.put("large", "larger than threshold");
+
+    final S3Object small = fileStore.getS3Object(BUCKET, "small");
+    assertThat(small.getPackedData()).isNotNull();
+    assertThat(small.getDataFile()).doesNotExist();
+    assertThat(small.getSize()).isEqualTo("4");
+    assertThat(store.read(small)).isEqualTo("tiny");
+
+    final S3Object large = fileStore.getS3Object(BUCKET, "large");
+    assertThat(large.getPackedData()).isNull();
+    assertThat(store.read(large)).isEqualTo("larger than threshold");
+
+    fileStore.copyS3Object(BUCKET, "small", BUCKET, "copy");
+    assertThat(store.read("copy")).isEqualTo("tiny");
+  }
+
+  @Test
+  void shouldReplacePackedAndUnpackedData() throws Exception {
+    store.put("key", "larger than threshold");
+    store.put("key", "tiny");
+
+    assertThat(fileStore.getS3Object(BUCKET, "key").getDataFile()).doesNotExist();
+    assertThat(store.read("key")).isEqualTo("tiny");
+
+    store.put("key", "larger than threshold");
+    assertThat(fileStore.getS3Object(BUCKET, "key").getPackedData()).isNull();
+    assertThat(store.read("key")).isEqualTo("larger than threshold");
+  }
+
+  @Test
+  void shouldCompactSegmentsKeepingLiveData() throws Exception {
+    store.put("a", "aaaa");
+    store.put("b", "bbbb");
+    store.put("c", "cccc");
+    final SegmentLocation before = fileStore.getS3Object(BUCKET, "b").getPackedData();
+
+    store.put("a", "AAAA");
+    fileStore.deleteObject(BUCKET, "c");
+    // one segment per entry, so the segments of a and c are entirely dead.
+    assertThat(fileStore.compactSegments()).isEqualTo(2);
+
+    assertThat(fileStore.getS3Object(BUCKET, "b").getPackedData()).isEqualTo(before);
+    assertThat(store.read("a")).isEqualTo("AAAA");
+    assertThat(store.read("b")).isEqualTo("bbbb");
+
+    fileStore.deleteObject(BUCKET, "b");
+    store.put("d", "dddd");
+    assertThat(fileStore.compactSegments()).isEqualTo(1);
+    assertThat(store.read("a")).isEqualTo("AAAA");
+    assertThat(store.read("d")).isEqualTo("dddd");
+  }
+
+  @Test
+  void shouldReadPackedDataAfterRestart() throws Exception {
+    store.put("key", "tiny");
+    fileStore = open(DataSize.ofBytes(0));
+
+    assertThat(store.read("key")).isEqualTo("tiny");
+  }
+
+  private FileStore open(final DataSize packingThreshold) {
+    return store.open(properties -> {
+      properties.setPackingThreshold(packingThreshold);
+      properties.setSegmentSize(DataSize.ofBytes(1));
+      properties.setCompactionInterval(Duration.ofDays(1));
+    });
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SharedFileChannelsTest {
+
+  @TempDir
+  File folder;
+
+  private final SharedFileChannels channels = new SharedFileChannels();
+
+  @Test
+  void shouldShareChannelUntilLastRelease() throws Exception {
+    final Path file = Files.write(folder.toPath().resolve("file"), new byte[] {1, 2, 3});
+
+    final SharedFileChannels.Handle first = channels.acquire(file);
+    final SharedFileChannels.Handle second = channels.acquire(file);
+    assertThat(second.channel()).isSameAs(first.channel());
+
+    first.close();
+    assertThat(second.channel().isOpen()).isTrue();
+    second.close();
+    assertThat(second.channel().isOpen()).isFalse();
+    assertThat(channels.openFiles()).isZero();
+  }
+
+  @Test
+  void shouldOpenReplacedFileAgain() throws Exception {
+    final Path file = Files.write(folder.toPath().resolve("file"), new byte[] {1, 2, 3});
+    final Path replacement = Files.write(folder.toPath().resolve("replacement"), new byte[] {4});
+
+    try (SharedFileChannels.Handle first = channels.acquire(file)) {
+      Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+      try (SharedFileChannels.Handle second = channels.acquire(file)) {
+        assertThat(second.channel()).isNotSameAs(first.channel());
+        assertThat(second.channel().size()).isEqualTo(1);
+        assertThat(first.channel().size()).isEqualTo(3);
+      }
+    }
+    assertThat(channels.openFiles()).isZero();
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.store;
+
+import static com.adobe.testing.s3mock.store.FileStoreFixture.BUCKET;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.adobe.testing.s3mock.dto.Bucket;
+import com.adobe.testing.s3mock.dto.MultipartUpload;
+import com.adobe.testing.s3mock.dto.Owner;
+import com.adobe.testing.s3mock.dto.Part;
+import com.adobe.testing.s3mock.dto.Tag;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.util.unit.DataSize;
+
+class StoreSnapshotTest {
+
+  private static final String NAMESPACE = "tenant";
+  private static final Owner OWNER = new Owner(1L, "owner");
+
+  @RegisterExtension
+  final FileStoreFixture sourceStore = new FileStoreFixture();
+
+  @RegisterExtension
+  final FileStoreFixture targetStore = new FileStoreFixture();
+
+  @Test
+  void shouldRestoreExportedStore() throws Exception {
+    final FileStore source =
+        sourceStore.open(properties -> properties.setMultipartManifests(true));
+    sourceStore.put("key", "content");
+    source.setObjectTags(BUCKET, "key", Collections.singletonList(new Tag("tag", "value")));
+    source.putS3Object(BUCKET, "meta", "text/plain", null,
+        new ByteArrayInputStream("with metadata".getBytes(UTF_8)), false,
+        Collections.singletonMap("x-amz-meta-color", "blue"), null, null);
+    source.prepareMultipartUpload(BUCKET, "multipart", null, null, "completed", OWNER, OWNER);
+    final List<Part> parts = new ArrayList<>();
+    for (int i = 1; i <= 2; i++) {
+      source.putPart(BUCKET, "multipart", "completed", Integer.toString(i),
+          new ByteArrayInputStream(("part" + i).getBytes(UTF_8)), false);
+      final Part part = new Part();
+      part.setPartNumber(i);
+      parts.add(part);
+    }
+    final String multipartEtag =
+        source.completeMultipartUpload(BUCKET, "multipart", "completed", parts);
+    source.prepareMultipartUpload(BUCKET, "pending", "text/plain", null, "pending", OWNER,
+        OWNER, Collections.singletonMap("x-amz-meta-state", "pending"));
+    source.putPart(BUCKET, "pending", "pending", "1",
+        new ByteArrayInputStream("first".getBytes(UTF_8)), false);
+    source.createNamespace(NAMESPACE);
+    NamespaceContext.set(NAMESPACE);
+    source.createBucket(BUCKET);
+    sourceStore.put("key", "tenant");
+    NamespaceContext.set(null);
+
+    final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+    source.exportSnapshot(snapshot);
+
+    final FileStore target = targetStore.open(properties -> {
+      properties.setContentAddressedStorage(true);
+      properties.setPackingThreshold(DataSize.ofBytes(8));
+    });
+    targetStore.put("key", "replaced");
+    assertThat(target.importSnapshot(new ByteArrayInputStream(snapshot.toByteArray())))
+        .isEqualTo(4);
+
+    final S3Object key = target.getS3Object(BUCKET, "key");
+    assertThat(targetStore.read("key")).isEqualTo("content");
+    assertThat(key.getPackedData()).isNotNull();
+    assertThat(key.getTags()).containsExactly(new Tag("tag", "value"));
+    assertThat(key.getEtag()).isEqualTo(source.getS3Object(BUCKET, "key").getEtag());
+    final S3Object meta = target.getS3Object(BUCKET, "meta");
+    assertThat(targetStore.read("meta")).isEqualTo("with metadata");
+    assertThat(meta.getContentType()).isEqualTo("text/plain");
+    assertThat(meta.getUserMetadata()).containsEntry("x-amz-meta-color", "blue");
+    assertThat(target.getS3Object(BUCKET, "multipart").getEtag()).isEqualTo(multipartEtag);
+    assertThat(targetStore.read("multipart")).isEqualTo("part1part2");
+
+    final MultipartUpload pending = target.listMultipartUploads(BUCKET).iterator().next();
+    assertThat(pending.getUploadId()).isEqualTo("pending");
+    assertThat(target.getMultipartUploadParts(BUCKET, "pending", "pending"))
+        .extracting(Part::getSize).containsExactly(5L);
+    final Part part = new Part();
+    part.setPartNumber(1);
+    target.completeMultipartUpload(BUCKET, "pending", "pending",
+        Collections.singletonList(part));
+    assertThat(targetStore.read("pending")).isEqualTo("first");
+    assertThat(target.getS3Object(BUCKET, "pending").getUserMetadata())
+        .containsEntry("x-amz-meta-state", "pending");
+
+    assertThat(target.listNamespaces()).containsExactly(NAMESPACE);
+    NamespaceContext.set(NAMESPACE);
+    assertThat(target.listBuckets()).extracting(Bucket::getName).containsExactly(BUCKET);
+    assertThat(targetStore.read("key")).isEqualTo("tenant");
+    NamespaceContext.set(null);
+    assertThat(targetStore.rootFolder().list((dir, name) -> name.startsWith(".staged")))
+        .isEmpty();
+  }
+
+  @Test
+  void shouldExportPackedObjectsAndPositionalUploads() throws Exception {
+    final FileStore source = sourceStore.open(properties -> {
+      properties.setPackingThreshold(DataSize.ofKilobytes(4));
+      properties.setPositionalMultipartUploads(true);
+    });
+    sourceStore.put("packed", "packed");
+    source.prepareMultipartUpload(BUCKET, "pending", null, null, "pending", OWNER, OWNER);
+    source.putPart(BUCKET, "pending", "pending", "1",
+        new ByteArrayInputStream("first".getBytes(UTF_8)), false);
+
+    final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+    source.exportSnapshot(snapshot);
+    final FileStore target = targetStore.open();
+
+    assertThat(target.importSnapshot(new ByteArrayInputStream(snapshot.toByteArray())))
+        .isEqualTo(1);
+    assertThat(targetStore.read("packed")).isEqualTo("packed");
+    assertThat(target.getS3Object(BUCKET, "packed").getPackedData()).isNull();
+    final ByteArrayOutputStream part = new ByteArrayOutputStream();
+    target.readPart(BUCKET, "pending", "pending", 1, part);
+    assertThat(new String(part.toByteArray(), UTF_8)).isEqualTo("first");
+  }
+
+  @Test
+  void shouldSkipObjectsWhoseDataDoesNotMatchTheirSize() throws Exception {
+    final FileStore source = sourceStore.open();
+    sourceStore.put("intact", "intact");
+    sourceStore.put("truncated", "truncated");
+    try (RandomAccessFile file =
+        new RandomAccessFile(source.getS3Object(BUCKET, "truncated").getDataFile(), "rw")) {
+      file.setLength(3);
+    }
+
+    final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+    source.exportSnapshot(snapshot);
+    final FileStore target = targetStore.open();
+
+    assertThat(target.importSnapshot(new ByteArrayInputStream(snapshot.toByteArray())))
+        .isEqualTo(1);
+    assertThat(targetStore.read("intact")).isEqualTo("intact");
+    assertThat(target.getS3Object(BUCKET, "truncated")).isNull();
+  }
+}
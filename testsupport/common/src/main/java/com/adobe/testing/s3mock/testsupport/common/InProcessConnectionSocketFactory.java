@@ -0,0 +1,213 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.testsupport.common;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+import org.eclipse.jetty.server.LocalConnector;
+
+/**
+ * An Apache HttpClient {@link ConnectionSocketFactory} connecting to an S3Mock running in the same
+ * JVM through its {@link LocalConnector} instead of a socket, for the AWS SDK v1. Set it as the
+ * SSL socket factory of the client configuration and use an HTTPS endpoint: the client then
+ * speaks plain HTTP over the in-memory connections, connections are kept alive like sockets.
+ */
+public final class InProcessConnectionSocketFactory implements ConnectionSocketFactory {
+
+  private final LocalConnector connector;
+
+  /**
+   * Creates a socket factory for the given connector.
+   *
+   * @param connector the connector of the running S3Mock, see
+   *     {@link com.adobe.testing.s3mock.S3MockApplication#getLocalConnector()}.
+   */
+  public InProcessConnectionSocketFactory(final LocalConnector connector) {
+    this.connector = connector;
+  }
+
+  @Override
+  public Socket createSocket(final HttpContext context) {
+    return new LocalSocket(new LocalConnection(connector));
+  }
+
+  @Override
+  public Socket connectSocket(final int connectTimeout, final Socket socket, final HttpHost host,
+      final InetSocketAddress remoteAddress, final InetSocketAddress localAddress,
+      final HttpContext context) {
+    return socket;
+  }
+
+  /**
+   * A connected socket backed by a {@link LocalConnection}. Socket options other than the read
+   * timeout don't apply.
+   */
+  private static final class LocalSocket extends Socket {
+
+    private final LocalConnection connection;
+    private volatile boolean inputShutdown;
+    private volatile boolean outputShutdown;
+    private volatile boolean closed;
+
+    private LocalSocket(final LocalConnection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public void connect(final SocketAddress endpoint, final int timeout) {
+      // connected on creation
+    }
+
+    @Override
+    public void bind(final SocketAddress bindpoint) {
+      // not bound to an address
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return connection.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return connection.getOutputStream();
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+      return InetAddress.getLoopbackAddress();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+      return InetAddress.getLoopbackAddress();
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+      return new InetSocketAddress(getInetAddress(), 0);
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+      return new InetSocketAddress(getLocalAddress(), 0);
+    }
+
+    @Override
+    public int getPort() {
+      return 0;
+    }
+
+    @Override
+    public int getLocalPort() {
+      return 0;
+    }
+
+    @Override
+    public void setSoTimeout(final int timeout) {
+      connection.setReadTimeout(timeout);
+    }
+
+    @Override
+    public int getSoTimeout() {
+      return connection.getReadTimeout();
+    }
+
+    @Override
+    public void setTcpNoDelay(final boolean on) {
+      // no socket
+    }
+
+    @Override
+    public void setSoLinger(final boolean on, final int linger) {
+      // no socket
+    }
+
+    @Override
+    public void setKeepAlive(final boolean on) {
+      // no socket
+    }
+
+    @Override
+    public void setReuseAddress(final boolean on) {
+      // no socket
+    }
+
+    @Override
+    public void setSendBufferSize(final int size) {
+      // no socket
+    }
+
+    @Override
+    public void setReceiveBufferSize(final int size) {
+      // no socket
+    }
+
+    @Override
+    public void shutdownInput() {
+      inputShutdown = true;
+    }
+
+    @Override
+    public void shutdownOutput() {
+      outputShutdown = true;
+    }
+
+    @Override
+    public boolean isInputShutdown() {
+      return inputShutdown;
+    }
+
+    @Override
+    public boolean isOutputShutdown() {
+      return outputShutdown;
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    @Override
+    public boolean isBound() {
+      return true;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return closed || !connection.isOpen();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      connection.close();
+    }
+
+    @Override
+    public String toString() {
+      return "LocalSocket[" + (isClosed() ? "closed" : "open") + "]";
+    }
+  }
+}
@@ -0,0 +1,415 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.testsupport.common;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import org.eclipse.jetty.server.LocalConnector;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ContentStreamProvider;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.http.SdkHttpResponse;
+
+/**
+ * An AWS SDK v2 {@link SdkHttpClient} sending requests to an S3Mock running in the same JVM,
+ * through its {@link LocalConnector} instead of a socket. The server handles them like requests
+ * received on its HTTP(S) ports, without TCP and TLS.
+ *
+ * <p>Connections are kept alive like sockets: once a response body is read to its end, or if
+ * there is none, the connection is reused for the next request. Request bodies are streamed.
+ * The server doesn't wait for response bodies to be read: they are buffered in memory until read,
+ * so a GET of a large object holds up to the whole object on the heap.</p>
+ */
+public final class InProcessSdkHttpClient implements SdkHttpClient {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final LocalConnector connector;
+  private final Deque<LocalConnection> idleConnections = new ConcurrentLinkedDeque<>();
+
+  /**
+   * Creates a client for the given connector.
+   *
+   * @param connector the connector of the running S3Mock, see
+   *     {@link com.adobe.testing.s3mock.S3MockApplication#getLocalConnector()}.
+   */
+  public InProcessSdkHttpClient(final LocalConnector connector) {
+    this.connector = connector;
+  }
+
+  @Override
+  public ExecutableHttpRequest prepareRequest(final HttpExecuteRequest request) {
+    return new ExecutableHttpRequest() {
+      private volatile LocalConnection connection;
+
+      @Override
+      public HttpExecuteResponse call() throws IOException {
+        connection = connect();
+        try {
+          writeRequest(request, connection.getOutputStream());
+          return readResponse(request.httpRequest().method(), connection);
+        } catch (final IOException | RuntimeException e) {
+          connection.close();
+          throw e;
+        }
+      }
+
+      @Override
+      public void abort() {
+        final LocalConnection current = connection;
+        if (current != null) {
+          current.close();
+        }
+      }
+    };
+  }
+
+  @Override
+  public String clientName() {
+    return "S3MockInProcess";
+  }
+
+  @Override
+  public void close() {
+    for (LocalConnection connection = idleConnections.poll(); connection != null;
+        connection = idleConnections.poll()) {
+      connection.close();
+    }
+  }
+
+  /**
+   * Takes an idle connection, the server closes them after its idle timeout.
+   */
+  private LocalConnection connect() {
+    for (LocalConnection connection = idleConnections.poll(); connection != null;
+        connection = idleConnections.poll()) {
+      if (connection.isOpen()) {
+        return connection;
+      }
+    }
+    final LocalConnection connection = new LocalConnection(connector);
+    connection.setReadTimeout((int) connector.getIdleTimeout());
+    return connection;
+  }
+
+  private void release(final LocalConnection connection, final boolean reusable) {
+    if (reusable && connection.isOpen()) {
+      idleConnections.push(connection);
+    } else {
+      connection.close();
+    }
+  }
+
+  private static void writeRequest(final HttpExecuteRequest request,
+      final OutputStream connection) throws IOException {
+    final SdkHttpRequest httpRequest = request.httpRequest();
+    final URI uri = httpRequest.getUri();
+    final StringBuilder head = new StringBuilder()
+        .append(httpRequest.method().name()).append(' ')
+        .append(uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath())
+        .append(uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery())
+        .append(" HTTP/1.1\r\n");
+    final Map<String, List<String>> headers = httpRequest.headers();
+    headers.forEach((name, values) -> {
+      // the body is sent right away, without waiting for 100 Continue
+      if (!"Expect".equalsIgnoreCase(name)) {
+        values.forEach(value -> head.append(name).append(": ").append(value).append("\r\n"));
+      }
+    });
+    if (!httpRequest.firstMatchingHeader("Host").isPresent()) {
+      head.append("Host: ").append(uri.getAuthority()).append("\r\n");
+    }
+    final Optional<ContentStreamProvider> body = request.contentStreamProvider();
+    final boolean chunked = body.isPresent()
+        && !httpRequest.firstMatchingHeader("Content-Length").isPresent();
+    if (chunked) {
+      head.append("Transfer-Encoding: chunked\r\n");
+    }
+    head.append("\r\n");
+
+    final OutputStream outputStream = new BufferedOutputStream(connection, BUFFER_SIZE);
+    outputStream.write(head.toString().getBytes(ISO_8859_1));
+    if (body.isPresent()) {
+      try (InputStream inputStream = body.get().newStream()) {
+        if (chunked) {
+          final ChunkedOutputStream chunkedStream = new ChunkedOutputStream(outputStream);
+          copy(inputStream, chunkedStream);
+          chunkedStream.finish();
+        } else {
+          copy(inputStream, outputStream);
+        }
+      }
+    }
+    outputStream.flush();
+  }
+
+  private HttpExecuteResponse readResponse(final SdkHttpMethod method,
+      final LocalConnection connection) throws IOException {
+    final InputStream inputStream = connection.getInputStream();
+    final SdkHttpResponse.Builder response = SdkHttpResponse.builder();
+    do {
+      final String statusLine = readLine(inputStream);
+      final String[] status = statusLine.split(" ", 3);
+      if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+        throw new IOException("Invalid status line: " + statusLine);
+      }
+      response.clearHeaders()
+          .statusCode(Integer.parseInt(status[1]))
+          .statusText(status.length > 2 ? status[2] : null);
+      for (String line = readLine(inputStream); !line.isEmpty(); line = readLine(inputStream)) {
+        final int colon = line.indexOf(':');
+        if (colon > 0) {
+          response.appendHeader(line.substring(0, colon).trim(),
+              line.substring(colon + 1).trim());
+        }
+      }
+      // skip interim responses
+    } while (response.statusCode() / 100 == 1);
+
+    final boolean keepAlive = !response.firstMatchingHeader("Connection")
+        .filter("close"::equalsIgnoreCase).isPresent();
+    final HttpExecuteResponse.Builder executeResponse = HttpExecuteResponse.builder();
+    final int statusCode = response.statusCode();
+    if (method == SdkHttpMethod.HEAD || statusCode == 204 || statusCode == 304) {
+      release(connection, keepAlive);
+    } else {
+      final BodyInputStream body;
+      final Optional<String> contentLength = response.firstMatchingHeader("Content-Length");
+      if (response.firstMatchingHeader("Transfer-Encoding")
+          .filter("chunked"::equalsIgnoreCase).isPresent()) {
+        body = new ChunkedInputStream(inputStream);
+      } else if (contentLength.isPresent()) {
+        body = new LimitedInputStream(inputStream, Long.parseLong(contentLength.get()));
+      } else {
+        // ends when the server closes the connection
+        body = new BodyInputStream(inputStream) {
+          @Override
+          boolean isComplete() {
+            return false;
+          }
+        };
+      }
+      executeResponse.responseBody(AbortableInputStream.create(new FilterInputStream(body) {
+        private boolean closed;
+
+        @Override
+        public void close() {
+          if (!closed) {
+            closed = true;
+            release(connection, keepAlive && body.isComplete());
+          }
+        }
+      }, connection::close));
+    }
+    return executeResponse.response(response.build()).build();
+  }
+
+  private static String readLine(final InputStream inputStream) throws IOException {
+    final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    for (int b = inputStream.read(); b != '\n'; b = inputStream.read()) {
+      if (b < 0) {
+        throw new EOFException("Connection closed before the end of the response head");
+      }
+      if (b != '\r') {
+        line.write(b);
+      }
+    }
+    return new String(line.toByteArray(), ISO_8859_1);
+  }
+
+  private static void copy(final InputStream inputStream, final OutputStream outputStream)
+      throws IOException {
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    for (int read = inputStream.read(buffer); read >= 0; read = inputStream.read(buffer)) {
+      outputStream.write(buffer, 0, read);
+    }
+  }
+
+  /**
+   * Writes a request body of unknown length in chunks.
+   */
+  private static final class ChunkedOutputStream extends FilterOutputStream {
+
+    private ChunkedOutputStream(final OutputStream outputStream) {
+      super(outputStream);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      if (len > 0) {
+        out.write((Integer.toHexString(len) + "\r\n").getBytes(ISO_8859_1));
+        out.write(b, off, len);
+        out.write('\r');
+        out.write('\n');
+      }
+    }
+
+    private void finish() throws IOException {
+      out.write("0\r\n\r\n".getBytes(ISO_8859_1));
+    }
+  }
+
+  /**
+   * Reads a response body up to its end, which leaves the connection ready for the next response.
+   */
+  private abstract static class BodyInputStream extends FilterInputStream {
+
+    BodyInputStream(final InputStream inputStream) {
+      super(inputStream);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      final byte[] buffer = new byte[(int) Math.max(0, Math.min(BUFFER_SIZE, n))];
+      long skipped = 0;
+      while (skipped < n) {
+        final int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+        if (read < 0) {
+          break;
+        }
+        skipped += read;
+      }
+      return skipped;
+    }
+
+    abstract boolean isComplete();
+  }
+
+  /**
+   * Reads a response body in chunked transfer encoding.
+   */
+  private static final class ChunkedInputStream extends BodyInputStream {
+
+    private long chunkRemaining;
+    private boolean last;
+
+    private ChunkedInputStream(final InputStream inputStream) {
+      super(inputStream);
+    }
+
+    @Override
+    boolean isComplete() {
+      return last;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (chunkRemaining == 0 && !nextChunk()) {
+        return -1;
+      }
+      final int read = in.read(b, off, (int) Math.min(len, chunkRemaining));
+      if (read < 0) {
+        throw new EOFException("Connection closed before the end of the chunk");
+      }
+      chunkRemaining -= read;
+      if (chunkRemaining == 0) {
+        readLine(in);
+      }
+      return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(in.available(), chunkRemaining);
+    }
+
+    private boolean nextChunk() throws IOException {
+      if (last) {
+        return false;
+      }
+      final String line = readLine(in);
+      final int extension = line.indexOf(';');
+      chunkRemaining = Long.parseLong(
+          (extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+      if (chunkRemaining == 0) {
+        last = true;
+        // trailers
+        while (!readLine(in).isEmpty()) {
+          // ignored
+        }
+        return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Reads a response body of known length.
+   */
+  private static final class LimitedInputStream extends BodyInputStream {
+
+    private long remaining;
+
+    private LimitedInputStream(final InputStream inputStream, final long length) {
+      super(inputStream);
+      remaining = length;
+    }
+
+    @Override
+    boolean isComplete() {
+      return remaining == 0;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (remaining == 0) {
+        return -1;
+      }
+      final int read = in.read(b, off, (int) Math.min(len, remaining));
+      if (read < 0) {
+        throw new EOFException("Connection closed before the end of the response body");
+      }
+      remaining -= read;
+      return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(in.available(), remaining);
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.testsupport.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.eclipse.jetty.server.LocalConnector;
+
+/**
+ * An in-memory connection to the S3Mock server, opened on its {@link LocalConnector}. Bytes
+ * written to the {@link #getOutputStream() output stream} are parsed by the server like bytes
+ * received on a socket, its response is read from the {@link #getInputStream() input stream}.
+ *
+ * <p>Request bodies are streamed: writes block while more than {@value MAX_PENDING_INPUT} bytes
+ * haven't been read by the server yet. The server never blocks on writes, responses are buffered
+ * in memory until read, without a limit. {@link LocalConnector.LocalEndPoint} can only bound them
+ * to its fixed output buffer of 1 KB, which would hand large responses over in 1 KB pieces.</p>
+ */
+final class LocalConnection implements Closeable {
+
+  private static final int MAX_PENDING_INPUT = 256 * 1024;
+  private static final long MIN_DRAIN_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  private static final long MAX_DRAIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+  private final LocalConnector.LocalEndPoint endPoint;
+  private final Deque<ByteBuffer> pendingInput = new ArrayDeque<>();
+  private final InputStream inputStream = new ResponseInputStream();
+  private final OutputStream outputStream = new RequestOutputStream();
+
+  /**
+   * Read timeout in milliseconds, 0 to wait until the server closes the connection.
+   */
+  private volatile int readTimeout;
+
+  LocalConnection(final LocalConnector connector) {
+    endPoint = connector.connect();
+  }
+
+  InputStream getInputStream() {
+    return inputStream;
+  }
+
+  OutputStream getOutputStream() {
+    return outputStream;
+  }
+
+  int getReadTimeout() {
+    return readTimeout;
+  }
+
+  void setReadTimeout(final int readTimeout) {
+    this.readTimeout = readTimeout;
+  }
+
+  boolean isOpen() {
+    return endPoint.isOpen();
+  }
+
+  @Override
+  public void close() {
+    endPoint.close();
+  }
+
+  /**
+   * Hands the request bytes to the server. The server reads them on its own threads: reading on
+   * the writing thread would run the request handlers there, blocking on bodies not written yet.
+   */
+  private final class RequestOutputStream extends OutputStream {
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      if (!endPoint.isOpen()) {
+        throw new IOException("Connection closed");
+      }
+      if (len == 0) {
+        return;
+      }
+      final ByteBuffer buffer = ByteBuffer.allocate(len);
+      buffer.put(b, off, len).flip();
+      awaitDrained(Math.max(0, MAX_PENDING_INPUT - len));
+      pendingInput.add(buffer);
+      endPoint.addInputAndExecute(buffer);
+    }
+
+    /**
+     * Waits until the server has read all but the given number of pending bytes. The server reads
+     * the queued buffers in place, so their remaining bytes are the bytes it hasn't read yet.
+     * The end point doesn't signal reads, so this polls, backing off while the server is busy.
+     */
+    private void awaitDrained(final int maxPending) throws IOException {
+      long wait = MIN_DRAIN_WAIT_NANOS;
+      while (true) {
+        long pending = 0;
+        while (!pendingInput.isEmpty() && !pendingInput.peek().hasRemaining()) {
+          pendingInput.poll();
+        }
+        for (final ByteBuffer buffer : pendingInput) {
+          pending += buffer.remaining();
+        }
+        if (pending <= maxPending) {
+          return;
+        }
+        if (!endPoint.isOpen()) {
+          throw new IOException("Connection closed");
+        }
+        LockSupport.parkNanos(wait);
+        wait = Math.min(wait * 2, MAX_DRAIN_WAIT_NANOS);
+        if (Thread.interrupted()) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+    }
+  }
+
+  /**
+   * Takes the response bytes from the server as they are written.
+   */
+  private final class ResponseInputStream extends InputStream {
+
+    private ByteBuffer buffer;
+    private boolean eof;
+
+    @Override
+    public int read() throws IOException {
+      return fill() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      final int read = Math.min(len, buffer.remaining());
+      buffer.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return buffer != null ? buffer.remaining() : 0;
+    }
+
+    private boolean fill() throws IOException {
+      while (!eof && (buffer == null || !buffer.hasRemaining())) {
+        final int timeout = readTimeout;
+        try {
+          buffer = endPoint.waitForOutput(timeout > 0 ? timeout : Long.MAX_VALUE,
+              TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+        if (buffer == null) {
+          throw new SocketTimeoutException("Read timed out");
+        }
+        // an empty buffer is only returned once the server shut the connection down
+        eof = !buffer.hasRemaining();
+      }
+      return !eof;
+    }
+  }
+}
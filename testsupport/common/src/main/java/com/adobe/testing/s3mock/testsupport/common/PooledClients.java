@@ -0,0 +1,193 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.testsupport.common;
+
+import static software.amazon.awssdk.http.SdkHttpConfigurationOption.TRUST_ALL_CERTIFICATES;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.utils.AttributeMap;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+/**
+ * SDK v2 clients of one S3Mock, shared by all callers instead of built per call. They are built
+ * on two connection pools, an Apache HTTP client for the synchronous clients and a Netty client
+ * for the asynchronous ones, so concurrent requests reuse connections instead of opening new
+ * ones. Clients are cached per access key id, i.e. per namespace.
+ *
+ * <p>Callers get views of the clients whose {@code close()} does nothing, so a test closing its
+ * client, e.g. with try-with-resources, doesn't break the tests after it. The clients are closed
+ * with {@link #close(String)} or {@link #close()}.</p>
+ */
+class PooledClients implements AutoCloseable {
+
+  private static final AttributeMap TRUST_ALL = AttributeMap.builder()
+      .put(TRUST_ALL_CERTIFICATES, Boolean.TRUE)
+      .build();
+
+  private final int poolSize;
+
+  private final URI endpoint;
+
+  private final URI http2Endpoint;
+
+  private final Map<String, S3Client> clients = new HashMap<>();
+
+  private final Map<String, S3AsyncClient> asyncClients = new HashMap<>();
+
+  private SdkHttpClient httpClient;
+
+  private SdkAsyncHttpClient asyncHttpClient;
+
+  /**
+   * Constructs a new {@link PooledClients}.
+   *
+   * @param poolSize the maximum number of connections of each pool.
+   * @param endpoint the endpoint of the S3Mock.
+   * @param http2Endpoint the plain HTTP endpoint of the S3Mock if it accepts HTTP/2 there, the
+   *     asynchronous clients use HTTP/2 with prior knowledge then. Null for HTTP/1.1.
+   */
+  PooledClients(final int poolSize, final URI endpoint, final URI http2Endpoint) {
+    this.poolSize = poolSize;
+    this.endpoint = endpoint;
+    this.http2Endpoint = http2Endpoint;
+  }
+
+  synchronized S3Client client(final String accessKeyId) {
+    if (httpClient == null) {
+      httpClient = ApacheHttpClient.builder()
+          .maxConnections(poolSize)
+          .buildWithDefaults(TRUST_ALL);
+    }
+    return clients.computeIfAbsent(accessKeyId, key -> uncloseable(S3Client.class,
+        S3Client.builder()
+            .region(Region.of("us-east-1"))
+            .credentialsProvider(
+                StaticCredentialsProvider.create(AwsBasicCredentials.create(key, "bar")))
+            .endpointOverride(endpoint)
+            .httpClient(httpClient)
+            .build()));
+  }
+
+  synchronized S3AsyncClient asyncClient(final String accessKeyId) {
+    if (asyncHttpClient == null) {
+      asyncHttpClient = NettyNioAsyncHttpClient.builder()
+          .maxConcurrency(poolSize)
+          .protocol(http2Endpoint != null ? Protocol.HTTP2 : Protocol.HTTP1_1)
+          .buildWithDefaults(TRUST_ALL);
+    }
+    return asyncClients.computeIfAbsent(accessKeyId, key -> uncloseable(S3AsyncClient.class,
+        S3AsyncClient.builder()
+            .region(Region.of("us-east-1"))
+            .credentialsProvider(
+                StaticCredentialsProvider.create(AwsBasicCredentials.create(key, "bar")))
+            .endpointOverride(http2Endpoint != null ? http2Endpoint : endpoint)
+            .httpClient(asyncHttpClient)
+            .build()));
+  }
+
+  /**
+   * Closes the clients of one access key id, e.g. of a dropped namespace. The connection pools
+   * stay open.
+   *
+   * @param accessKeyId the access key id.
+   */
+  synchronized void close(final String accessKeyId) {
+    closeClient(clients.remove(accessKeyId));
+    closeClient(asyncClients.remove(accessKeyId));
+  }
+
+  /**
+   * Closes all clients and both connection pools.
+   */
+  @Override
+  public synchronized void close() {
+    clients.values().forEach(PooledClients::closeClient);
+    clients.clear();
+    asyncClients.values().forEach(PooledClients::closeClient);
+    asyncClients.clear();
+    if (httpClient != null) {
+      httpClient.close();
+      httpClient = null;
+    }
+    if (asyncHttpClient != null) {
+      asyncHttpClient.close();
+      asyncHttpClient = null;
+    }
+  }
+
+  /**
+   * Wraps a client in a view that delegates everything but {@code close()}.
+   */
+  private static <T extends SdkAutoCloseable> T uncloseable(final Class<T> type, final T client) {
+    return type.cast(Proxy.newProxyInstance(PooledClients.class.getClassLoader(),
+        new Class<?>[] {type}, new Uncloseable(client)));
+  }
+
+  private static void closeClient(final Object view) {
+    if (view != null) {
+      ((Uncloseable) Proxy.getInvocationHandler(view)).client.close();
+    }
+  }
+
+  private static final class Uncloseable implements InvocationHandler {
+
+    private final SdkAutoCloseable client;
+
+    private Uncloseable(final SdkAutoCloseable client) {
+      this.client = client;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+        throws Throwable {
+      if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+        return null;
+      }
+      if (method.getDeclaringClass() == Object.class) {
+        switch (method.getName()) {
+          case "equals":
+            return proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          default:
+            return "Shared " + client;
+        }
+      }
+      try {
+        return method.invoke(client, args);
+      } catch (final InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
@@ -17,17 +17,27 @@
 package com.adobe.testing.s3mock.testsupport.common;
 
 import static java.lang.String.join;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static software.amazon.awssdk.http.SdkHttpConfigurationOption.TRUST_ALL_CERTIFICATES;
 
+import com.adobe.testing.s3mock.EmbeddedS3Mock;
 import com.adobe.testing.s3mock.S3MockApplication;
+import com.adobe.testing.s3mock.util.AwsHttpHeaders;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.Socket;
 import java.net.URI;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
@@ -37,12 +47,15 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509ExtendedTrustManager;
+import org.apache.commons.io.IOUtils;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.eclipse.jetty.server.LocalConnector;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.utils.AttributeMap;
 
@@ -51,9 +64,55 @@ import software.amazon.awssdk.utils.AttributeMap;
  */
 public abstract class S3MockStarter {
 
+  static final String TESTSUPPORT_PREFIX = "com.adobe.testing.s3mock.testsupport.";
+
+  /**
+   * Property name for sharing one S3Mock between the starters with the same properties in all
+   * JVMs on the machine, e.g. the test classes of all Surefire forks, instead of starting one per
+   * starter. Also read from the system properties, see {@link SharedS3Mock}.
+   */
+  public static final String PROP_SHARED = TESTSUPPORT_PREFIX + "shared";
+
+  /**
+   * Property name for the directory coordinating the shared S3Mocks, defaults to
+   * {@code s3mock-shared} in {@code java.io.tmpdir}. Also read from the system properties.
+   */
+  public static final String PROP_SHARED_DIRECTORY = TESTSUPPORT_PREFIX + "sharedDirectory";
+
+  /**
+   * Property name for the milliseconds a shared S3Mock keeps running after the last starter
+   * released it, defaults to {@value DEFAULT_SHARED_IDLE_TIMEOUT}. Also read from the system
+   * properties.
+   */
+  public static final String PROP_SHARED_IDLE_TIMEOUT = TESTSUPPORT_PREFIX + "sharedIdleTimeout";
+
+  public static final long DEFAULT_SHARED_IDLE_TIMEOUT = 30_000;
+
+  /**
+   * Property name for the maximum number of connections of each pool of the shared clients, see
+   * {@link #getS3ClientV2()} and {@link #getS3AsyncClient()}. Defaults to
+   * {@value DEFAULT_CLIENT_POOL_SIZE}.
+   */
+  public static final String PROP_CLIENT_POOL_SIZE = TESTSUPPORT_PREFIX + "clientPoolSize";
+
+  public static final int DEFAULT_CLIENT_POOL_SIZE = 50;
+
+  private static final String PROP_CONTEXT_PATH = "com.adobe.testing.s3mock.contextPath";
+  private static final String ADMIN_PATH = "/.s3mock";
+
+  private static final String SNAPSHOT = "/snapshot";
+
+  private static final String PROP_HTTP2 = "http2";
+  private static final String PROP_HTTP2_ENABLED = "com.adobe.testing.s3mock.http2.enabled";
+
   protected S3MockApplication s3MockFileStore;
+  protected EmbeddedS3Mock embeddedS3Mock;
   protected final Map<String, Object> properties;
 
+  private SharedS3Mock.Lease sharedLease;
+
+  private PooledClients pooledClients;
+
   protected S3MockStarter(final Map<String, Object> properties) {
     this.properties = defaultProps();
     if (properties != null) {
@@ -65,20 +124,44 @@ public abstract class S3MockStarter {
     final Map<String, Object> args = new HashMap<>();
     args.put(S3MockApplication.PROP_HTTPS_PORT, "0");
     args.put(S3MockApplication.PROP_HTTP_PORT, "0");
+    args.put(S3MockApplication.PROP_LOCAL_CONNECTOR, true);
+    for (final String name : new String[] {
+        PROP_SHARED, PROP_SHARED_DIRECTORY, PROP_SHARED_IDLE_TIMEOUT}) {
+      if (System.getProperty(name) != null) {
+        args.put(name, System.getProperty(name));
+      }
+    }
     return args;
   }
 
   /**
    * Creates an {@link S3Client} client instance that is configured to call the started S3Mock
-   * server using HTTPS.
+   * server using HTTPS. Every call builds a new client without connection pooling, owned by the
+   * caller, see {@link #getS3ClientV2()} for a shared, pooled one.
    *
    * @return The {@link S3Client} instance.
    */
   public S3Client createS3ClientV2() {
+    return buildS3ClientV2("foo");
+  }
+
+  /**
+   * Creates an {@link S3Client} client instance that is configured to call the started S3Mock
+   * server using HTTPS, working in a namespace created with {@link #createNamespace(String)}.
+   *
+   * @param namespace the name of the namespace.
+   *
+   * @return The {@link S3Client} instance.
+   */
+  public S3Client createNamespacedS3ClientV2(final String namespace) {
+    return buildS3ClientV2(namespace);
+  }
+
+  private S3Client buildS3ClientV2(final String accessKeyId) {
     return S3Client.builder()
       .region(Region.of("us-east-1"))
       .credentialsProvider(
-        StaticCredentialsProvider.create(AwsBasicCredentials.create("foo", "bar")))
+        StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKeyId, "bar")))
       .endpointOverride(URI.create(getServiceEndpoint()))
       .httpClient(UrlConnectionHttpClient.builder().buildWithDefaults(AttributeMap.builder()
         .put(TRUST_ALL_CERTIFICATES, Boolean.TRUE)
@@ -86,6 +169,90 @@ public abstract class S3MockStarter {
       .build();
   }
 
+  /**
+   * Creates an {@link S3Client} client instance that calls the started S3Mock server in-process,
+   * with an {@link InProcessSdkHttpClient} instead of a socket.
+   *
+   * @return The {@link S3Client} instance.
+   */
+  public S3Client createInProcessS3ClientV2() {
+    return S3Client.builder()
+      .region(Region.of("us-east-1"))
+      .credentialsProvider(
+        StaticCredentialsProvider.create(AwsBasicCredentials.create("foo", "bar")))
+      .endpointOverride(URI.create(getServiceEndpoint()))
+      .httpClient(new InProcessSdkHttpClient(getLocalConnector()))
+      .build();
+  }
+
+  /**
+   * Gets the {@link S3Client} shared by all callers of this starter, built on a pool of Apache
+   * HTTP connections for concurrent requests, see {@link #PROP_CLIENT_POOL_SIZE}. Closing it does
+   * nothing, it is closed when the S3Mock stops.
+   *
+   * @return The {@link S3Client} instance.
+   */
+  public S3Client getS3ClientV2() {
+    return pooledClients().client("foo");
+  }
+
+  /**
+   * Gets the shared {@link S3Client} working in a namespace created with
+   * {@link #createNamespace(String)}, see {@link #getS3ClientV2()}. It is closed when the
+   * namespace is dropped.
+   *
+   * @param namespace the name of the namespace.
+   *
+   * @return The {@link S3Client} instance.
+   */
+  public S3Client getNamespacedS3ClientV2(final String namespace) {
+    return pooledClients().client(namespace);
+  }
+
+  /**
+   * Gets the {@link S3AsyncClient} shared by all callers of this starter, built on a pool of
+   * Netty connections. It uses HTTP/2 if the S3Mock accepts it, i.e. if {@code http2} is enabled
+   * and Jetty's HTTP/2 server is on the classpath, and HTTP/1.1 otherwise. Closing it does
+   * nothing, it is closed when the S3Mock stops.
+   *
+   * @return The {@link S3AsyncClient} instance.
+   */
+  public S3AsyncClient getS3AsyncClient() {
+    return pooledClients().asyncClient("foo");
+  }
+
+  /**
+   * Gets the shared {@link S3AsyncClient} working in a namespace created with
+   * {@link #createNamespace(String)}, see {@link #getS3AsyncClient()}. It is closed when the
+   * namespace is dropped.
+   *
+   * @param namespace the name of the namespace.
+   *
+   * @return The {@link S3AsyncClient} instance.
+   */
+  public S3AsyncClient getNamespacedS3AsyncClient(final String namespace) {
+    return pooledClients().asyncClient(namespace);
+  }
+
+  private synchronized PooledClients pooledClients() {
+    if (pooledClients == null) {
+      final int poolSize = properties.containsKey(PROP_CLIENT_POOL_SIZE)
+          ? Integer.parseInt(String.valueOf(properties.get(PROP_CLIENT_POOL_SIZE)))
+          : DEFAULT_CLIENT_POOL_SIZE;
+      pooledClients = new PooledClients(poolSize, URI.create(getServiceEndpoint()),
+          acceptsHttp2() ? URI.create("http://localhost:" + getHttpPort()) : null);
+    }
+    return pooledClients;
+  }
+
+  /**
+   * Checks if the S3Mock accepts HTTP/2 with prior knowledge on its HTTP connector.
+   */
+  private boolean acceptsHttp2() {
+    final Object enabled = properties.getOrDefault(PROP_HTTP2_ENABLED, properties.get(PROP_HTTP2));
+    return Boolean.parseBoolean(String.valueOf(enabled));
+  }
+
   /**
    * Creates an {@link AmazonS3} client instance that is configured to call the started S3Mock
    * server using HTTPS.
@@ -105,7 +272,23 @@ public abstract class S3MockStarter {
    * @return The {@link AmazonS3} instance.
    */
   public AmazonS3 createS3Client(final String region) {
-    final BasicAWSCredentials credentials = new BasicAWSCredentials("foo", "bar");
+    return buildS3Client(region, "foo");
+  }
+
+  /**
+   * Creates an {@link AmazonS3} client instance that is configured to call the started S3Mock
+   * server using HTTPS, working in a namespace created with {@link #createNamespace(String)}.
+   *
+   * @param namespace the name of the namespace.
+   *
+   * @return The {@link AmazonS3} instance.
+   */
+  public AmazonS3 createNamespacedS3Client(final String namespace) {
+    return buildS3Client("us-east-1", namespace);
+  }
+
+  private AmazonS3 buildS3Client(final String region, final String accessKeyId) {
+    final BasicAWSCredentials credentials = new BasicAWSCredentials(accessKeyId, "bar");
 
     return AmazonS3ClientBuilder.standard()
         .withCredentials(new AWSStaticCredentialsProvider(credentials))
@@ -116,12 +299,57 @@ public abstract class S3MockStarter {
         .build();
   }
 
+  /**
+   * Creates an {@link AmazonS3} client instance that calls the started S3Mock server in-process,
+   * with an {@link InProcessConnectionSocketFactory} instead of sockets.
+   *
+   * @return The {@link AmazonS3} instance.
+   */
+  public AmazonS3 createInProcessS3Client() {
+    final ClientConfiguration clientConfiguration = new ClientConfiguration();
+    clientConfiguration.getApacheHttpClientConfig()
+        .withSslSocketFactory(new InProcessConnectionSocketFactory(getLocalConnector()));
+
+    return AmazonS3ClientBuilder.standard()
+        .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("foo", "bar")))
+        .withClientConfiguration(clientConfiguration)
+        // the socket factory is registered for HTTPS, the connections are plain HTTP
+        .withEndpointConfiguration(
+            new EndpointConfiguration("https://localhost:" + getPort(), "us-east-1"))
+        .enablePathStyleAccess()
+        .build();
+  }
+
+  /**
+   * Gets the connector serving in-memory connections to the started S3Mock server.
+   *
+   * @return the local connector.
+   */
+  public LocalConnector getLocalConnector() {
+    if (sharedLease != null) {
+      throw new IllegalStateException("A shared S3Mock runs in a JVM of its own");
+    }
+    final LocalConnector connector = embeddedS3Mock != null
+        ? embeddedS3Mock.getLocalConnector() : s3MockFileStore.getLocalConnector();
+    if (connector == null) {
+      throw new IllegalStateException(
+          "In-process clients require " + S3MockApplication.PROP_LOCAL_CONNECTOR + "=true");
+    }
+    return connector;
+  }
+
   public int getPort() {
-    return s3MockFileStore.getPort();
+    if (sharedLease != null) {
+      return sharedLease.getPort();
+    }
+    return embeddedS3Mock != null ? embeddedS3Mock.getPort() : s3MockFileStore.getPort();
   }
 
   public int getHttpPort() {
-    return s3MockFileStore.getHttpPort();
+    if (sharedLease != null) {
+      return sharedLease.getHttpPort();
+    }
+    return embeddedS3Mock != null ? embeddedS3Mock.getHttpPort() : s3MockFileStore.getHttpPort();
   }
 
   /**
@@ -130,7 +358,169 @@ public abstract class S3MockStarter {
    * @param keyRef A KMS Key Reference
    */
   public void registerKMSKeyRef(final String keyRef) {
-    s3MockFileStore.registerKMSKeyRef(keyRef);
+    if (sharedLease != null) {
+      throw new UnsupportedOperationException(
+          "Configure the KMS keys of a shared S3Mock with the validKmsKeys property");
+    }
+    if (embeddedS3Mock != null) {
+      embeddedS3Mock.registerKMSKeyRef(keyRef);
+    } else {
+      s3MockFileStore.registerKMSKeyRef(keyRef);
+    }
+  }
+
+  /**
+   * Creates a namespace in the mock server: an isolated bucket registry, so tests sharing one
+   * server can use the same bucket names. Requests work in the namespace if they are signed with
+   * its name as access key id, like the ones of {@link #createNamespacedS3Client(String)}, or
+   * name it in the {@value AwsHttpHeaders#X_S3MOCK_NAMESPACE} header.
+   *
+   * @param namespace the name of the namespace, up to 128 letters, digits, '.', '_' and '-'.
+   */
+  public void createNamespace(final String namespace) {
+    final int status = adminRequest("PUT", "/namespaces/" + namespace);
+    if (status != 200 && status != 201) {
+      throw new IllegalStateException("Namespace " + namespace + " can't be created: " + status);
+    }
+  }
+
+  /**
+   * Drops a namespace with all of its buckets. Its files are deleted in the background. Its
+   * shared clients are closed.
+   *
+   * @param namespace the name of the namespace.
+   */
+  public void dropNamespace(final String namespace) {
+    synchronized (this) {
+      if (pooledClients != null) {
+        pooledClients.close(namespace);
+      }
+    }
+    final int status = adminRequest("DELETE", "/namespaces/" + namespace);
+    if (status != 204 && status != 404) {
+      throw new IllegalStateException("Namespace " + namespace + " can't be dropped: " + status);
+    }
+  }
+
+  /**
+   * Takes a checkpoint of all buckets and objects in the mock server, to return to it with
+   * {@link #rollback(String)}. Files are hard linked, not copied, so seeding a large fixture once
+   * and rolling back to it between tests is much faster than uploading it again. An existing
+   * checkpoint of the same name is replaced.
+   *
+   * @param name the name of the checkpoint, up to 128 letters, digits, '.', '_' and '-'.
+   */
+  public void checkpoint(final String name) {
+    final int status = adminRequest("PUT", "/checkpoints/" + name);
+    if (status != 200 && status != 201) {
+      throw new IllegalStateException("Checkpoint " + name + " can't be taken: " + status);
+    }
+  }
+
+  /**
+   * Returns all buckets and objects in the mock server to the state of a checkpoint taken with
+   * {@link #checkpoint(String)}. Multipart uploads in progress are aborted.
+   *
+   * @param name the name of the checkpoint.
+   */
+  public void rollback(final String name) {
+    final int status = adminRequest("POST", "/checkpoints/" + name + "/rollback");
+    if (status != 204) {
+      throw new IllegalStateException("Can't roll back to checkpoint " + name + ": " + status);
+    }
+  }
+
+  /**
+   * Removes all buckets, objects and namespaces from the mock server, except for the initial
+   * buckets, which are empty afterwards. Files are deleted in the background. Checkpoints are
+   * kept.
+   */
+  public void reset() {
+    final int status = adminRequest("POST", "/reset");
+    if (status != 204) {
+      throw new IllegalStateException("S3Mock can't be reset: " + status);
+    }
+  }
+
+  /**
+   * Streams a tar archive of all namespaces, buckets, objects and multipart uploads in progress of
+   * the mock server, to be restored with {@link #importSnapshot(InputStream)}, possibly into
+   * another S3Mock. Nothing is staged on disk. The mock server should not be modified meanwhile.
+   *
+   * @param outputStream the stream to write the archive to, is not closed.
+   */
+  public void exportSnapshot(final OutputStream outputStream) {
+    try {
+      final HttpURLConnection connection = openAdminConnection("GET", SNAPSHOT);
+      if (connection.getResponseCode() != 200) {
+        throw new IllegalStateException("Snapshot can't be exported: "
+            + connection.getResponseCode());
+      }
+      try (InputStream body = connection.getInputStream()) {
+        IOUtils.copy(body, outputStream);
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException("Snapshot can't be exported", e);
+    }
+  }
+
+  /**
+   * Restores a snapshot written by {@link #exportSnapshot(OutputStream)} into the mock server,
+   * creating missing namespaces and buckets and replacing existing objects. The archive is
+   * streamed to the server, which stores the objects in parallel while reading it.
+   *
+   * @param inputStream the stream to read the archive from, is not closed.
+   *
+   * @return the number of restored objects.
+   */
+  public int importSnapshot(final InputStream inputStream) {
+    try {
+      final HttpURLConnection connection = openAdminConnection("POST", SNAPSHOT);
+      connection.setDoOutput(true);
+      connection.setChunkedStreamingMode(0);
+      connection.setRequestProperty("Content-Type", "application/x-tar");
+      try (OutputStream body = connection.getOutputStream()) {
+        IOUtils.copy(inputStream, body);
+      }
+      final int status = connection.getResponseCode();
+      if (status != 200) {
+        throw new IllegalStateException("Snapshot can't be imported: " + status);
+      }
+      try (InputStream body = connection.getInputStream()) {
+        return Integer.parseInt(IOUtils.toString(body, UTF_8).trim());
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException("Snapshot can't be imported", e);
+    }
+  }
+
+  /**
+   * Calls the administrative API of the mock server over HTTP.
+   *
+   * @return the status code of the response.
+   */
+  private int adminRequest(final String method, final String resource) {
+    try {
+      final HttpURLConnection connection = openAdminConnection(method, resource);
+      final int status = connection.getResponseCode();
+      final InputStream body = status < 400
+          ? connection.getInputStream() : connection.getErrorStream();
+      if (body != null) {
+        body.close();
+      }
+      return status;
+    } catch (final IOException e) {
+      throw new IllegalStateException("Admin request failed: " + method + " " + resource, e);
+    }
+  }
+
+  private HttpURLConnection openAdminConnection(final String method, final String resource)
+      throws IOException {
+    final HttpURLConnection connection = (HttpURLConnection) new URL("http", "localhost",
+        getHttpPort(), properties.getOrDefault(PROP_CONTEXT_PATH, "") + ADMIN_PATH + resource)
+        .openConnection();
+    connection.setRequestMethod(method);
+    return connection;
   }
 
   /**
@@ -168,11 +558,43 @@ public abstract class S3MockStarter {
   }
 
   protected void start() {
-    s3MockFileStore = S3MockApplication.start(properties);
+    if (Boolean.parseBoolean(String.valueOf(properties.get(PROP_SHARED)))) {
+      final Path directory = properties.containsKey(PROP_SHARED_DIRECTORY)
+          ? Paths.get(String.valueOf(properties.get(PROP_SHARED_DIRECTORY)))
+          : Paths.get(System.getProperty("java.io.tmpdir"), "s3mock-shared");
+      final long idleTimeout = properties.containsKey(PROP_SHARED_IDLE_TIMEOUT)
+          ? Long.parseLong(String.valueOf(properties.get(PROP_SHARED_IDLE_TIMEOUT)))
+          : DEFAULT_SHARED_IDLE_TIMEOUT;
+      try {
+        sharedLease = SharedS3Mock.acquire(properties, directory, idleTimeout);
+      } catch (final IOException e) {
+        throw new IllegalStateException("Shared S3Mock can't be started", e);
+      }
+      return;
+    }
+    if (Boolean.parseBoolean(String.valueOf(properties.get(S3MockApplication.PROP_EMBEDDED)))) {
+      embeddedS3Mock = EmbeddedS3Mock.start(properties);
+    } else {
+      s3MockFileStore = S3MockApplication.start(properties);
+    }
   }
 
   protected void stop() {
-    s3MockFileStore.stop();
+    synchronized (this) {
+      if (pooledClients != null) {
+        pooledClients.close();
+        pooledClients = null;
+      }
+    }
+    if (sharedLease != null) {
+      sharedLease.release();
+      sharedLease = null;
+    } else if (embeddedS3Mock != null) {
+      embeddedS3Mock.stop();
+      embeddedS3Mock = null;
+    } else {
+      s3MockFileStore.stop();
+    }
   }
 
   private SSLContext createBlindlyTrustingSslContext() {
@@ -241,6 +663,34 @@ public abstract class S3MockStarter {
       return this;
     }
 
+    /**
+     * Imports fixtures at startup: directories, or zip or tar archives of them, whose top-level
+     * directories become buckets and whose files become objects. Objects are imported in
+     * parallel, without going through the S3 API, and files of directories are hard linked
+     * instead of copied where possible.
+     *
+     * @param fixtures paths of the directories or archives.
+     *
+     * @return this builder.
+     */
+    public BaseBuilder<T> withFixtures(final String... fixtures) {
+      arguments.put(S3MockApplication.PROP_FIXTURES, join(",", fixtures));
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of connections of each pool of the shared clients, see
+     * {@link S3MockStarter#getS3ClientV2()} and {@link S3MockStarter#getS3AsyncClient()}.
+     *
+     * @param clientPoolSize the maximum number of connections.
+     *
+     * @return this builder.
+     */
+    public BaseBuilder<T> withClientPoolSize(final int clientPoolSize) {
+      arguments.put(PROP_CLIENT_POOL_SIZE, String.valueOf(clientPoolSize));
+      return this;
+    }
+
     public BaseBuilder<T> withHttpsPort(final int httpsPort) {
       arguments.put(S3MockApplication.PROP_HTTPS_PORT, String.valueOf(httpsPort));
       return this;
@@ -289,6 +739,42 @@ public abstract class S3MockStarter {
       return this;
     }
 
+    /**
+     * Starts in the profile optimized for startup time, see
+     * {@link S3MockApplication#STARTUP_PROFILE}. Combine with {@code withSecureConnection(false)}
+     * to skip the HTTPS connector.
+     *
+     * @return the builder
+     */
+    public BaseBuilder<T> startupOptimized() {
+      arguments.put(S3MockApplication.PROP_STARTUP_OPTIMIZED, true);
+      return this;
+    }
+
+    /**
+     * Starts the {@link EmbeddedS3Mock}, a bare Jetty server without Spring Boot that starts in
+     * tens of milliseconds. Combine with {@code withSecureConnection(false)} to skip the HTTPS
+     * connector.
+     *
+     * @return the builder
+     */
+    public BaseBuilder<T> embedded() {
+      arguments.put(S3MockApplication.PROP_EMBEDDED, true);
+      return this;
+    }
+
+    /**
+     * Shares the S3Mock with the starters of the same properties in all JVMs on the machine, see
+     * {@link S3MockStarter#PROP_SHARED}. The S3Mock runs in a JVM of its own, so in-process
+     * clients and {@code registerKMSKeyRef} aren't available.
+     *
+     * @return the builder
+     */
+    public BaseBuilder<T> shared() {
+      arguments.put(PROP_SHARED, true);
+      return this;
+    }
+
     /**
      * Creates the instance.
      *
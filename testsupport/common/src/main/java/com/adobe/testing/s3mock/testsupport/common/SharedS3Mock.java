@@ -0,0 +1,387 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.testsupport.common;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.adobe.testing.s3mock.EmbeddedS3Mock;
+import com.adobe.testing.s3mock.S3MockApplication;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * An S3Mock shared by the starters of all JVMs on the machine, e.g. by the test classes of all
+ * Surefire forks, see {@link S3MockStarter#PROP_SHARED}.
+ *
+ * <p>The first starter launches the server in a JVM of its own, so it outlives the JVM that
+ * launched it, and the following starters attach to it. Starters hold a lease while they use the
+ * server, the server stops once no lease was held for the idle timeout. Servers are shared by the
+ * starters with the same properties, they are coordinated through these files in the shared
+ * directory, named after a hash of the properties:</p>
+ * <ul>
+ *   <li>{@code <key>.lock}, locked while a starter attaches or the server checks its leases.</li>
+ *   <li>{@code <key>.server}, locked by the server while it runs.</li>
+ *   <li>{@code <key>.properties}, the ports of the running server.</li>
+ *   <li>{@code <key>.leases/}, a file per lease, locked by its starter. A lease of a JVM that
+ *   exited without releasing it is unlocked by the operating system, and then removed.</li>
+ *   <li>{@code <key>.log}, the output of the server.</li>
+ * </ul>
+ */
+public final class SharedS3Mock {
+
+  private static final String HTTPS_PORT = "httpsPort";
+  private static final String HTTP_PORT = "httpPort";
+
+  private static final long START_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+  private static final long POLL_MILLIS = 50;
+  private static final long WATCH_MILLIS = 500;
+
+  /**
+   * File locks are held by the JVM, so the starters of this JVM also need to be serialized.
+   */
+  private static final Object JVM_LOCK = new Object();
+
+  private SharedS3Mock() {
+    // static only
+  }
+
+  /**
+   * Attaches to the shared server for the given properties, launching it if it isn't running.
+   *
+   * @param properties the server properties, properties of the test support are ignored.
+   * @param directory the shared directory.
+   * @param idleTimeout milliseconds without leases until a launched server stops.
+   *
+   * @return the lease, to be released once the server isn't used anymore.
+   *
+   * @throws IOException if the shared files can't be accessed or the server can't be launched.
+   */
+  static Lease acquire(final Map<String, Object> properties, final Path directory,
+      final long idleTimeout) throws IOException {
+    final Map<String, String> serverProperties = new TreeMap<>();
+    properties.forEach((name, value) -> {
+      if (!name.startsWith(S3MockStarter.TESTSUPPORT_PREFIX)) {
+        serverProperties.put(name, String.valueOf(value));
+      }
+    });
+    final SharedFiles files = new SharedFiles(directory, key(serverProperties));
+    Files.createDirectories(files.leases);
+
+    synchronized (JVM_LOCK) {
+      try (FileChannel channel = FileChannel.open(files.lock, CREATE, WRITE);
+          FileLock ignored = channel.lock()) {
+        final Lease lease = new Lease(files.leases.resolve(UUID.randomUUID() + ".lease"));
+        try {
+          Properties state = isRunning(files) ? readState(files) : null;
+          if (state == null) {
+            state = launch(serverProperties, files, idleTimeout);
+          }
+          lease.httpsPort = Integer.parseInt(state.getProperty(HTTPS_PORT));
+          lease.httpPort = Integer.parseInt(state.getProperty(HTTP_PORT));
+          return lease;
+        } catch (final IOException | RuntimeException e) {
+          lease.release();
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the shared server until no lease was held for the idle timeout.
+   *
+   * @param args the shared directory, the key, the idle timeout in milliseconds and the server
+   *     properties in program args format, e.g. {@code "--server.port=0"}.
+   *
+   * @throws Exception if the server can't be started.
+   */
+  public static void main(final String[] args) throws Exception {
+    final SharedFiles files = new SharedFiles(Paths.get(args[0]), args[1]);
+    final long idleTimeout = Long.parseLong(args[2]);
+    final Map<String, Object> properties = new HashMap<>();
+    for (int i = 3; i < args.length; i++) {
+      final int equals = args[i].indexOf('=');
+      properties.put(args[i].substring(2, equals), args[i].substring(equals + 1));
+    }
+
+    // held until this JVM exits, a server starting in its place waits for it
+    final FileChannel serverChannel = FileChannel.open(files.server, CREATE, WRITE);
+    serverChannel.lock();
+
+    final Properties state = new Properties();
+    final Runnable stop;
+    if (Boolean.parseBoolean(String.valueOf(properties.get(S3MockApplication.PROP_EMBEDDED)))) {
+      final EmbeddedS3Mock s3Mock = EmbeddedS3Mock.start(properties);
+      state.setProperty(HTTPS_PORT, String.valueOf(s3Mock.getPort()));
+      state.setProperty(HTTP_PORT, String.valueOf(s3Mock.getHttpPort()));
+      stop = s3Mock::stop;
+    } else {
+      final S3MockApplication s3Mock = S3MockApplication.start(properties);
+      state.setProperty(HTTPS_PORT, String.valueOf(s3Mock.getPort()));
+      state.setProperty(HTTP_PORT, String.valueOf(s3Mock.getHttpPort()));
+      stop = s3Mock::stop;
+    }
+    final Path temp = Files.createTempFile(files.state.getParent(), files.key, ".tmp");
+    try (OutputStream outputStream = Files.newOutputStream(temp)) {
+      state.store(outputStream, null);
+    }
+    Files.move(temp, files.state, StandardCopyOption.ATOMIC_MOVE);
+
+    watchLeases(files, idleTimeout);
+    stop.run();
+    System.exit(0);
+  }
+
+  private static void watchLeases(final SharedFiles files, final long idleTimeout)
+      throws IOException, InterruptedException {
+    long idleSince = System.currentTimeMillis();
+    while (true) {
+      Thread.sleep(WATCH_MILLIS);
+      try (FileChannel channel = FileChannel.open(files.lock, CREATE, WRITE);
+          FileLock ignored = channel.lock()) {
+        if (hasLeases(files)) {
+          idleSince = System.currentTimeMillis();
+        } else if (System.currentTimeMillis() - idleSince >= idleTimeout) {
+          // starters attaching from now on launch a new server
+          Files.deleteIfExists(files.state);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks for leases, removing those no starter holds anymore.
+   */
+  private static boolean hasLeases(final SharedFiles files) throws IOException {
+    boolean leases = false;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(files.leases)) {
+      for (final Path lease : stream) {
+        try (FileChannel channel = FileChannel.open(lease, WRITE)) {
+          final FileLock lock = channel.tryLock();
+          if (lock == null) {
+            leases = true;
+          } else {
+            lock.release();
+            Files.deleteIfExists(lease);
+          }
+        } catch (final IOException e) {
+          // released and deleted meanwhile
+        }
+      }
+    }
+    return leases;
+  }
+
+  private static boolean isRunning(final SharedFiles files) throws IOException {
+    if (!Files.exists(files.server)) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(files.server, WRITE)) {
+      final FileLock lock = channel.tryLock();
+      if (lock == null) {
+        return true;
+      }
+      lock.release();
+      return false;
+    }
+  }
+
+  private static Properties readState(final SharedFiles files) throws IOException {
+    if (!Files.exists(files.state)) {
+      // stopping
+      return null;
+    }
+    final Properties state = new Properties();
+    try (InputStream inputStream = Files.newInputStream(files.state)) {
+      state.load(inputStream);
+    }
+    return state;
+  }
+
+  private static Properties launch(final Map<String, String> serverProperties,
+      final SharedFiles files, final long idleTimeout) throws IOException {
+    Files.deleteIfExists(files.state);
+    final List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-cp");
+    command.add(classPath());
+    command.add(SharedS3Mock.class.getName());
+    command.add(files.directory.toString());
+    command.add(files.key);
+    command.add(String.valueOf(idleTimeout));
+    serverProperties.forEach((name, value) -> command.add("--" + name + "=" + value));
+    final Process process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.appendTo(files.log.toFile()))
+        .start();
+
+    final long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+    while (!Files.exists(files.state)) {
+      if (!process.isAlive()) {
+        throw new IllegalStateException("Shared S3Mock exited, see " + files.log);
+      }
+      if (System.currentTimeMillis() > deadline) {
+        process.destroy();
+        throw new IllegalStateException("Shared S3Mock didn't start, see " + files.log);
+      }
+      try {
+        Thread.sleep(POLL_MILLIS);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        process.destroy();
+        throw new IllegalStateException("Interrupted while starting the shared S3Mock", e);
+      }
+    }
+    return readState(files);
+  }
+
+  /**
+   * The class path of this JVM, with the entries of manifest-only jars: Surefire forks start from
+   * one, which is deleted when the fork ends, while the server may keep running.
+   */
+  private static String classPath() {
+    final List<String> entries = new ArrayList<>();
+    for (final String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      entries.add(entry);
+      if (!entry.endsWith(".jar")) {
+        continue;
+      }
+      try (JarFile jar = new JarFile(entry)) {
+        final Manifest manifest = jar.getManifest();
+        final String manifestClassPath = manifest == null ? null
+            : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+        if (manifestClassPath != null) {
+          for (final String reference : manifestClassPath.trim().split("\\s+")) {
+            entries.add(Paths.get(new File(entry).toURI().resolve(reference)).toString());
+          }
+        }
+      } catch (final IOException | IllegalArgumentException e) {
+        // not a readable jar, or no file reference
+      }
+    }
+    return String.join(File.pathSeparator, entries);
+  }
+
+  private static String key(final Map<String, String> serverProperties) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      serverProperties.forEach(
+          (name, value) -> digest.update((name + '=' + value + '\n').getBytes(UTF_8)));
+      final StringBuilder key = new StringBuilder("s3mock-");
+      final byte[] hash = digest.digest();
+      for (int i = 0; i < 8; i++) {
+        key.append(String.format("%02x", hash[i]));
+      }
+      return key.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The files coordinating the starters and the server for a key.
+   */
+  private static final class SharedFiles {
+
+    private final Path directory;
+    private final String key;
+    private final Path lock;
+    private final Path server;
+    private final Path state;
+    private final Path leases;
+    private final Path log;
+
+    private SharedFiles(final Path directory, final String key) {
+      this.directory = directory.toAbsolutePath();
+      this.key = key;
+      lock = this.directory.resolve(key + ".lock");
+      server = this.directory.resolve(key + ".server");
+      state = this.directory.resolve(key + ".properties");
+      leases = this.directory.resolve(key + ".leases");
+      log = this.directory.resolve(key + ".log");
+    }
+  }
+
+  /**
+   * A starter's use of the shared server, held with a lock on the lease file.
+   */
+  static final class Lease {
+
+    private final Path file;
+    private final FileChannel channel;
+    private int httpsPort;
+    private int httpPort;
+
+    private Lease(final Path file) throws IOException {
+      this.file = file;
+      channel = FileChannel.open(file, CREATE_NEW, WRITE);
+      try {
+        channel.lock();
+      } catch (final IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    int getPort() {
+      return httpsPort;
+    }
+
+    int getHttpPort() {
+      return httpPort;
+    }
+
+    /**
+     * Releases the lease, the server stops once no lease was held for its idle timeout.
+     */
+    void release() {
+      try {
+        // closing the channel releases the lock
+        channel.close();
+        Files.deleteIfExists(file);
+      } catch (final IOException e) {
+        // the server removes unlocked leases
+      }
+    }
+  }
+}
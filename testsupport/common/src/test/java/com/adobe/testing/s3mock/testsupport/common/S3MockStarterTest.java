@@ -17,14 +17,36 @@
 package com.adobe.testing.s3mock.testsupport.common;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import com.adobe.testing.s3mock.S3MockApplication;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.Bucket;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.utils.IoUtils;
 
 public class S3MockStarterTest {
 
@@ -49,6 +71,213 @@ public class S3MockStarterTest {
     s3MockApplication.stop();
   }
 
+  /**
+   * Tests startup and shutdown of the EmbeddedS3Mock.
+   */
+  @Test
+  void testEmbeddedS3Mock() {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_HTTPS_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_HTTP_PORT, S3MockApplication.RANDOM_PORT);
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, "bucket");
+    properties.put(S3MockApplication.PROP_EMBEDDED, true);
+
+    S3MockStarterTestImpl s3Mock = new S3MockStarterTestImpl(properties);
+    s3Mock.start();
+
+    assertThat(s3Mock.getHttpPort()).isPositive();
+    assertThat(s3Mock.getPort()).isPositive().isNotEqualTo(s3Mock.getHttpPort());
+    S3Client s3ClientV2 = s3Mock.createS3ClientV2();
+    List<Bucket> buckets = s3ClientV2.listBuckets().buckets();
+    assertThat(buckets.get(0).name()).isEqualTo("bucket");
+
+    s3Mock.stop();
+  }
+
+  /**
+   * Tests the in-process clients against both servers, with bodies larger than the buffers.
+   */
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void testInProcessClients(final boolean embedded) throws Exception {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, "bucket");
+    properties.put(S3MockApplication.PROP_EMBEDDED, embedded);
+
+    S3MockStarterTestImpl s3Mock = new S3MockStarterTestImpl(properties);
+    s3Mock.start();
+    try {
+      final byte[] content = new byte[3 * 1024 * 1024 + 17];
+      new Random(42).nextBytes(content);
+
+      S3Client s3ClientV2 = s3Mock.createInProcessS3ClientV2();
+      s3ClientV2.putObject(PutObjectRequest.builder().bucket("bucket").key("v2").build(),
+          RequestBody.fromBytes(content));
+      assertThat(s3ClientV2.getObjectAsBytes(
+          GetObjectRequest.builder().bucket("bucket").key("v2").build()).asByteArray())
+          .isEqualTo(content);
+      assertThat(s3ClientV2.headObject(
+          HeadObjectRequest.builder().bucket("bucket").key("v2").build()).contentLength())
+          .isEqualTo(content.length);
+      assertThatThrownBy(() -> s3ClientV2.headObject(
+          HeadObjectRequest.builder().bucket("bucket").key("missing").build()))
+          .isInstanceOf(NoSuchKeyException.class);
+
+      AmazonS3 s3Client = s3Mock.createInProcessS3Client();
+      s3Client.putObject("bucket", "v1", new ByteArrayInputStream(content), new ObjectMetadata());
+      try (S3Object object = s3Client.getObject("bucket", "v1")) {
+        assertThat(IoUtils.toByteArray(object.getObjectContent())).isEqualTo(content);
+      }
+      assertThat(s3Client.listObjects("bucket").getObjectSummaries()).hasSize(2);
+      assertThat(s3Client.doesObjectExist("bucket", "missing")).isFalse();
+    } finally {
+      s3Mock.stop();
+    }
+  }
+
+  /**
+   * Tests rolling back to a checkpoint and resetting the server.
+   */
+  @Test
+  void testCheckpoints() {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, "bucket");
+    properties.put(S3MockApplication.PROP_EMBEDDED, true);
+
+    S3MockStarterTestImpl s3Mock = new S3MockStarterTestImpl(properties);
+    s3Mock.start();
+    try {
+      S3Client s3ClientV2 = s3Mock.createS3ClientV2();
+      s3ClientV2.putObject(PutObjectRequest.builder().bucket("bucket").key("key").build(),
+          RequestBody.fromString("seeded"));
+      s3Mock.checkpoint("seeded");
+      s3ClientV2.putObject(PutObjectRequest.builder().bucket("bucket").key("key").build(),
+          RequestBody.fromString("changed"));
+
+      s3Mock.rollback("seeded");
+      assertThat(s3ClientV2.getObjectAsBytes(
+          GetObjectRequest.builder().bucket("bucket").key("key").build()).asUtf8String())
+          .isEqualTo("seeded");
+      assertThatThrownBy(() -> s3Mock.rollback("missing"))
+          .isInstanceOf(IllegalStateException.class);
+
+      s3Mock.reset();
+      assertThatThrownBy(() -> s3ClientV2.headObject(
+          HeadObjectRequest.builder().bucket("bucket").key("key").build()))
+          .isInstanceOf(NoSuchKeyException.class);
+    } finally {
+      s3Mock.stop();
+    }
+  }
+
+  /**
+   * Tests that the pooled clients are shared and closed with their namespace or the server.
+   */
+  @Test
+  void testPooledClients() {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, "bucket");
+    properties.put(S3MockApplication.PROP_EMBEDDED, true);
+    properties.put(S3MockStarter.PROP_CLIENT_POOL_SIZE, "4");
+
+    S3MockStarterTestImpl s3Mock = new S3MockStarterTestImpl(properties);
+    s3Mock.start();
+    S3Client s3ClientV2 = s3Mock.getS3ClientV2();
+    S3AsyncClient s3AsyncClient = s3Mock.getS3AsyncClient();
+    try {
+      assertThat(s3Mock.getS3ClientV2()).isSameAs(s3ClientV2);
+      assertThat(s3Mock.getS3AsyncClient()).isSameAs(s3AsyncClient);
+      // closing a shared client does nothing
+      s3ClientV2.close();
+      assertThat(s3ClientV2.listBuckets().buckets()).hasSize(1);
+      s3AsyncClient.putObject(PutObjectRequest.builder().bucket("bucket").key("key").build(),
+          AsyncRequestBody.fromString("async")).join();
+      assertThat(s3ClientV2.getObjectAsBytes(
+          GetObjectRequest.builder().bucket("bucket").key("key").build()).asUtf8String())
+          .isEqualTo("async");
+
+      s3Mock.createNamespace("tenant");
+      S3Client namespaced = s3Mock.getNamespacedS3ClientV2("tenant");
+      assertThat(namespaced).isNotSameAs(s3ClientV2);
+      assertThat(namespaced.listBuckets().buckets()).isEmpty();
+      s3Mock.dropNamespace("tenant");
+      assertThat(s3Mock.getNamespacedS3ClientV2("tenant")).isNotSameAs(namespaced);
+    } finally {
+      s3Mock.stop();
+    }
+    assertThatThrownBy(() -> s3ClientV2.listBuckets()).isInstanceOf(IllegalStateException.class);
+  }
+
+  /**
+   * Tests exporting a snapshot and importing it after a reset.
+   */
+  @Test
+  void testSnapshots() {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, "bucket");
+    properties.put(S3MockApplication.PROP_EMBEDDED, true);
+
+    S3MockStarterTestImpl s3Mock = new S3MockStarterTestImpl(properties);
+    s3Mock.start();
+    try {
+      S3Client s3ClientV2 = s3Mock.createS3ClientV2();
+      s3ClientV2.putObject(PutObjectRequest.builder().bucket("bucket").key("key").build(),
+          RequestBody.fromString("exported"));
+      ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+      s3Mock.exportSnapshot(snapshot);
+      s3Mock.reset();
+
+      assertThat(s3Mock.importSnapshot(new ByteArrayInputStream(snapshot.toByteArray())))
+          .isEqualTo(1);
+      assertThat(s3ClientV2.getObjectAsBytes(
+          GetObjectRequest.builder().bucket("bucket").key("key").build()).asUtf8String())
+          .isEqualTo("exported");
+    } finally {
+      s3Mock.stop();
+    }
+  }
+
+  /**
+   * Tests that shared starters attach to one server, which stops after the last lease.
+   */
+  @Test
+  void testSharedS3Mock(@TempDir final Path sharedDirectory) throws Exception {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(S3MockApplication.PROP_INITIAL_BUCKETS, "bucket");
+    properties.put(S3MockApplication.PROP_EMBEDDED, true);
+    properties.put(S3MockStarter.PROP_SHARED, true);
+    properties.put(S3MockStarter.PROP_SHARED_DIRECTORY, sharedDirectory.toString());
+    properties.put(S3MockStarter.PROP_SHARED_IDLE_TIMEOUT, 0);
+
+    S3MockStarterTestImpl first = new S3MockStarterTestImpl(properties);
+    S3MockStarterTestImpl second = new S3MockStarterTestImpl(properties);
+    first.start();
+    second.start();
+    assertThat(second.getPort()).isEqualTo(first.getPort());
+    assertThat(second.getHttpPort()).isEqualTo(first.getHttpPort());
+
+    first.createS3ClientV2().putObject(
+        PutObjectRequest.builder().bucket("bucket").key("shared").build(),
+        RequestBody.fromString("shared"));
+    first.stop();
+    assertThat(second.createS3ClientV2().getObjectAsBytes(
+        GetObjectRequest.builder().bucket("bucket").key("shared").build()).asUtf8String())
+        .isEqualTo("shared");
+    second.stop();
+
+    final long deadline = System.currentTimeMillis() + 10_000;
+    while (hasState(sharedDirectory) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertThat(hasState(sharedDirectory)).isFalse();
+  }
+
+  private static boolean hasState(final Path sharedDirectory) throws IOException {
+    try (Stream<Path> files = Files.list(sharedDirectory)) {
+      return files.anyMatch(file -> file.toString().endsWith(".properties"));
+    }
+  }
+
   /**
    * Just needed to instantiate the S3MockStarter.
    * The instance provides an S3Client that is pre-configured to connect to the S3MockApplication.
@@ -20,12 +20,17 @@ import com.adobe.testing.s3mock.S3MockApplication;
 import com.adobe.testing.s3mock.testsupport.common.S3MockStarter;
 import com.amazonaws.services.s3.AmazonS3;
 import java.util.Map;
+import java.util.UUID;
 import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterEachCallback;
 import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
 import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
 import org.junit.jupiter.api.extension.ParameterContext;
 import org.junit.jupiter.api.extension.ParameterResolutionException;
 import org.junit.jupiter.api.extension.ParameterResolver;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 
 /**
@@ -60,9 +65,26 @@ import software.amazon.awssdk.services.s3.S3Client;
  *   }
  * }
  * </pre>
+ *
+ * <h2>Namespace per test</h2>
+ * <p>With {@link Builder#withNamespacePerTest()}, every test method works in a namespace of its
+ * own, created before and dropped after the test: the clients injected as parameters of the test
+ * and its {@code @BeforeEach} and {@code @AfterEach} methods only see the buckets created in it.
+ * Tests running in parallel can then use the same bucket names on one server.</p>
+ *
+ * <h2>Injected clients</h2>
+ * <p>{@link S3Client} and {@link S3AsyncClient} parameters are resolved to the clients shared by
+ * all tests using the extension, see {@link #getS3ClientV2()} and {@link #getS3AsyncClient()}.
+ * They pool their connections, closing them does nothing, so tests may still close their clients.
+ * They are closed when the S3Mock stops or the namespace of the test is dropped.</p>
  */
 public class S3MockExtension extends S3MockStarter implements BeforeAllCallback, AfterAllCallback,
-    ParameterResolver {
+    BeforeEachCallback, AfterEachCallback, ParameterResolver {
+
+  private static final Namespace STORE = Namespace.create(S3MockExtension.class);
+  private static final String NAMESPACE_KEY = "namespace";
+
+  private final boolean namespacePerTest;
 
   private int mockAccess;
 
@@ -80,10 +102,12 @@ public class S3MockExtension extends S3MockStarter implements BeforeAllCallback,
    */
   public S3MockExtension() {
     super(null);
+    namespacePerTest = false;
   }
 
-  private S3MockExtension(final Map<String, Object> properties) {
+  private S3MockExtension(final Map<String, Object> properties, final boolean namespacePerTest) {
     super(properties);
+    this.namespacePerTest = namespacePerTest;
   }
 
   @Override
@@ -96,12 +120,42 @@ public class S3MockExtension extends S3MockStarter implements BeforeAllCallback,
     stopWhenLastConsumerFinished();
   }
 
+  @Override
+  public void beforeEach(final ExtensionContext context) {
+    if (namespacePerTest) {
+      final String namespace = "test-" + UUID.randomUUID();
+      createNamespace(namespace);
+      context.getStore(STORE).put(NAMESPACE_KEY, namespace);
+    }
+  }
+
+  @Override
+  public void afterEach(final ExtensionContext context) {
+    final String namespace = context.getStore(STORE).remove(NAMESPACE_KEY, String.class);
+    if (namespace != null) {
+      dropNamespace(namespace);
+    }
+  }
+
+  /**
+   * Returns the namespace of a test, see {@link Builder#withNamespacePerTest()}.
+   *
+   * @param context the context of the test method.
+   *
+   * @return the name of the namespace, null outside of test methods or without a namespace per
+   *     test.
+   */
+  public String getNamespace(final ExtensionContext context) {
+    return context.getStore(STORE).get(NAMESPACE_KEY, String.class);
+  }
+
   @Override
   public boolean supportsParameter(final ParameterContext parameterContext,
       final ExtensionContext extensionContext) throws ParameterResolutionException {
     return paramHasType(parameterContext, S3MockApplication.class)
         || paramHasType(parameterContext, AmazonS3.class)
-        || paramHasType(parameterContext, S3Client.class);
+        || paramHasType(parameterContext, S3Client.class)
+        || paramHasType(parameterContext, S3AsyncClient.class);
   }
 
   @Override
@@ -112,12 +166,18 @@ public class S3MockExtension extends S3MockStarter implements BeforeAllCallback,
       return s3MockFileStore;
     }
 
+    final String namespace = getNamespace(extensionContext);
+
     if (paramHasType(parameterContext, AmazonS3.class)) {
-      return createS3Client();
+      return namespace != null ? createNamespacedS3Client(namespace) : createS3Client();
     }
 
     if (paramHasType(parameterContext, S3Client.class)) {
-      return createS3ClientV2();
+      return namespace != null ? getNamespacedS3ClientV2(namespace) : getS3ClientV2();
+    }
+
+    if (paramHasType(parameterContext, S3AsyncClient.class)) {
+      return namespace != null ? getNamespacedS3AsyncClient(namespace) : getS3AsyncClient();
     }
 
     return null;
@@ -145,9 +205,22 @@ public class S3MockExtension extends S3MockStarter implements BeforeAllCallback,
    */
   public static class Builder extends S3MockStarter.BaseBuilder<S3MockExtension> {
 
+    private boolean namespacePerTest;
+
+    /**
+     * Runs every test method in a namespace of its own, see
+     * {@link S3MockStarter#createNamespace(String)}.
+     *
+     * @return the builder
+     */
+    public Builder withNamespacePerTest() {
+      namespacePerTest = true;
+      return this;
+    }
+
     @Override
     public S3MockExtension build() {
-      return new S3MockExtension(arguments);
+      return new S3MockExtension(arguments, namespacePerTest);
     }
   }
 }
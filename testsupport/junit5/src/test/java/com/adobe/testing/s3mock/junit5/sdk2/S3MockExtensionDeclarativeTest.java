@@ -23,11 +23,15 @@ import com.adobe.testing.s3mock.util.DigestUtil;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
@@ -73,6 +77,46 @@ class S3MockExtensionDeclarativeTest {
         "Up- and downloaded Files should have equal digests");
   }
 
+  /**
+   * Stores objects concurrently with the injected asynchronous client and reads them with the
+   * synchronous one, both shared between parameters.
+   *
+   * @param s3AsyncClient Client injected by the test framework
+   * @param s3Client Client injected by the test framework
+   * @param sameS3Client Client injected by the test framework
+   */
+  @Test
+  void shouldInjectSharedClients(final S3AsyncClient s3AsyncClient, final S3Client s3Client,
+      final S3Client sameS3Client) {
+    assertThat(sameS3Client).isSameAs(s3Client);
+    final String bucketName = "shared-clients";
+    s3Client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    final CompletableFuture<?>[] puts = IntStream.range(0, 20)
+        .mapToObj(i -> s3AsyncClient.putObject(
+            PutObjectRequest.builder().bucket(bucketName).key("key" + i).build(),
+            AsyncRequestBody.fromString("content " + i)))
+        .toArray(CompletableFuture[]::new);
+    CompletableFuture.allOf(puts).join();
+
+    assertThat(s3Client.getObjectAsBytes(
+        GetObjectRequest.builder().bucket(bucketName).key("key7").build()).asUtf8String())
+        .isEqualTo("content 7");
+  }
+
+  /**
+   * Closes the injected client, which must keep working for later tests.
+   *
+   * @param s3Client Client injected by the test framework
+   */
+  @Test
+  void shouldIgnoreClosingInjectedClient(final S3Client s3Client) {
+    try (S3Client closed = s3Client) {
+      closed.listBuckets();
+    }
+    assertThat(s3Client.listBuckets().buckets()).isNotNull();
+  }
+
   @Nested
   class NestedTest {
 
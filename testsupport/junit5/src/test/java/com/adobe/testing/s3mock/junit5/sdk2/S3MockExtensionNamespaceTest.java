@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2017-2022 Adobe.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.adobe.testing.s3mock.junit5.sdk2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.adobe.testing.s3mock.junit5.S3MockExtension;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Bucket;
+
+/**
+ * Tests and demonstrates a namespace per test with the {@link S3MockExtension}: the tests use the
+ * same bucket name on one server, also when running in parallel.
+ */
+@Execution(ExecutionMode.CONCURRENT)
+class S3MockExtensionNamespaceTest {
+
+  @RegisterExtension
+  static final S3MockExtension S3_MOCK = S3MockExtension.builder().withNamespacePerTest()
+      .silent().withSecureConnection(false).build();
+
+  private static final String BUCKET_NAME = "mynamespacedtestbucket";
+
+  private final S3Client defaultNamespaceClient = S3_MOCK.createS3ClientV2();
+
+  @RepeatedTest(3)
+  void shouldUseBucketOfItsOwn(final S3Client s3Client) {
+    s3Client.createBucket(request -> request.bucket(BUCKET_NAME));
+    s3Client.putObject(request -> request.bucket(BUCKET_NAME).key("key"),
+        RequestBody.fromString("content"));
+
+    assertThat(s3Client.listBuckets().buckets()).extracting(Bucket::name)
+        .containsExactly(BUCKET_NAME);
+    assertThat(s3Client.listObjectsV2(request -> request.bucket(BUCKET_NAME)).keyCount())
+        .isEqualTo(1);
+    assertThat(defaultNamespaceClient.listBuckets().buckets()).extracting(Bucket::name)
+        .doesNotContain(BUCKET_NAME);
+  }
+}
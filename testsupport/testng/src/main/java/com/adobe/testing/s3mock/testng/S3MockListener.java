@@ -43,6 +43,10 @@ import org.testng.IExecutionListener;
  * </suite>
  * }
  * </pre>
+ *
+ * <p>With the system property {@code com.adobe.testing.s3mock.testsupport.shared=true} the
+ * S3Mock is shared with other JVMs, see
+ * {@link com.adobe.testing.s3mock.testsupport.common.S3MockStarter#PROP_SHARED}.</p>
  */
 public class S3MockListener implements IExecutionListener {
 